@@ -0,0 +1,7 @@
+-- ============================================
+-- 文档增量索引：chunk 内容哈希
+-- 重新切分时按 content_hash 匹配已有 chunk，内容未变的沿用原 chunk ID 和向量，
+-- 只有新增/变化的片段需要重新向量化；旧数据为 NULL，首次同步时按正文补算
+-- ============================================
+ALTER TABLE `knowledge_chunk`
+  ADD COLUMN `content_hash` char(64) DEFAULT NULL COMMENT 'chunk 正文 SHA-256（十六进制）' AFTER `content_length`;
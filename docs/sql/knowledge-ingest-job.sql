@@ -0,0 +1,31 @@
+-- ============================================
+-- 知识库文档异步导入任务表
+-- 一个任务对应一个文档的 解析 → 切分 → 向量化 → 写入 Qdrant → 标记已索引 流程，
+-- 向量化/写入按批推进，completed_batches 记录已完成的批次，失败后从该批次继续
+-- ============================================
+CREATE TABLE IF NOT EXISTS `knowledge_ingest_job` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `tenant_id` bigint NOT NULL COMMENT '租户ID',
+  `document_id` bigint NOT NULL COMMENT '文档ID',
+  `status` varchar(16) NOT NULL COMMENT '任务状态：PENDING / RUNNING / SUCCESS / FAILED',
+  `stage` varchar(16) NOT NULL COMMENT '当前阶段（失败时为出错的阶段）：PARSE / CHUNK / EMBED / UPSERT / FINALIZE / DONE',
+  `file_path` varchar(512) DEFAULT NULL COMMENT '上传文件的暂存路径，解析完成后仍保留到任务成功',
+  `file_name` varchar(255) DEFAULT NULL COMMENT '原始文件名',
+  `file_type` varchar(50) DEFAULT NULL,
+  `batch_size` int NOT NULL COMMENT '向量化/写入每批 chunk 数，任务创建时确定，续跑时保持不变',
+  `total_chunks` int NOT NULL DEFAULT 0,
+  `total_batches` int NOT NULL DEFAULT 0,
+  `completed_batches` int NOT NULL DEFAULT 0 COMMENT '已写入 Qdrant 并回写 DB 的批次数',
+  `indexed_chunks` int NOT NULL DEFAULT 0,
+  `retry_count` int NOT NULL DEFAULT 0 COMMENT '手动/启动恢复重试次数',
+  `error_message` varchar(512) DEFAULT NULL,
+  `create_time` datetime DEFAULT NULL,
+  `update_time` datetime DEFAULT NULL COMMENT '每完成一批刷新，用于判断任务是否因实例宕机而中断',
+  `finish_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_tenant_document` (`tenant_id`, `document_id`),
+  KEY `idx_status_update` (`status`, `update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='知识库文档导入任务';
+
+-- 大文档（几十 MB 的手册）解析后的纯文本超出 TEXT 的 64KB 上限
+ALTER TABLE `knowledge_document` MODIFY `content` LONGTEXT NOT NULL COMMENT '文档内容（纯文本）';
@@ -0,0 +1,7 @@
+-- ============================================
+-- 租户知识库向量所在集合
+-- NULL 表示尚未写入过向量的租户，或升级前的租户（位于共享集合 yulu_chunks）
+-- ============================================
+ALTER TABLE `tenant_settings`
+  ADD COLUMN `vector_collection` varchar(128) DEFAULT NULL COMMENT '知识库向量所在集合，由索引/布局迁移流程维护'
+  AFTER `avg_handoff_seconds`;
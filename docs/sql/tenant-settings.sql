@@ -0,0 +1,20 @@
+-- ============================================
+-- 租户运行时配置表
+-- 字段为 NULL 表示使用系统默认值（application.yml 中 tenant.settings.defaults）
+-- ============================================
+CREATE TABLE IF NOT EXISTS `tenant_settings` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `tenant_id` bigint NOT NULL COMMENT '租户ID',
+  `context_char_limit` int DEFAULT NULL COMMENT '对话上下文字符预算',
+  `context_token_limit` int DEFAULT NULL COMMENT '对话上下文 token 预算',
+  `rag_top_k` int DEFAULT NULL COMMENT 'RAG 检索条数',
+  `rag_min_score` double DEFAULT NULL COMMENT 'RAG 相似度阈值，NULL 时按问题长度/知识库规模动态计算',
+  `llm_model` varchar(64) DEFAULT NULL COMMENT '对话模型名称，例如 qwen-plus',
+  `llm_timeout_ms` bigint DEFAULT NULL COMMENT '模型调用超时（毫秒）',
+  `rag_timeout_ms` bigint DEFAULT NULL COMMENT 'RAG 检索超时（毫秒）',
+  `avg_handoff_seconds` int DEFAULT NULL COMMENT '转人工平均处理时长（秒），用于估算排队时间',
+  `create_time` datetime DEFAULT NULL,
+  `update_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_tenant_id` (`tenant_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='租户运行时配置';
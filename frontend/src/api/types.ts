@@ -20,7 +20,7 @@ export interface LoginResponse {
 }
 
 export interface ChatMessage {
-  id: number;
+  id: number | string; // 后端按字符串返回（雪花 ID 超出 Number 精度）
   tenantId: number;
   sessionId: number;
   senderType: 'USER' | 'AI' | 'AGENT';
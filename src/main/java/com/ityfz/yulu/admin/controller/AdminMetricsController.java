@@ -0,0 +1,106 @@
+package com.ityfz.yulu.admin.controller;
+
+import com.ityfz.yulu.chat.dto.WriteBehindStats;
+import com.ityfz.yulu.chat.service.ChatMessageWriter;
+import com.ityfz.yulu.chat.service.SemanticAnswerCache;
+import com.ityfz.yulu.common.ai.impl.CachingEmbeddingService;
+import com.ityfz.yulu.common.annotation.RequireRole;
+import com.ityfz.yulu.common.model.ApiResponse;
+import com.ityfz.yulu.knowledge.dto.DocumentParseStats;
+import com.ityfz.yulu.knowledge.service.RetrievalResultCache;
+import com.ityfz.yulu.knowledge.service.Impl.TikaDocumentParser;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运行指标接口（实例级别，不区分租户）
+ * 权限要求：ADMIN
+ */
+@RestController
+@RequestMapping("/api/admin/metrics")
+@RequiredArgsConstructor
+@RequireRole("ADMIN")
+@Tag(name = "运行指标", description = "异步写入队列、缓存命中率等运行时指标")
+public class AdminMetricsController {
+
+    private final ChatMessageWriter chatMessageWriter;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final CachingEmbeddingService cachingEmbeddingService;
+    private final TikaDocumentParser tikaDocumentParser;
+    private final RetrievalResultCache retrievalResultCache;
+
+    /**
+     * chat_message 异步写入队列指标
+     * GET /api/admin/metrics/chat-message-writer
+     */
+    @GetMapping("/chat-message-writer")
+    @Operation(summary = "消息异步写入指标", description = "队列积压、写库条数、背压次数、失败条数等")
+    public ApiResponse<WriteBehindStats> chatMessageWriterStats() {
+        return ApiResponse.success("OK", chatMessageWriter.getStats());
+    }
+
+    /**
+     * 语义答案缓存命中情况
+     * GET /api/admin/metrics/answer-cache
+     */
+    @GetMapping("/answer-cache")
+    @Operation(summary = "语义答案缓存指标", description = "命中/未命中次数")
+    public ApiResponse<Map<String, Object>> answerCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", semanticAnswerCache.isEnabled());
+        stats.put("hits", semanticAnswerCache.getHits());
+        stats.put("misses", semanticAnswerCache.getMisses());
+        return ApiResponse.success("OK", stats);
+    }
+
+    /**
+     * Embedding 两级缓存命中情况
+     * GET /api/admin/metrics/embedding-cache
+     */
+    @GetMapping("/embedding-cache")
+    @Operation(summary = "Embedding 缓存指标", description = "L1/L2 命中次数、调用模型次数、L1 条数")
+    public ApiResponse<Map<String, Object>> embeddingCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("l1Hits", cachingEmbeddingService.getL1Hits());
+        stats.put("l2Hits", cachingEmbeddingService.getL2Hits());
+        stats.put("misses", cachingEmbeddingService.getMisses());
+        stats.put("l1Size", cachingEmbeddingService.getL1Size());
+        return ApiResponse.success("OK", stats);
+    }
+
+    /**
+     * 检索结果缓存命中情况
+     * GET /api/admin/metrics/retrieval-cache
+     */
+    @GetMapping("/retrieval-cache")
+    @Operation(summary = "检索结果缓存指标", description = "命中/未命中/绕过次数、命中率、当前条数")
+    public ApiResponse<Map<String, Object>> retrievalCacheStats() {
+        long hits = retrievalResultCache.getHits();
+        long misses = retrievalResultCache.getMisses();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", retrievalResultCache.isEnabled());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("bypassed", retrievalResultCache.getBypassed());
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("size", retrievalResultCache.getSize());
+        return ApiResponse.success("OK", stats);
+    }
+
+    /**
+     * 文档解析线程池指标
+     * GET /api/admin/metrics/document-parser
+     */
+    @GetMapping("/document-parser")
+    @Operation(summary = "文档解析指标", description = "解析线程占用、排队数、成功/失败/超时次数、平均耗时和吞吐")
+    public ApiResponse<DocumentParseStats> documentParserStats() {
+        return ApiResponse.success("OK", tikaDocumentParser.getStats());
+    }
+}
@@ -0,0 +1,63 @@
+package com.ityfz.yulu.admin.controller;
+
+import com.ityfz.yulu.admin.dto.UpdateTenantSettingsRequest;
+import com.ityfz.yulu.common.annotation.RequireRole;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.common.model.ApiResponse;
+import com.ityfz.yulu.common.security.SecurityUtil;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+
+/**
+ * 租户运行时配置（上下文预算、检索参数、模型等）
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/tenant/settings")
+@RequireRole("ADMIN")
+@Validated
+@Tag(name = "B端-租户配置（Admin/TenantSettings）", description = "上下文预算、检索参数、模型等租户运行时配置")
+public class AdminTenantSettingsController {
+
+    private final TenantConfigService tenantConfigService;
+
+    public AdminTenantSettingsController(TenantConfigService tenantConfigService) {
+        this.tenantConfigService = tenantConfigService;
+    }
+
+    @Operation(summary = "查询租户配置", description = "raw=true 时只返回租户自己配置的值，未配置的字段为 null")
+    @GetMapping
+    public ApiResponse<TenantSettings> getSettings(@RequestParam(defaultValue = "false") boolean raw) {
+        Long tenantId = requireTenantId();
+        TenantSettings settings = raw
+                ? tenantConfigService.getRawSettings(tenantId)
+                : tenantConfigService.getSettings(tenantId);
+        return ApiResponse.success("查询成功", settings);
+    }
+
+    @Operation(summary = "更新租户配置", description = "整体覆盖，字段不传表示恢复系统默认值；所有实例即时生效")
+    @PutMapping
+    public ApiResponse<TenantSettings> updateSettings(@Valid @RequestBody UpdateTenantSettingsRequest request) {
+        Long tenantId = requireTenantId();
+        TenantSettings settings = new TenantSettings();
+        BeanUtils.copyProperties(request, settings);
+        return ApiResponse.success("更新成功", tenantConfigService.updateSettings(tenantId, settings));
+    }
+
+    private Long requireTenantId() {
+        Long tenantId = SecurityUtil.currentTenantId();
+        if (tenantId == null) {
+            throw new BizException(ErrorCodes.TENANT_REQUIRED, "缺少租户信息，请先登录");
+        }
+        return tenantId;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ityfz.yulu.admin.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Size;
+
+/**
+ * 更新租户运行时配置请求（整体覆盖，字段为 null 表示使用系统默认值）
+ */
+@Data
+public class UpdateTenantSettingsRequest {
+
+    /**
+     * 对话上下文字符预算
+     */
+    @Min(value = 500, message = "上下文字符预算不能小于500")
+    @Max(value = 64000, message = "上下文字符预算不能大于64000")
+    private Integer contextCharLimit;
+
+    /**
+     * 对话上下文 token 预算
+     */
+    @Min(value = 256, message = "上下文token预算不能小于256")
+    @Max(value = 32000, message = "上下文token预算不能大于32000")
+    private Integer contextTokenLimit;
+
+    /**
+     * RAG 检索条数
+     */
+    @Min(value = 1, message = "检索条数不能小于1")
+    @Max(value = 50, message = "检索条数不能大于50")
+    private Integer ragTopK;
+
+    /**
+     * RAG 相似度阈值，不填则动态计算
+     */
+    @DecimalMin(value = "0.0", message = "相似度阈值不能小于0")
+    @DecimalMax(value = "1.0", message = "相似度阈值不能大于1")
+    private Double ragMinScore;
+
+    /**
+     * 对话模型名称
+     */
+    @Size(max = 64, message = "模型名称过长")
+    private String llmModel;
+
+    /**
+     * 模型调用超时（毫秒）
+     */
+    @Min(value = 1000, message = "模型超时不能小于1000毫秒")
+    private Long llmTimeoutMs;
+
+    /**
+     * RAG 检索超时（毫秒）
+     */
+    @Min(value = 100, message = "检索超时不能小于100毫秒")
+    private Long ragTimeoutMs;
+
+    /**
+     * 转人工平均处理时长（秒）
+     */
+    @Min(value = 1, message = "平均处理时长不能小于1秒")
+    private Integer avgHandoffSeconds;
+}
@@ -20,6 +20,11 @@ public class ChatAskResponse {
 
     private ChatMessage aiMessage;
     private List<RagRefDTO> refs;
+
+    /**
+     * 本轮发给模型的 Prompt token 数（本地分词估算）；命中答案缓存未调用模型时为 null
+     */
+    private Integer promptTokens;
 }
 
 
@@ -0,0 +1,61 @@
+package com.ityfz.yulu.chat.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * chat_message 异步写入的运行指标
+ */
+@Data
+@Builder
+public class WriteBehindStats {
+
+    private boolean enabled;
+
+    /**
+     * 当前队列积压条数
+     */
+    private int queueSize;
+
+    private int queueCapacity;
+
+    /**
+     * 累计入队条数
+     */
+    private long enqueued;
+
+    /**
+     * 累计写库成功条数
+     */
+    private long flushedRows;
+
+    /**
+     * 累计执行的批量 INSERT 次数
+     */
+    private long flushBatches;
+
+    /**
+     * 队列满退化为同步写入的次数（背压）
+     */
+    private long syncFallbacks;
+
+    /**
+     * 写库失败、留在本地日志等待补写的条数
+     */
+    private long failedRows;
+
+    /**
+     * 当前等待重试的条数（本地日志段保留到重试成功）
+     */
+    private long retryPendingRows;
+
+    /**
+     * 累计重试写库成功条数
+     */
+    private long retriedRows;
+
+    /**
+     * 最近一次刷盘耗时（毫秒）
+     */
+    private long lastFlushCostMs;
+}
@@ -1,6 +1,8 @@
 package com.ityfz.yulu.chat.entity;
 
 import com.baomidou.mybatisplus.annotation.*;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import lombok.Data;
 
 import java.time.LocalDateTime;
@@ -8,7 +10,11 @@ import java.time.LocalDateTime;
 @Data
 @TableName("chat_message")
 public class ChatMessage {
+    /**
+     * 开启异步写入时为预分配的雪花 ID，超出 JS Number 精度，按字符串输出
+     */
     @TableId(type = IdType.AUTO)
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
     private Long tenantId;
     private Long sessionId;
@@ -2,6 +2,26 @@ package com.ityfz.yulu.chat.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ityfz.yulu.chat.entity.ChatMessage;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
+
+    /**
+     * 多行插入（主键已预先分配）。ignore=true 时用于本地日志补写，已存在的行直接跳过。
+     */
+    @Insert("""
+            <script>
+            INSERT <if test="ignore">IGNORE</if> INTO chat_message
+                (id, tenant_id, session_id, sender_type, content, emotion, intent, create_time)
+            VALUES
+            <foreach collection="list" item="m" separator=",">
+                (#{m.id}, #{m.tenantId}, #{m.sessionId}, #{m.senderType}, #{m.content},
+                 #{m.emotion}, #{m.intent}, #{m.createTime})
+            </foreach>
+            </script>
+            """)
+    int insertBatch(@Param("list") List<ChatMessage> list, @Param("ignore") boolean ignore);
 }
@@ -0,0 +1,202 @@
+package com.ityfz.yulu.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.common.ai.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 会话上下文存储（基于Redis）
+ *
+ * 四个 key 配合使用，最新的消息都在列表头部：
+ * - chat:context:{sessionId}         消息 JSON 列表
+ * - chat:context:len:{sessionId}     与上面一一对应的消息字符长度
+ * - chat:context:chars:{sessionId}   当前保留消息的字符总数
+ * - chat:context:evicted:{sessionId} 被裁剪掉、还没折叠进摘要的消息（最旧的在头部）
+ * sessionId 两侧的花括号是字面量（Redis Cluster 的 hash tag），保证同一会话的四个 key 落在同一个 slot，
+ * 脚本才能在集群上一起操作它们。
+ *
+ * 追加 + 按条数/字符预算裁剪在一个 Lua 脚本里完成，一次往返、原子执行，并发的两轮对话不会互相覆盖上下文。
+ * 裁剪掉的消息不直接丢弃，而是转入待摘要列表，由 ConversationSummarizer 异步折叠进会话摘要。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatContextStore {
+
+    private static final String CONTEXT_KEY_PREFIX = "chat:context:";
+    private static final String LENGTH_KEY_PREFIX = "chat:context:len:";
+    private static final String CHARS_KEY_PREFIX = "chat:context:chars:";
+    private static final String EVICTED_KEY_PREFIX = "chat:context:evicted:";
+
+    /**
+     * KEYS[1] 消息列表，KEYS[2] 长度列表，KEYS[3] 字符总数，KEYS[4] 待摘要列表
+     * ARGV[1] 消息 JSON，ARGV[2] 消息字符数，ARGV[3] 最多保留条数，ARGV[4] 字符预算，ARGV[5] 待摘要列表上限
+     * 返回待摘要列表的长度
+     */
+    private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('LLEN', KEYS[1]) ~= redis.call('LLEN', KEYS[2]) then
+                -- 长度列表和消息列表对不上（旧格式数据或异常中断），整体重置
+                redis.call('DEL', KEYS[1], KEYS[2], KEYS[3])
+            end
+            local len = tonumber(ARGV[2])
+            redis.call('LPUSH', KEYS[1], ARGV[1])
+            redis.call('LPUSH', KEYS[2], len)
+            local total = redis.call('INCRBY', KEYS[3], len)
+            local count = redis.call('LLEN', KEYS[1])
+            local maxCount = tonumber(ARGV[3])
+            local budget = tonumber(ARGV[4])
+            -- 从最旧的一端丢弃，直到条数和字符数都不超限
+            while count > 0 and (count > maxCount or total > budget) do
+                redis.call('RPUSH', KEYS[4], redis.call('RPOP', KEYS[1]))
+                local removed = tonumber(redis.call('RPOP', KEYS[2])) or 0
+                total = redis.call('DECRBY', KEYS[3], removed)
+                count = count - 1
+            end
+            if count == 0 then
+                redis.call('DEL', KEYS[1], KEYS[2], KEYS[3])
+            end
+            -- 摘要长期跟不上时只保留最近的一部分，避免无限增长
+            local maxArchived = tonumber(ARGV[5])
+            if redis.call('LLEN', KEYS[4]) > maxArchived then
+                redis.call('LTRIM', KEYS[4], -maxArchived, -1)
+            end
+            return redis.call('LLEN', KEYS[4])
+            """, Long.class);
+
+    /**
+     * KEYS[1] 待摘要列表，ARGV[1] 条数；读取并移除头部（最旧）的若干条。
+     * 读和删放在一起：追加脚本随时可能 LTRIM 掉头部，分两步做会删掉还没读到的消息
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>("""
+            local items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)
+            if #items > 0 then
+                redis.call('LTRIM', KEYS[1], #items, -1)
+            end
+            return items
+            """, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 追加一条消息，并按条数上限、字符预算把最旧的消息移入待摘要列表
+     *
+     * @param maxEntries  最多保留条数
+     * @param charBudget  保留消息的字符总数上限
+     * @param maxArchived 待摘要列表最多保留条数
+     * @return 待摘要的消息条数
+     */
+    public long append(Long sessionId, String role, String content, int maxEntries, int charBudget, int maxArchived) {
+        String text = content == null ? "" : content;
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(new Message(role, text));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("上下文消息序列化失败", e);
+        }
+
+        Long archived = stringRedisTemplate.execute(APPEND_SCRIPT,
+                List.of(contextKey(sessionId), lengthKey(sessionId), charsKey(sessionId), evictedKey(sessionId)),
+                json, String.valueOf(text.length()), String.valueOf(maxEntries), String.valueOf(charBudget),
+                String.valueOf(maxArchived));
+        log.debug("[ChatContext] 追加上下文: sessionId={}, role={}, length={}, archived={}",
+                sessionId, role, text.length(), archived);
+        return archived == null ? 0 : archived;
+    }
+
+    /**
+     * 读取最近的上下文（最新的在前）
+     */
+    public List<Message> list(Long sessionId, int limit) {
+        return parse(sessionId, stringRedisTemplate.opsForList().range(contextKey(sessionId), 0, limit - 1));
+    }
+
+    /**
+     * 取出并移除最早的 limit 条待摘要消息（时间正序）。摘要失败时用 restoreEvicted 放回
+     */
+    @SuppressWarnings("unchecked")
+    public List<Message> takeEvicted(Long sessionId, int limit) {
+        List<String> items = stringRedisTemplate.execute(TAKE_SCRIPT, List.of(evictedKey(sessionId)),
+                String.valueOf(limit));
+        return parse(sessionId, items);
+    }
+
+    public long evictedSize(Long sessionId) {
+        Long size = stringRedisTemplate.opsForList().size(evictedKey(sessionId));
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * 把 takeEvicted 取出但没能折叠的消息按原顺序放回头部（期间新追加的在尾部，不受影响）。
+     * 放回后超出上限的部分由下一次追加按「保留最近」裁掉
+     */
+    public void restoreEvicted(Long sessionId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        List<String> jsonList = new ArrayList<>(messages.size());
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            try {
+                jsonList.add(objectMapper.writeValueAsString(messages.get(i)));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("上下文消息序列化失败", e);
+            }
+        }
+        // LPUSH 逐个压到头部，倒序传入后头部恢复为时间正序
+        stringRedisTemplate.opsForList().leftPushAll(evictedKey(sessionId), jsonList);
+    }
+
+    /**
+     * 清空会话上下文（包括待摘要消息）
+     */
+    public void clear(Long sessionId) {
+        stringRedisTemplate.delete(List.of(contextKey(sessionId), lengthKey(sessionId), charsKey(sessionId),
+                evictedKey(sessionId)));
+    }
+
+    private List<Message> parse(Long sessionId, List<String> jsonList) {
+        if (jsonList == null || jsonList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Message> messages = new ArrayList<>(jsonList.size());
+        for (String json : jsonList) {
+            try {
+                messages.add(objectMapper.readValue(json, Message.class));
+            } catch (JsonProcessingException e) {
+                log.warn("[ChatContext] 跳过无法解析的上下文: sessionId={}, json={}", sessionId, json);
+            }
+        }
+        return messages;
+    }
+
+    private String contextKey(Long sessionId) {
+        return CONTEXT_KEY_PREFIX + hashTag(sessionId);
+    }
+
+    private String lengthKey(Long sessionId) {
+        return LENGTH_KEY_PREFIX + hashTag(sessionId);
+    }
+
+    private String charsKey(Long sessionId) {
+        return CHARS_KEY_PREFIX + hashTag(sessionId);
+    }
+
+    private String evictedKey(Long sessionId) {
+        return EVICTED_KEY_PREFIX + hashTag(sessionId);
+    }
+
+    private static String hashTag(Long sessionId) {
+        return "{" + sessionId + "}";
+    }
+}
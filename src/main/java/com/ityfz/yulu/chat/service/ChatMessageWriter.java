@@ -0,0 +1,371 @@
+package com.ityfz.yulu.chat.service;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.chat.dto.WriteBehindStats;
+import com.ityfz.yulu.chat.entity.ChatMessage;
+import com.ityfz.yulu.chat.mapper.ChatMessageMapper;
+import com.ityfz.yulu.common.config.ChatWriteBehindProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * chat_message 统一写入入口。
+ *
+ * 默认同步单行插入；开启 chat.write-behind.enabled 后：
+ * 1. 入队前预分配主键（雪花 ID），调用方立即拿到 message.id
+ * 2. 消息先追加到本地日志段文件，再进入内存队列
+ * 3. 后台线程每 flushIntervalMs 或积压满 batchSize 时，切换日志段并用多行 INSERT 批量写库
+ * 4. 写库成功删除对应日志段；失败则保留日志段，失败的行按指数退避以 INSERT IGNORE 重试，
+ *    成功后再删除；进程退出时仍未成功的，重启时补写
+ * 5. 队列满时退化为同步写入（背压），不丢消息
+ *
+ * 注意：异步模式下消息写库有最多 flushIntervalMs 的延迟，刚写入的消息立即查库可能还查不到。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatMessageWriter {
+
+    private static final String WAL_SUFFIX = ".wal";
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final ChatWriteBehindProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private final Object walLock = new Object();
+    private final AtomicBoolean flushPending = new AtomicBoolean(false);
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushBatches = new LongAdder();
+    private final LongAdder syncFallbacks = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+    private final LongAdder retriedRows = new LongAdder();
+    private final AtomicLong retryPendingRows = new AtomicLong();
+    private volatile long lastFlushCostMs;
+
+    private BlockingQueue<ChatMessage> queue;
+    private ScheduledExecutorService flusher;
+    private Path walDir;
+    private Path currentSegment;
+    private BufferedWriter walWriter;
+    private long segmentSeq;
+
+    /**
+     * 写库失败等待重试的日志段，只在刷盘线程访问
+     */
+    private final Deque<PendingRetry> retries = new ArrayDeque<>();
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        walDir = Paths.get(properties.getWalDir());
+        Files.createDirectories(walDir);
+        // 先补写上次进程遗留的日志段，再开始接收新消息
+        replayPendingSegments();
+
+        queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        openSegment();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-message-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                properties.getFlushIntervalMs(), properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("[ChatMessageWriter] 异步批量写入已开启: batchSize={}, flushIntervalMs={}, queueCapacity={}, walDir={}",
+                properties.getBatchSize(), properties.getFlushIntervalMs(), properties.getQueueCapacity(),
+                walDir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 把剩余的消息刷掉，等待中的重试不再退避直接试一次；仍失败的留在日志里等下次启动补写
+        flushQuietly();
+        try {
+            retryFailed(true);
+        } catch (Exception e) {
+            log.error("[ChatMessageWriter] 退出前重试异常: {}", e.getMessage(), e);
+        }
+        synchronized (walLock) {
+            closeWriter();
+            deleteIfEmpty(currentSegment);
+        }
+    }
+
+    /**
+     * 保存一条消息。返回时 message.id 已可用（同步模式为数据库自增 ID，异步模式为预分配 ID）。
+     */
+    public ChatMessage save(ChatMessage message) {
+        if (message.getCreateTime() == null) {
+            message.setCreateTime(LocalDateTime.now());
+        }
+        if (!properties.isEnabled()) {
+            chatMessageMapper.insert(message);
+            return message;
+        }
+
+        message.setId(IdWorker.getId());
+        boolean queued;
+        synchronized (walLock) {
+            appendToWal(message);
+            queued = queue.offer(message);
+        }
+        if (!queued) {
+            // 队列已满：当前线程直接写库，相当于对调用方施加背压
+            syncFallbacks.increment();
+            log.warn("[ChatMessageWriter] 队列已满，同步写入: sessionId={}, queueSize={}",
+                    message.getSessionId(), queue.size());
+            chatMessageMapper.insertBatch(List.of(message), true);
+            return message;
+        }
+
+        enqueued.increment();
+        if (queue.size() >= properties.getBatchSize() && flushPending.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+        return message;
+    }
+
+    public WriteBehindStats getStats() {
+        return WriteBehindStats.builder()
+                .enabled(properties.isEnabled())
+                .queueSize(queue == null ? 0 : queue.size())
+                .queueCapacity(properties.getQueueCapacity())
+                .enqueued(enqueued.sum())
+                .flushedRows(flushedRows.sum())
+                .flushBatches(flushBatches.sum())
+                .syncFallbacks(syncFallbacks.sum())
+                .failedRows(failedRows.sum())
+                .retryPendingRows(retryPendingRows.get())
+                .retriedRows(retriedRows.sum())
+                .lastFlushCostMs(lastFlushCostMs)
+                .build();
+    }
+
+    private void flushQuietly() {
+        flushPending.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("[ChatMessageWriter] 刷盘异常: {}", e.getMessage(), e);
+        }
+    }
+
+    void flush() {
+        retryFailed(false);
+
+        List<ChatMessage> batch = new ArrayList<>();
+        Path sealed;
+        synchronized (walLock) {
+            queue.drainTo(batch);
+            if (batch.isEmpty()) {
+                return;
+            }
+            // 切换日志段：本次取出的消息全部落在 sealed 里，之后入队的写到新段
+            sealed = currentSegment;
+            closeWriter();
+            openSegment();
+        }
+
+        long start = System.currentTimeMillis();
+        List<ChatMessage> failed = new ArrayList<>();
+        int batchSize = properties.getBatchSize();
+        for (int from = 0; from < batch.size(); from += batchSize) {
+            List<ChatMessage> rows = batch.subList(from, Math.min(from + batchSize, batch.size()));
+            try {
+                chatMessageMapper.insertBatch(rows, false);
+                flushedRows.add(rows.size());
+                flushBatches.increment();
+            } catch (Exception e) {
+                failed.addAll(rows);
+                failedRows.add(rows.size());
+                log.error("[ChatMessageWriter] 批量写入失败，保留本地日志等待重试: rows={}, segment={}, error={}",
+                        rows.size(), sealed, e.getMessage(), e);
+            }
+        }
+        lastFlushCostMs = System.currentTimeMillis() - start;
+
+        if (failed.isEmpty()) {
+            deleteQuietly(sealed);
+        } else {
+            PendingRetry retry = new PendingRetry(sealed, failed);
+            retry.scheduleNext(properties);
+            retries.addLast(retry);
+            retryPendingRows.addAndGet(failed.size());
+        }
+        log.debug("[ChatMessageWriter] 刷盘完成: rows={}, cost={}ms, remaining={}",
+                batch.size(), lastFlushCostMs, queue.size());
+    }
+
+    /**
+     * 重试写库失败的行：INSERT IGNORE，之前部分写入成功或与其他实例重复的行直接跳过，
+     * 整段都写入后才删除日志段
+     *
+     * @param force 为 true 时忽略退避时间（退出前最后一次尝试）
+     */
+    private void retryFailed(boolean force) {
+        long now = System.currentTimeMillis();
+        Iterator<PendingRetry> it = retries.iterator();
+        while (it.hasNext()) {
+            PendingRetry retry = it.next();
+            if (!force && retry.nextAttemptAt > now) {
+                continue;
+            }
+            try {
+                for (int from = 0; from < retry.rows.size(); from += properties.getBatchSize()) {
+                    chatMessageMapper.insertBatch(retry.rows.subList(from,
+                            Math.min(from + properties.getBatchSize(), retry.rows.size())), true);
+                }
+            } catch (Exception e) {
+                retry.scheduleNext(properties);
+                log.warn("[ChatMessageWriter] 重试写库失败: rows={}, segment={}, attempts={}, nextRetryIn={}ms, error={}",
+                        retry.rows.size(), retry.segment, retry.attempts,
+                        retry.nextAttemptAt - System.currentTimeMillis(), e.getMessage());
+                continue;
+            }
+            it.remove();
+            retriedRows.add(retry.rows.size());
+            retryPendingRows.addAndGet(-retry.rows.size());
+            deleteQuietly(retry.segment);
+            log.info("[ChatMessageWriter] 重试写库成功: rows={}, segment={}, attempts={}",
+                    retry.rows.size(), retry.segment, retry.attempts + 1);
+        }
+    }
+
+    /**
+     * 启动时补写遗留日志段（已写入的行通过 INSERT IGNORE 跳过）
+     */
+    private void replayPendingSegments() throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(walDir)) {
+            segments = files.filter(p -> p.getFileName().toString().endsWith(WAL_SUFFIX)).sorted().toList();
+        }
+        for (Path segment : segments) {
+            List<ChatMessage> rows = new ArrayList<>();
+            for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    rows.add(objectMapper.readValue(line, ChatMessage.class));
+                } catch (IOException e) {
+                    // 进程崩溃时最后一行可能只写了一半
+                    log.warn("[ChatMessageWriter] 跳过损坏的日志行: segment={}", segment);
+                }
+            }
+            for (int from = 0; from < rows.size(); from += properties.getBatchSize()) {
+                chatMessageMapper.insertBatch(
+                        rows.subList(from, Math.min(from + properties.getBatchSize(), rows.size())), true);
+            }
+            Files.delete(segment);
+            log.info("[ChatMessageWriter] 补写遗留日志段完成: segment={}, rows={}", segment, rows.size());
+        }
+    }
+
+    private void appendToWal(ChatMessage message) {
+        try {
+            walWriter.write(objectMapper.writeValueAsString(message));
+            walWriter.newLine();
+            walWriter.flush();
+        } catch (IOException e) {
+            // 日志写失败不阻断业务，只是这条消息失去崩溃保护
+            log.error("[ChatMessageWriter] 写本地日志失败: id={}, error={}", message.getId(), e.getMessage());
+        }
+    }
+
+    private void openSegment() {
+        // 文件名按启动时间 + 序号递增，补写时按文件名顺序处理
+        String name = String.format("chat-message-%d-%08d%s", System.currentTimeMillis(), segmentSeq++, WAL_SUFFIX);
+        currentSegment = walDir.resolve(name);
+        try {
+            walWriter = Files.newBufferedWriter(currentSegment, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建本地日志段: " + currentSegment, e);
+        }
+    }
+
+    private void closeWriter() {
+        try {
+            walWriter.close();
+        } catch (IOException e) {
+            log.warn("[ChatMessageWriter] 关闭日志段失败: segment={}", currentSegment);
+        }
+    }
+
+    private void deleteIfEmpty(Path segment) {
+        try {
+            if (Files.exists(segment) && Files.size(segment) == 0) {
+                Files.delete(segment);
+            }
+        } catch (IOException e) {
+            log.warn("[ChatMessageWriter] 删除空日志段失败: segment={}", segment);
+        }
+    }
+
+    private void deleteQuietly(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            log.warn("[ChatMessageWriter] 删除日志段失败: segment={}", segment);
+        }
+    }
+
+    /**
+     * 一个日志段里写库失败的行
+     */
+    private static class PendingRetry {
+        private final Path segment;
+        private final List<ChatMessage> rows;
+        private int attempts;
+        private long nextAttemptAt;
+
+        PendingRetry(Path segment, List<ChatMessage> rows) {
+            this.segment = segment;
+            this.rows = rows;
+        }
+
+        void scheduleNext(ChatWriteBehindProperties properties) {
+            long backoff = properties.getRetryBackoffMs() << Math.min(attempts, 16);
+            nextAttemptAt = System.currentTimeMillis() + Math.min(backoff, properties.getRetryMaxBackoffMs());
+            attempts++;
+        }
+    }
+}
@@ -4,9 +4,9 @@ import com.ityfz.yulu.chat.dto.ChatAskResponse;
 import com.ityfz.yulu.chat.dto.EditSessionRequest;
 import com.ityfz.yulu.chat.entity.ChatMessage;
 import com.ityfz.yulu.chat.entity.ChatSession;
+import com.ityfz.yulu.common.ai.Message;
 
 import java.util.List;
-import java.util.Map;
 
 public interface ChatService {
 
@@ -25,7 +25,7 @@ public interface ChatService {
 
     // 从Redis中获取对话上下文。
     //返回最近上下文，供调用模型或调试。
-    List<Map<String, String>> listContextFromRedis(Long sessionId);
+    List<Message> listContextFromRedis(Long sessionId);
 
     /**
      * 用户发起一次“问 + AI 答”的完整流程（含 RAG：每轮检索知识库并注入上下文）。
@@ -33,6 +33,14 @@ public interface ChatService {
      */
     ChatAskResponse chatWithAi(Long sessionId, Long userId, Long tenantId, String question);
 
+    /**
+     * chatWithAi 的流式版本：回答 token 到达即通过 listener 推送，
+     * 流结束后再落库 AI 消息、更新 Redis 上下文并回调 onComplete（携带 RAG 引用）。
+     * 落库用户消息、检索、调用模型都在对话线程池中进行，方法提交后立即返回，不阻塞调用线程；
+     * 准备阶段的失败（会话不存在或不属于当前用户、用户消息落库失败等）同样通过 listener.onError 通知。
+     */
+    void chatWithAiStream(Long sessionId, Long userId, Long tenantId, String question, ChatStreamListener listener);
+
     // 获取租户下所有会话
     List<ChatSession> listAllSessionsByTenant(Long tenantId);
 
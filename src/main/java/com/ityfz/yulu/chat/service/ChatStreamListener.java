@@ -0,0 +1,32 @@
+package com.ityfz.yulu.chat.service;
+
+import com.ityfz.yulu.chat.dto.ChatAskResponse;
+import com.ityfz.yulu.knowledge.dto.RagRefDTO;
+
+import java.util.List;
+
+/**
+ * 流式问答回调：由 ChatService.chatWithAiStream 驱动，Controller 负责转成 SSE 事件推给前端。
+ */
+public interface ChatStreamListener {
+
+    /**
+     * 检索完成、模型开始生成前回调（此时已确定会话 ID 和本轮 RAG 引用）
+     */
+    void onStart(Long sessionId, List<RagRefDTO> refs);
+
+    /**
+     * 模型吐出的一段增量回答
+     */
+    void onToken(String token);
+
+    /**
+     * 回答生成完毕，AI 消息、Redis 上下文均已落库
+     */
+    void onComplete(ChatAskResponse response);
+
+    /**
+     * 生成或落库失败
+     */
+    void onError(Throwable error);
+}
@@ -0,0 +1,180 @@
+package com.ityfz.yulu.chat.service;
+
+import com.ityfz.yulu.common.ai.LLMClient;
+import com.ityfz.yulu.common.ai.Message;
+import com.ityfz.yulu.common.config.ChatSummaryProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * 会话滚动摘要。
+ *
+ * 上下文窗口裁剪出去的消息先进入 ChatContextStore 的待摘要列表，积累到 triggerCount 条后：
+ * 1. 抢占会话级锁 chat:summary:lock:{sessionId}（SET NX），抢不到说明已有任务在跑，直接返回
+ * 2. 在摘要线程池里原子地取出最早一批待摘要消息，连同旧摘要交给模型（独立的摘要提示词，不走客服人设），
+ *    生成新摘要写回 chat:summary:{sessionId}；剩余仍超过阈值则继续下一批
+ *
+ * 全程不在请求线程上调用模型；摘要失败时把取出的消息放回待摘要列表，下次触发重试。
+ */
+@Slf4j
+@Service
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_KEY_PREFIX = "chat:summary:";
+    private static final String LOCK_KEY_PREFIX = "chat:summary:lock:";
+
+    /**
+     * 只有锁的持有者才能释放
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final ChatContextStore chatContextStore;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LLMClient llmClient;
+    private final Executor summaryExecutor;
+    private final ChatSummaryProperties properties;
+
+    public ConversationSummarizer(ChatContextStore chatContextStore,
+                                  StringRedisTemplate stringRedisTemplate,
+                                  @Qualifier("langChain4jQwenClient") LLMClient llmClient,
+                                  @Qualifier("chatSummaryExecutor") Executor summaryExecutor,
+                                  ChatSummaryProperties properties) {
+        this.chatContextStore = chatContextStore;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.llmClient = llmClient;
+        this.summaryExecutor = summaryExecutor;
+        this.properties = properties;
+    }
+
+    /**
+     * 追加上下文后调用：待摘要消息达到阈值时提交后台摘要任务（同一会话同时只有一个任务）
+     *
+     * @param evictedCount 当前待摘要消息条数
+     */
+    public void onContextAppended(Long sessionId, long evictedCount) {
+        if (!properties.isEnabled() || evictedCount < properties.getTriggerCount()) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey(sessionId), token,
+                Duration.ofSeconds(properties.getLockTtlSeconds()));
+        if (!Boolean.TRUE.equals(locked)) {
+            log.debug("[ChatSummary] 已有摘要任务在执行，跳过: sessionId={}", sessionId);
+            return;
+        }
+        try {
+            summaryExecutor.execute(() -> summarize(sessionId, token));
+        } catch (TaskRejectedException e) {
+            log.warn("[ChatSummary] 摘要线程池已满，本次跳过: sessionId={}", sessionId);
+            releaseLock(sessionId, token);
+        }
+    }
+
+    public String getSummary(Long sessionId) {
+        return stringRedisTemplate.opsForValue().get(summaryKey(sessionId));
+    }
+
+    public void clear(Long sessionId) {
+        stringRedisTemplate.delete(summaryKey(sessionId));
+    }
+
+    private void summarize(Long sessionId, String token) {
+        long start = System.currentTimeMillis();
+        int folded = 0;
+        try {
+            for (int round = 0; round < properties.getMaxRounds(); round++) {
+                if (chatContextStore.evictedSize(sessionId) < properties.getTriggerCount()) {
+                    break;
+                }
+                List<Message> batch = chatContextStore.takeEvicted(sessionId, properties.getBatchSize());
+                if (batch.isEmpty()) {
+                    break;
+                }
+                if (!fold(sessionId, batch)) {
+                    break;
+                }
+                folded += batch.size();
+                // 多批折叠时续期，避免锁在任务中途过期
+                stringRedisTemplate.expire(lockKey(sessionId), Duration.ofSeconds(properties.getLockTtlSeconds()));
+            }
+            if (folded > 0) {
+                log.info("[ChatSummary] 会话摘要已更新: sessionId={}, folded={}, cost={}ms",
+                        sessionId, folded, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("[ChatSummary] 生成会话摘要失败: sessionId={}, error={}", sessionId, e.getMessage(), e);
+        } finally {
+            releaseLock(sessionId, token);
+        }
+    }
+
+    /**
+     * 把一批消息折叠进摘要；失败时放回待摘要列表
+     *
+     * @return 是否折叠成功
+     */
+    private boolean fold(Long sessionId, List<Message> batch) {
+        try {
+            String summary = llmClient.complete(systemPrompt(), buildPrompt(getSummary(sessionId), batch));
+            if (summary == null || summary.isBlank()) {
+                log.warn("[ChatSummary] 模型返回空摘要，放回待摘要消息: sessionId={}", sessionId);
+                chatContextStore.restoreEvicted(sessionId, batch);
+                return false;
+            }
+            stringRedisTemplate.opsForValue().set(summaryKey(sessionId), summary.trim());
+            return true;
+        } catch (RuntimeException e) {
+            chatContextStore.restoreEvicted(sessionId, batch);
+            throw e;
+        }
+    }
+
+    private String systemPrompt() {
+        return "你负责为用户与客服的长对话维护滚动摘要。请把「已有摘要」和「新增对话」合并成一份新的摘要，"
+                + "不超过 " + properties.getMaxSummaryChars()
+                + " 字，保留关键信息（用户是谁、在问什么、已给出哪些答案、还有哪些未解决的问题）。"
+                + "只输出摘要正文，不要回答对话中的问题，不要输出 JSON 或其他说明文字。";
+    }
+
+    private String buildPrompt(String previousSummary, List<Message> turns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("已有摘要：\n")
+                .append(previousSummary == null || previousSummary.isBlank() ? "（无）" : previousSummary)
+                .append("\n\n新增对话：\n");
+        for (Message m : turns) {
+            sb.append(m.getRole()).append(": ").append(m.getContent()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private void releaseLock(Long sessionId, String token) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey(sessionId)), token);
+        } catch (Exception e) {
+            log.warn("[ChatSummary] 释放摘要锁失败，等待自动过期: sessionId={}", sessionId);
+        }
+    }
+
+    private String summaryKey(Long sessionId) {
+        return SUMMARY_KEY_PREFIX + sessionId;
+    }
+
+    private String lockKey(Long sessionId) {
+        return LOCK_KEY_PREFIX + sessionId;
+    }
+}
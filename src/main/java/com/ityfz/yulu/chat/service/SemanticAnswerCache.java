@@ -0,0 +1,258 @@
+package com.ityfz.yulu.chat.service;
+
+import com.ityfz.yulu.common.ai.ChatResult;
+import com.ityfz.yulu.common.config.ChatAnswerCacheProperties;
+import com.ityfz.yulu.knowledge.dto.RagRefDTO;
+import com.ityfz.yulu.knowledge.event.KnowledgeBaseChangedEvent;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 语义答案缓存（按租户隔离）
+ *
+ * - 条目放在本进程内存中，key 是问题向量（归一化后比较余弦相似度）
+ * - 每个租户有一个 Redis 版本号 chat:answer-cache:ver:{tenantId}，知识库变更时 INCR；
+ *   本地桶记录构建时的版本号，版本不一致整桶丢弃，多实例之间也能失效
+ * - 只缓存无历史上下文（会话首轮）的问答，带上下文的回答不具备复用性
+ * - 缓存回答、意图和引用：相似到能复用答案的问题意图相同；情绪描述的是提问的人，
+ *   命中时按本轮问题用关键词规则识别，不再调用模型（命中路径不能比它省掉的模型调用还慢）
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SemanticAnswerCache {
+
+    private static final String VERSION_KEY_PREFIX = "chat:answer-cache:ver:";
+
+    private static final List<String> ANGRY_WORDS = List.of(
+            "投诉", "差评", "垃圾", "气死", "生气", "愤怒", "骗子", "太差", "什么破", "忍无可忍");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ChatAnswerCacheProperties properties;
+
+    private final Map<Long, TenantBucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 读取租户当前的缓存版本号，查询和写入都要带上它
+     */
+    public long currentVersion(Long tenantId) {
+        String v = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + tenantId);
+        return v == null ? 0L : Long.parseLong(v);
+    }
+
+    /**
+     * 查找相似问题的缓存答案，未命中返回 null
+     */
+    public CachedAnswer lookup(Long tenantId, long version, float[] queryVector) {
+        if (tenantId == null || queryVector == null || queryVector.length == 0) {
+            return null;
+        }
+        float[] q = normalize(queryVector);
+        TenantBucket bucket = buckets.get(tenantId);
+        if (bucket == null) {
+            misses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry best = null;
+        double bestScore = -1;
+        synchronized (bucket) {
+            if (bucket.version != version) {
+                bucket.reset(version);
+                misses.increment();
+                return null;
+            }
+            Iterator<Entry> it = bucket.entries.iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (e.expireAt < now) {
+                    it.remove();
+                    continue;
+                }
+                if (e.vector.length != q.length) {
+                    continue;
+                }
+                double score = dot(q, e.vector);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = e;
+                }
+            }
+        }
+        if (best == null || bestScore < properties.getSimilarityThreshold()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        log.debug("[AnswerCache] 命中: tenantId={}, score={}", tenantId, bestScore);
+        return best.answer;
+    }
+
+    /**
+     * 写入一条答案。version 为查询时拿到的版本号，期间知识库有变更则丢弃
+     */
+    public void put(Long tenantId, long version, float[] queryVector, ChatResult result, List<RagRefDTO> refs) {
+        if (tenantId == null || queryVector == null || queryVector.length == 0
+                || result == null || result.getAnswer() == null || result.getAnswer().isBlank()) {
+            return;
+        }
+        Entry entry = new Entry(normalize(queryVector),
+                new CachedAnswer(result.getAnswer(), result.getIntent(), refs),
+                System.currentTimeMillis() + properties.getTtlSeconds() * 1000);
+        TenantBucket bucket = buckets.computeIfAbsent(tenantId, id -> new TenantBucket(version));
+        synchronized (bucket) {
+            if (bucket.version > version) {
+                return;
+            }
+            if (bucket.version < version) {
+                bucket.reset(version);
+            }
+            bucket.entries.addLast(entry);
+            while (bucket.entries.size() > properties.getMaxEntriesPerTenant()) {
+                bucket.entries.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * 失效租户的全部缓存答案
+     */
+    public void invalidate(Long tenantId) {
+        if (tenantId == null) {
+            return;
+        }
+        Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + tenantId);
+        buckets.remove(tenantId);
+        log.info("[AnswerCache] 知识库变更，缓存答案失效: tenantId={}, version={}", tenantId, version);
+    }
+
+    /**
+     * 事务提交后再失效，避免失效后又被旧数据回填
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeBaseChanged(KnowledgeBaseChangedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            invalidate(event.getTenantId());
+        } catch (Exception e) {
+            // 至少清掉本地的
+            buckets.remove(event.getTenantId());
+            log.error("[AnswerCache] 更新缓存版本失败: tenantId={}, error={}", event.getTenantId(), e.getMessage(), e);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 返回归一化后的副本，入参可能是 embedding 缓存里的数组，不能原地改
+     */
+    private static float[] normalize(float[] v) {
+        float[] out = v.clone();
+        double norm = 0;
+        for (float f : out) {
+            norm += f * f;
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < out.length; i++) {
+                out[i] *= inv;
+            }
+        }
+        return out;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 缓存的回答、意图和当时的 RAG 引用
+     */
+    @Data
+    @AllArgsConstructor
+    public static class CachedAnswer {
+        private String answer;
+        private String intent;
+        private List<RagRefDTO> refs;
+
+        /**
+         * 意图沿用缓存的；情绪按本轮提问者的问题识别，
+         * 否则工单、转人工会按第一次提问者的情绪触发
+         */
+        public ChatResult toChatResult(String question) {
+            return new ChatResult(answer, ruleEmotion(question), intent == null ? "GENERAL" : intent);
+        }
+    }
+
+    /**
+     * 关键词规则识别情绪。只有明确的负面 / 感谢用语才打标签，其余按 NEUTRAL，
+     * 宁可漏判也不要因为问题里提到「退货」就按负向情绪建工单
+     */
+    static String ruleEmotion(String question) {
+        if (question == null || question.isBlank()) {
+            return "NEUTRAL";
+        }
+        String t = question.toLowerCase();
+        for (String word : ANGRY_WORDS) {
+            if (t.contains(word)) {
+                return "ANGRY";
+            }
+        }
+        if (t.contains("谢谢") || t.contains("感谢") || t.contains("thank")) {
+            return "HAPPY";
+        }
+        return "NEUTRAL";
+    }
+
+    private static class TenantBucket {
+        private long version;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+
+        TenantBucket(long version) {
+            this.version = version;
+        }
+
+        void reset(long newVersion) {
+            version = newVersion;
+            entries.clear();
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final float[] vector;
+        private final CachedAnswer answer;
+        private final long expireAt;
+    }
+}
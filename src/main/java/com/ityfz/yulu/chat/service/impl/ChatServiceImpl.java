@@ -1,13 +1,17 @@
 package com.ityfz.yulu.chat.service.impl;
 
-import cn.hutool.core.lang.TypeReference;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.ityfz.yulu.chat.dto.EditSessionRequest;
+import com.ityfz.yulu.common.ai.ChatOptions;
+import com.ityfz.yulu.common.ai.ChatResult;
 import com.ityfz.yulu.common.ai.LLMClient;
 import com.ityfz.yulu.common.ai.Message;
+import com.ityfz.yulu.common.ai.PromptBudget;
+import com.ityfz.yulu.common.ai.PromptBudgetAllocator;
+import com.ityfz.yulu.common.ai.StreamingChatHandler;
+import com.ityfz.yulu.common.config.ChatPipelineProperties;
+import com.ityfz.yulu.common.config.ChatSummaryProperties;
 import com.ityfz.yulu.common.enums.Roles;
 import com.ityfz.yulu.common.enums.ErrorCodes;
 import com.ityfz.yulu.common.exception.BizException;
@@ -18,58 +22,91 @@ import com.ityfz.yulu.chat.entity.ChatMessage;
 import com.ityfz.yulu.chat.entity.ChatSession;
 import com.ityfz.yulu.chat.mapper.ChatMessageMapper;
 import com.ityfz.yulu.chat.mapper.ChatSessionMapper;
+import com.ityfz.yulu.chat.service.ChatContextStore;
+import com.ityfz.yulu.chat.service.ChatMessageWriter;
 import com.ityfz.yulu.chat.service.ChatService;
+import com.ityfz.yulu.chat.service.ChatStreamListener;
+import com.ityfz.yulu.chat.service.ConversationSummarizer;
+import com.ityfz.yulu.chat.service.SemanticAnswerCache;
 import com.ityfz.yulu.knowledge.dto.RagAugmentResult;
+import com.ityfz.yulu.knowledge.dto.RagRefDTO;
 import com.ityfz.yulu.knowledge.service.KnowledgeChatService;
 import com.ityfz.yulu.ticket.entity.Ticket;
 import com.ityfz.yulu.ticket.event.NegativeEmotionEvent;
 import com.ityfz.yulu.ticket.mq.TicketEventPublisher;
 import com.ityfz.yulu.ticket.service.TicketService;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.service.TenantConfigService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 public class ChatServiceImpl implements ChatService {
     private static final int CONTEXT_LIMIT = 10;
-    private static final int DEFAULT_CONTEXT_CHAR_LIMIT = 4000; //默认4000个字符
-    private static final int SMALL_TENANT_CHAR_LIMIT = 2000; //小租户2000个字符
-    private static final int LARGE_TENANT_CHAR_LIMIT = 8000; //大租户8000个字符
 
 
     private final ChatSessionMapper chatSessionMapper;
     private final ChatMessageMapper chatMessageMapper;
-    private final StringRedisTemplate stringRedisTemplate;
     private final LLMClient llmClient;
     private final TicketService ticketService;
     private final TicketEventPublisher emotionEventPublisher;
     private final KnowledgeChatService knowledgeChatService;
+    private final Executor chatPipelineExecutor;
+    private final ChatPipelineProperties pipelineProperties;
+    private final ChatContextStore chatContextStore;
+    private final ChatMessageWriter chatMessageWriter;
+    private final SemanticAnswerCache answerCache;
+    private final TenantConfigService tenantConfigService;
+    private final ConversationSummarizer conversationSummarizer;
+    private final ChatSummaryProperties summaryProperties;
+    private final PromptBudgetAllocator promptBudgetAllocator;
 
     public ChatServiceImpl(ChatSessionMapper chatSessionMapper,
                            ChatMessageMapper chatMessageMapper,
-                           StringRedisTemplate stringRedisTemplate,
                            @Qualifier("langChain4jQwenClient") LLMClient llmClient,
                            TicketService ticketService,
                            TicketEventPublisher emotionEventPublisher,
-                           KnowledgeChatService knowledgeChatService) {
+                           KnowledgeChatService knowledgeChatService,
+                           @Qualifier("chatPipelineExecutor") Executor chatPipelineExecutor,
+                           ChatPipelineProperties pipelineProperties,
+                           ChatContextStore chatContextStore,
+                           ChatMessageWriter chatMessageWriter,
+                           SemanticAnswerCache answerCache,
+                           TenantConfigService tenantConfigService,
+                           ConversationSummarizer conversationSummarizer,
+                           ChatSummaryProperties summaryProperties,
+                           PromptBudgetAllocator promptBudgetAllocator) {
         this.chatSessionMapper = chatSessionMapper;
         this.chatMessageMapper = chatMessageMapper;
-        this.stringRedisTemplate = stringRedisTemplate;
         this.llmClient = llmClient;
         this.ticketService = ticketService;
         this.emotionEventPublisher = emotionEventPublisher;
         this.knowledgeChatService = knowledgeChatService;
+        this.chatPipelineExecutor = chatPipelineExecutor;
+        this.pipelineProperties = pipelineProperties;
+        this.chatContextStore = chatContextStore;
+        this.chatMessageWriter = chatMessageWriter;
+        this.answerCache = answerCache;
+        this.tenantConfigService = tenantConfigService;
+        this.conversationSummarizer = conversationSummarizer;
+        this.summaryProperties = summaryProperties;
+        this.promptBudgetAllocator = promptBudgetAllocator;
     }
 
     @Override
@@ -120,7 +157,7 @@ public class ChatServiceImpl implements ChatService {
         message.setContent(content);
         message.setEmotion("NORMAL");
         message.setCreateTime(LocalDateTime.now());
-        chatMessageMapper.insert(message);
+        chatMessageWriter.save(message);
 
         appendContext(sessionId, "user", content);
         return message;
@@ -148,38 +185,210 @@ public class ChatServiceImpl implements ChatService {
         aiMsg.setContent(aiContent);
         aiMsg.setEmotion(emotion);
         aiMsg.setCreateTime(LocalDateTime.now());
-        chatMessageMapper.insert(aiMsg);
+        chatMessageWriter.save(aiMsg);
 
         appendContext(sessionId, "assistant", aiContent);
     }
 
     //从 Redis 中取出当前会话最近的上下文，供调用 AI 模型时拼接 Prompt，或调试查看。
     @Override
-    public List<Map<String, String>> listContextFromRedis(Long sessionId) {
-        String key = buildContextKey(sessionId);
-        //读取列表前10条
-        List<String> jsonList = stringRedisTemplate.opsForList().range(key, 0, CONTEXT_LIMIT - 1);
-//        列表为空，返回空集合
-        if (CollectionUtils.isEmpty(jsonList)) {
-            return Collections.emptyList();
-        }
-        //“JSON 字符串 → Map 对象，循环 10 次，攒成 List
-        return jsonList.stream()
-                .map(json -> JSONUtil.toBean(json, new TypeReference<Map<String, String>>() {
-                }, true))
-                .collect(Collectors.toList());
+    public List<Message> listContextFromRedis(Long sessionId) {
+        return chatContextStore.list(sessionId, CONTEXT_LIMIT);
     }
 
     @Override
     public ChatAskResponse chatWithAi(Long sessionId, Long userId, Long tenantId, String question) {
+        // 1~4. 落库用户消息、加载上下文、RAG 增强
+        TurnContext turn = prepareTurn(sessionId, userId, tenantId, question);
+
+        // 相似问题命中语义答案缓存时跳过 LLM 调用
+        SemanticAnswerCache.CachedAnswer cached = lookupCachedAnswer(turn);
+        if (cached != null) {
+            ChatMessage aiMsg = completeTurn(turn, userId, question, cached.toChatResult(question));
+            return ChatAskResponse.builder()
+                    .aiMessage(aiMsg)
+                    .refs(cached.getRefs())
+                    .build();
+        }
+
+        // 5. 调用 AI（对话历史 + 本轮增强后的 user 消息），一次拿到回答 + 情绪 + 意图
+        ChatResult result = llmClient.chatStructured(turn.messages, turn.questionToSend, turn.chatOptions());
+
+        // 6~9. 情绪/意图兜底、负向情绪事件、AI 回答落库、更新上下文
+        ChatMessage aiMsg = completeTurn(turn, userId, question, result);
+        cacheAnswer(turn, result);
+
+        return ChatAskResponse.builder()
+                .aiMessage(aiMsg)
+                .refs(turn.refs())
+                .promptTokens(turn.promptTokens)
+                .build();
+    }
+
+    @Override
+    public void chatWithAiStream(Long sessionId, Long userId, Long tenantId, String question,
+                                 ChatStreamListener listener) {
+        // 落库 / 检索 / 组装上下文放到对话线程池，请求线程立即返回，SSE 连接先建立起来；
+        // 线程池打满时 CallerRunsPolicy 退化为在请求线程执行
+        chatPipelineExecutor.execute(() -> {
+            try {
+                streamTurn(sessionId, userId, tenantId, question, listener);
+            } catch (Exception e) {
+                log.error("[Chat] 流式问答准备失败: sessionId={}, error={}", sessionId, e.getMessage(), e);
+                listener.onError(e);
+            }
+        });
+    }
+
+    private void streamTurn(Long sessionId, Long userId, Long tenantId, String question,
+                            ChatStreamListener listener) {
+        // 指定了会话时先校验归属（会话不存在 / 不是自己的会话），失败经 onError 告知前端
+        if (sessionId != null) {
+            checkSessionOwnerOrAgent(tenantId, userId, sessionId);
+        }
+        TurnContext turn = prepareTurn(sessionId, userId, tenantId, question);
+
+        SemanticAnswerCache.CachedAnswer cached = lookupCachedAnswer(turn);
+        if (cached != null) {
+            // 缓存命中：整段回答作为一个 token 推送
+            listener.onStart(turn.sessionId, cached.getRefs());
+            listener.onToken(cached.getAnswer());
+            try {
+                ChatMessage aiMsg = completeTurn(turn, userId, question, cached.toChatResult(question));
+                listener.onComplete(ChatAskResponse.builder()
+                        .aiMessage(aiMsg)
+                        .refs(cached.getRefs())
+                        .build());
+            } catch (Exception e) {
+                log.error("[Chat] 缓存回答落库失败: sessionId={}, error={}", turn.sessionId, e.getMessage(), e);
+                listener.onError(e);
+            }
+            return;
+        }
+
+        listener.onStart(turn.sessionId, turn.refs());
+
+        llmClient.chatStream(turn.messages, turn.questionToSend, turn.chatOptions(), new StreamingChatHandler() {
+            @Override
+            public void onToken(String token) {
+                listener.onToken(token);
+            }
+
+            @Override
+            public void onComplete(ChatResult result) {
+                // 回调线程一般不是请求线程，需要重新填充租户上下文（DB 多租户插件、Redis 上下文裁剪都依赖它）
+                Long previousTenantId = TenantContextHolder.getTenantId();
+                TenantContextHolder.setTenantId(tenantId);
+                try {
+                    ChatMessage aiMsg = completeTurn(turn, userId, question, result);
+                    cacheAnswer(turn, result);
+                    listener.onComplete(ChatAskResponse.builder()
+                            .aiMessage(aiMsg)
+                            .refs(turn.refs())
+                            .promptTokens(turn.promptTokens)
+                            .build());
+                } catch (Exception e) {
+                    log.error("[Chat] 流式回答落库失败: sessionId={}, error={}", turn.sessionId, e.getMessage(), e);
+                    listener.onError(e);
+                } finally {
+                    TenantContextHolder.setTenantId(previousTenantId);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.error("[Chat] 流式回答生成失败: sessionId={}, error={}", turn.sessionId, error.getMessage(), error);
+                listener.onError(error);
+            }
+        });
+    }
+
+    /**
+     * 查语义答案缓存。只有会话首轮（无历史、无摘要）且本轮做过检索（有问题向量）才参与缓存；
+     * 缓存异常不影响正常问答
+     */
+    private SemanticAnswerCache.CachedAnswer lookupCachedAnswer(TurnContext turn) {
+        if (!answerCache.isEnabled() || !turn.messages.isEmpty() || turn.rag.getQueryVector() == null) {
+            return null;
+        }
+        try {
+            turn.cacheVersion = answerCache.currentVersion(turn.tenantId);
+            return answerCache.lookup(turn.tenantId, turn.cacheVersion, turn.rag.getQueryVector());
+        } catch (Exception e) {
+            log.warn("[Chat] 查询语义答案缓存失败: sessionId={}, error={}", turn.sessionId, e.getMessage());
+            turn.cacheVersion = null;
+            return null;
+        }
+    }
+
+    private void cacheAnswer(TurnContext turn, ChatResult result) {
+        if (turn.cacheVersion == null) {
+            return;
+        }
+        answerCache.put(turn.tenantId, turn.cacheVersion, turn.rag.getQueryVector(), result, turn.refs());
+    }
+
+    /**
+     * 调用模型前的准备：用户消息落库 + 上下文/摘要 + RAG 增强。
+     * 这几个阶段互不依赖，开启 chat.pipeline.parallel-enabled 时并发执行，关键路径取决于最慢的一个。
+     */
+    private TurnContext prepareTurn(Long sessionId, Long userId, Long tenantId, String question) {
         // 1. 填充租户上下文（保证 DB 操作正确）
         TenantContextHolder.setTenantId(tenantId);
 
         if (sessionId == null) {
             sessionId = createSessionIfNotExists(userId, tenantId, "默认会话");
         }
+        TenantSettings settings = tenantConfigService.getSettings(tenantId);
+        // 按本轮模型的上下文窗口分配 token 预算：RAG / 摘要有上限，历史拿剩余
+        PromptBudget budget = promptBudgetAllocator.plan(settings.getLlmModel(), question,
+                settings.getContextTokenLimit());
+
+        if (!pipelineProperties.isParallelEnabled()) {
+            // 2. 先把用户提问写入 MySQL（存原始 question）
+            saveUserMessage(tenantId, sessionId, question);
+            // 3. RAG 增强：检索知识库，拼装「参考资料 + 用户问题」作为本轮发给 LLM 的 user 消息
+            RagAugmentResult rag = knowledgeChatService.buildRagAugment(tenantId, question, budget.getRagTokens());
+            // 4. 从 Redis 取对话上下文 + 会话摘要，按剩余预算截取
+            return assembleTurn(tenantId, sessionId, listContextFromRedis(sessionId), loadSummary(sessionId),
+                    rag, settings, budget);
+        }
+
+        // 2~4 并发执行，租户上下文由线程池的 TaskDecorator 透传
+        Long sid = sessionId;
+        long startNanos = System.nanoTime();
+        PipelineStage<Void> persistStage = fork(() -> {
+            saveUserMessage(tenantId, sid, question);
+            return null;
+        });
+        PipelineStage<List<Message>> contextStage = fork(() -> listContextFromRedis(sid));
+        PipelineStage<String> summaryStage = fork(() -> loadSummary(sid));
+        PipelineStage<RagAugmentResult> ragStage = fork(() -> knowledgeChatService.buildRagAugment(tenantId, question,
+                budget.getRagTokens()));
+
+        // RAG 超时或失败：本轮不做知识库增强，直接用原始问题
+        long ragTimeoutMs = settings.getRagTimeoutMs() != null
+                ? settings.getRagTimeoutMs() : pipelineProperties.getRagTimeoutMs();
+        RagAugmentResult rag = awaitStage("rag", sid, ragStage, startNanos, ragTimeoutMs,
+                () -> RagAugmentResult.builder()
+                        .augmentedUserMessage(question)
+                        .refs(Collections.emptyList())
+                        .build());
+        // 上下文 / 摘要超时或失败：按无历史处理，不影响本轮回答
+        List<Message> context = awaitStage("context", sid, contextStage, startNanos,
+                pipelineProperties.getContextTimeoutMs(), Collections::emptyList);
+        String summary = awaitStage("summary", sid, summaryStage, startNanos,
+                pipelineProperties.getContextTimeoutMs(), () -> null);
+        // 用户消息必须落库成功，否则本轮失败
+        awaitPersist(sid, persistStage, startNanos);
+
+        log.debug("[Chat] 模型调用前准备完成: sessionId={}, cost={}ms, refs={}",
+                sid, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                rag.getRefs() == null ? 0 : rag.getRefs().size());
+        return assembleTurn(tenantId, sid, context, summary, rag, settings, budget);
+    }
 
-        // 2. 先把用户提问写入 MySQL（存原始 question）
+    private void saveUserMessage(Long tenantId, Long sessionId, String question) {
         ChatMessage userMsg = new ChatMessage();
         userMsg.setTenantId(tenantId);
         userMsg.setSessionId(sessionId);
@@ -187,38 +396,164 @@ public class ChatServiceImpl implements ChatService {
         userMsg.setContent(question);
         userMsg.setEmotion("NORMAL");
         userMsg.setCreateTime(LocalDateTime.now());
-        chatMessageMapper.insert(userMsg);
+        chatMessageWriter.save(userMsg);
+    }
+
+    private String loadSummary(Long sessionId) {
+        return conversationSummarizer.getSummary(sessionId);
+    }
+
+    /**
+     * 按 token 预算拼装本轮发给模型的上下文：
+     * 摘要截断到摘要预算内，RAG 资料已在检索阶段按预算截取，剩余的预算从最新的消息开始分给对话历史。
+     * 摘要以 system 消息放在最早的位置（上下文是最新在前，发给模型时会翻转成时间正序，所以追加在末尾）
+     */
+    private TurnContext assembleTurn(Long tenantId, Long sessionId, List<Message> context, String summary,
+                                     RagAugmentResult rag, TenantSettings settings, PromptBudget budget) {
+        String summaryText = summary == null || summary.isEmpty()
+                ? null : promptBudgetAllocator.truncate(summary, budget.getSummaryTokens());
+        int summaryTokens = promptBudgetAllocator.count(summaryText);
+        int ragTokens = Math.max(0,
+                promptBudgetAllocator.count(rag.getAugmentedUserMessage()) - budget.getQuestionTokens());
+
+        List<Message> messages = new ArrayList<>(promptBudgetAllocator.fitHistory(context,
+                promptBudgetAllocator.historyAllowance(budget, summaryTokens, ragTokens)));
+        int historyTokens = promptBudgetAllocator.count(messages);
+        if (summaryText != null && !summaryText.isEmpty()) {
+            messages.add(new Message("system",
+                    "这是本次会话目前为止的摘要，请在回答问题时参考这些信息：" + summaryText));
+        }
+
+        int promptTokens = budget.getSystemReserve() + summaryTokens + historyTokens
+                + ragTokens + budget.getQuestionTokens();
+        log.info("[Chat] Prompt token: sessionId={}, window={}, total={}, summary={}, history={}({}/{}条), rag={}, question={}",
+                sessionId, budget.getContextWindow(), promptTokens, summaryTokens, historyTokens,
+                messages.size() - (summaryText == null ? 0 : 1), context.size(), ragTokens, budget.getQuestionTokens());
+        return new TurnContext(tenantId, sessionId, messages, rag, settings, promptTokens);
+    }
+
+    /**
+     * 等待某个阶段的结果，截止时间从各阶段统一开始时算起；超时或异常时返回兜底值
+     */
+    private <T> T awaitStage(String stage, Long sessionId, PipelineStage<T> pending,
+                             long startNanos, long timeoutMs, Supplier<T> fallback) {
+        try {
+            return pending.await(remainingMillis(startNanos, timeoutMs));
+        } catch (TimeoutException e) {
+            log.warn("[Chat] 阶段超时，使用兜底结果: stage={}, sessionId={}, timeout={}ms", stage, sessionId, timeoutMs);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.warn("[Chat] 阶段执行失败，使用兜底结果: stage={}, sessionId={}, error={}",
+                    stage, sessionId, cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[Chat] 等待阶段结果被中断: stage={}, sessionId={}", stage, sessionId);
+        }
+        return fallback.get();
+    }
+
+    private void awaitPersist(Long sessionId, PipelineStage<Void> pending, long startNanos) {
+        long timeoutMs = pipelineProperties.getPersistTimeoutMs();
+        try {
+            pending.join(remainingMillis(startNanos, timeoutMs));
+        } catch (TimeoutException e) {
+            log.error("[Chat] 用户消息落库超时: sessionId={}, timeout={}ms", sessionId, timeoutMs);
+            throw new BizException(ErrorCodes.SYSTEM_ERROR, "消息保存超时，请稍后重试");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new BizException(ErrorCodes.SYSTEM_ERROR, "消息保存失败: " + cause.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(ErrorCodes.SYSTEM_ERROR, "消息保存被中断");
+        }
+    }
+
+    private <T> PipelineStage<T> fork(Supplier<T> task) {
+        PipelineStage<T> stage = new PipelineStage<>(task);
+        chatPipelineExecutor.execute(stage);
+        return stage;
+    }
 
-        // 3. 从 Redis 取对话上下文，转成 List<Message>
-        List<Map<String, String>> context = listContextFromRedis(sessionId);
-        List<Message> messages = context.stream()
-                .map(m -> new Message(m.get("role"), m.get("content")))
-                .collect(Collectors.toList());
+    /**
+     * 提交到对话线程池的阶段任务。流式问答的 prepareTurn 本身就跑在这个线程池里，
+     * 线程被占满时子任务只会排队，所以：
+     * - 可兜底的阶段（await）超时后如果还没开始，直接作废，之后被线程池取到也不再执行
+     * - 必须完成的阶段（join，用户消息落库）还没开始就由等待线程自己执行，不会互相等到超时
+     */
+    static final class PipelineStage<T> implements Runnable {
 
-        String summary = stringRedisTemplate.opsForValue().get("chat:summary:" + sessionId);
-        if (summary != null && !summary.isEmpty()) {
-            messages.add(0, new Message("system",
-                    "这是本次会话目前为止的摘要，请在回答问题时参考这些信息：" + summary));
+        private final Supplier<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        PipelineStage(Supplier<T> task) {
+            this.task = task;
         }
 
-        // 4. RAG 增强：检索知识库，拼装「参考资料 + 用户问题」作为本轮发给 LLM 的 user 消息
-        RagAugmentResult rag = knowledgeChatService.buildRagAugment(tenantId, question);
-        String questionToSend = rag.getAugmentedUserMessage();
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        T await(long timeoutMs) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                started.compareAndSet(false, true);
+                throw e;
+            }
+        }
+
+        T join(long timeoutMs) throws InterruptedException, ExecutionException, TimeoutException {
+            run();
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
 
-        // 5. 调用 AI（对话历史 + 本轮增强后的 user 消息）
-        String aiReply = llmClient.chat(messages, questionToSend);
+    private static long remainingMillis(long startNanos, long timeoutMs) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return Math.max(0, timeoutMs - elapsed);
+    }
+
+    /**
+     * 拿到模型回答后的收尾：情绪/意图、负向情绪事件、AI 消息落库、Redis 上下文
+     *
+     * @param result 模型回答及随回答给出的情绪/意图标签，标签为空时单独识别
+     */
+    private ChatMessage completeTurn(TurnContext turn, Long userId, String question, ChatResult result) {
+        Long tenantId = turn.tenantId;
+        Long sessionId = turn.sessionId;
+        String aiReply = result.getAnswer();
         appendContext(sessionId, "user", question);
 
 
-        // 6. 情绪识别（针对用户这句话，也可以针对整段对话）
-        String emotion = llmClient.detectEmotion(question);
+        // 6. 情绪识别：优先用对话调用顺带返回的标签，模型输出不规范时才单独调用一次
+        String emotion = result.getEmotion();
+        if (!result.hasEmotion()) {
+            log.debug("[Chat] 对话结果缺少情绪标签，单独识别: sessionId={}", sessionId);
+            emotion = llmClient.detectEmotion(question);
+        }
         if (emotion == null || emotion.isBlank()) {
             emotion = "NEUTRAL";
         } else {
             emotion = emotion.toUpperCase();
         }
-        // 7. 意图识别
-        String intent = llmClient.detectIntent(question);
+        // 7. 意图识别（同上，仅兜底）
+        String intent = result.getIntent();
+        if (!result.hasIntent()) {
+            log.debug("[Chat] 对话结果缺少意图标签，单独识别: sessionId={}", sessionId);
+            intent = llmClient.detectIntent(question);
+        }
         if (intent == null || intent.isBlank()) {
             intent = "GENERAL";
         } else {
@@ -277,7 +612,7 @@ public class ChatServiceImpl implements ChatService {
         aiMsg.setEmotion(emotion);
         aiMsg.setIntent(intent);
         aiMsg.setCreateTime(LocalDateTime.now());
-        chatMessageMapper.insert(aiMsg);
+        chatMessageWriter.save(aiMsg);
 
         // 9. 更新 Redis 上下文
         appendContext(sessionId, "assistant", aiReply);
@@ -289,13 +624,53 @@ public class ChatServiceImpl implements ChatService {
         int answerLen = aiReply == null ? 0 : aiReply.length();
 
         log.info("[Chat] tenantId={}, userId={}, sessionId={}, questionPreview={}, answerLen={}, refs={}",
-                tenantId, userId, sessionId, questionPreview, answerLen,
-                rag.getRefs() != null ? rag.getRefs().size() : 0);
+                tenantId, userId, sessionId, questionPreview, answerLen, turn.refs().size());
+        return aiMsg;
+    }
 
-        return ChatAskResponse.builder()
-                .aiMessage(aiMsg)
-                .refs(rag.getRefs() != null ? rag.getRefs() : Collections.emptyList())
-                .build();
+    /**
+     * 一轮问答在「调用模型前」准备好的数据，供同步/流式两条路径共用
+     */
+    private static class TurnContext {
+        private final Long tenantId;
+        private final Long sessionId;
+        private final List<Message> messages;
+        private final RagAugmentResult rag;
+        private final String questionToSend;
+        private final TenantSettings settings;
+        /**
+         * 本轮 Prompt 的 token 数（估算，系统提示词按预留值计）
+         */
+        private final int promptTokens;
+        /**
+         * 查询语义答案缓存时的版本号，为 null 表示本轮不参与缓存
+         */
+        private Long cacheVersion;
+
+        private TurnContext(Long tenantId, Long sessionId, List<Message> messages, RagAugmentResult rag,
+                            TenantSettings settings, int promptTokens) {
+            this.tenantId = tenantId;
+            this.sessionId = sessionId;
+            this.messages = messages;
+            this.rag = rag;
+            this.questionToSend = rag.getAugmentedUserMessage();
+            this.settings = settings;
+            this.promptTokens = promptTokens;
+        }
+
+        /**
+         * 租户指定的模型 / 超时，未配置时为 null，走客户端默认
+         */
+        private ChatOptions chatOptions() {
+            return ChatOptions.builder()
+                    .modelName(settings.getLlmModel())
+                    .timeoutMs(settings.getLlmTimeoutMs())
+                    .build();
+        }
+
+        private List<RagRefDTO> refs() {
+            return rag.getRefs() != null ? rag.getRefs() : Collections.emptyList();
+        }
     }
 
     /**
@@ -389,10 +764,8 @@ public class ChatServiceImpl implements ChatService {
         chatSessionMapper.updateById(session);
         
         // 删除 Redis 中的上下文缓存
-        String contextKey = "chat:context:" + sessionId;
-        stringRedisTemplate.delete(contextKey);
-        String summaryKey = "chat:summary:" + sessionId;
-        stringRedisTemplate.delete(summaryKey);
+        chatContextStore.clear(sessionId);
+        conversationSummarizer.clear(sessionId);
         
         log.info("[Chat] 删除会话成功: sessionId={}, userId={}, tenantId={}", 
                 sessionId, userId, tenantId);
@@ -424,112 +797,25 @@ public class ChatServiceImpl implements ChatService {
     }
 
     //向redis存入context
-    //每次有用户提问或 AI 回复时，把这条消息追加到 Redis List 里，保持最近 N 条
+    //每次有用户提问或 AI 回复时追加一条，条数上限和按租户配置的字符上限在 Redis 端原子裁剪
+    //裁剪出去的消息积累到一定数量后，后台折叠进会话摘要
     private void appendContext(Long sessionId, String role, String content) {
-        String key = buildContextKey(sessionId);
-        Map<String, String> entry = new HashMap<>();
-        entry.put("role", role);      // user / assistant
-        entry.put("content", content);
-        //转成 JSON 字符串，存入 Redis
-        String json = JSONUtil.toJsonStr(entry);
-
-        //leftPush 入 Redis List，放到队头，相当于“最新消息在最前面”。
-        stringRedisTemplate.opsForList().leftPush(key, json);
-        //trim 保持列表长度不超过 10
-        //只保留前 N 条，自动丢弃更旧的上下文，防止列表无限增长
-        stringRedisTemplate.opsForList().trim(key, 0, CONTEXT_LIMIT - 1);
-        // 字符长度限制：按租户配置动态裁剪，丢弃最旧的消息
         Long tenantId = TenantContextHolder.getTenantId();
-        trimContextByLength(sessionId, tenantId);
-    }
-
-    //构建redis key
-    private String buildContextKey(Long sessionId) {
-        return "chat:context:" + sessionId;
-    }
-
-    /**
-     * 按租户决定上下文字符上限。
-     * 这里只是示例：你可以以后改成从 DB / 配置表中查。
-     */
-    private int resolveTenantContextCharLimit(Long tenantId) {
-        if (tenantId == null) {
-            return DEFAULT_CONTEXT_CHAR_LIMIT;
-        }
-        // 示例：假设 tenantId < 1000 认为是“小租户”，>=1000 认为是“大租户”
-        if (tenantId < 1000) {
-            return SMALL_TENANT_CHAR_LIMIT;
-        } else {
-            return LARGE_TENANT_CHAR_LIMIT;
-        }
-    }
-
-    /**
-     * 按“总字符长度”裁剪 Redis 中的上下文：
-     * - 保留最新的消息优先
-     * - 一旦累积长度超过上限，就丢掉更旧的消息
-     */
-    private void trimContextByLength(Long sessionId, Long tenantId) {
-        String key = buildContextKey(sessionId);
-        // 先把当前这个会话的上下文全部取出来（你现在 leftPush，所以 index 0 是最新）
-        List<String> jsonList = stringRedisTemplate.opsForList().range(key, 0, -1);
-        if (CollectionUtils.isEmpty(jsonList)) {
-            return;
-        }
-
-        int limit = resolveTenantContextCharLimit(tenantId);
-        int total = 0;
-
-        // kept 里从“最新”开始往后排，直到超过上限为止
-        List<String> kept = new java.util.ArrayList<>();
-        for (String json : jsonList) {
-            Map<String, String> m = JSONUtil.toBean(json, new TypeReference<Map<String, String>>() {
-            }, true);
-            String content = m.getOrDefault("content", "");
-            int len = content.length();
-            if (total + len > limit) {
-                break; // 超过上限，后面的更旧消息都不要了
-            }
-            kept.add(json);
-            total += len;
+        long evicted = chatContextStore.append(sessionId, role, content, CONTEXT_LIMIT,
+                resolveTenantContextCharLimit(tenantId), summaryProperties.getMaxArchived());
+        try {
+            conversationSummarizer.onContextAppended(sessionId, evicted);
+        } catch (Exception e) {
+            // 摘要只是优化，触发失败不影响本轮对话
+            log.warn("[Chat] 触发会话摘要失败: sessionId={}, error={}", sessionId, e.getMessage());
         }
-
-        // 用 kept 覆盖写回 Redis
-        // 注意：当前 kept 是 [最新, 更旧, ...]，为了保持 leftPush 的“最新在前”顺序，
-        // 这里用 leftPushAll + 反转写回
-        stringRedisTemplate.delete(key);
-        java.util.Collections.reverse(kept);
-        stringRedisTemplate.opsForList().leftPushAll(key, kept);
     }
 
     /**
-     *
-     * 新增一层摘要
+     * 按租户决定上下文字符上限（租户配置 tenant_settings，未配置时取 tenant.settings.defaults）
      */
-    private void generateAndSaveSummaryIfNeeded(Long sessionId, Long tenantId) {
-        // 1. 读取当前 context（listContextFromRedis）
-        List<Map<String, String>> ctx = listContextFromRedis(sessionId);
-        if (ctx.size() < 10) {
-            return; // 太短不需要摘要
-        }
-
-        // 2. 构造一个简单的文本：role + content 拼在一起
-        StringBuilder sb = new StringBuilder();
-        for (Map<String, String> m : ctx) {
-            sb.append(m.get("role")).append(": ").append(m.get("content")).append("\n");
-        }
-
-        // 3. 调用一个专门的 summarizer（可以通过 LLMClient 或单独 LangChain4j）
-        String summary = llmClient.chat(
-                Collections.emptyList(),
-                "下面是用户和客服的一段对话，请用不超过 200 字总结当前会话的关键信息（用户是谁、在问什么、已给出哪些答案）：\n\n" +
-                        sb.toString()
-        );
-
-        // 4. 写入 Redis: chat:summary:{sessionId}
-        stringRedisTemplate.opsForValue().set("chat:summary:" + sessionId, summary);
-
-        // 5. 可选：清理一部分旧 context，只保留最近几条
+    private int resolveTenantContextCharLimit(Long tenantId) {
+        return tenantConfigService.getSettings(tenantId).getContextCharLimit();
     }
 
 }
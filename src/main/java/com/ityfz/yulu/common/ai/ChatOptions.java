@@ -0,0 +1,26 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单次对话调用的可选参数（按租户配置覆盖默认模型 / 超时），字段为 null 时使用客户端默认值
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatOptions {
+
+    /**
+     * 模型名称，例如 qwen-turbo / qwen-plus
+     */
+    private String modelName;
+
+    /**
+     * 调用超时（毫秒）
+     */
+    private Long timeoutMs;
+}
@@ -0,0 +1,45 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一次对话调用的结构化结果：回答 + 模型顺带给出的情绪/意图标签。
+ * 模型输出不是合法 JSON（或缺少对应字段）时，emotion / intent 为 null，由调用方决定是否单独识别。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatResult {
+
+    /**
+     * 给用户看的自然语言回答
+     */
+    private String answer;
+
+    /**
+     * 情绪标签（HAPPY / ANGRY / SAD / NEUTRAL / NORMAL），未解析出时为 null
+     */
+    private String emotion;
+
+    /**
+     * 意图标签（REFUND / INVOICE / LOGISTICS / COMPLAIN / GENERAL），未解析出时为 null
+     */
+    private String intent;
+
+    /**
+     * 只有回答、没有标签的结果
+     */
+    public static ChatResult ofAnswer(String answer) {
+        return new ChatResult(answer, null, null);
+    }
+
+    public boolean hasEmotion() {
+        return emotion != null && !emotion.isBlank();
+    }
+
+    public boolean hasIntent() {
+        return intent != null && !intent.isBlank();
+    }
+}
@@ -5,7 +5,8 @@ import java.util.List;
 
 /**
  * Embedding 服务接口
- * 用于将文本转换为向量
+ * 用于将文本转换为向量。向量统一用 float[]：1536 维约 6KB，装箱的 List<Float> 要 24KB 以上。
+ * 返回的数组可能被缓存共享，调用方只读不改。
  */
 public interface EmbeddingService {
 
@@ -13,9 +14,9 @@ public interface EmbeddingService {
      * 将单个文本转换为向量
      *
      * @param text 输入文本
-     * @return 向量（Float 列表）
+     * @return 向量
      */
-    List<Float> embed(String text);
+    float[] embed(String text);
 
     /**
      * 批量将文本转换为向量
@@ -23,7 +24,7 @@ public interface EmbeddingService {
      * @param texts 输入文本列表
      * @return 向量列表
      */
-    List<List<Float>> embedBatch(List<String> texts);
+    List<float[]> embedBatch(List<String> texts);
 
     /**
      * 获取向量维度
@@ -32,4 +33,11 @@ public interface EmbeddingService {
      */
     int getDimension();
 
+    /**
+     * 获取模型名称（用于区分不同模型产出的向量，例如缓存 key）
+     *
+     * @return 模型名称
+     */
+    String getModelName();
+
 }
@@ -16,6 +16,58 @@ public interface LLMClient {
      */
     String chat(List<Message> context,String question);
 
+    /**
+     * 单轮补全：使用调用方给定的 System 提示词，不带客服人设和 JSON 输出约定。
+     * 用于会话摘要这类内部任务，返回模型原始输出。
+     *
+     * @param systemPrompt System 提示词
+     * @param userPrompt   用户消息
+     * @return 模型生成的文本
+     */
+    String complete(String systemPrompt, String userPrompt);
+
+    /**
+     * 带上下文的对话接口（结构化结果）：一次模型调用同时拿到回答、情绪、意图。
+     * 默认实现只有回答，标签为 null，调用方需要用 detectEmotion / detectIntent 兜底。
+     *
+     * @param context 最近几轮对话（user + assistant）
+     * @param question 本轮用户输入的问题
+     * @return 回答 + 情绪/意图标签
+     */
+    default ChatResult chatStructured(List<Message> context, String question) {
+        return ChatResult.ofAnswer(chat(context, question));
+    }
+
+    /**
+     * 同 chatStructured(context, question)，可按 options 指定模型 / 超时。
+     * 默认实现忽略 options。
+     */
+    default ChatResult chatStructured(List<Message> context, String question, ChatOptions options) {
+        return chatStructured(context, question);
+    }
+
+    /**
+     * 流式对话：边生成边回调 handler。
+     * 默认实现退化为一次性调用 chatStructured()，整段回答作为一个 token 推送。
+     */
+    default void chatStream(List<Message> context, String question, StreamingChatHandler handler) {
+        try {
+            ChatResult result = chatStructured(context, question);
+            handler.onToken(result.getAnswer());
+            handler.onComplete(result);
+        } catch (Exception e) {
+            handler.onError(e);
+        }
+    }
+
+    /**
+     * 同 chatStream(context, question, handler)，可按 options 指定模型 / 超时。
+     * 默认实现忽略 options。
+     */
+    default void chatStream(List<Message> context, String question, ChatOptions options, StreamingChatHandler handler) {
+        chatStream(context, question, handler);
+    }
+
     /**
      * 意图识别（退货 / 开发票 / 投诉 / 普通咨询 等）。
      */
@@ -0,0 +1,17 @@
+package com.ityfz.yulu.common.ai;
+
+/**
+ * payload 索引字段类型
+ */
+public enum PayloadFieldType {
+
+    /**
+     * 字符串精确匹配
+     */
+    KEYWORD,
+
+    /**
+     * 整数（tenant_id、document_id 等 ID 字段）
+     */
+    INTEGER
+}
@@ -0,0 +1,62 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一次模型调用的 Prompt token 预算（各部分上限）。
+ * RAG 和摘要按上限先行使用，对话历史拿剩下的全部预算。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PromptBudget {
+
+    /**
+     * 模型上下文窗口
+     */
+    private int contextWindow;
+
+    /**
+     * 输出预留
+     */
+    private int outputReserve;
+
+    /**
+     * 系统提示词预留
+     */
+    private int systemReserve;
+
+    /**
+     * 本轮问题本身
+     */
+    private int questionTokens;
+
+    /**
+     * 扣除输出 / 系统提示词预留和问题后，可分给 RAG / 摘要 / 历史的总量
+     */
+    private int availableTokens;
+
+    /**
+     * 会话摘要上限
+     */
+    private int summaryTokens;
+
+    /**
+     * RAG 资料上限
+     */
+    private int ragTokens;
+
+    /**
+     * 对话历史的计划预算（摘要 / RAG 用满时）
+     */
+    private int historyTokens;
+
+    /**
+     * 租户配置的对话历史上限，null 表示不限制
+     */
+    private Integer historyCap;
+}
@@ -0,0 +1,116 @@
+package com.ityfz.yulu.common.ai;
+
+import com.ityfz.yulu.common.config.PromptBudgetProperties;
+import com.ityfz.yulu.common.config.QianWenProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prompt token 预算分配。
+ *
+ * 可用预算 = 模型上下文窗口 - 输出预留 - 系统提示词预留 - 本轮问题，再依次分给：
+ * 1. RAG 资料：min(ragMaxTokens, 可用 × ragRatio)
+ * 2. 会话摘要：min(summaryMaxTokens, 剩余)
+ * 3. 对话历史：剩余全部（租户配置了 contextTokenLimit 时再取较小值）
+ * RAG / 摘要实际没用满的部分在 fitHistory 时让给对话历史。
+ */
+@Component
+@RequiredArgsConstructor
+public class PromptBudgetAllocator {
+
+    private final PromptBudgetProperties properties;
+    private final TokenCounter tokenCounter;
+    private final QianWenProperties qianWenProperties;
+
+    /**
+     * @param modelName         本轮使用的模型，null 表示默认模型（ai.qianwen.model）
+     * @param question          本轮用户问题（原始问题，不含 RAG 资料）
+     * @param historyTokenLimit 租户配置的对话历史上限，null 表示不额外限制
+     */
+    public PromptBudget plan(String modelName, String question, Integer historyTokenLimit) {
+        String model = modelName == null || modelName.isBlank() ? qianWenProperties.getModel() : modelName;
+        int window = model == null
+                ? properties.getDefaultContextWindow()
+                : properties.getModelContextWindows().getOrDefault(model, properties.getDefaultContextWindow());
+        int questionTokens = tokenCounter.count(question);
+        int available = Math.max(0,
+                window - properties.getOutputReserveTokens() - properties.getSystemReserveTokens() - questionTokens);
+
+        int rag = (int) Math.min(properties.getRagMaxTokens(), available * properties.getRagRatio());
+        int summary = Math.min(properties.getSummaryMaxTokens(), available - rag);
+        int history = available - rag - summary;
+        return PromptBudget.builder()
+                .contextWindow(window)
+                .outputReserve(properties.getOutputReserveTokens())
+                .systemReserve(properties.getSystemReserveTokens())
+                .questionTokens(questionTokens)
+                .availableTokens(available)
+                .ragTokens(rag)
+                .summaryTokens(summary)
+                .historyTokens(historyTokenLimit == null ? history : Math.min(history, historyTokenLimit))
+                .historyCap(historyTokenLimit)
+                .build();
+    }
+
+    /**
+     * 摘要 / RAG 实际占用确定后，对话历史可用的 token 数（没用满的部分让给历史）
+     */
+    public int historyAllowance(PromptBudget budget, int summaryUsed, int ragUsed) {
+        int allowance = Math.max(0, budget.getAvailableTokens() - summaryUsed - ragUsed);
+        return budget.getHistoryCap() == null ? allowance : Math.min(allowance, budget.getHistoryCap());
+    }
+
+    /**
+     * 不区分模型和问题时的默认 RAG 资料预算
+     */
+    public int defaultRagTokens() {
+        return plan(null, null, null).getRagTokens();
+    }
+
+    public int ragChunkMaxTokens() {
+        return properties.getRagChunkMaxTokens();
+    }
+
+    /**
+     * 从最新的消息开始保留，直到超出 tokens
+     *
+     * @param newestFirst 最新在前的对话历史
+     * @return 保留下来的消息（仍为最新在前）
+     */
+    public List<Message> fitHistory(List<Message> newestFirst, int tokens) {
+        if (newestFirst == null || newestFirst.isEmpty() || tokens <= 0) {
+            return Collections.emptyList();
+        }
+        List<Message> kept = new ArrayList<>();
+        int used = 0;
+        for (Message m : newestFirst) {
+            int t = tokenCounter.count(m.getContent());
+            if (used + t > tokens) {
+                break;
+            }
+            kept.add(m);
+            used += t;
+        }
+        return kept;
+    }
+
+    public int count(String text) {
+        return tokenCounter.count(text);
+    }
+
+    public int count(List<Message> messages) {
+        int total = 0;
+        for (Message m : messages) {
+            total += tokenCounter.count(m.getContent());
+        }
+        return total;
+    }
+
+    public String truncate(String text, int tokens) {
+        return tokenCounter.truncate(text, tokens);
+    }
+}
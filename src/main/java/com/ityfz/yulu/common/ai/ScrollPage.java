@@ -0,0 +1,23 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 按 ID 升序遍历集合的一页结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScrollPage {
+
+    private List<VectorPoint> points;
+
+    /**
+     * 下一页起始 ID（含），为 null 表示已到末尾
+     */
+    private Long nextOffset;
+}
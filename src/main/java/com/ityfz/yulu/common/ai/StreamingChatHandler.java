@@ -0,0 +1,25 @@
+package com.ityfz.yulu.common.ai;
+
+/**
+ * 流式对话回调：模型每吐出一段文本就回调一次 onToken，结束时回调 onComplete。
+ * 注意：回调运行在模型 HTTP 客户端的线程上，不是请求线程，ThreadLocal 上下文需要调用方自行设置。
+ */
+public interface StreamingChatHandler {
+
+    /**
+     * 收到一段增量回答文本（只包含给用户看的 answer 部分）
+     */
+    void onToken(String token);
+
+    /**
+     * 流结束
+     *
+     * @param result 完整回答 + 情绪/意图标签（模型未给出时标签为 null）
+     */
+    void onComplete(ChatResult result);
+
+    /**
+     * 调用失败
+     */
+    void onError(Throwable error);
+}
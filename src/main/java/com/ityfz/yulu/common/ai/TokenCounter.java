@@ -0,0 +1,17 @@
+package com.ityfz.yulu.common.ai;
+
+/**
+ * 本地分词计数（不走网络），用于按 token 而不是按字符控制 Prompt 长度。
+ */
+public interface TokenCounter {
+
+    /**
+     * 文本的 token 数，null 视为 0
+     */
+    int count(String text);
+
+    /**
+     * 截断到不超过 maxTokens 个 token；未超出时原样返回
+     */
+    String truncate(String text, int maxTokens);
+}
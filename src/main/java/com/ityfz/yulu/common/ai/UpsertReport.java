@@ -0,0 +1,49 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量写入向量的结果：成功条数 + 逐点的失败原因
+ */
+@Data
+public class UpsertReport {
+
+    private int total;
+
+    private int succeeded;
+
+    /**
+     * 写入失败的点 ID → 失败原因
+     */
+    private Map<Long, String> failures = new LinkedHashMap<>();
+
+    private long costMs;
+
+    public UpsertReport(int total) {
+        this.total = total;
+    }
+
+    public boolean isAllSucceeded() {
+        return failures.isEmpty();
+    }
+
+    public boolean isFailed(long pointId) {
+        return failures.containsKey(pointId);
+    }
+
+    public Map<Long, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public synchronized void addSucceeded(int count) {
+        succeeded += count;
+    }
+
+    public synchronized void addFailure(long pointId, String reason) {
+        failures.put(pointId, reason);
+    }
+}
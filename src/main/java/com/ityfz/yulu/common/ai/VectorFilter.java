@@ -0,0 +1,62 @@
+package com.ityfz.yulu.common.ai;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 向量检索的 payload 过滤条件：若干字段精确匹配，条件之间为 AND。
+ * 值支持整数（Integer/Long 统一按 long 比较）、字符串和布尔。
+ */
+public class VectorFilter {
+
+    private final Map<String, Object> must = new LinkedHashMap<>();
+
+    public static VectorFilter eq(String key, Object value) {
+        return new VectorFilter().and(key, value);
+    }
+
+    public VectorFilter and(String key, Object value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        must.put(key, normalize(value));
+        return this;
+    }
+
+    public Map<String, Object> getMust() {
+        return Collections.unmodifiableMap(must);
+    }
+
+    public boolean isEmpty() {
+        return must.isEmpty();
+    }
+
+    /**
+     * payload 是否满足全部条件
+     */
+    public boolean matches(Map<String, Object> payload) {
+        for (Map.Entry<String, Object> cond : must.entrySet()) {
+            Object actual = payload == null ? null : payload.get(cond.getKey());
+            if (actual == null || !cond.getValue().equals(normalize(actual))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 整数统一为 Long，避免 Integer(1) 和 Long(1) 比较不相等
+     */
+    public static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "VectorFilter" + must;
+    }
+}
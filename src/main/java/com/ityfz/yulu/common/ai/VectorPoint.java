@@ -0,0 +1,22 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 待写入向量库的一个点：ID + 向量 + 元数据
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorPoint {
+
+    private long id;
+
+    private float[] vector;
+
+    private Map<String, Object> payload;
+}
@@ -0,0 +1,33 @@
+package com.ityfz.yulu.common.ai;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 向量检索命中的一个点：ID + 相似度 + 元数据
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorSearchHit {
+
+    private long id;
+
+    /**
+     * 余弦相似度，越大越相似
+     */
+    private float score;
+
+    /**
+     * 元数据，整数统一为 Long
+     */
+    private Map<String, Object> payload;
+
+    /**
+     * 点的向量，只在检索时要求带回才有值
+     */
+    private float[] vector;
+}
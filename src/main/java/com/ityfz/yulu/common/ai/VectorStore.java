@@ -0,0 +1,88 @@
+package com.ityfz.yulu.common.ai;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量存储抽象，便于在 Qdrant（独立服务）和进程内 HNSW 之间按部署切换。
+ * 相似度统一为余弦相似度，分数越大越相似。
+ */
+public interface VectorStore {
+
+    /**
+     * 创建集合（已存在时校验维度，不一致抛 IllegalStateException）
+     *
+     * @param collectionName 集合名
+     * @param vectorSize 向量维度
+     */
+    void createCollection(String collectionName, int vectorSize);
+
+    /**
+     * 为 payload 字段建索引（已存在时忽略）。过滤检索按索引缩小候选，
+     * 多租户共用一个集合时 tenant_id 必须建索引，否则每次检索都要扫描全部租户的点
+     */
+    void createPayloadIndex(String collectionName, String fieldName, PayloadFieldType type);
+
+    /**
+     * 插入/更新单个向量点，pointId 相同则覆盖
+     */
+    void upsertPoint(String collectionName, long pointId, float[] vector, Map<String, Object> payload);
+
+    /**
+     * 批量插入/更新。不抛异常，由调用方根据报告决定是否整体失败
+     */
+    UpsertReport upsertPoints(String collectionName, List<VectorPoint> points);
+
+    /**
+     * 相似度检索，按分数降序返回；集合不存在时返回空列表
+     *
+     * @param filter payload 过滤条件，可为 null
+     */
+    default List<VectorSearchHit> search(String collectionName, float[] queryVector, int topK, VectorFilter filter) {
+        return search(collectionName, queryVector, topK, filter, false);
+    }
+
+    /**
+     * 相似度检索
+     *
+     * @param withVectors 是否在结果里带回各点向量（结果去冗余等二次计算用，会增大返回体积）
+     */
+    List<VectorSearchHit> search(String collectionName, float[] queryVector, int topK, VectorFilter filter,
+                                 boolean withVectors);
+
+    /**
+     * 按 ID 升序分页遍历满足条件的点（迁移、校验用）；集合不存在时返回空页
+     *
+     * @param offset 起始 ID（含），为 null 从头开始
+     */
+    ScrollPage scroll(String collectionName, VectorFilter filter, Long offset, int limit, boolean withVectors);
+
+    /**
+     * 满足条件的点数（精确计数）；集合不存在时返回 0
+     */
+    long count(String collectionName, VectorFilter filter);
+
+    /**
+     * 批量更新 payload：把各点给出的字段合并进原 payload（同名覆盖），不重新写向量；
+     * 点或集合不存在时忽略
+     *
+     * @param payloadsById pointId → 要更新的字段
+     */
+    void setPayload(String collectionName, Map<Long, Map<String, Object>> payloadsById);
+
+    /**
+     * 按 ID 删除点；集合不存在时忽略
+     */
+    void deletePoints(String collectionName, Collection<Long> pointIds);
+
+    /**
+     * 删除满足条件的所有点；集合不存在时忽略
+     */
+    void deleteByFilter(String collectionName, VectorFilter filter);
+
+    /**
+     * 删除集合
+     */
+    void deleteCollection(String collectionName);
+}
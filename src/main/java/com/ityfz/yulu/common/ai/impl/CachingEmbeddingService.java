@@ -0,0 +1,234 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带两级缓存的 Embedding 服务（装饰 DashScopeEmbeddingService）
+ *
+ * - L1：进程内 Guava Cache，按条数限制大小
+ * - L2：Redis，key = emb:{model}:{dimension}:{sha256(text)}，value 为小端序 float 数组的原始字节
+ *   （1536 维 = 6KB，比 JSON 数组小一半以上，也省掉了解析）
+ * - Redis 不可用时直接调用下游，不影响业务
+ *
+ * 标记为 @Primary，业务方注入 EmbeddingService 即拿到带缓存的实现。
+ */
+@Slf4j
+@Service
+@Primary
+public class CachingEmbeddingService implements EmbeddingService {
+
+    private static final String KEY_PREFIX = "emb:";
+
+    private final EmbeddingService delegate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final Duration l2Ttl;
+    private final Cache<String, float[]> l1;
+
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingEmbeddingService(@Qualifier("dashScopeEmbeddingService") EmbeddingService delegate,
+                                   StringRedisTemplate stringRedisTemplate,
+                                   @Value("${ai.embedding.cache.enabled:true}") boolean enabled,
+                                   @Value("${ai.embedding.cache.l1-max-entries:10000}") long l1MaxEntries,
+                                   @Value("${ai.embedding.cache.l2-ttl-hours:168}") long l2TtlHours) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.l2Ttl = Duration.ofHours(l2TtlHours);
+        this.l1 = CacheBuilder.newBuilder()
+                .maximumSize(l1MaxEntries)
+                .build();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (!enabled || text == null || text.trim().isEmpty()) {
+            return delegate.embed(text);
+        }
+        return embedBatch(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        if (!enabled || texts == null || texts.isEmpty()) {
+            return delegate.embedBatch(texts);
+        }
+
+        int n = texts.size();
+        float[][] vectors = new float[n][];
+        String[] keys = new String[n];
+
+        // 1、L1
+        List<Integer> l1Missed = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys[i] = cacheKey(texts.get(i));
+            vectors[i] = l1.getIfPresent(keys[i]);
+            if (vectors[i] != null) {
+                l1Hits.increment();
+            } else {
+                l1Missed.add(i);
+            }
+        }
+
+        // 2、L2：一次 MGET
+        List<Integer> l2Missed = l1Missed;
+        if (!l1Missed.isEmpty()) {
+            l2Missed = new ArrayList<>();
+            List<byte[]> cached = multiGet(l1Missed.stream().map(i -> keys[i]).toList());
+            for (int j = 0; j < l1Missed.size(); j++) {
+                int i = l1Missed.get(j);
+                float[] v = cached == null ? null : unpack(cached.get(j));
+                if (v != null) {
+                    vectors[i] = v;
+                    l1.put(keys[i], v);
+                    l2Hits.increment();
+                } else {
+                    l2Missed.add(i);
+                }
+            }
+        }
+
+        // 3、调用下游（同一批次里重复的文本只算一次）
+        if (!l2Missed.isEmpty()) {
+            Map<String, String> pending = new LinkedHashMap<>();
+            for (int i : l2Missed) {
+                pending.putIfAbsent(keys[i], texts.get(i));
+            }
+            List<String> pendingKeys = new ArrayList<>(pending.keySet());
+            List<float[]> computed = delegate.embedBatch(new ArrayList<>(pending.values()));
+            if (computed == null || computed.size() != pendingKeys.size()) {
+                throw new IllegalStateException("embedding 返回数量不一致: texts=" + pendingKeys.size()
+                        + ", vectors=" + (computed == null ? 0 : computed.size()));
+            }
+            misses.add(pendingKeys.size());
+
+            Map<String, float[]> fresh = new LinkedHashMap<>();
+            for (int j = 0; j < pendingKeys.size(); j++) {
+                float[] v = computed.get(j);
+                fresh.put(pendingKeys.get(j), v);
+            }
+            for (int i : l2Missed) {
+                vectors[i] = fresh.get(keys[i]);
+            }
+            // 下游单条失败时返回空向量，不进缓存，下次重新计算
+            fresh.values().removeIf(v -> v == null || v.length == 0);
+            fresh.forEach(l1::put);
+            multiSet(fresh);
+        }
+
+        // 直接返回缓存里的数组，调用方只读
+        return Arrays.asList(vectors);
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    public long getL1Hits() {
+        return l1Hits.sum();
+    }
+
+    public long getL2Hits() {
+        return l2Hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getL1Size() {
+        return l1.size();
+    }
+
+    private String cacheKey(String text) {
+        return KEY_PREFIX + delegate.getModelName() + ":" + delegate.getDimension() + ":" + sha256(text);
+    }
+
+    private List<byte[]> multiGet(List<String> keys) {
+        try {
+            byte[][] raw = keys.stream().map(k -> k.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+            return stringRedisTemplate.execute((RedisCallback<List<byte[]>>) conn -> conn.stringCommands().mGet(raw));
+        } catch (Exception e) {
+            log.warn("[EmbeddingCache] 读取 Redis 缓存失败，直接调用模型: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void multiSet(Map<String, float[]> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) conn -> {
+                for (Map.Entry<String, float[]> e : entries.entrySet()) {
+                    conn.stringCommands().set(e.getKey().getBytes(StandardCharsets.UTF_8), pack(e.getValue()),
+                            Expiration.from(l2Ttl), RedisStringCommands.SetOption.upsert());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("[EmbeddingCache] 写入 Redis 缓存失败: {}", e.getMessage());
+        }
+    }
+
+    static byte[] pack(float[] v) {
+        ByteBuffer buf = ByteBuffer.allocate(v.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.asFloatBuffer().put(v);
+        return buf.array();
+    }
+
+    /**
+     * 字节数和当前维度对不上（例如模型维度调整过）视为未命中
+     */
+    private float[] unpack(byte[] bytes) {
+        if (bytes == null || bytes.length != delegate.getDimension() * Float.BYTES) {
+            return null;
+        }
+        float[] v = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v);
+        return v;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.ityfz.yulu.common.ai.impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ityfz.yulu.common.ai.EmbeddingService;
 import lombok.extern.slf4j.Slf4j;
@@ -9,11 +10,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,11 +24,19 @@ import java.util.Map;
 /**
  * DashScope text-embedding-v2 实现
  * 直接调用 DashScope Embedding API
+ *
+ * 响应体用 JsonParser 边读边解析，数值直接写进 float[]，
+ * 不再先把整个响应读成 String、再建 JsonNode 树、再装箱成 List<Float>。
  */
 @Slf4j
 @Service
 public class DashScopeEmbeddingService implements EmbeddingService {
 
+    /**
+     * DashScope 单次请求最多 25 条
+     */
+    private static final int BATCH_SIZE = 25;
+
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
 
@@ -48,78 +59,20 @@ public class DashScopeEmbeddingService implements EmbeddingService {
     }
 
     @Override
-    public List<Float> embed(String text) {
+    public float[] embed(String text) {
         // trim(): 把字符串首尾的所有空白字符（空格、Tab、换行、全角空格等）去掉，返回一个新的字符串。
         if (text == null || text.trim().isEmpty()) {
             throw new IllegalArgumentException("文本不能为空");
         }
 
         try {
-            // 构建请求 URL
-            String url = baseUrl + "/services/embeddings/text-embedding/text-embedding";
-
-            // 构建请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + apiKey);
-            headers.set("Content-Type", "application/json");
-
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            Map<String, Object> inputMap = new HashMap<>();
-            inputMap.put("texts", List.of(text));
-            requestBody.put("input", inputMap);
-
-            //当前发送的 JSON 是：{"model": "text-embedding-v2", "input": ["文本1", "文本2"]}
-            //正确的格式应该是：{"model": "text-embedding-v2", "input": {"texts": ["文本1", "文本2"]}}
-            /*requestBody.put("input", text);*/
-            String requestBodyJson = objectMapper.writeValueAsString(requestBody);
-            log.debug("[DashScope Embedding] 请求体: {}", requestBodyJson);
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
             log.debug("[DashScope Embedding] 请求: model={}, text={}", model, text);
-
-            // 发送请求
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, HttpMethod.POST, request, String.class
-            );
-
-            // 解析响应
-            JsonNode root = objectMapper.readTree(response.getBody());
-
-            // DashScope 响应格式：{"output":{"embeddings":[{"embedding":[...]}]}}
-            if (root.has("output") && root.get("output").has("embeddings")) {
-                JsonNode embeddings = root.get("output").get("embeddings");
-                if (embeddings.isArray() && embeddings.size() > 0) {
-                    JsonNode embedding = embeddings.get(0);
-                    if (embedding.has("embedding")) {
-                        JsonNode embeddingArray = embedding.get("embedding");
-                        List<Float> vector = new ArrayList<>();
-                        for (JsonNode value : embeddingArray) {
-                            vector.add(value.floatValue());
-                        }
-                        log.debug("[DashScope Embedding] 成功: dimension={}", vector.size());
-                        return vector;
-                    }
-                }
-            }
-
-            // 兼容其他可能的响应格式
-            if (root.has("data") && root.get("data").isArray() && root.get("data").size() > 0) {
-                JsonNode data = root.get("data").get(0);
-                if (data.has("embedding")) {
-                    JsonNode embeddingArray = data.get("embedding");
-                    List<Float> vector = new ArrayList<>();
-                    for (JsonNode value : embeddingArray) {
-                        vector.add(value.floatValue());
-                    }
-                    log.debug("[DashScope Embedding] 成功（兼容格式）: dimension={}", vector.size());
-                    return vector;
-                }
+            List<float[]> vectors = request(List.of(text));
+            if (vectors.isEmpty()) {
+                throw new RuntimeException("无法解析 Embedding 响应：未找到 embedding 字段");
             }
-
-            throw new RuntimeException("无法解析 Embedding 响应: " + response.getBody());
-
+            log.debug("[DashScope Embedding] 成功: dimension={}", vectors.get(0).length);
+            return vectors.get(0);
         } catch (Exception e) {
             log.error("[DashScope Embedding] 调用失败: text={}", text, e);
             throw new RuntimeException("Embedding 调用失败: " + e.getMessage(), e);
@@ -127,80 +80,38 @@ public class DashScopeEmbeddingService implements EmbeddingService {
     }
 
     @Override
-    public List<List<Float>> embedBatch(List<String> texts) {
+    public List<float[]> embedBatch(List<String> texts) {
         if (texts == null || texts.isEmpty()) {
             return new ArrayList<>();
         }
 
-        // DashScope 支持批量，最多 25 条
-        int batchSize = 25;
-        List<List<Float>> results = new ArrayList<>();
+        List<float[]> results = new ArrayList<>(texts.size());
 
-        for (int i = 0; i < texts.size(); i += batchSize) {
-            int end = Math.min(i + batchSize, texts.size());
+        for (int i = 0; i < texts.size(); i += BATCH_SIZE) {
+            int end = Math.min(i + BATCH_SIZE, texts.size());
             List<String> batch = texts.subList(i, end);
 
             try {
-                // 构建请求 URL
-                String url = baseUrl + "/services/embeddings/text-embedding/text-embedding";
-
-                // 构建请求头
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("Authorization", "Bearer " + apiKey);
-                headers.set("Content-Type", "application/json");
-
-                // 构建请求体（批量）
-                Map<String, Object> requestBody = new HashMap<>();
-                requestBody.put("model", model);
-               /* requestBody.put("input", batch);  // 批量输入*/
-                // DashScope 要求 input 必须是对象格式，包含 texts 数组
-                Map<String, Object> inputMap = new HashMap<>();
-                inputMap.put("texts", batch);
-                requestBody.put("input", inputMap);
-                HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
                 log.debug("[DashScope Embedding] 批量请求: model={}, batchSize={}", model, batch.size());
-
-                // 发送请求
-                ResponseEntity<String> response = restTemplate.exchange(
-                        url, HttpMethod.POST, request, String.class
-                );
-
-                // 解析响应
-                JsonNode root = objectMapper.readTree(response.getBody());
-
-                // DashScope 批量响应格式：{"output":{"embeddings":[{"embedding":[...]}, ...]}}
-                if (root.has("output") && root.get("output").has("embeddings")) {
-                    JsonNode embeddings = root.get("output").get("embeddings");
-                    for (JsonNode embedding : embeddings) {
-                        if (embedding.has("embedding")) {
-                            JsonNode embeddingArray = embedding.get("embedding");
-                            List<Float> vector = new ArrayList<>();
-                            for (JsonNode value : embeddingArray) {
-                                vector.add(value.floatValue());
-                            }
-                            results.add(vector);
-                        }
-                    }
-                } else {
-                    // 如果批量失败，逐个调用
-                    log.warn("[DashScope Embedding] 批量响应格式异常，转为逐个调用");
-                    for (String text : batch) {
-                        results.add(embed(text));
-                    }
+                List<float[]> vectors = request(batch);
+                if (vectors.size() == batch.size()) {
+                    results.addAll(vectors);
+                    continue;
                 }
-
+                // 返回条数对不上，逐个调用
+                log.warn("[DashScope Embedding] 批量响应格式异常，转为逐个调用: expected={}, actual={}",
+                        batch.size(), vectors.size());
             } catch (Exception e) {
                 log.error("[DashScope Embedding] 批量调用失败: batch={}", batch, e);
-                // 如果批量失败，逐个调用
-                for (String text : batch) {
-                    try {
-                        results.add(embed(text));
-                    } catch (Exception ex) {
-                        log.error("[DashScope Embedding] 单个文本调用也失败: text={}", text, ex);
-                        // 添加空向量或抛出异常，根据业务需求决定
-                        results.add(new ArrayList<>());
-                    }
+            }
+
+            for (String text : batch) {
+                try {
+                    results.add(embed(text));
+                } catch (Exception ex) {
+                    log.error("[DashScope Embedding] 单个文本调用也失败: text={}", text, ex);
+                    // 空向量占位，保持与入参一一对应，由调用方决定跳过还是报错
+                    results.add(new float[0]);
                 }
             }
         }
@@ -212,4 +123,63 @@ public class DashScopeEmbeddingService implements EmbeddingService {
     public int getDimension() {
         return dimension;
     }
+
+    @Override
+    public String getModelName() {
+        return model;
+    }
+
+    /**
+     * 发送一次请求，按返回顺序解析出各条向量
+     */
+    private List<float[]> request(List<String> texts) {
+        String url = baseUrl + "/services/embeddings/text-embedding/text-embedding";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + apiKey);
+        headers.set("Content-Type", "application/json");
+
+        // DashScope 要求 input 必须是对象格式，包含 texts 数组：
+        // {"model": "text-embedding-v2", "input": {"texts": ["文本1", "文本2"]}}
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("texts", texts);
+        requestBody.put("input", inputMap);
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+
+        return restTemplate.execute(url, HttpMethod.POST, restTemplate.httpEntityCallback(request),
+                response -> readEmbeddings(response.getBody()));
+    }
+
+    /**
+     * 从响应流中读出所有 embedding 数组，兼容两种格式：
+     * - DashScope：{"output":{"embeddings":[{"text_index":0,"embedding":[...]}]}}
+     * - OpenAI 兼容：{"data":[{"index":0,"embedding":[...]}]}
+     */
+    List<float[]> readEmbeddings(InputStream in) throws IOException {
+        List<float[]> vectors = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && "embedding".equals(parser.getCurrentName())
+                        && parser.nextToken() == JsonToken.START_ARRAY) {
+                    vectors.add(readVector(parser));
+                }
+            }
+        }
+        return vectors;
+    }
+
+    private float[] readVector(JsonParser parser) throws IOException {
+        float[] buf = new float[dimension > 0 ? dimension : 16];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[size++] = parser.getFloatValue();
+        }
+        return size == buf.length ? buf : Arrays.copyOf(buf, size);
+    }
 }
@@ -0,0 +1,297 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.common.ai.PayloadFieldType;
+import com.ityfz.yulu.common.ai.ScrollPage;
+import com.ityfz.yulu.common.ai.UpsertReport;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+import com.ityfz.yulu.common.ai.VectorStore;
+import com.ityfz.yulu.common.config.VectorStoreProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 进程内 HNSW 向量存储（vector-store.type=embedded）
+ *
+ * 不依赖外部服务、检索没有网络往返，适合小租户和测试环境；只支持单实例，
+ * 多实例部署仍需使用 Qdrant。每个集合对应数据目录下的 {name}.vec / {name}.meta 两个文件，
+ * 启动时加载全部集合，写入后由后台线程按 flushIntervalMs 落盘，关闭时再落盘一次。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "vector-store.type", havingValue = "embedded")
+public class EmbeddedHnswVectorStore implements VectorStore {
+
+    private static final Pattern COLLECTION_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final String META_SUFFIX = ".meta";
+
+    private final VectorStoreProperties.Embedded properties;
+    private final ObjectMapper objectMapper;
+    private final Map<String, HnswIndex> indexes = new ConcurrentHashMap<>();
+
+    private Path dataDir;
+    private ScheduledExecutorService flusher;
+
+    public EmbeddedHnswVectorStore(VectorStoreProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties.getEmbedded();
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        dataDir = Paths.get(properties.getDataDir()).toAbsolutePath();
+        Files.createDirectories(dataDir);
+        List<Path> metas;
+        try (Stream<Path> files = Files.list(dataDir)) {
+            metas = files.filter(p -> p.getFileName().toString().endsWith(META_SUFFIX)).toList();
+        }
+        for (Path meta : metas) {
+            String fileName = meta.getFileName().toString();
+            String name = fileName.substring(0, fileName.length() - META_SUFFIX.length());
+            HnswIndex index = HnswIndex.load(dataDir, name, objectMapper);
+            indexes.put(name, index);
+            log.info("[VectorStore] 加载集合: {}, dimension={}, points={}", name, index.dimension(), index.liveCount());
+        }
+
+        if (properties.getFlushIntervalMs() > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "vector-store-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly,
+                    properties.getFlushIntervalMs(), properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        log.info("[VectorStore] 进程内 HNSW 已启用: dataDir={}, collections={}", dataDir, indexes.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushQuietly();
+        for (HnswIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.warn("[VectorStore] 关闭集合失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void createCollection(String collectionName, int vectorSize) {
+        checkName(collectionName);
+        HnswIndex index = indexes.computeIfAbsent(collectionName, name -> {
+            try {
+                log.info("[VectorStore] 集合创建成功: {}, dimension={}", name, vectorSize);
+                return HnswIndex.create(dataDir, name, vectorSize, properties.getM(),
+                        properties.getEfConstruction(), objectMapper);
+            } catch (IOException e) {
+                throw new RuntimeException("创建集合失败: " + name, e);
+            }
+        });
+        if (index.dimension() != vectorSize) {
+            throw new IllegalStateException("集合向量维度不一致: collection=" + collectionName
+                    + ", existing=" + index.dimension() + ", expected=" + vectorSize);
+        }
+    }
+
+    /**
+     * 整数 payload 字段写入时已自动建倒排，其余字段在候选集上逐个比较，这里无需额外操作
+     */
+    @Override
+    public void createPayloadIndex(String collectionName, String fieldName, PayloadFieldType type) {
+        log.debug("[VectorStore] 进程内存储自动索引整数字段，忽略建索引请求: collection={}, field={}",
+                collectionName, fieldName);
+    }
+
+    @Override
+    public void upsertPoint(String collectionName, long pointId, float[] vector, Map<String, Object> payload) {
+        HnswIndex index = require(collectionName);
+        try {
+            index.upsert(pointId, vector, payload);
+        } catch (IOException e) {
+            throw new RuntimeException("插入点失败", e);
+        }
+        flushIfSync(collectionName, index);
+    }
+
+    @Override
+    public UpsertReport upsertPoints(String collectionName, List<VectorPoint> points) {
+        UpsertReport report = new UpsertReport(points.size());
+        long start = System.currentTimeMillis();
+        HnswIndex index = require(collectionName);
+        for (VectorPoint point : points) {
+            try {
+                index.upsert(point.getId(), point.getVector(), point.getPayload());
+                report.addSucceeded(1);
+            } catch (Exception e) {
+                report.addFailure(point.getId(), e.getMessage());
+            }
+        }
+        flushIfSync(collectionName, index);
+        report.setCostMs(System.currentTimeMillis() - start);
+        log.info("[VectorStore] 批量插入完成: collection={}, total={}, succeeded={}, failed={}, cost={}ms",
+                collectionName, report.getTotal(), report.getSucceeded(), report.getFailures().size(),
+                report.getCostMs());
+        return report;
+    }
+
+    @Override
+    public List<VectorSearchHit> search(String collectionName, float[] queryVector, int topK, VectorFilter filter,
+                                        boolean withVectors) {
+        HnswIndex index = indexes.get(collectionName);
+        if (index == null) {
+            log.warn("[VectorStore] 集合不存在，返回空结果: collection={}", collectionName);
+            return Collections.emptyList();
+        }
+        long start = System.nanoTime();
+        List<VectorSearchHit> hits = index.search(queryVector, topK, filter,
+                properties.getEfSearch(), properties.getBruteForceThreshold(), withVectors);
+        log.debug("[VectorStore] 搜索成功: collection={}, topK={}, resultCount={}, cost={}us",
+                collectionName, topK, hits.size(), (System.nanoTime() - start) / 1000);
+        return hits;
+    }
+
+    @Override
+    public ScrollPage scroll(String collectionName, VectorFilter filter, Long offset, int limit, boolean withVectors) {
+        HnswIndex index = indexes.get(collectionName);
+        if (index == null) {
+            return new ScrollPage(Collections.emptyList(), null);
+        }
+        // 多取一个点作为下一页起点
+        List<VectorPoint> points = index.scroll(filter, offset, limit + 1, withVectors);
+        if (points.size() <= limit) {
+            return new ScrollPage(points, null);
+        }
+        return new ScrollPage(new ArrayList<>(points.subList(0, limit)), points.get(limit).getId());
+    }
+
+    @Override
+    public long count(String collectionName, VectorFilter filter) {
+        HnswIndex index = indexes.get(collectionName);
+        return index == null ? 0 : index.count(filter);
+    }
+
+    @Override
+    public void setPayload(String collectionName, Map<Long, Map<String, Object>> payloadsById) {
+        HnswIndex index = indexes.get(collectionName);
+        if (index == null || payloadsById.isEmpty()) {
+            return;
+        }
+        int updated = 0;
+        for (Map.Entry<Long, Map<String, Object>> e : payloadsById.entrySet()) {
+            if (index.setPayload(e.getKey(), e.getValue())) {
+                updated++;
+            }
+        }
+        flushIfSync(collectionName, index);
+        log.debug("[VectorStore] 更新 payload: collection={}, requested={}, updated={}",
+                collectionName, payloadsById.size(), updated);
+    }
+
+    @Override
+    public void deletePoints(String collectionName, Collection<Long> pointIds) {
+        HnswIndex index = indexes.get(collectionName);
+        if (index == null || pointIds.isEmpty()) {
+            return;
+        }
+        int removed = index.deleteIds(pointIds);
+        flushIfSync(collectionName, index);
+        log.info("[VectorStore] 按 ID 删除点: collection={}, requested={}, removed={}",
+                collectionName, pointIds.size(), removed);
+    }
+
+    @Override
+    public void deleteByFilter(String collectionName, VectorFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            // 防止误删整个集合
+            throw new IllegalArgumentException("删除条件不能为空");
+        }
+        HnswIndex index = indexes.get(collectionName);
+        if (index == null) {
+            return;
+        }
+        int removed = index.deleteByFilter(filter);
+        flushIfSync(collectionName, index);
+        log.info("[VectorStore] 按条件删除点: collection={}, filter={}, removed={}", collectionName, filter, removed);
+    }
+
+    @Override
+    public void deleteCollection(String collectionName) {
+        HnswIndex index = indexes.remove(collectionName);
+        if (index == null) {
+            return;
+        }
+        try {
+            index.close();
+            Files.deleteIfExists(dataDir.resolve(collectionName + META_SUFFIX));
+            Files.deleteIfExists(dataDir.resolve(collectionName + ".vec"));
+            log.info("[VectorStore] 集合删除成功: {}", collectionName);
+        } catch (IOException e) {
+            log.error("[VectorStore] 删除集合失败: collection={}", collectionName, e);
+            throw new RuntimeException("删除集合失败: " + e.getMessage(), e);
+        }
+    }
+
+    private HnswIndex require(String collectionName) {
+        HnswIndex index = indexes.get(collectionName);
+        if (index == null) {
+            throw new IllegalStateException("集合不存在: " + collectionName);
+        }
+        return index;
+    }
+
+    private void flushIfSync(String collectionName, HnswIndex index) {
+        if (properties.getFlushIntervalMs() > 0) {
+            return;
+        }
+        try {
+            index.save();
+        } catch (IOException e) {
+            throw new RuntimeException("集合落盘失败: " + collectionName, e);
+        }
+    }
+
+    private void flushQuietly() {
+        indexes.forEach((name, index) -> {
+            if (!index.isDirty()) {
+                return;
+            }
+            try {
+                index.save();
+            } catch (Exception e) {
+                log.error("[VectorStore] 集合落盘失败: collection={}, error={}", name, e.getMessage(), e);
+            }
+        });
+    }
+
+    private void checkName(String collectionName) {
+        if (collectionName == null || !COLLECTION_NAME.matcher(collectionName).matches()) {
+            throw new IllegalArgumentException("集合名只能包含字母、数字、下划线和短横线: " + collectionName);
+        }
+    }
+}
@@ -0,0 +1,682 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 单个集合的 HNSW 图索引（余弦相似度），由 EmbeddedHnswVectorStore 管理，不是 Spring Bean。
+ *
+ * - 向量归一化后写入 MappedVectorFile，相似度 = 点积；查询向量用 float[]，不装箱
+ * - 图结构、pointId、payload 在堆内，save() 时整体快照到 .meta 文件（先写临时文件再替换）
+ * - 整数 payload 字段建倒排（field → value → 节点位图），tenant_id 等过滤条件先取位图：
+ *   命中点数不超过 bruteForceThreshold 时精确计算，否则在图上检索、只收集满足条件的点
+ * - 同一 pointId 再次写入时旧节点只打删除标记（仍参与图导航），空间不回收，需要时重建集合
+ *
+ * 读写锁：检索并发执行，写入互斥。
+ */
+class HnswIndex implements Closeable {
+
+    private static final int META_MAGIC = 0x484E5357;   // "HNSW"
+    private static final int META_VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    private static final int[] NO_LINKS = new int[0];
+    private static final TypeReference<LinkedHashMap<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {};
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final MappedVectorFile vectors;
+    private final Path metaPath;
+    private final ObjectMapper objectMapper;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+    private long[] ids = new long[64];
+    private final List<int[][]> links = new ArrayList<>();
+    private final List<Map<String, Object>> payloads = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    /**
+     * 整数 payload 字段的倒排，只包含未删除的节点
+     */
+    private final Map<String, Map<Long, BitSet>> numericIndex = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private volatile boolean dirty;
+
+    private HnswIndex(Path dir, String name, int dimension, int m, int efConstruction,
+                      ObjectMapper objectMapper) throws IOException {
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.objectMapper = objectMapper;
+        this.metaPath = dir.resolve(name + ".meta");
+        this.vectors = new MappedVectorFile(dir.resolve(name + ".vec"), dimension);
+    }
+
+    static HnswIndex create(Path dir, String name, int dimension, int m, int efConstruction,
+                            ObjectMapper objectMapper) throws IOException {
+        HnswIndex index = new HnswIndex(dir, name, dimension, m, efConstruction, objectMapper);
+        index.dirty = true;
+        index.save();
+        return index;
+    }
+
+    /**
+     * 从 .meta 快照恢复；向量文件里快照之后多写的部分被忽略
+     */
+    static HnswIndex load(Path dir, String name, ObjectMapper objectMapper) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dir.resolve(name + ".meta"))))) {
+            if (in.readInt() != META_MAGIC || in.readInt() != META_VERSION) {
+                throw new IOException("无法识别的索引文件: " + name);
+            }
+            HnswIndex index = new HnswIndex(dir, name, in.readInt(), in.readInt(), in.readInt(), objectMapper);
+            int size = in.readInt();
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            index.ids = new long[Math.max(64, size)];
+            for (int slot = 0; slot < size; slot++) {
+                index.ids[slot] = in.readLong();
+                boolean removed = in.readBoolean();
+                int[][] nodeLinks = new int[in.readInt()][];
+                for (int level = 0; level < nodeLinks.length; level++) {
+                    int[] neighbors = new int[in.readInt()];
+                    for (int i = 0; i < neighbors.length; i++) {
+                        neighbors[i] = in.readInt();
+                    }
+                    nodeLinks[level] = neighbors;
+                }
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                Map<String, Object> payload = objectMapper.readValue(json, PAYLOAD_TYPE);
+                index.links.add(nodeLinks);
+                index.payloads.add(normalizePayload(payload));
+                if (removed) {
+                    index.deleted.set(slot);
+                } else {
+                    index.slotById.put(index.ids[slot], slot);
+                    index.indexPayload(slot, index.payloads.get(slot));
+                }
+            }
+            index.size = size;
+            return index;
+        }
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int liveCount() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * 插入/覆盖一个点
+     */
+    void upsert(long id, float[] vector, Map<String, Object> payload) throws IOException {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不匹配: got=" + (vector == null ? 0 : vector.length)
+                    + ", expected=" + dimension);
+        }
+        float[] v = normalize(vector);
+        Map<String, Object> normalized = normalizePayload(payload);
+
+        lock.writeLock().lock();
+        try {
+            int slot = size;
+            vectors.write(slot, v);
+            Integer old = slotById.get(id);
+            if (old != null) {
+                markDeleted(old);
+            }
+            if (slot == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[slot] = id;
+            int level = randomLevel();
+            int[][] nodeLinks = new int[level + 1][];
+            Arrays.fill(nodeLinks, NO_LINKS);
+            links.add(nodeLinks);
+            payloads.add(normalized);
+            size++;
+
+            slotById.put(id, slot);
+            indexPayload(slot, normalized);
+            connect(slot, v, level);
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按 ID 删除点，返回实际删除数量
+     */
+    int deleteIds(Collection<Long> pointIds) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (Long id : pointIds) {
+                Integer slot = slotById.get(id);
+                if (slot != null) {
+                    markDeleted(slot);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                dirty = true;
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把 fields 合并进点的 payload（同名字段覆盖），向量和图结构不变；点不存在时返回 false
+     */
+    boolean setPayload(long id, Map<String, Object> fields) {
+        Map<String, Object> normalized = normalizePayload(fields);
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.get(id);
+            if (slot == null) {
+                return false;
+            }
+            Map<String, Object> payload = payloads.get(slot);
+            unindexPayload(slot, payload);
+            payload.putAll(normalized);
+            indexPayload(slot, payload);
+            dirty = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除满足条件的点，返回删除数量
+     */
+    int deleteByFilter(VectorFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            throw new IllegalArgumentException("删除条件不能为空");
+        }
+        lock.writeLock().lock();
+        try {
+            List<Integer> matched = new ArrayList<>();
+            BitSet candidates = candidateSlots(filter);
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (!deleted.get(slot) && filter.matches(payloads.get(slot))) {
+                    matched.add(slot);
+                }
+            }
+            matched.forEach(this::markDeleted);
+            if (!matched.isEmpty()) {
+                dirty = true;
+            }
+            return matched.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按 ID 升序返回满足条件且 ID 不小于 offset 的点，最多 limit 个
+     */
+    List<VectorPoint> scroll(VectorFilter filter, Long offset, int limit, boolean withVectors) {
+        lock.readLock().lock();
+        try {
+            List<Integer> matched = new ArrayList<>();
+            BitSet candidates = candidateSlots(filter);
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (!deleted.get(slot) && (offset == null || ids[slot] >= offset)
+                        && (filter == null || filter.matches(payloads.get(slot)))) {
+                    matched.add(slot);
+                }
+            }
+            matched.sort(Comparator.comparingLong(slot -> ids[slot]));
+            List<VectorPoint> points = new ArrayList<>(Math.min(limit, matched.size()));
+            for (int i = 0; i < matched.size() && i < limit; i++) {
+                int slot = matched.get(i);
+                float[] vector = withVectors ? vectors.read(slot) : null;
+                points.add(new VectorPoint(ids[slot], vector, new LinkedHashMap<>(payloads.get(slot))));
+            }
+            return points;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 满足条件的点数
+     */
+    long count(VectorFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (filter == null || filter.isEmpty()) {
+                return slotById.size();
+            }
+            long count = 0;
+            BitSet candidates = candidateSlots(filter);
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (!deleted.get(slot) && filter.matches(payloads.get(slot))) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检索最相似的 topK 个点（分数降序）
+     *
+     * @param withVectors 是否带回向量（归一化后的存储值）
+     */
+    List<VectorSearchHit> search(float[] query, int topK, VectorFilter filter, int efSearch, int bruteForceThreshold,
+                                 boolean withVectors) {
+        if (query == null || query.length != dimension) {
+            throw new IllegalArgumentException("query 向量维度不匹配: got=" + (query == null ? 0 : query.length)
+                    + ", expected=" + dimension);
+        }
+        float[] q = normalize(query);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || slotById.isEmpty() || topK <= 0) {
+                return Collections.emptyList();
+            }
+            BitSet candidates = candidateSlots(filter);
+            if (candidates.cardinality() <= bruteForceThreshold) {
+                return exactSearch(q, topK, filter, candidates, withVectors);
+            }
+
+            IntPredicate accept = filter == null || filter.isEmpty()
+                    ? slot -> !deleted.get(slot)
+                    : slot -> candidates.get(slot) && !deleted.get(slot) && filter.matches(payloads.get(slot));
+            int ep = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                ep = greedyClosest(q, ep, level);
+            }
+            List<Scored> found = searchLayer(q, ep, Math.max(efSearch, topK), 0, accept);
+            List<VectorSearchHit> hits = new ArrayList<>(Math.min(topK, found.size()));
+            for (int i = 0; i < found.size() && i < topK; i++) {
+                hits.add(toHit(found.get(i), withVectors));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把向量和图结构落盘（向量先 force，再原子替换快照）
+     */
+    void save() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            vectors.force();
+            Path tmp = metaPath.resolveSibling(metaPath.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(META_MAGIC);
+                out.writeInt(META_VERSION);
+                out.writeInt(dimension);
+                out.writeInt(m);
+                out.writeInt(efConstruction);
+                out.writeInt(size);
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                for (int slot = 0; slot < size; slot++) {
+                    out.writeLong(ids[slot]);
+                    out.writeBoolean(deleted.get(slot));
+                    int[][] nodeLinks = links.get(slot);
+                    out.writeInt(nodeLinks.length);
+                    for (int[] neighbors : nodeLinks) {
+                        out.writeInt(neighbors.length);
+                        for (int n : neighbors) {
+                            out.writeInt(n);
+                        }
+                    }
+                    byte[] json = objectMapper.writeValueAsString(payloads.get(slot)).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(json.length);
+                    out.write(json);
+                }
+            }
+            Files.move(tmp, metaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+    }
+
+    // ==================== 建图 ====================
+
+    private void connect(int slot, float[] v, int level) {
+        if (entryPoint < 0) {
+            entryPoint = slot;
+            maxLevel = level;
+            return;
+        }
+        int ep = entryPoint;
+        for (int lc = maxLevel; lc > level; lc--) {
+            ep = greedyClosest(v, ep, lc);
+        }
+        for (int lc = Math.min(level, maxLevel); lc >= 0; lc--) {
+            List<Scored> found = searchLayer(v, ep, efConstruction, lc, null);
+            int[] neighbors = selectNeighbors(found, m);
+            links.get(slot)[lc] = neighbors;
+            int maxConn = lc == 0 ? maxM0 : m;
+            for (int n : neighbors) {
+                addLink(n, slot, lc, maxConn);
+            }
+            ep = found.get(0).slot;
+        }
+        if (level > maxLevel) {
+            entryPoint = slot;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * 启发式选邻居：候选按相似度从高到低，只保留「离新节点比离已选邻居更近」的，
+     * 让邻居分散在不同方向；不够 M 个时再用被跳过的补齐
+     */
+    private int[] selectNeighbors(List<Scored> candidates, int max) {
+        List<Integer> selected = new ArrayList<>(max);
+        List<Integer> skipped = new ArrayList<>();
+        for (Scored c : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] cv = vectors.read(c.slot);
+            boolean diverse = true;
+            for (int s : selected) {
+                if (vectors.dot(s, cv) > c.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(c.slot);
+            } else {
+                skipped.add(c.slot);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void addLink(int node, int neighbor, int level, int maxConn) {
+        int[][] nodeLinks = links.get(node);
+        int[] current = nodeLinks[level];
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = neighbor;
+        if (extended.length <= maxConn) {
+            nodeLinks[level] = extended;
+            return;
+        }
+        // 超出上限：保留与该节点最相似的 maxConn 个
+        float[] nv = vectors.read(node);
+        List<Scored> scored = new ArrayList<>(extended.length);
+        for (int n : extended) {
+            scored.add(new Scored(n, vectors.dot(n, nv)));
+        }
+        scored.sort(Scored.BY_SCORE_DESC);
+        nodeLinks[level] = selectNeighbors(scored, maxConn);
+    }
+
+    private int randomLevel() {
+        double r = 1 - ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(r) * levelMultiplier));
+    }
+
+    // ==================== 检索 ====================
+
+    private int greedyClosest(float[] q, int ep, int level) {
+        float best = vectors.dot(ep, q);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int n : links.get(ep)[level]) {
+                float s = vectors.dot(n, q);
+                if (s > best) {
+                    best = s;
+                    ep = n;
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * 单层 best-first 搜索。accept 为 null 时（建图）所有节点都可作为结果，
+     * 否则所有节点都参与导航，但只有 accept 的节点进入结果集
+     */
+    private List<Scored> searchLayer(float[] q, int ep, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(Scored.BY_SCORE_DESC);
+        PriorityQueue<Scored> results = new PriorityQueue<>(Comparator.comparingDouble(s -> s.score));
+
+        Scored start = new Scored(ep, vectors.dot(ep, q));
+        visited.set(ep);
+        candidates.add(start);
+        if (accept == null || accept.test(ep)) {
+            results.add(start);
+        }
+        while (!candidates.isEmpty()) {
+            Scored c = candidates.poll();
+            if (results.size() >= ef && c.score < results.peek().score) {
+                break;
+            }
+            for (int n : links.get(c.slot)[level]) {
+                if (visited.get(n)) {
+                    continue;
+                }
+                visited.set(n);
+                float s = vectors.dot(n, q);
+                if (results.size() < ef || s > results.peek().score) {
+                    Scored next = new Scored(n, s);
+                    candidates.add(next);
+                    if (accept == null || accept.test(n)) {
+                        results.add(next);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(Scored.BY_SCORE_DESC);
+        if (sorted.isEmpty() && accept == null) {
+            sorted.add(start);
+        }
+        return sorted;
+    }
+
+    private List<VectorSearchHit> exactSearch(float[] q, int topK, VectorFilter filter, BitSet candidates,
+                                              boolean withVectors) {
+        PriorityQueue<Scored> top = new PriorityQueue<>(Comparator.comparingDouble(s -> s.score));
+        for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+            if (deleted.get(slot) || (filter != null && !filter.matches(payloads.get(slot)))) {
+                continue;
+            }
+            float s = vectors.dot(slot, q);
+            if (top.size() < topK) {
+                top.add(new Scored(slot, s));
+            } else if (s > top.peek().score) {
+                top.poll();
+                top.add(new Scored(slot, s));
+            }
+        }
+        List<Scored> sorted = new ArrayList<>(top);
+        sorted.sort(Scored.BY_SCORE_DESC);
+        List<VectorSearchHit> hits = new ArrayList<>(sorted.size());
+        for (Scored s : sorted) {
+            hits.add(toHit(s, withVectors));
+        }
+        return hits;
+    }
+
+    /**
+     * 过滤条件中整数字段的位图交集；没有整数条件时为全部未删除节点
+     */
+    private BitSet candidateSlots(VectorFilter filter) {
+        BitSet result = null;
+        if (filter != null) {
+            for (Map.Entry<String, Object> cond : filter.getMust().entrySet()) {
+                if (!(cond.getValue() instanceof Long)) {
+                    continue;
+                }
+                BitSet slots = numericIndex.getOrDefault(cond.getKey(), Collections.emptyMap())
+                        .get((Long) cond.getValue());
+                if (slots == null) {
+                    return new BitSet();
+                }
+                if (result == null) {
+                    result = (BitSet) slots.clone();
+                } else {
+                    result.and(slots);
+                }
+            }
+        }
+        if (result == null) {
+            result = new BitSet(size);
+            result.set(0, size);
+            result.andNot(deleted);
+        }
+        return result;
+    }
+
+    private VectorSearchHit toHit(Scored s, boolean withVector) {
+        VectorSearchHit hit = new VectorSearchHit(ids[s.slot], s.score, new LinkedHashMap<>(payloads.get(s.slot)), null);
+        if (withVector) {
+            hit.setVector(vectors.read(s.slot));
+        }
+        return hit;
+    }
+
+    // ==================== 删除与倒排 ====================
+
+    private void markDeleted(int slot) {
+        deleted.set(slot);
+        slotById.remove(ids[slot], slot);
+        unindexPayload(slot, payloads.get(slot));
+    }
+
+    private void unindexPayload(int slot, Map<String, Object> payload) {
+        for (Map.Entry<String, Object> e : payload.entrySet()) {
+            if (e.getValue() instanceof Long) {
+                BitSet slots = numericIndex.getOrDefault(e.getKey(), Collections.emptyMap()).get((Long) e.getValue());
+                if (slots != null) {
+                    slots.clear(slot);
+                }
+            }
+        }
+    }
+
+    private void indexPayload(int slot, Map<String, Object> payload) {
+        for (Map.Entry<String, Object> e : payload.entrySet()) {
+            if (e.getValue() instanceof Long) {
+                numericIndex.computeIfAbsent(e.getKey(), k -> new HashMap<>())
+                        .computeIfAbsent((Long) e.getValue(), k -> new BitSet())
+                        .set(slot);
+            }
+        }
+    }
+
+    private static Map<String, Object> normalizePayload(Map<String, Object> payload) {
+        Map<String, Object> normalized = new LinkedHashMap<>();
+        if (payload != null) {
+            payload.forEach((k, v) -> {
+                if (v != null) {
+                    normalized.put(k, VectorFilter.normalize(v));
+                }
+            });
+        }
+        return normalized;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float x : vector) {
+            norm += x * x;
+        }
+        float[] v = Arrays.copyOf(vector, vector.length);
+        if (norm == 0) {
+            return v;
+        }
+        float inv = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) {
+            v[i] *= inv;
+        }
+        return v;
+    }
+
+    private static final class Scored {
+        static final Comparator<Scored> BY_SCORE_DESC = (a, b) -> Float.compare(b.score, a.score);
+
+        final int slot;
+        final float score;
+
+        Scored(int slot, float score) {
+            this.slot = slot;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.ityfz.yulu.common.ai.TokenCounter;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 基于 jtokkit 的 BPE 分词计数。
+ * 通义千问的词表和 tiktoken 同源（在 cl100k 基础上扩充了中文词），默认用中文切分更接近的 o200k_base，
+ * 和实际计费 token 数相差一般在 10% 以内；预算里预留的余量足以覆盖这点误差。
+ */
+@Slf4j
+@Component
+public class JtokkitTokenCounter implements TokenCounter {
+
+    private final Encoding encoding;
+
+    public JtokkitTokenCounter(@Value("${ai.prompt-budget.encoding:o200k_base}") String encodingName) {
+        EncodingType type = EncodingType.fromName(encodingName).orElseGet(() -> {
+            log.warn("[TokenCounter] 未知的编码 {}，使用 o200k_base", encodingName);
+            return EncodingType.O200K_BASE;
+        });
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(type);
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        // 用户输入里可能出现 <|endoftext|> 之类的特殊标记，按普通文本计数
+        return encoding.countTokensOrdinary(text);
+    }
+
+    @Override
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        EncodingResult result = encoding.encodeOrdinary(text, maxTokens);
+        if (!result.isTruncated()) {
+            return text;
+        }
+        // 按最后完整处理的字符截断，避免把多字节字符从中间切开
+        int end = result.getLastProcessedCharacterIndex();
+        return end >= 0 ? text.substring(0, Math.min(end + 1, text.length())) : encoding.decode(result.getTokens());
+    }
+}
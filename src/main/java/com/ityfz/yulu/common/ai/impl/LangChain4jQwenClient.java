@@ -3,8 +3,14 @@ package com.ityfz.yulu.common.ai.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.ityfz.yulu.common.ai.ChatOptions;
+import com.ityfz.yulu.common.ai.ChatResult;
 import com.ityfz.yulu.common.ai.LLMClient;
 import com.ityfz.yulu.common.ai.Message;
+import com.ityfz.yulu.common.ai.StreamingChatHandler;
 import com.ityfz.yulu.common.config.QianWenProperties;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
@@ -12,8 +18,9 @@ import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 
 import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import dev.langchain4j.model.openai.OpenAiChatModel;
-import lombok.Data;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -21,50 +28,209 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component("langChain4jQwenClient")
 public class LangChain4jQwenClient implements LLMClient {
 
-    private final OpenAiChatModel model;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
-    // 可选：缓存最近一次结果，后面 detectEmotion/detectIntent 可以复用
-    private final ThreadLocal<ChatResult> lastResult = new ThreadLocal<>();
+    /**
+     * 流式输出时，回答正文之后追加的标签行前缀：正文逐字推送，标签行截留下来解析情绪/意图
+     */
+    static final String STREAM_META_MARKER = "###META###";
+
+    private static final String CHAT_SYSTEM_PROMPT =
+            "你是一个专业的客服助手，所有输出必须是 JSON：" +
+                    "{ \"answer\": \"...\", \"emotion\": \"HAPPY|ANGRY|SAD|NEUTRAL|NORMAL\", " +
+                    "\"intent\": \"REFUND|INVOICE|COMPLAIN|GENERAL\" }。" +
+                    "answer 是最终给用户看的自然语言回答；emotion 是情绪标签；intent 是用户意图标签。" +
+                    "当用户消息中包含【参考资料】时，请优先结合这些资料作答，并保持客服语气；否则按常规客服方式回复。" +
+                    "不要输出任何说明文字，不要输出 JSON 以外的内容。";
+
+    // 流式场景下 JSON 无法边生成边展示，改为「正文 + 末尾标签行」的格式
+    private static final String STREAM_SYSTEM_PROMPT =
+            "你是一个专业的客服助手。请直接输出给用户看的自然语言回答，保持客服语气；" +
+                    "当用户消息中包含【参考资料】时，请优先结合这些资料作答，否则按常规客服方式回复。" +
+                    "回答结束后另起一行，严格按如下格式输出标签行：" +
+                    STREAM_META_MARKER + "{ \"emotion\": \"HAPPY|ANGRY|SAD|NEUTRAL|NORMAL\", " +
+                    "\"intent\": \"REFUND|INVOICE|COMPLAIN|GENERAL\" }。" +
+                    "emotion 是用户的情绪标签，intent 是用户意图标签；标签行之后不要再输出任何内容。";
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
 
-    @Data
-    // 内部使用的结构化结果
-    static class ChatResult {
-        private String answer;
-        private String emotion;
-        private String intent;
-    }
+    /**
+     * 按需创建的模型实例上限：模型名 / 超时来自租户配置，组合数不受控，超出后淘汰最久未用的
+     */
+    private static final int MAX_CUSTOM_MODELS = 32;
 
+    private final QianWenProperties props;
+    private final OpenAiChatModel model;
+    private final OpenAiStreamingChatModel streamingModel;
+    // 租户指定了其他模型 / 超时时按需创建，key = 模型名|超时毫秒
+    private final Cache<String, OpenAiChatModel> customModels = customModelCache();
+    private final Cache<String, OpenAiStreamingChatModel> customStreamingModels = customModelCache();
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public LangChain4jQwenClient(QianWenProperties props) {
+        this.props = props;
         // 关键：OpenAiChatModel 可以指定 baseUrl，接入 DashScope 的 OpenAI 兼容接口
         this.model = OpenAiChatModel.builder()
                 .baseUrl(props.getBaseUrl()) // 例如 https://dashscope.aliyuncs.com/compatible/v1
                 .apiKey(props.getApiKey())   // Bearer Token
                 .modelName(props.getModel()) // 例如 qwen-turbo
-                .timeout(Duration.ofSeconds(60))
+                .timeout(DEFAULT_TIMEOUT)
+                .build();
+        this.streamingModel = OpenAiStreamingChatModel.builder()
+                .baseUrl(props.getBaseUrl())
+                .apiKey(props.getApiKey())
+                .modelName(props.getModel())
+                .timeout(DEFAULT_TIMEOUT)
                 .build();
     }
 
     @Override
     public String chat(List<Message> context, String question) {
-        List<ChatMessage> messages = new ArrayList<>();
+        // 只关心 answer 文本的调用方
+        return chatStructured(context, question).getAnswer();
+    }
+
+    @Override
+    public ChatResult chatStructured(List<Message> context, String question) {
+        return chatStructured(context, question, null);
+    }
+
+    @Override
+    public ChatResult chatStructured(List<Message> context, String question, ChatOptions options) {
+        List<ChatMessage> messages = buildMessages(CHAT_SYSTEM_PROMPT, context, question);
+
+        // 4）调用模型
+        ChatResponse response = chatModelFor(options).chat(messages);
+        String rawText = response.aiMessage().text();
+
+        // 5）解析 JSON 得到结构化结果（answer + emotion + intent 一次拿齐）
+        return parseChatResult(rawText);
+    }
+
+    @Override
+    public String complete(String systemPrompt, String userPrompt) {
+        return model.chat(List.of(SystemMessage.from(systemPrompt), UserMessage.from(userPrompt)))
+                .aiMessage().text();
+    }
 
-        // 1）System 提示词：要求模型输出 JSON；若用户消息中含【参考资料】，请结合资料作答
-        messages.add(SystemMessage.from(
-                "你是一个专业的客服助手，所有输出必须是 JSON：" +
-                        "{ \"answer\": \"...\", \"emotion\": \"HAPPY|ANGRY|SAD|NEUTRAL|NORMAL\", " +
-                        "\"intent\": \"REFUND|INVOICE|COMPLAIN|GENERAL\" }。" +
-                        "answer 是最终给用户看的自然语言回答；emotion 是情绪标签；intent 是用户意图标签。" +
-                        "当用户消息中包含【参考资料】时，请优先结合这些资料作答，并保持客服语气；否则按常规客服方式回复。" +
-                        "不要输出任何说明文字，不要输出 JSON 以外的内容。"
-        ));
+    @Override
+    public void chatStream(List<Message> context, String question, StreamingChatHandler handler) {
+        chatStream(context, question, null, handler);
+    }
 
+    @Override
+    public void chatStream(List<Message> context, String question, ChatOptions options, StreamingChatHandler handler) {
+        List<ChatMessage> messages = buildMessages(STREAM_SYSTEM_PROMPT, context, question);
+        MetaTailSplitter splitter = new MetaTailSplitter();
+
+        streamingModelFor(options).chat(messages, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partial) {
+                String visible = splitter.append(partial);
+                if (!visible.isEmpty()) {
+                    handler.onToken(visible);
+                }
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse response) {
+                // 流结束：把截留的尾巴里不属于标签行的部分补发出去
+                String rest = splitter.flush();
+                if (!rest.isEmpty()) {
+                    handler.onToken(rest);
+                }
+                ChatResult result = ChatResult.ofAnswer(splitter.getAnswer());
+                String meta = splitter.getMeta();
+                if (meta != null && isValidJson(meta)) {
+                    try {
+                        readLabels(objectMapper.readTree(meta), result);
+                    } catch (Exception e) {
+                        log.debug("[LangChain4jQwenClient] 流式标签行解析失败: meta={}", meta);
+                    }
+                } else {
+                    log.debug("[LangChain4jQwenClient] 流式输出缺少标签行，情绪/意图交由调用方兜底");
+                }
+                handler.onComplete(result);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.error("[LangChain4jQwenClient] 流式调用失败", error);
+                handler.onError(error);
+            }
+        });
+    }
+
+    private OpenAiChatModel chatModelFor(ChatOptions options) {
+        if (isDefault(options)) {
+            return model;
+        }
+        String name = modelName(options);
+        Duration timeout = timeout(options);
+        return cached(customModels, name + "|" + timeout.toMillis(), () -> OpenAiChatModel.builder()
+                .baseUrl(props.getBaseUrl())
+                .apiKey(props.getApiKey())
+                .modelName(name)
+                .timeout(timeout)
+                .build());
+    }
+
+    private OpenAiStreamingChatModel streamingModelFor(ChatOptions options) {
+        if (isDefault(options)) {
+            return streamingModel;
+        }
+        String name = modelName(options);
+        Duration timeout = timeout(options);
+        return cached(customStreamingModels, name + "|" + timeout.toMillis(), () -> OpenAiStreamingChatModel.builder()
+                .baseUrl(props.getBaseUrl())
+                .apiKey(props.getApiKey())
+                .modelName(name)
+                .timeout(timeout)
+                .build());
+    }
+
+    private static <T> Cache<String, T> customModelCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(MAX_CUSTOM_MODELS)
+                .expireAfterAccess(30, TimeUnit.MINUTES)
+                .build();
+    }
+
+    private static <T> T cached(Cache<String, T> cache, String key, Callable<T> factory) {
+        try {
+            return cache.get(key, factory);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("创建模型实例失败: " + key, e.getCause());
+        }
+    }
+
+    private boolean isDefault(ChatOptions options) {
+        return options == null
+                || (modelName(options).equals(props.getModel()) && timeout(options).equals(DEFAULT_TIMEOUT));
+    }
+
+    private String modelName(ChatOptions options) {
+        String name = options.getModelName();
+        return name == null || name.isBlank() ? props.getModel() : name;
+    }
+
+    private Duration timeout(ChatOptions options) {
+        Long ms = options.getTimeoutMs();
+        return ms == null || ms <= 0 ? DEFAULT_TIMEOUT : Duration.ofMillis(ms);
+    }
+
+    // 组装发给模型的消息：System 提示词 + 历史上下文（Redis 中最新在前，这里翻转成时间正序）+ 本轮问题
+    private List<ChatMessage> buildMessages(String systemPrompt, List<Message> context, String question) {
+        List<ChatMessage> messages = new ArrayList<>();
+
+        // 1）System 提示词
+        messages.add(SystemMessage.from(systemPrompt));
 
         // 2）把历史上下文从 List<Message> 转成 LangChain4j 的 ChatMessage
         if (context != null) {
@@ -99,19 +265,7 @@ public class LangChain4jQwenClient implements LLMClient {
 
         // 3）再追加本轮用户问题
         messages.add(UserMessage.from(question));
-
-
-        // 4）调用模型
-        ChatResponse response = model.chat(messages);
-        String rawText = response.aiMessage().text();
-
-        // 5）解析 JSON 得到结构化结果
-        ChatResult result = parseChatResult(rawText);
-        lastResult.set(result); // 可选：缓存，后续可以利用 lastResult 优化情绪 / 意图
-
-
-        // 6）对外仍然只返回 answer 文本
-        return result.getAnswer();
+        return messages;
     }
 
     @Override
@@ -138,7 +292,7 @@ public class LangChain4jQwenClient implements LLMClient {
         }
     }
 
-    //TODO:和  chat（） 共享一次调用结果
+    // 对话主流程已经从 chatStructured() 拿到情绪标签，这里只在模型输出不规范时兜底调用
     @Override
     public String detectEmotion(String text) {
 
@@ -197,15 +351,11 @@ public class LangChain4jQwenClient implements LLMClient {
 
     // 解析 JSON 的工具方法
     private ChatResult parseChatResult(String rawText) {
-        ChatResult result = new ChatResult();
-
         // 先判断是否是有效JSON
         if (!isValidJson(rawText)) {
+            // 标签留空：由调用方决定是否单独做情绪/意图识别
             log.debug("[LangChain4jQwenClient] 模型返回非JSON格式，使用原始文本作为 answer，text={}", rawText);
-            result.setAnswer(rawText);
-            result.setEmotion("NORMAL");
-            result.setIntent("GENERAL");
-            return result;
+            return ChatResult.ofAnswer(rawText);
         }
 
         try {
@@ -216,24 +366,27 @@ public class LangChain4jQwenClient implements LLMClient {
                 // 如果模型没按规矩返回 answer，就把整段文本当成 answer
                 answer = rawText;
             }
-            result.setAnswer(answer);
-
-
-            // emotion
-            String emotion = root.path("emotion").asText("NORMAL");
-            result.setEmotion(emotion.toUpperCase());
-
-            // intent
-            String intent = root.path("intent").asText("GENERAL");
-            result.setIntent(intent.toUpperCase());
+            ChatResult result = ChatResult.ofAnswer(answer);
+            // emotion / intent：缺字段时保持 null
+            readLabels(root, result);
+            return result;
         } catch (Exception e) {
-            // 解析失败：退化为“纯文本回答 + 默认标签”
+            // 解析失败：退化为“纯文本回答 + 空标签”
             log.warn("[LangChain4jQwenClient] 解析 JSON 失败，使用原始文本作为 answer，text={}", rawText, e);
-            result.setAnswer(rawText);
-            result.setEmotion("NORMAL");
-            result.setIntent("GENERAL");
+            return ChatResult.ofAnswer(rawText);
+        }
+    }
+
+    // 从 JSON 节点读取 emotion / intent 标签（缺失的保持 null）
+    private void readLabels(JsonNode node, ChatResult result) {
+        String emotion = node.path("emotion").asText(null);
+        if (emotion != null && !emotion.isBlank()) {
+            result.setEmotion(emotion.toUpperCase());
+        }
+        String intent = node.path("intent").asText(null);
+        if (intent != null && !intent.isBlank()) {
+            result.setIntent(normalizeIntent(intent.toUpperCase()));
         }
-        return result;
     }
 
     /**
@@ -275,4 +428,72 @@ public class LangChain4jQwenClient implements LLMClient {
                 return "GENERAL";
         }
     }
+
+    /**
+     * 流式正文/标签行分离器：
+     * 正文部分尽快放行；末尾可能是标签行前缀的几个字符先截留，确认不是标签行再放行，
+     * 避免把 ###META###{...} 推给前端。
+     */
+    static class MetaTailSplitter {
+        private final StringBuilder answer = new StringBuilder();
+        private final StringBuilder pending = new StringBuilder();
+        private StringBuilder meta;
+
+        String append(String partial) {
+            if (partial == null || partial.isEmpty()) {
+                return "";
+            }
+            if (meta != null) {
+                meta.append(partial);
+                return "";
+            }
+            pending.append(partial);
+            int markerAt = pending.indexOf(STREAM_META_MARKER);
+            if (markerAt >= 0) {
+                String visible = pending.substring(0, markerAt);
+                meta = new StringBuilder(pending.substring(markerAt + STREAM_META_MARKER.length()));
+                pending.setLength(0);
+                answer.append(visible);
+                return visible;
+            }
+            // 末尾与标记前缀重叠的部分先截留
+            int keep = overlapWithMarkerPrefix(pending);
+            String visible = pending.substring(0, pending.length() - keep);
+            pending.delete(0, pending.length() - keep);
+            answer.append(visible);
+            return visible;
+        }
+
+        String flush() {
+            String rest = pending.toString();
+            pending.setLength(0);
+            answer.append(rest);
+            return rest;
+        }
+
+        String getAnswer() {
+            return answer.toString().trim();
+        }
+
+        String getMeta() {
+            return meta == null ? null : meta.toString().trim();
+        }
+
+        private int overlapWithMarkerPrefix(CharSequence text) {
+            int max = Math.min(text.length(), STREAM_META_MARKER.length() - 1);
+            for (int len = max; len > 0; len--) {
+                boolean match = true;
+                for (int i = 0; i < len; i++) {
+                    if (text.charAt(text.length() - len + i) != STREAM_META_MARKER.charAt(i)) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    return len;
+                }
+            }
+            return 0;
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 定长向量的内存映射文件：第 slot 个向量位于 slot * dimension * 4 字节处。
+ * 按段映射（每段 SEGMENT_VECTORS 个向量），写满一段再映射下一段，文件随之增长；
+ * 读取直接在映射区上计算，不复制成对象，向量常驻 OS 页缓存而不是 Java 堆。
+ *
+ * 非线程安全：写入（含扩段）需要调用方加写锁，读取加读锁。
+ */
+class MappedVectorFile implements Closeable {
+
+    static final int SEGMENT_VECTORS = 4096;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final long segmentBytes;
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+
+    MappedVectorFile(Path path, int dimension) throws IOException {
+        this.dimension = dimension;
+        this.segmentBytes = (long) SEGMENT_VECTORS * dimension * Float.BYTES;
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existing = (channel.size() + segmentBytes - 1) / segmentBytes;
+        for (int i = 0; i < existing; i++) {
+            mapSegment(i);
+        }
+    }
+
+    void write(int slot, float[] vector) throws IOException {
+        int segment = slot / SEGMENT_VECTORS;
+        while (segments.size() <= segment) {
+            mapSegment(segments.size());
+        }
+        FloatBuffer fb = segments.get(segment);
+        int base = (slot % SEGMENT_VECTORS) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            fb.put(base + i, vector[i]);
+        }
+    }
+
+    float[] read(int slot) {
+        FloatBuffer fb = segments.get(slot / SEGMENT_VECTORS);
+        int base = (slot % SEGMENT_VECTORS) * dimension;
+        float[] v = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            v[i] = fb.get(base + i);
+        }
+        return v;
+    }
+
+    /**
+     * 第 slot 个向量与 query 的点积（向量已归一化时即余弦相似度）
+     */
+    float dot(int slot, float[] query) {
+        FloatBuffer fb = segments.get(slot / SEGMENT_VECTORS);
+        int base = (slot % SEGMENT_VECTORS) * dimension;
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += fb.get(base + i) * query[i];
+        }
+        return sum;
+    }
+
+    void force() {
+        for (MappedByteBuffer buffer : mapped) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void mapSegment(int index) throws IOException {
+        // 映射超出文件末尾时 FileChannel 会自动扩展文件
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, index * segmentBytes, segmentBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.add(buffer);
+        segments.add(buffer.asFloatBuffer());
+    }
+}
@@ -13,6 +13,11 @@ import java.util.List;
 public class MockLLMClient implements LLMClient {
 
 
+    @Override
+    public String complete(String systemPrompt, String userPrompt) {
+        return "这是一个 Mock 补全结果。";
+    }
+
     @Override
     public String chat(List<Message> context, String question) {
         // 简单示例：根据关键词返回固定回答
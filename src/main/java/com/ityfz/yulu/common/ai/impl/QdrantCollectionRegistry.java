@@ -0,0 +1,120 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Qdrant 集合元数据注册表（由 QdrantVectorStore 持有，所有调用方共用）。
+ *
+ * - 已知存在的集合直接命中内存，检索 / 索引前不再每次 listCollections
+ * - 未知集合最多每 missRefreshIntervalMs 重新拉取一次集合列表，避免空知识库的租户每轮对话都打一次 gRPC
+ * - 本实例创建 / 删除集合时同步更新；其他实例删除集合后，检索返回 NOT_FOUND 时由调用方 remove
+ * - 向量参数（维度、距离）按需通过 getCollectionInfo 加载一次
+ */
+@Slf4j
+public class QdrantCollectionRegistry {
+
+    private final QdrantClient client;
+    private final long missRefreshIntervalNanos;
+
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final Map<String, CollectionMeta> metas = new ConcurrentHashMap<>();
+    private final Object refreshLock = new Object();
+    private volatile long lastRefreshNanos;
+    private volatile boolean loaded;
+
+    public QdrantCollectionRegistry(QdrantClient client, long missRefreshIntervalMs) {
+        this.client = client;
+        this.missRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(missRefreshIntervalMs);
+    }
+
+    /**
+     * 集合是否存在。内存里没有时按刷新间隔重新拉取列表；拉取失败按不存在处理
+     */
+    public boolean exists(String collectionName) {
+        if (names.contains(collectionName)) {
+            return true;
+        }
+        refreshIfStale();
+        return names.contains(collectionName);
+    }
+
+    /**
+     * 集合的向量参数，集合不存在时返回 null
+     */
+    public CollectionMeta describe(String collectionName) {
+        if (!exists(collectionName)) {
+            return null;
+        }
+        return metas.computeIfAbsent(collectionName, this::loadMeta);
+    }
+
+    /**
+     * 本实例创建集合后登记
+     */
+    public void register(String collectionName, long vectorSize, Collections.Distance distance) {
+        names.add(collectionName);
+        metas.put(collectionName, new CollectionMeta(collectionName, vectorSize, distance));
+    }
+
+    /**
+     * 集合已被删除（本实例删除，或检索时发现不存在）
+     */
+    public void remove(String collectionName) {
+        names.remove(collectionName);
+        metas.remove(collectionName);
+    }
+
+    private void refreshIfStale() {
+        synchronized (refreshLock) {
+            if (loaded && System.nanoTime() - lastRefreshNanos < missRefreshIntervalNanos) {
+                return;
+            }
+            try {
+                List<String> current = client.listCollectionsAsync().get();
+                names.retainAll(current);
+                names.addAll(current);
+                metas.keySet().retainAll(current);
+                loaded = true;
+                log.debug("[Qdrant] 刷新集合列表: {}", current);
+            } catch (Exception e) {
+                log.warn("[Qdrant] 拉取集合列表失败: {}", e.getMessage());
+            } finally {
+                // 失败也记录时间，Qdrant 不可用时不至于每次检索都重试
+                lastRefreshNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private CollectionMeta loadMeta(String collectionName) {
+        try {
+            Collections.VectorParams params = client.getCollectionInfoAsync(collectionName).get()
+                    .getConfig().getParams().getVectorsConfig().getParams();
+            return new CollectionMeta(collectionName, params.getSize(), params.getDistance());
+        } catch (Exception e) {
+            throw new IllegalStateException("获取集合信息失败: " + collectionName, e);
+        }
+    }
+
+    /**
+     * 集合元数据
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class CollectionMeta {
+        private final String name;
+        private final long vectorSize;
+        private final Collections.Distance distance;
+    }
+}
@@ -1,6 +1,17 @@
 package com.ityfz.yulu.common.ai.impl;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.ityfz.yulu.common.ai.PayloadFieldType;
+import com.ityfz.yulu.common.ai.ScrollPage;
+import com.ityfz.yulu.common.ai.UpsertReport;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+import com.ityfz.yulu.common.ai.VectorStore;
 import com.ityfz.yulu.common.config.QdrantProperties;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.qdrant.client.QdrantClient;
 import io.qdrant.client.QdrantGrpcClient;
 import io.qdrant.client.grpc.Collections;
@@ -10,22 +21,31 @@ import io.qdrant.client.ValueFactory;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 
 /**
- * Qdrant 向量存储服务
+ * Qdrant 向量存储服务（默认实现，vector-store.type=qdrant）
  */
 @Slf4j
 @Service
-public class QdrantVectorStore {
+@ConditionalOnProperty(name = "vector-store.type", havingValue = "qdrant", matchIfMissing = true)
+public class QdrantVectorStore implements VectorStore {
+
+    // 单次 batchUpdate 请求最多携带的 payload 更新操作数
+    private static final int PAYLOAD_BATCH_SIZE = 256;
 
     private final QdrantProperties properties;
 
@@ -36,6 +56,12 @@ public class QdrantVectorStore {
     @Getter
     private QdrantClient client;
 
+    /**
+     * 集合元数据缓存，避免每次检索 / 索引前都 listCollections
+     */
+    @Getter
+    private QdrantCollectionRegistry collectionRegistry;
+
     @Autowired
     public QdrantVectorStore(QdrantProperties properties) {
         this.properties = properties;
@@ -60,6 +86,7 @@ public class QdrantVectorStore {
             client = new QdrantClient(grpcClientBuilder.build());
             // 测试连接：简单的健康检查
             client.healthCheckAsync().get();
+            collectionRegistry = new QdrantCollectionRegistry(client, properties.getCollectionRefreshIntervalMs());
             log.info("[Qdrant] 连接成功: {}:{}", properties.getHost(), properties.getGrpcPort());
         } catch (Exception e) {
             log.error("[Qdrant] 连接失败", e);
@@ -84,79 +111,216 @@ public class QdrantVectorStore {
      * @param collectionName 集合名字
      * @param vectorSize 向量维度
      */
+    @Override
     public void createCollection(String collectionName, int vectorSize) {
         try {
-            // 1. 检查集合是否存在
-            // 推荐方式：获取所有集合列表进行比对，避免处理异常
-            boolean exists = client.listCollectionsAsync().get().stream() //异步拉取当前 Qdrant 里 所有集合名。
-                    .anyMatch(c -> c.equals(collectionName)); //anyMatch(...)：看返回的列表里有没有同名集合
-
-            if (exists) {
-                log.info("[Qdrant] 集合已存在: {}", collectionName);
+            // 1. 检查集合是否存在（走注册表，已知集合不访问 Qdrant）
+            QdrantCollectionRegistry.CollectionMeta meta = collectionRegistry.describe(collectionName);
+            if (meta != null) {
+                if (meta.getVectorSize() != vectorSize) {
+                    throw new IllegalStateException("集合向量维度不一致: collection=" + collectionName
+                            + ", existing=" + meta.getVectorSize() + ", expected=" + vectorSize);
+                }
+                log.debug("[Qdrant] 集合已存在: {}", collectionName);
                 return;
             }
 
             // 2. 配置向量参数
-            Collections.VectorParams vectorParams = Collections.VectorParams.newBuilder()
+            Collections.VectorParams.Builder vectorParams = Collections.VectorParams.newBuilder()
                     .setSize(vectorSize) // // 维度
-                    .setDistance(Collections.Distance.Cosine) // 相似度算法：余弦
-                    .build();
+                    .setDistance(Collections.Distance.Cosine); // 相似度算法：余弦
+            QdrantProperties.Quantization quantization = properties.getQuantization();
+            if (quantization.isEnabled()) {
+                // int8 标量量化：量化向量常驻内存参与 HNSW 检索，原始 float32 向量只在重排时读取，可放磁盘
+                vectorParams.setQuantizationConfig(Collections.QuantizationConfig.newBuilder()
+                                .setScalar(Collections.ScalarQuantization.newBuilder()
+                                        .setType(Collections.QuantizationType.Int8)
+                                        .setQuantile(quantization.getQuantile())
+                                        .setAlwaysRam(quantization.isAlwaysRam())))
+                        .setOnDisk(quantization.isOriginalOnDisk());
+            }
 
             // 3. 创建集合
-            client.createCollectionAsync(collectionName, vectorParams).get();
-
-            log.info("[Qdrant] 集合创建成功: {}, dimension={}", collectionName, vectorSize);
+            try {
+                client.createCollectionAsync(collectionName, vectorParams.build()).get();
+                log.info("[Qdrant] 集合创建成功: {}, dimension={}, quantization={}",
+                        collectionName, vectorSize, quantization.isEnabled() ? "int8" : "none");
+            } catch (ExecutionException e) {
+                // 其他实例刚好同时创建
+                if (statusCode(e) != Status.Code.ALREADY_EXISTS) {
+                    throw e;
+                }
+                log.info("[Qdrant] 集合已由其他实例创建: {}", collectionName);
+            }
+            collectionRegistry.register(collectionName, vectorSize, Collections.Distance.Cosine);
+        } catch (IllegalStateException e) {
+            throw e;
         } catch (Exception e) {
             log.error("[Qdrant] 创建集合失败: {}", collectionName, e);
             throw new RuntimeException("创建集合失败", e);
         }
     }
 
+    /**
+     * 创建 payload 索引。Qdrant 对已存在的同类型索引直接返回成功，不会重建
+     */
+    @Override
+    public void createPayloadIndex(String collectionName, String fieldName, PayloadFieldType type) {
+        Collections.PayloadSchemaType schemaType = type == PayloadFieldType.INTEGER
+                ? Collections.PayloadSchemaType.Integer
+                : Collections.PayloadSchemaType.Keyword;
+        try {
+            client.createPayloadIndexAsync(collectionName, fieldName, schemaType, null, true, null, null).get();
+            log.info("[Qdrant] payload 索引就绪: collection={}, field={}, type={}", collectionName, fieldName, type);
+        } catch (Exception e) {
+            log.error("[Qdrant] 创建 payload 索引失败: collection={}, field={}", collectionName, fieldName, e);
+            throw new RuntimeException("创建 payload 索引失败: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * 插入/更新向量点
      * “给某条业务记录（已知主键）生成新向量后，一键更新到 Qdrant，保证后续搜索能立即看到最新语义。”
      */
-    public void upsertPoint(String collectionName, long pointId, List<Float> vector, Map<String, Object> payload) {
+    @Override
+    public void upsertPoint(String collectionName, long pointId, float[] vector, Map<String, Object> payload) {
         try {
-            // 1. 构建基础点结构
-            Points.PointStruct.Builder pointBuilder = Points.PointStruct.newBuilder()
-                    .setId(Points.PointId.newBuilder().setNum(pointId).build())
-                    .setVectors(Points.Vectors.newBuilder()
-                            .setVector(Points.Vector.newBuilder().addAllData(vector).build())
-                            .build());
-
-            // 2. 处理 Payload (元数据)
-            if (payload != null && !payload.isEmpty()) {
-                Map<String, JsonWithInt.Value> qdrantPayload = new HashMap<>();
-                for (Map.Entry<String, Object> entry : payload.entrySet()) {
-                    // 使用下方的辅助方法进行转换
-                    JsonWithInt.Value value = objectToValue(entry.getValue());
-                    if (value != null) {
-                        qdrantPayload.put(entry.getKey(), value);
-                    }
-                }
-                pointBuilder.putAllPayload(qdrantPayload);
-            }
-
-            // 3. 执行插入
-            client.upsertAsync(collectionName, List.of(pointBuilder.build())).get();
+            client.upsertAsync(collectionName, List.of(toPointStruct(new VectorPoint(pointId, vector, payload)))).get();
 
             log.debug("[Qdrant] 插入点成功: collection={}, pointId={}", collectionName, pointId);
         } catch (Exception e) {
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                // 集合已被删除，注册表里去掉，下次建集合时不再当作已存在
+                collectionRegistry.remove(collectionName);
+            }
             log.error("[Qdrant] 插入点失败: collection={}, pointId={}", collectionName, pointId, e);
             throw new RuntimeException("插入点失败", e);
         }
     }
 
+    /**
+     * 批量插入/更新向量点
+     * 1. 按 upsertBatchSize 切批，最多 upsertMaxInFlight 批同时在途（信号量限流，不会把 Qdrant 打满）
+     * 2. 整批失败时逐点重试，定位具体是哪些点写不进去；集合不存在时不逐点重试，整批记为失败并更新注册表
+     * 不抛异常，由调用方根据报告决定是否整体失败
+     */
+    @Override
+    public UpsertReport upsertPoints(String collectionName, List<VectorPoint> points) {
+        UpsertReport report = new UpsertReport(points.size());
+        long start = System.currentTimeMillis();
+        int batchSize = Math.max(1, properties.getUpsertBatchSize());
+        Semaphore inFlight = new Semaphore(Math.max(1, properties.getUpsertMaxInFlight()));
+
+        List<List<VectorPoint>> batches = new ArrayList<>();
+        List<ListenableFuture<Points.UpdateResult>> futures = new ArrayList<>();
+        try {
+            for (int from = 0; from < points.size(); from += batchSize) {
+                List<VectorPoint> batch = points.subList(from, Math.min(from + batchSize, points.size()));
+                List<Points.PointStruct> structs = batch.stream().map(this::toPointStruct).toList();
+                inFlight.acquire();
+                ListenableFuture<Points.UpdateResult> future;
+                try {
+                    future = client.upsertAsync(collectionName, structs);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                future.addListener(inFlight::release, MoreExecutors.directExecutor());
+                batches.add(batch);
+                futures.add(future);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("批量插入点被中断", e);
+        }
+
+        // 等待所有批次，失败的批次逐点重试
+        for (int i = 0; i < futures.size(); i++) {
+            List<VectorPoint> batch = batches.get(i);
+            try {
+                futures.get(i).get();
+                report.addSucceeded(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("批量插入点被中断", e);
+            } catch (ExecutionException e) {
+                if (statusCode(e) == Status.Code.NOT_FOUND) {
+                    // 集合已被删除（可能是其他实例），逐点重试也写不进去；注册表里去掉，下次建集合时不再当作已存在
+                    collectionRegistry.remove(collectionName);
+                    String reason = "集合不存在: " + collectionName;
+                    batch.forEach(p -> report.addFailure(p.getId(), reason));
+                    continue;
+                }
+                log.warn("[Qdrant] 批量插入失败，逐点重试: collection={}, batchSize={}, error={}",
+                        collectionName, batch.size(), rootMessage(e));
+                retryOneByOne(collectionName, batch, report);
+            }
+        }
+
+        report.setCostMs(System.currentTimeMillis() - start);
+        log.info("[Qdrant] 批量插入完成: collection={}, total={}, succeeded={}, failed={}, cost={}ms",
+                collectionName, report.getTotal(), report.getSucceeded(), report.getFailures().size(),
+                report.getCostMs());
+        return report;
+    }
+
+    private void retryOneByOne(String collectionName, List<VectorPoint> batch, UpsertReport report) {
+        for (VectorPoint point : batch) {
+            try {
+                client.upsertAsync(collectionName, List.of(toPointStruct(point))).get();
+                report.addSucceeded(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("批量插入点被中断", e);
+            } catch (Exception e) {
+                report.addFailure(point.getId(), rootMessage(e));
+            }
+        }
+    }
+
+    private Points.PointStruct toPointStruct(VectorPoint point) {
+        // 1. 构建基础点结构
+        Points.PointStruct.Builder pointBuilder = Points.PointStruct.newBuilder()
+                .setId(Points.PointId.newBuilder().setNum(point.getId()).build())
+                .setVectors(Points.Vectors.newBuilder()
+                        .setVector(toVector(point.getVector()))
+                        .build());
+
+        // 2. 处理 Payload (元数据)
+        Map<String, Object> payload = point.getPayload();
+        if (payload != null && !payload.isEmpty()) {
+            Map<String, JsonWithInt.Value> qdrantPayload = new HashMap<>();
+            for (Map.Entry<String, Object> entry : payload.entrySet()) {
+                // 使用下方的辅助方法进行转换
+                JsonWithInt.Value value = objectToValue(entry.getValue());
+                if (value != null) {
+                    qdrantPayload.put(entry.getKey(), value);
+                }
+            }
+            pointBuilder.putAllPayload(qdrantPayload);
+        }
+        return pointBuilder.build();
+    }
+
+    private String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+
 
     /**
      * 相似度搜索
      */
-    public List<Points.ScoredPoint> search(String collectionName, List<Float> queryVector, int topK, Points.Filter filter) {
+    @Override
+    public List<VectorSearchHit> search(String collectionName, float[] queryVector, int topK, VectorFilter filter,
+                                        boolean withVectors) {
         try {
 
             // 1. 先检查集合是否存在，不存在则返回空列表（兜底策略）
-            if (!collectionExists(collectionName)) {
+            if (!collectionRegistry.exists(collectionName)) {
                 log.warn("[Qdrant] 集合不存在，返回空结果: collection={}", collectionName);
                 return java.util.Collections.emptyList();
             }
@@ -164,13 +328,21 @@ public class QdrantVectorStore {
             // 2. 构建搜索请求
             Points.SearchPoints.Builder searchBuilder = Points.SearchPoints.newBuilder()
                     .setCollectionName(collectionName)
-                    .addAllVector(queryVector) // 把 List<Float> 一次性塞进去
                     .setLimit(topK) // 最多回多少条
                     .setWithPayload( // 要求把原始字段也带回来
                             Points.WithPayloadSelector.newBuilder().setEnable(true).build());
+            for (float v : queryVector) {
+                searchBuilder.addVector(v); // 逐个写入，避免装箱
+            }
+            if (properties.getQuantization().isEnabled()) {
+                searchBuilder.setParams(quantizedSearchParams());
+            }
+            if (withVectors) {
+                searchBuilder.setWithVectors(Points.WithVectorsSelector.newBuilder().setEnable(true).build());
+            }
 
-            if (filter != null) {
-                searchBuilder.setFilter(filter);
+            if (filter != null && !filter.isEmpty()) {
+                searchBuilder.setFilter(toQdrantFilter(filter));
             }
 
             // 3. 执行搜索
@@ -180,27 +352,259 @@ public class QdrantVectorStore {
             log.debug("[Qdrant] 搜索成功: collection={}, topK={}, resultCount={}",
                     collectionName, topK, results.size());
 
-            return results;
+            return results.stream().map(this::toHit).toList();
 
         } catch (Exception e) {
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                // 集合已被删除（可能是其他实例），更新注册表后按空结果处理
+                log.warn("[Qdrant] 集合不存在，返回空结果: collection={}", collectionName);
+                collectionRegistry.remove(collectionName);
+                return java.util.Collections.emptyList();
+            }
             log.error("[Qdrant] 搜索失败: collection={}", collectionName, e);
             throw new RuntimeException("搜索失败", e);
         }
     }
 
+    @Override
+    public ScrollPage scroll(String collectionName, VectorFilter filter, Long offset, int limit, boolean withVectors) {
+        if (!collectionRegistry.exists(collectionName)) {
+            return new ScrollPage(java.util.Collections.emptyList(), null);
+        }
+        Points.ScrollPoints.Builder builder = Points.ScrollPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setLimit(limit)
+                .setWithPayload(Points.WithPayloadSelector.newBuilder().setEnable(true).build())
+                .setWithVectors(Points.WithVectorsSelector.newBuilder().setEnable(withVectors).build());
+        if (filter != null && !filter.isEmpty()) {
+            builder.setFilter(toQdrantFilter(filter));
+        }
+        if (offset != null) {
+            builder.setOffset(Points.PointId.newBuilder().setNum(offset));
+        }
+        try {
+            Points.ScrollResponse response = client.scrollAsync(builder.build()).get();
+            List<VectorPoint> points = new ArrayList<>(response.getResultCount());
+            for (Points.RetrievedPoint p : response.getResultList()) {
+                float[] vector = p.hasVectors() && p.getVectors().hasVector()
+                        ? toArray(p.getVectors().getVector())
+                        : null;
+                points.add(new VectorPoint(p.getId().getNum(), vector, toPayload(p.getPayloadMap())));
+            }
+            Long next = response.hasNextPageOffset() ? response.getNextPageOffset().getNum() : null;
+            return new ScrollPage(points, next);
+        } catch (Exception e) {
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                collectionRegistry.remove(collectionName);
+                return new ScrollPage(java.util.Collections.emptyList(), null);
+            }
+            log.error("[Qdrant] 遍历点失败: collection={}, offset={}", collectionName, offset, e);
+            throw new RuntimeException("遍历点失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long count(String collectionName, VectorFilter filter) {
+        if (!collectionRegistry.exists(collectionName)) {
+            return 0;
+        }
+        try {
+            Points.Filter qdrantFilter = filter == null || filter.isEmpty() ? null : toQdrantFilter(filter);
+            return client.countAsync(collectionName, qdrantFilter, true).get();
+        } catch (Exception e) {
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                collectionRegistry.remove(collectionName);
+                return 0;
+            }
+            log.error("[Qdrant] 计数失败: collection={}, filter={}", collectionName, filter, e);
+            throw new RuntimeException("计数失败: " + e.getMessage(), e);
+        }
+    }
+
     /**
-     * 检查集合是否存在
-     * @param collectionName 集合名称
-     * @return 是否存在
+     * 批量更新 payload：每个点一个 SetPayload 操作，按批合并成一次 batchUpdate 请求
+     */
+    @Override
+    public void setPayload(String collectionName, Map<Long, Map<String, Object>> payloadsById) {
+        if (payloadsById.isEmpty() || !collectionRegistry.exists(collectionName)) {
+            return;
+        }
+        List<Points.PointsUpdateOperation> ops = new ArrayList<>(payloadsById.size());
+        for (Map.Entry<Long, Map<String, Object>> e : payloadsById.entrySet()) {
+            Map<String, JsonWithInt.Value> payload = new HashMap<>();
+            e.getValue().forEach((k, v) -> {
+                JsonWithInt.Value value = objectToValue(v);
+                if (value != null) {
+                    payload.put(k, value);
+                }
+            });
+            ops.add(Points.PointsUpdateOperation.newBuilder()
+                    .setSetPayload(Points.PointsUpdateOperation.SetPayload.newBuilder()
+                            .putAllPayload(payload)
+                            .setPointsSelector(Points.PointsSelector.newBuilder()
+                                    .setPoints(Points.PointsIdsList.newBuilder()
+                                            .addIds(Points.PointId.newBuilder().setNum(e.getKey())))))
+                    .build());
+        }
+        try {
+            for (int from = 0; from < ops.size(); from += PAYLOAD_BATCH_SIZE) {
+                client.batchUpdateAsync(collectionName,
+                        ops.subList(from, Math.min(from + PAYLOAD_BATCH_SIZE, ops.size()))).get();
+            }
+            log.debug("[Qdrant] 更新 payload: collection={}, points={}", collectionName, ops.size());
+        } catch (Exception e) {
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                collectionRegistry.remove(collectionName);
+                return;
+            }
+            log.error("[Qdrant] 更新 payload 失败: collection={}", collectionName, e);
+            throw new RuntimeException("更新 payload 失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按 ID 删除点
+     */
+    @Override
+    public void deletePoints(String collectionName, Collection<Long> pointIds) {
+        if (pointIds.isEmpty() || !collectionRegistry.exists(collectionName)) {
+            return;
+        }
+        List<Points.PointId> ids = pointIds.stream()
+                .map(id -> Points.PointId.newBuilder().setNum(id).build())
+                .toList();
+        try {
+            client.deleteAsync(collectionName, ids).get();
+            log.info("[Qdrant] 按 ID 删除点: collection={}, count={}", collectionName, ids.size());
+        } catch (Exception e) {
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                collectionRegistry.remove(collectionName);
+                return;
+            }
+            log.error("[Qdrant] 按 ID 删除点失败: collection={}", collectionName, e);
+            throw new RuntimeException("删除点失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按 payload 条件删除点
      */
-    private boolean collectionExists(String collectionName) {
+    @Override
+    public void deleteByFilter(String collectionName, VectorFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            // 防止误删整个集合
+            throw new IllegalArgumentException("删除条件不能为空");
+        }
+        if (!collectionRegistry.exists(collectionName)) {
+            return;
+        }
         try {
-            List<String> collections = client.listCollectionsAsync().get();
-            return collections.stream().anyMatch(c -> c.equals(collectionName));
+            client.deleteAsync(collectionName, toQdrantFilter(filter)).get();
+            log.info("[Qdrant] 按条件删除点: collection={}, filter={}", collectionName, filter);
         } catch (Exception e) {
-            log.warn("[Qdrant] 检查集合是否存在失败: collection={}", collectionName, e);
-            return false;
+            if (statusCode(e) == Status.Code.NOT_FOUND) {
+                collectionRegistry.remove(collectionName);
+                return;
+            }
+            log.error("[Qdrant] 按条件删除点失败: collection={}, filter={}", collectionName, filter, e);
+            throw new RuntimeException("删除点失败: " + e.getMessage(), e);
+        }
+    }
+
+    private Points.Filter toQdrantFilter(VectorFilter filter) {
+        Points.Filter.Builder builder = Points.Filter.newBuilder();
+        for (Map.Entry<String, Object> cond : filter.getMust().entrySet()) {
+            Object value = cond.getValue();
+            Points.Match.Builder match = Points.Match.newBuilder();
+            if (value instanceof Long) {
+                match.setInteger((Long) value); // 整型精确匹配
+            } else if (value instanceof Boolean) {
+                match.setBoolean((Boolean) value);
+            } else {
+                match.setKeyword(value.toString());
+            }
+            builder.addMust(Points.Condition.newBuilder()
+                    .setField(Points.FieldCondition.newBuilder().setKey(cond.getKey()).setMatch(match))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private VectorSearchHit toHit(Points.ScoredPoint p) {
+        Map<String, Object> payload = toPayload(p.getPayloadMap());
+        float[] vector = p.hasVectors() && p.getVectors().hasVector()
+                ? toArray(p.getVectors().getVector())
+                : null;
+        return new VectorSearchHit(p.getId().getNum(), p.getScore(), payload, vector);
+    }
+
+    private static Points.Vector toVector(float[] vector) {
+        Points.Vector.Builder builder = Points.Vector.newBuilder();
+        for (float v : vector) {
+            builder.addData(v);
+        }
+        return builder.build();
+    }
+
+    private static float[] toArray(Points.Vector vector) {
+        float[] v = new float[vector.getDataCount()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = vector.getData(i);
+        }
+        return v;
+    }
+
+    /**
+     * 量化集合的检索参数：先用 int8 向量召回 topK * oversampling 个候选，再用原始向量重算分数取 topK。
+     * 未开启量化的集合会忽略这些参数
+     */
+    Points.SearchParams quantizedSearchParams() {
+        QdrantProperties.Quantization quantization = properties.getQuantization();
+        return Points.SearchParams.newBuilder()
+                .setQuantization(Points.QuantizationSearchParams.newBuilder()
+                        .setRescore(quantization.isRescore())
+                        .setOversampling(quantization.getOversampling()))
+                .build();
+    }
+
+    private Map<String, Object> toPayload(Map<String, JsonWithInt.Value> raw) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonWithInt.Value> entry : raw.entrySet()) {
+            Object value = valueToObject(entry.getValue());
+            if (value != null) {
+                payload.put(entry.getKey(), value);
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * objectToValue 的逆过程，列表/对象类型本项目未使用，忽略
+     */
+    private Object valueToObject(JsonWithInt.Value v) {
+        JsonWithInt.Value.KindCase kindCase = v.getKindCase();
+        if (kindCase == JsonWithInt.Value.KindCase.INTEGER_VALUE) {
+            return v.getIntegerValue();
+        } else if (kindCase == JsonWithInt.Value.KindCase.DOUBLE_VALUE) {
+            return v.getDoubleValue();
+        } else if (kindCase == JsonWithInt.Value.KindCase.STRING_VALUE) {
+            return v.getStringValue();
+        } else if (kindCase == JsonWithInt.Value.KindCase.BOOL_VALUE) {
+            return v.getBoolValue();
+        }
+        return null;
+    }
+
+    /**
+     * 取出 gRPC 调用失败的状态码，非 gRPC 异常返回 null
+     */
+    private Status.Code statusCode(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof StatusRuntimeException) {
+                return ((StatusRuntimeException) t).getStatus().getCode();
+            }
         }
+        return null;
     }
 
     /**
@@ -253,9 +657,11 @@ public class QdrantVectorStore {
      *
      * @param collectionName 集合名称
      */
+    @Override
     public void deleteCollection(String collectionName) {
         try {
             client.deleteCollectionAsync(collectionName).get();
+            collectionRegistry.remove(collectionName);
             log.info("[Qdrant] 集合删除成功: {}", collectionName);
         } catch (Exception e) {
             log.error("[Qdrant] 删除集合失败: collection={}", collectionName, e);
@@ -23,6 +23,14 @@ public class QianWenClient implements LLMClient {
         this.restTemplate = new RestTemplate();
     }
 
+    /**
+     * 单轮补全：system + user 两条消息
+     */
+    @Override
+    public String complete(String systemPrompt, String userPrompt) {
+        return chat(List.of(new Message("system", systemPrompt), new Message("user", userPrompt)), userPrompt);
+    }
+
     /**
      * 多轮对话：把 Redis 里构造好的 messages 直接传给通义千问
      */
@@ -0,0 +1,31 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 语义答案缓存配置：同租户下相似问题直接复用之前的回答，跳过 LLM 调用
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.answer-cache")
+public class ChatAnswerCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 余弦相似度阈值，达到才算命中。设得太低会把不同问题的答案串用
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 每个租户最多缓存多少条，超过后淘汰最早写入的
+     */
+    private int maxEntriesPerTenant = 500;
+
+    /**
+     * 条目有效期（秒）
+     */
+    private long ttlSeconds = 1800;
+}
@@ -0,0 +1,53 @@
+package com.ityfz.yulu.common.config;
+
+import com.ityfz.yulu.common.tenant.ContextCopyingTaskDecorator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 对话相关的专用线程池（有界），与 Tomcat 请求线程、MQ 消费线程隔离
+ */
+@Configuration
+@RequiredArgsConstructor
+public class ChatExecutorConfig {
+
+    private final ChatPipelineProperties properties;
+    private final ChatSummaryProperties summaryProperties;
+
+    @Bean(name = "chatPipelineExecutor")
+    public ThreadPoolTaskExecutor chatPipelineExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getCorePoolSize());
+        executor.setMaxPoolSize(properties.getMaxPoolSize());
+        executor.setQueueCapacity(properties.getQueueCapacity());
+        executor.setThreadNamePrefix("chat-pipeline-");
+        // 租户/用户上下文透传到工作线程
+        executor.setTaskDecorator(new ContextCopyingTaskDecorator());
+        // 打满后由调用线程自己执行，相当于退化回串行，不丢任务
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 会话摘要线程池：打满时直接拒绝，本次摘要跳过，等下一轮对话再触发
+     */
+    @Bean(name = "chatSummaryExecutor")
+    public ThreadPoolTaskExecutor chatSummaryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(summaryProperties.getCorePoolSize());
+        executor.setMaxPoolSize(summaryProperties.getMaxPoolSize());
+        executor.setQueueCapacity(summaryProperties.getQueueCapacity());
+        executor.setThreadNamePrefix("chat-summary-");
+        executor.setTaskDecorator(new ContextCopyingTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
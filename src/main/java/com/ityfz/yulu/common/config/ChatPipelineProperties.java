@@ -0,0 +1,50 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话主流程（chatWithAi）调用模型前各阶段的并发执行配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.pipeline")
+public class ChatPipelineProperties {
+
+    /**
+     * 是否并发执行：用户消息落库 / Redis 上下文 / 会话摘要 / RAG 检索。
+     * 关闭时按原顺序串行执行。
+     */
+    private boolean parallelEnabled = true;
+
+    /**
+     * 线程池核心线程数
+     */
+    private int corePoolSize = 8;
+
+    /**
+     * 线程池最大线程数
+     */
+    private int maxPoolSize = 32;
+
+    /**
+     * 等待队列长度，队列满后由提交线程自己执行（退化为串行）
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * RAG 检索超时（毫秒），超时后本轮不做知识库增强
+     */
+    private long ragTimeoutMs = 3000;
+
+    /**
+     * Redis 上下文 / 摘要读取超时（毫秒），超时后按无历史上下文处理
+     */
+    private long contextTimeoutMs = 1000;
+
+    /**
+     * 用户消息落库超时（毫秒），超时视为本轮失败
+     */
+    private long persistTimeoutMs = 3000;
+}
@@ -0,0 +1,55 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话滚动摘要：被裁剪出上下文窗口的消息异步折叠进 chat:summary:{sessionId}
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.summary")
+public class ChatSummaryProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 待摘要消息积累到多少条时触发一次摘要
+     */
+    private int triggerCount = 6;
+
+    /**
+     * 单次 LLM 调用最多折叠多少条消息
+     */
+    private int batchSize = 20;
+
+    /**
+     * 一次任务最多连续折叠几批，剩余的等下次触发
+     */
+    private int maxRounds = 5;
+
+    /**
+     * 待摘要列表上限，摘要长期跟不上时丢弃最旧的
+     */
+    private int maxArchived = 200;
+
+    /**
+     * 摘要字数上限（写进提示词）
+     */
+    private int maxSummaryChars = 300;
+
+    /**
+     * 单会话摘要锁过期时间（秒），防止实例崩溃后锁不释放
+     */
+    private long lockTtlSeconds = 120;
+
+    /**
+     * 摘要线程池：LLM 调用耗时长，和对话主流程线程池隔离
+     */
+    private int corePoolSize = 2;
+
+    private int maxPoolSize = 4;
+
+    private int queueCapacity = 100;
+}
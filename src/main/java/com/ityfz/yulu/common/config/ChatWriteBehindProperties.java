@@ -0,0 +1,50 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * chat_message 异步批量写入（write-behind）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.write-behind")
+public class ChatWriteBehindProperties {
+
+    /**
+     * 是否开启。关闭时每条消息同步单行插入（原有行为）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 刷盘间隔（毫秒）
+     */
+    private long flushIntervalMs = 200;
+
+    /**
+     * 单条 INSERT 最多多少行；队列积压达到该值时立即触发一次刷盘
+     */
+    private int batchSize = 200;
+
+    /**
+     * 内存队列容量，满了之后退化为同步写入
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 批量写库失败后首次重试的等待时间（毫秒），之后每次翻倍
+     */
+    private long retryBackoffMs = 1000;
+
+    /**
+     * 重试等待时间上限（毫秒）
+     */
+    private long retryMaxBackoffMs = 60000;
+
+    /**
+     * 本地日志目录：入队的消息先追加到这里，写库成功后删除，进程崩溃后重启补写。
+     * 多实例部署时每个实例需要独立目录
+     */
+    private String walDir = "./data/chat-message-wal";
+}
@@ -0,0 +1,75 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 文档解析（Tika）配置：专用线程池、按文件类型的超时和正文长度上限
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.parse")
+public class DocumentParseProperties {
+
+    /**
+     * 解析线程数，0 表示取 CPU 核数。解析是 CPU 密集型，不宜超过核数
+     */
+    private int poolSize = 0;
+
+    /**
+     * 等待解析的任务数上限，满了直接拒绝
+     */
+    private int queueCapacity = 64;
+
+    /**
+     * 解析线程与调用方之间缓冲的正文段数（每段最多 8K 字符），调用方落库跟不上时解析线程阻塞等待
+     */
+    private int pipeCapacity = 16;
+
+    /**
+     * 默认解析超时（毫秒），从提交到解析结束，含排队时间
+     */
+    private long defaultTimeoutMs = 60_000;
+
+    /**
+     * 按文件类型（扩展名，小写）覆盖超时，如 pdf: 180000
+     */
+    private Map<String, Long> timeoutMs = new HashMap<>();
+
+    /**
+     * 默认正文字符数上限，超过视为异常文档（如解压炸弹）直接失败；-1 表示不限
+     */
+    private int defaultMaxChars = 20_000_000;
+
+    /**
+     * 按文件类型覆盖正文字符数上限
+     */
+    private Map<String, Integer> maxChars = new HashMap<>();
+
+    public long timeoutFor(String fileType) {
+        return timeoutMs.getOrDefault(normalize(fileType), defaultTimeoutMs);
+    }
+
+    public int maxCharsFor(String fileType) {
+        return maxChars.getOrDefault(normalize(fileType), defaultMaxChars);
+    }
+
+    public int resolvePoolSize() {
+        return poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 调用方可能传文件名或扩展名，统一取小写扩展名
+     */
+    private static String normalize(String fileType) {
+        if (fileType == null) {
+            return "";
+        }
+        int dot = fileType.lastIndexOf('.');
+        return (dot >= 0 ? fileType.substring(dot + 1) : fileType).toLowerCase();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 知识库导入、文档解析专用线程池，与对话线程池隔离，大文档导入不影响在线问答
+ */
+@Configuration
+@RequiredArgsConstructor
+public class KnowledgeExecutorConfig {
+
+    private final KnowledgeIngestProperties properties;
+    private final DocumentParseProperties parseProperties;
+    private final KnowledgeHybridProperties hybridProperties;
+
+    /**
+     * 导入任务线程：执行解析、切分，并消费向量化结果写入 Qdrant。
+     * 打满时拒绝，任务保持失败状态，由管理员重试
+     */
+    @Bean(name = "knowledgeIngestExecutor")
+    public ThreadPoolTaskExecutor knowledgeIngestExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getCorePoolSize());
+        executor.setMaxPoolSize(properties.getMaxPoolSize());
+        executor.setQueueCapacity(properties.getQueueCapacity());
+        executor.setThreadNamePrefix("knowledge-ingest-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 向量化线程：和任务线程一一对应，不设队列，任务线程数就是它的并发上限
+     */
+    @Bean(name = "knowledgeEmbedExecutor")
+    public ThreadPoolTaskExecutor knowledgeEmbedExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getCorePoolSize());
+        executor.setMaxPoolSize(properties.getMaxPoolSize());
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("knowledge-embed-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Tika 解析线程：按 CPU 核数固定大小，同步上传和异步导入共用，整机的解析并发不超过核数。
+     * 队列满时拒绝，由调用方返回"解析繁忙"
+     */
+    @Bean(name = "knowledgeParseExecutor")
+    public ThreadPoolTaskExecutor knowledgeParseExecutor() {
+        int size = parseProperties.resolvePoolSize();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(parseProperties.getQueueCapacity());
+        executor.setThreadNamePrefix("knowledge-parse-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 关键词索引构建线程：首次加载和定期重建都在这里全量读 chunk，对话线程只读现成的索引。
+     * 队列按常驻租户数设置，满了拒绝，下次检索或下个重建周期再试
+     */
+    @Bean(name = "knowledgeLexicalExecutor")
+    public ThreadPoolTaskExecutor knowledgeLexicalExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(Math.max(1, hybridProperties.getMaxTenants()));
+        executor.setThreadNamePrefix("knowledge-lexical-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,55 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 混合检索：向量检索 + BM25 关键词检索，按 RRF（倒数排名融合）合并
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.hybrid")
+public class KnowledgeHybridProperties {
+
+    /**
+     * 关闭时只做向量检索
+     */
+    private boolean enabled = true;
+
+    /**
+     * RRF 常数 k：融合分 = Σ 1 / (k + 名次)，越大越弱化头部名次的优势
+     */
+    private int rrfK = 60;
+
+    /**
+     * 每路召回 topK * candidateMultiplier 个候选再融合
+     */
+    private int candidateMultiplier = 3;
+
+    /**
+     * 关键词命中需覆盖的查询词权重（按 idf 加权）比例，过滤只命中常见词的片段
+     */
+    private double minTermCoverage = 0.5;
+
+    /**
+     * BM25 参数
+     */
+    private double k1 = 1.2;
+    private double b = 0.75;
+
+    /**
+     * 本地最多常驻多少个租户的关键词索引（按最近访问淘汰，淘汰后下次查询重建）
+     */
+    private int maxTenants = 200;
+
+    /**
+     * 租户索引重建间隔（秒）。本实例的写入实时增量生效，其他实例的写入最多延迟该时长可见
+     */
+    private long rebuildIntervalSeconds = 600;
+
+    /**
+     * 重建索引时每次从数据库读取的 chunk 数
+     */
+    private int loadPageSize = 1000;
+}
@@ -0,0 +1,68 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 文档异步导入流水线：解析 → 切分 → 向量化 → 写入 Qdrant → 标记已索引
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.ingest")
+public class KnowledgeIngestProperties {
+
+    /**
+     * 上传文件暂存目录，多实例部署时需要是共享存储
+     */
+    private String stagingDir = "./data/ingest";
+
+    /**
+     * 异步导入允许的最大文件（字节），默认 100MB
+     */
+    private long maxFileSize = 100L * 1024 * 1024;
+
+    /**
+     * 批量上传单次最多文件数，超出任务线程池队列的任务会直接失败，需与 queueCapacity 匹配
+     */
+    private int batchMaxFiles = 100;
+
+    /**
+     * 向量化/写入每批 chunk 数，也是断点续跑的粒度
+     */
+    private int batchSize = 64;
+
+    /**
+     * 向量化与写入之间的缓冲批次数，写入跟不上时向量化阻塞等待
+     */
+    private int stageQueueCapacity = 4;
+
+    /**
+     * 单个阶段（或单批）最多尝试次数
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 重试间隔（毫秒），第 n 次重试等待 n * retryBackoffMs
+     */
+    private long retryBackoffMs = 1000;
+
+    /**
+     * RUNNING 状态超过该时长未推进视为实例宕机中断，启动时或手动重试可接管
+     */
+    private long staleAfterSeconds = 300;
+
+    /**
+     * 启动时恢复排队中和中断的任务
+     */
+    private boolean resumeOnStartup = true;
+
+    /**
+     * 任务线程池：每个任务占一个线程，另有一个向量化线程
+     */
+    private int corePoolSize = 2;
+
+    private int maxPoolSize = 4;
+
+    private int queueCapacity = 100;
+}
@@ -0,0 +1,62 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prompt token 预算：按模型的上下文窗口，在系统提示词 / 会话摘要 / 对话历史 / RAG 资料之间分配
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.prompt-budget")
+public class PromptBudgetProperties {
+
+    /**
+     * 本地分词编码（o200k_base / cl100k_base）
+     */
+    private String encoding = "o200k_base";
+
+    /**
+     * 未在 modelContextWindows 中配置的模型使用的上下文窗口（token）
+     */
+    private int defaultContextWindow = 8000;
+
+    /**
+     * 各模型的上下文窗口（token），key 为模型名
+     */
+    private Map<String, Integer> modelContextWindows = new HashMap<>();
+
+    /**
+     * 给模型输出预留的 token 数
+     */
+    private int outputReserveTokens = 1500;
+
+    /**
+     * 系统提示词（含输出格式要求）预留的 token 数
+     */
+    private int systemReserveTokens = 300;
+
+    /**
+     * 会话摘要最多占用的 token 数
+     */
+    private int summaryMaxTokens = 500;
+
+    /**
+     * RAG 资料最多占用可用预算的比例
+     */
+    private double ragRatio = 0.5;
+
+    /**
+     * RAG 资料最多占用的 token 数
+     */
+    private int ragMaxTokens = 3000;
+
+    /**
+     * 单个检索片段最多占用的 token 数，超出截断
+     */
+    private int ragChunkMaxTokens = 350;
+}
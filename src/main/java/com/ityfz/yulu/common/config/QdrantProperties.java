@@ -36,4 +36,56 @@ public class QdrantProperties {
      */
     private String apiKey;
 
+    /**
+     * 未知集合重新拉取集合列表的最小间隔（毫秒），已知集合不受影响
+     */
+    private long collectionRefreshIntervalMs = 10000;
+
+    /**
+     * 批量写入时每批点数
+     */
+    private int upsertBatchSize = 256;
+
+    /**
+     * 批量写入时最多同时在途的批次数
+     */
+    private int upsertMaxInFlight = 4;
+
+    /**
+     * 标量量化（只对新建的集合生效）
+     */
+    private Quantization quantization = new Quantization();
+
+    @Data
+    public static class Quantization {
+        /**
+         * 是否开启 int8 标量量化，向量索引内存约降为原来的 1/4
+         */
+        private boolean enabled = false;
+
+        /**
+         * 计算量化区间时使用的分位数，排除极端值
+         */
+        private float quantile = 0.99f;
+
+        /**
+         * 量化向量是否常驻内存
+         */
+        private boolean alwaysRam = true;
+
+        /**
+         * 原始 float32 向量是否放磁盘（只在重排时读取）
+         */
+        private boolean originalOnDisk = true;
+
+        /**
+         * 检索时是否用原始向量重算分数
+         */
+        private boolean rescore = true;
+
+        /**
+         * 量化检索的候选放大倍数，重排后取 topK
+         */
+        private double oversampling = 2.0;
+    }
 }
@@ -0,0 +1,44 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * RAG 上下文拼装前的检索结果整理：相邻片段合并 + MMR 去冗余
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.context")
+public class RagContextProperties {
+
+    /**
+     * 同一文档 chunk_index 相邻的片段合并为一段，并去掉切分时的重叠文本
+     */
+    private boolean mergeAdjacent = true;
+
+    /**
+     * 合并后单段最大字符数，超过则另起一段
+     */
+    private int maxMergedChars = 1500;
+
+    /**
+     * 查找重叠文本时最多比较的字符数（应不小于 rag.chunk.overlap）
+     */
+    private int maxOverlapChars = 200;
+
+    /**
+     * 按 MMR（最大边际相关）挑选片段，避免多个片段讲同一件事
+     */
+    private boolean mmrEnabled = true;
+
+    /**
+     * MMR 权衡系数：1 只看相关度，越小越强调与已选片段的差异
+     */
+    private double mmrLambda = 0.7;
+
+    /**
+     * 检索时召回 topK * candidateMultiplier 个候选，整理后再取 topK 段
+     */
+    private int candidateMultiplier = 2;
+}
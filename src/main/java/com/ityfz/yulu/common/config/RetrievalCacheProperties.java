@@ -0,0 +1,27 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 检索结果缓存：相同（归一化后）问题在知识库未变更时直接复用上次的检索结果，不再查 Qdrant
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.retrieval-cache")
+public class RetrievalCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 本地缓存容量上限（MB，按片段正文和向量大小估算）。
+     * 带片段向量的结果一条可达上百 KB，按条数限制不可靠
+     */
+    private int maxSizeMb = 64;
+
+    /**
+     * 条目有效期（秒）。知识库变更靠代数号失效，这里只兜底检索配置调整等其他变化
+     */
+    private long ttlSeconds = 600;
+}
@@ -0,0 +1,58 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 租户运行时配置：本地缓存参数 + 未单独配置时的系统默认值
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "tenant.settings")
+public class TenantSettingsProperties {
+
+    /**
+     * 本地缓存有效期（秒）。修改配置时会通过 Redis 广播失效，TTL 只是兜底
+     */
+    private long cacheTtlSeconds = 300;
+
+    /**
+     * 本地缓存最多租户数
+     */
+    private long cacheMaxSize = 10000;
+
+    private Defaults defaults = new Defaults();
+
+    @Data
+    public static class Defaults {
+
+        private int contextCharLimit = 4000;
+
+        /**
+         * 为 null 表示不按 token 限制
+         */
+        private Integer contextTokenLimit;
+
+        private int ragTopK = 8;
+
+        /**
+         * 为 null 表示按问题长度/知识库规模动态计算
+         */
+        private Double ragMinScore;
+
+        /**
+         * 为 null 表示使用 ai.qianwen.model
+         */
+        private String llmModel;
+
+        private Long llmTimeoutMs;
+
+        /**
+         * 为 null 表示使用 chat.pipeline.rag-timeout-ms
+         */
+        private Long ragTimeoutMs;
+
+        private int avgHandoffSeconds = 30;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ityfz.yulu.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 向量存储选择：qdrant（独立服务，默认）/ embedded（进程内 HNSW）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "vector-store")
+public class VectorStoreProperties {
+
+    private String type = "qdrant";
+
+    /**
+     * 知识库片段所在集合：共享布局下所有租户共用该集合，独立布局下为 {collection}_t{tenantId}
+     */
+    private String collection = "yulu_chunks";
+
+    /**
+     * 新租户的集合布局：shared（共用集合，按 tenant_id 索引分区）/ per-tenant（每个租户一个集合）。
+     * 租户第一次写入向量时固定所在集合（已在共享集合里有数据的租户固定为共享集合），
+     * 之后修改本配置不会移动已有租户，已有租户切换布局需走迁移
+     */
+    private String layout = "shared";
+
+    /**
+     * 布局迁移每次遍历/写入的点数
+     */
+    private int migrationBatchSize = 256;
+
+    /**
+     * 迁移切换集合后，等待其他实例收到缓存失效广播、在途写入落地的时间（毫秒），之后再补齐增量
+     */
+    private long migrationSwitchGraceMs = 5000;
+
+    private Embedded embedded = new Embedded();
+
+    /**
+     * 进程内 HNSW 配置，适合小租户和测试环境（单实例，数据量建议十万级以内）
+     */
+    @Data
+    public static class Embedded {
+
+        /**
+         * 数据目录：每个集合一个 .vec（内存映射的向量）和一个 .meta（图结构 + payload 快照）
+         */
+        private String dataDir = "./data/vector-store";
+
+        /**
+         * 每个节点的邻居数（第 0 层为 2M），越大召回越高、内存和写入开销越大
+         */
+        private int m = 16;
+
+        /**
+         * 建图时的候选集大小
+         */
+        private int efConstruction = 200;
+
+        /**
+         * 检索时的候选集大小（至少为 topK）
+         */
+        private int efSearch = 64;
+
+        /**
+         * 过滤后候选点不超过该数量时直接精确计算，小租户不走图
+         */
+        private int bruteForceThreshold = 1000;
+
+        /**
+         * 图结构快照的落盘间隔（毫秒），0 表示每次写入后立即落盘。
+         * 进程崩溃会丢失最近一个间隔内的写入，需重建索引
+         */
+        private long flushIntervalMs = 1000;
+    }
+}
@@ -35,4 +35,11 @@ public final class ErrorCodes {
     // 业务 - 工单
     public static final String TICKET_NOT_FOUND = "TICKET_NOT_FOUND";
     public static final String TICKET_STATUS_INVALID = "TICKET_STATUS_INVALID";
+
+    // 业务 - 知识库
+    public static final String INGEST_JOB_NOT_FOUND = "INGEST_JOB_NOT_FOUND";
+    public static final String INGEST_JOB_STATUS_INVALID = "INGEST_JOB_STATUS_INVALID";
+    public static final String INGEST_QUEUE_FULL = "INGEST_QUEUE_FULL";
+    public static final String DOCUMENT_PARSE_BUSY = "DOCUMENT_PARSE_BUSY";
+    public static final String VECTOR_MIGRATION_RUNNING = "VECTOR_MIGRATION_RUNNING";
 }
@@ -0,0 +1,42 @@
+package com.ityfz.yulu.common.tenant;
+
+import com.ityfz.yulu.common.security.JwtUtil.LoginUser;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 线程池任务装饰器：提交任务时抓取当前线程的租户/用户上下文，在工作线程中执行前恢复、执行后清理。
+ * 多租户插件依赖 TenantContextHolder，异步执行的 DB 操作必须经过它，否则 SQL 会缺少 tenant_id 条件。
+ */
+public class ContextCopyingTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        Long tenantId = TenantContextHolder.getTenantId();
+        String tenantCode = TenantContextHolder.getTenantCode();
+        LoginUser user = UserContextHolder.getUser();
+        return () -> {
+            // CallerRunsPolicy 下任务可能直接在提交线程执行，执行完要恢复原来的上下文而不是清空
+            Long previousTenantId = TenantContextHolder.getTenantId();
+            String previousTenantCode = TenantContextHolder.getTenantCode();
+            LoginUser previousUser = UserContextHolder.getUser();
+            TenantContextHolder.setTenantId(tenantId);
+            TenantContextHolder.setTenantCode(tenantCode);
+            UserContextHolder.setUser(user);
+            try {
+                runnable.run();
+            } finally {
+                if (previousTenantId == null && previousTenantCode == null) {
+                    TenantContextHolder.clear();
+                } else {
+                    TenantContextHolder.setTenantId(previousTenantId);
+                    TenantContextHolder.setTenantCode(previousTenantCode);
+                }
+                if (previousUser == null) {
+                    UserContextHolder.clear();
+                } else {
+                    UserContextHolder.setUser(previousUser);
+                }
+            }
+        };
+    }
+}
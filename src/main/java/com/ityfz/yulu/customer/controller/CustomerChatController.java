@@ -8,6 +8,7 @@ import com.ityfz.yulu.chat.entity.ChatMessage;
 import com.ityfz.yulu.chat.entity.ChatSession;
 import com.ityfz.yulu.chat.mapper.ChatSessionMapper;
 import com.ityfz.yulu.chat.service.ChatService;
+import com.ityfz.yulu.chat.service.ChatStreamListener;
 import com.ityfz.yulu.common.annotation.RequireRole;
 import com.ityfz.yulu.common.enums.ErrorCodes;
 import com.ityfz.yulu.common.exception.BizException;
@@ -15,13 +16,22 @@ import com.ityfz.yulu.common.model.ApiResponse;
 import com.ityfz.yulu.common.tenant.TenantContextHolder;
 import com.ityfz.yulu.common.tenant.UserContextHolder;
 import io.swagger.v3.oas.annotations.Operation;
+import com.ityfz.yulu.knowledge.dto.RagRefDTO;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/customer/chat")
 @RequireRole({"USER","ADMIN"})
@@ -29,6 +39,9 @@ import java.util.List;
 @Tag(name = "C端-聊天（Customer/Chat）", description = "客户聊天：会话、消息、RAG增强问答、转人工")
 public class CustomerChatController {
 
+    // 流式回答的最长等待时间，与模型超时保持一致并留出落库余量
+    private static final long STREAM_TIMEOUT_MS = 90_000L;
+
     private final ChatService chatService;
     private final ChatSessionMapper chatSessionMapper;
 
@@ -54,6 +67,85 @@ public class CustomerChatController {
         return ApiResponse.success("OK", res);
     }
 
+    /**
+     * 发送消息给AI（流式版本，SSE）
+     * POST /api/customer/chat/ask/stream
+     * 事件顺序：start（sessionId + refs）→ token（增量回答，多次）→ done（与 /ask 相同的 data）；失败时推送 error
+     */
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "发送消息给AI（流式）", description = "SSE 流式返回：先推送 start（会话ID与RAG引用），再逐段推送 token，结束时推送 done（AI 消息 + refs）")
+    public SseEmitter askStream(@RequestBody ChatAskRequest req) {
+        Long tenantId = TenantContextHolder.getTenantId();
+        Long userId = UserContextHolder.getUserId();
+
+        if (tenantId == null) {
+            throw new BizException(ErrorCodes.TENANT_REQUIRED, "缺少租户信息，请先登录");
+        }
+        if (userId == null) {
+            throw new BizException(ErrorCodes.UNAUTHORIZED, "缺少用户信息，请先登录");
+        }
+
+        // 先把 SSE 连接返回给客户端，准备阶段和模型调用都在对话线程池里进行
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        // 客户端断开 / 连接超时后不再推送，但服务端仍会把完整回答落库
+        AtomicBoolean closed = new AtomicBoolean(false);
+        emitter.onTimeout(() -> {
+            log.warn("[Chat] SSE 连接超时: sessionId={}, timeoutMs={}", req.getSessionId(), STREAM_TIMEOUT_MS);
+            if (closed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(() -> closed.set(true));
+        emitter.onError(e -> closed.set(true));
+        chatService.chatWithAiStream(req.getSessionId(), userId, tenantId, req.getQuestion(), new ChatStreamListener() {
+
+            @Override
+            public void onStart(Long sessionId, List<RagRefDTO> refs) {
+                Map<String, Object> data = new HashMap<>();
+                data.put("sessionId", sessionId);
+                data.put("refs", refs);
+                send("start", data);
+            }
+
+            @Override
+            public void onToken(String token) {
+                send("token", Map.of("content", token));
+            }
+
+            @Override
+            public void onComplete(ChatAskResponse response) {
+                send("done", ApiResponse.success("OK", response));
+                if (closed.compareAndSet(false, true)) {
+                    emitter.complete();
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // 业务异常（会话不存在、无权访问等，由 chatWithAiStream 的归属校验抛出）把原因告诉前端，其余统一提示
+                send("error", error instanceof BizException biz
+                        ? ApiResponse.fail(biz.getCode(), biz.getMessage())
+                        : ApiResponse.fail(ErrorCodes.SYSTEM_ERROR, "回答生成失败，请稍后重试"));
+                if (closed.compareAndSet(false, true)) {
+                    emitter.complete();
+                }
+            }
+
+            private void send(String event, Object data) {
+                if (closed.get()) {
+                    return;
+                }
+                try {
+                    emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    closed.set(true);
+                    log.debug("[Chat] SSE 客户端已断开: event={}, error={}", event, e.getMessage());
+                }
+            }
+        });
+        return emitter;
+    }
+
     /**
      * 查看当前用户的历史消息
      * GET /api/customer/chat/messages/{sessionId}
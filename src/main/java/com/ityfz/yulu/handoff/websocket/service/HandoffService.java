@@ -6,6 +6,7 @@ import com.ityfz.yulu.chat.entity.ChatMessage;
 import com.ityfz.yulu.chat.entity.ChatSession;
 import com.ityfz.yulu.chat.mapper.ChatMessageMapper;
 import com.ityfz.yulu.chat.mapper.ChatSessionMapper;
+import com.ityfz.yulu.chat.service.ChatMessageWriter;
 import com.ityfz.yulu.common.enums.ErrorCodes;
 import com.ityfz.yulu.common.exception.BizException;
 import com.ityfz.yulu.handoff.dto.*;
@@ -25,6 +26,7 @@ import com.ityfz.yulu.ticket.enums.TicketStatus;
 import com.ityfz.yulu.ticket.mapper.TicketMapper;
 import com.ityfz.yulu.ticket.service.TicketService;
 import com.ityfz.yulu.user.service.AgentStatusService;
+import com.ityfz.yulu.user.service.TenantConfigService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
@@ -57,7 +59,9 @@ public class HandoffService {
     private final HandoffQueueService queueService;
     private final CustomerWebSocketHandler customerHandler;
     private final ChatMessageMapper chatMessageMapper;
+    private final ChatMessageWriter chatMessageWriter;
     private final HandoffRatingService handoffRatingService;
+    private final TenantConfigService tenantConfigService;
 
 
 
@@ -232,15 +236,15 @@ public class HandoffService {
         systemMessage.setSenderType("SYSTEM"); // 需要一个 SYSTEM 类型
         systemMessage.setContent(content);
         // 如果你的 createTime 是自动填充的，这里就不需要手动设置
-        chatMessageMapper.insert(systemMessage);
+        chatMessageWriter.save(systemMessage);
     }
 
     /**
      * 计算预计等待时间（秒）
      */
     private int calculateEstimatedWaitTime(Long tenantId, int queuePosition) {
-        // TODO: 简化处理：假设每个请求平均处理时间30秒
-        int avgProcessTime = 30;
+        // 每个请求的平均处理时间按租户配置（默认 30 秒）
+        int avgProcessTime = tenantConfigService.getSettings(tenantId).getAvgHandoffSeconds();
         return queuePosition * avgProcessTime;
     }
 
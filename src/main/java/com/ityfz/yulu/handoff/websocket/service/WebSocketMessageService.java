@@ -2,8 +2,8 @@ package com.ityfz.yulu.handoff.websocket.service;
 
 import com.ityfz.yulu.chat.entity.ChatMessage;
 import com.ityfz.yulu.chat.entity.ChatSession;
-import com.ityfz.yulu.chat.mapper.ChatMessageMapper;
 import com.ityfz.yulu.chat.mapper.ChatSessionMapper;
+import com.ityfz.yulu.chat.service.ChatMessageWriter;
 import com.ityfz.yulu.common.enums.ErrorCodes;
 import com.ityfz.yulu.common.exception.BizException;
 import com.ityfz.yulu.handoff.dto.WebSocketMessage;
@@ -27,18 +27,18 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 public class WebSocketMessageService {
 
     private final ChatSessionMapper chatSessionMapper;
-    private final ChatMessageMapper chatMessageMapper;
+    private final ChatMessageWriter chatMessageWriter;
     private final CustomerWebSocketHandler customerHandler;
     private final AgentWebSocketHandler agentHandler;
 
     public WebSocketMessageService(ChatSessionMapper chatSessionMapper,
-                                   ChatMessageMapper chatMessageMapper,
+                                   ChatMessageWriter chatMessageWriter,
                                    @Lazy CustomerWebSocketHandler customerHandler, //添加 @Lazy
                                    @Lazy AgentWebSocketHandler agentHandler) {
                         // 它告诉 Spring：“现在不要立即创建这个 Bean，
                         // 先创建一个它的代理对象给我。等到我第一次真正要使用它的时候，你再把它完全创建出来。”
         this.chatSessionMapper = chatSessionMapper;
-        this.chatMessageMapper = chatMessageMapper;
+        this.chatMessageWriter = chatMessageWriter;
         this.customerHandler = customerHandler;
         this.agentHandler = agentHandler;
     }
@@ -77,13 +77,13 @@ public class WebSocketMessageService {
             chatMessage.setSenderType("USER");
             chatMessage.setContent(content);
             chatMessage.setCreateTime(LocalDateTime.now());
-            chatMessageMapper.insert(chatMessage);
+            chatMessageWriter.save(chatMessage);
 
             // 转发到客服
             WebSocketMessage forwardMessage = WebSocketMessage.builder()
                     .type("TEXT")
                     .payload(Map.of(
-                            "messageId", chatMessage.getId(),
+                            "messageId", String.valueOf(chatMessage.getId()),
                             "sessionId", sessionId,
                             "content", content,
                             "senderType", "USER"
@@ -188,13 +188,13 @@ public class WebSocketMessageService {
             chatMessage.setSenderType("AGENT");
             chatMessage.setContent(content);
             chatMessage.setCreateTime(LocalDateTime.now());
-            chatMessageMapper.insert(chatMessage);
+            chatMessageWriter.save(chatMessage);
 
             // 转发给客户
             WebSocketMessage forwardMessage = WebSocketMessage.builder()
                     .type("TEXT")
                     .payload(Map.of(
-                            "messageId", chatMessage.getId(),
+                            "messageId", String.valueOf(chatMessage.getId()),
                             "sessionId", sessionId,
                             "content", content,
                             "senderType", "AGENT"
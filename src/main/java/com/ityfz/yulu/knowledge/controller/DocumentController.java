@@ -7,6 +7,7 @@ import com.ityfz.yulu.common.model.ApiResponse;
 import com.ityfz.yulu.common.security.SecurityUtil;
 import com.ityfz.yulu.knowledge.dto.DocumentDetailResponse;
 import com.ityfz.yulu.knowledge.dto.DocumentListItemResponse;
+import com.ityfz.yulu.knowledge.dto.DocumentUpdateResponse;
 import com.ityfz.yulu.knowledge.entity.Chunk;
 import com.ityfz.yulu.knowledge.entity.Document;
 import com.ityfz.yulu.knowledge.service.ChunkService;
@@ -111,12 +112,30 @@ public class DocumentController {
         return ApiResponse.success(r);
     }
 
+    /**
+     * 更新文档内容
+     */
+    @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @RequireRole("ADMIN")
+    @Operation(summary = "更新文档内容", description = "上传新文件或新文本，按片段内容哈希增量同步：只有新增/变化的片段重新向量化，已索引文档自动增量重建索引")
+    public ApiResponse<DocumentUpdateResponse> update(@PathVariable("id") Long id,
+                                                      @RequestPart(value = "file", required = false) MultipartFile file,
+                                                      @Parameter(description = "文本内容（未上传文件时使用）") @RequestParam(value = "content", required = false) String content,
+                                                      @Parameter(description = "新标题（可选）") @RequestParam(value = "title", required = false) String title,
+                                                      @Parameter(description = "新来源（可选）") @RequestParam(value = "source", required = false) String source) {
+        Long tenantId = SecurityUtil.currentTenantId();
+        if (tenantId == null) {
+            throw new BizException(ErrorCodes.TENANT_REQUIRED, "缺少租户信息，请先登录");
+        }
+        return ApiResponse.success(documentService.updateDocument(id, tenantId, title, file, content, source));
+    }
+
     /**
      * 删除文档
      */
     @DeleteMapping("/{id}")
     @RequireRole("ADMIN")
-    @Operation(summary = "删除文档", description = "删除文档（以及相关数据，按后端 service 实现）")
+    @Operation(summary = "删除文档", description = "删除文档、关联的 chunk 以及向量库中的点")
     public ApiResponse<Void> delete(@PathVariable("id") Long id) {
         Long tenantId = SecurityUtil.currentTenantId();
         if (tenantId == null) {
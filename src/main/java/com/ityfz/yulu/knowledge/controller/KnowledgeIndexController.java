@@ -1,15 +1,24 @@
 package com.ityfz.yulu.knowledge.controller;
 
+import com.ityfz.yulu.common.annotation.RequireRole;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
 import com.ityfz.yulu.common.model.ApiResponse;
 import com.ityfz.yulu.common.security.SecurityUtil;
+import com.ityfz.yulu.knowledge.dto.VectorMigrationResponse;
+import com.ityfz.yulu.knowledge.enums.VectorLayout;
 import com.ityfz.yulu.knowledge.service.ChunkIndexService;
+import com.ityfz.yulu.knowledge.service.VectorCollectionRouter;
+import com.ityfz.yulu.knowledge.service.VectorLayoutMigrationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 
@@ -23,13 +32,41 @@ import org.springframework.web.bind.annotation.RestController;
 public class KnowledgeIndexController {
 
     private final ChunkIndexService chunkIndexService;
+    private final VectorCollectionRouter collectionRouter;
+    private final VectorLayoutMigrationService migrationService;
 
     @PostMapping("/document/{documentId}/index")
-    @Operation(summary = "索引文档", description = "对指定文档进行 chunk 切分、向量化、写入 Qdrant，并更新文档索引状态")
+    @Operation(summary = "索引文档", description = "对指定文档的 chunk 向量化、写入 Qdrant，并更新文档索引状态；已有向量的 chunk 不重复向量化")
     public ApiResponse<Void> index(@PathVariable Long documentId) {
         Long tenantId = SecurityUtil.currentTenantId();
         chunkIndexService.indexDocument(tenantId, documentId);
         return ApiResponse.success();
     }
 
+    @PostMapping("/document/{documentId}/reindex")
+    @Operation(summary = "重建文档索引", description = "删除文档在 Qdrant 中的全部向量后全量重新向量化，用于清理残留的点或更换 embedding 模型后")
+    public ApiResponse<Void> reindex(@PathVariable Long documentId) {
+        Long tenantId = SecurityUtil.currentTenantId();
+        chunkIndexService.rebuildDocumentIndex(tenantId, documentId);
+        return ApiResponse.success();
+    }
+
+    @GetMapping("/vector-layout")
+    @Operation(summary = "查看向量集合", description = "当前租户的知识库向量所在的 Qdrant 集合")
+    public ApiResponse<String> vectorLayout() {
+        return ApiResponse.success(collectionRouter.collectionFor(SecurityUtil.currentTenantId()));
+    }
+
+    @PostMapping("/vector-layout")
+    @RequireRole("ADMIN")
+    @Operation(summary = "迁移向量布局", description = "把当前租户的向量迁移到共享集合（shared）或独立集合（per-tenant），迁移期间检索不中断，耗时与向量数成正比")
+    public ApiResponse<VectorMigrationResponse> migrateVectorLayout(
+            @Parameter(description = "目标布局：shared / per-tenant") @RequestParam("layout") String layout) {
+        VectorLayout target = VectorLayout.fromCode(layout);
+        if (target == null) {
+            throw new BizException(ErrorCodes.PARAM_INVALID, "不支持的布局: " + layout);
+        }
+        return ApiResponse.success(migrationService.migrateTenant(SecurityUtil.currentTenantId(), target));
+    }
+
 }
@@ -0,0 +1,100 @@
+package com.ityfz.yulu.knowledge.controller;
+
+import com.ityfz.yulu.common.annotation.RequireRole;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.common.model.ApiResponse;
+import com.ityfz.yulu.common.security.SecurityUtil;
+import com.ityfz.yulu.knowledge.dto.IngestJobResponse;
+import com.ityfz.yulu.knowledge.entity.IngestJob;
+import com.ityfz.yulu.knowledge.service.IngestionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+/**
+ * 文档异步导入接口：上传 / 建索引立即返回任务，前端轮询任务进度
+ */
+@RestController
+@RequestMapping("/api/admin/knowledge")
+@RequiredArgsConstructor
+@RequireRole("ADMIN")
+@Tag(name = "知识库-导入（Knowledge/Ingest）", description = "异步导入：解析、切分、向量化、写入 Qdrant 在后台分阶段执行，支持进度查询和断点重试")
+public class KnowledgeIngestController {
+
+    private final IngestionService ingestionService;
+
+    @PostMapping(value = "/ingest", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "异步上传并索引文档", description = "文件暂存后立即返回导入任务，适合大文件；解析完成前文档内容为空")
+    public ApiResponse<IngestJobResponse> ingest(@RequestPart("file") MultipartFile file,
+                                                 @Parameter(description = "文档标题（可选）") @RequestParam(value = "title", required = false) String title,
+                                                 @Parameter(description = "来源（可选）") @RequestParam(value = "source", required = false) String source) {
+        IngestJob job = ingestionService.submitUpload(requireTenant(), title, file, source);
+        return ApiResponse.success(toResponse(job));
+    }
+
+    @PostMapping(value = "/ingest/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "批量异步上传并索引文档", description = "每个文件一个导入任务，标题取文件名，后台并行解析；单个文件失败不影响其他文件")
+    public ApiResponse<List<IngestJobResponse>> ingestBatch(@RequestPart("files") List<MultipartFile> files,
+                                                            @Parameter(description = "来源（可选）") @RequestParam(value = "source", required = false) String source) {
+        List<IngestJob> jobs = ingestionService.submitUploads(requireTenant(), files, source);
+        return ApiResponse.success(jobs.stream().map(this::toResponse).toList());
+    }
+
+    @PostMapping("/document/{documentId}/index/async")
+    @Operation(summary = "异步索引已上传的文档", description = "同一文档已有进行中的任务时返回该任务")
+    public ApiResponse<IngestJobResponse> indexAsync(@PathVariable Long documentId) {
+        IngestJob job = ingestionService.submitIndex(requireTenant(), documentId);
+        return ApiResponse.success(toResponse(job));
+    }
+
+    @GetMapping("/ingest/jobs/{jobId}")
+    @Operation(summary = "查询导入进度", description = "返回当前阶段、已完成批次和失败原因")
+    public ApiResponse<IngestJobResponse> job(@PathVariable Long jobId) {
+        IngestJob job = ingestionService.getJob(requireTenant(), jobId);
+        return ApiResponse.success("查询成功", toResponse(job));
+    }
+
+    @PostMapping("/ingest/jobs/{jobId}/retry")
+    @Operation(summary = "重试导入任务", description = "从失败的阶段和最后完成的批次继续，已写入的批次不重做")
+    public ApiResponse<IngestJobResponse> retry(@PathVariable Long jobId) {
+        IngestJob job = ingestionService.retry(requireTenant(), jobId);
+        return ApiResponse.success(toResponse(job));
+    }
+
+    private Long requireTenant() {
+        Long tenantId = SecurityUtil.currentTenantId();
+        if (tenantId == null) {
+            throw new BizException(ErrorCodes.TENANT_REQUIRED, "缺少租户信息，请先登录");
+        }
+        return tenantId;
+    }
+
+    private IngestJobResponse toResponse(IngestJob job) {
+        IngestJobResponse r = new IngestJobResponse();
+        r.setJobId(job.getId());
+        r.setDocumentId(job.getDocumentId());
+        r.setFileName(job.getFileName());
+        r.setStatus(job.getStatus());
+        r.setStage(job.getStage());
+        r.setTotalChunks(job.getTotalChunks());
+        r.setIndexedChunks(job.getIndexedChunks());
+        r.setTotalBatches(job.getTotalBatches());
+        r.setCompletedBatches(job.getCompletedBatches());
+        int total = job.getTotalBatches() == null ? 0 : job.getTotalBatches();
+        int done = job.getCompletedBatches() == null ? 0 : job.getCompletedBatches();
+        r.setProgress(total == 0 ? 0 : Math.min(100, done * 100 / total));
+        r.setRetryCount(job.getRetryCount());
+        r.setErrorMessage(job.getErrorMessage());
+        r.setCreateTime(job.getCreateTime());
+        r.setUpdateTime(job.getUpdateTime());
+        r.setFinishTime(job.getFinishTime());
+        return r;
+    }
+}
@@ -31,9 +31,11 @@ public class KnowledgeSearchController {
     public ApiResponse<List<RetrievalResultDTO>> search(
             @Parameter(description = "检索问题/关键词") @RequestParam("q") String q,
             @Parameter(description = "返回条数") @RequestParam(value = "topK", defaultValue = "10") Integer topK,
-            @Parameter(description = "最小相似度阈值") @RequestParam(value = "minScore", defaultValue = "0.35") Double minScore
+            @Parameter(description = "最小相似度阈值") @RequestParam(value = "minScore", defaultValue = "0.35") Double minScore,
+            @Parameter(description = "跳过检索结果缓存，直接查询向量库（调试检索效果时用）")
+            @RequestParam(value = "bypassCache", defaultValue = "false") Boolean bypassCache
     ){
         Long tenantId = SecurityUtil.currentTenantId();
-        return ApiResponse.success(knowledgeSearchService.search(tenantId, q, topK, minScore));
+        return ApiResponse.success(knowledgeSearchService.search(tenantId, q, topK, minScore, Boolean.TRUE.equals(bypassCache)));
     }
 }
@@ -0,0 +1,55 @@
+package com.ityfz.yulu.knowledge.dto;
+
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文档重新切分后与已有 chunk 的同步结果
+ */
+@Data
+public class ChunkSyncResult {
+
+    /**
+     * 同步后文档的全部 chunk（按序号），沿用的 chunk 保留原 ID 和 qdrantPointId。
+     * 流式同步不保留，只有 total
+     */
+    private List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * 同步后文档的 chunk 总数
+     */
+    private int total;
+
+    /**
+     * 规范化后的正文长度
+     */
+    private long contentLength;
+
+    /**
+     * 规范化后正文的开头（rag.document.content-max-chars），文件导入时文档表只保存这一段
+     */
+    private String contentHead;
+
+    /**
+     * 新增的 chunk 数（需要向量化）
+     */
+    private int added;
+
+    /**
+     * 内容未变、沿用的 chunk 数
+     */
+    private int reused;
+
+    /**
+     * 删除的 chunk 数
+     */
+    private int removed;
+
+    /**
+     * 已删除 chunk 在向量库中的点，由调用方删除（导入任务在同一事务内删除，失败时连同 chunk 同步一起回滚）
+     */
+    private List<Long> removedPointIds = new ArrayList<>();
+}
@@ -0,0 +1,59 @@
+package com.ityfz.yulu.knowledge.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 文档解析线程池的运行指标
+ */
+@Data
+@Builder
+public class DocumentParseStats {
+
+    private int poolSize;
+
+    /**
+     * 正在解析的任务数
+     */
+    private int active;
+
+    /**
+     * 排队等待解析的任务数
+     */
+    private int queued;
+
+    /**
+     * 累计解析成功的文档数
+     */
+    private long succeeded;
+
+    /**
+     * 累计解析失败的文档数（不含超时和拒绝）
+     */
+    private long failed;
+
+    /**
+     * 累计超时的文档数
+     */
+    private long timedOut;
+
+    /**
+     * 线程池已满被拒绝的次数
+     */
+    private long rejected;
+
+    /**
+     * 累计输出的正文字符数（仅成功的文档）
+     */
+    private long chars;
+
+    /**
+     * 成功文档的平均耗时（毫秒，含排队）
+     */
+    private long avgCostMs;
+
+    /**
+     * 成功文档的吞吐：每秒解析的字符数
+     */
+    private long charsPerSecond;
+}
@@ -0,0 +1,29 @@
+package com.ityfz.yulu.knowledge.dto;
+
+import lombok.Data;
+
+/**
+ * 文档内容更新结果：增量同步了多少片段
+ */
+@Data
+public class DocumentUpdateResponse {
+
+    private Long documentId;
+    private Integer totalChunks;
+
+    /**
+     * 新增/内容变化的片段，需要重新向量化
+     */
+    private Integer addedChunks;
+
+    /**
+     * 内容未变、沿用原向量的片段
+     */
+    private Integer reusedChunks;
+    private Integer removedChunks;
+
+    /**
+     * 文档原本已索引时会立即增量重建索引，该字段表示是否成功
+     */
+    private Boolean reindexed;
+}
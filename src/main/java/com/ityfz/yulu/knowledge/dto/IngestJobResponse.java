@@ -0,0 +1,32 @@
+package com.ityfz.yulu.knowledge.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文档导入任务进度
+ */
+@Data
+public class IngestJobResponse {
+
+    private Long jobId;
+    private Long documentId;
+    private String fileName;
+    private String status;
+    private String stage;
+    private Integer totalChunks;
+    private Integer indexedChunks;
+    private Integer totalBatches;
+    private Integer completedBatches;
+    /**
+     * 向量化写入进度（0-100），切分完成前为 0
+     */
+    private Integer progress;
+    private Integer retryCount;
+    private String errorMessage;
+    private LocalDateTime createTime;
+    private LocalDateTime updateTime;
+    private LocalDateTime finishTime;
+
+}
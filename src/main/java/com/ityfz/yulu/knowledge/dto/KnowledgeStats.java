@@ -0,0 +1,29 @@
+package com.ityfz.yulu.knowledge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 租户知识库统计
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnowledgeStats {
+
+    /**
+     * 已索引（已写入向量库）的 chunk 数
+     */
+    private long chunkCount;
+
+    /**
+     * 文档数（含未索引的）
+     */
+    private long documentCount;
+
+    /**
+     * 最近一次索引完成时间（毫秒时间戳），从未索引过为 0
+     */
+    private long lastIndexTime;
+}
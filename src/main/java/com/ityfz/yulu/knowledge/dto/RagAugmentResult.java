@@ -26,6 +26,11 @@ public class RagAugmentResult {
      * 本轮检索到的引用，可随回答一并返回前端展示。
      */
     private List<RagRefDTO> refs;
+
+    /**
+     * 本轮问题的向量（检索时已计算），供语义答案缓存复用；未做检索时为 null。
+     */
+    private float[] queryVector;
 }
 
 
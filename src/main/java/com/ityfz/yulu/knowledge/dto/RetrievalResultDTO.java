@@ -1,15 +1,17 @@
 package com.ityfz.yulu.knowledge.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+
 /**
  * 检索返回结构
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class RetrievalResultDTO {
@@ -21,6 +23,32 @@ public class RetrievalResultDTO {
     private String source;
     private String fileType;
     private String chunkText;
+
+    /**
+     * 向量相似度；只被关键词检索命中时为空
+     */
     private Double score;
 
+    /**
+     * BM25 分数；未被关键词检索命中时为空
+     */
+    private Double lexicalScore;
+
+    /**
+     * RRF 融合分，混合检索结果按它排序
+     */
+    private Double fusedScore;
+
+    /**
+     * 片段向量，仅在检索时要求带回时有值，供 MMR 计算片段间相似度，不对外输出
+     */
+    @JsonIgnore
+    private float[] vector;
+
+    /**
+     * 相邻合并后本段包含的原始片段数，未经合并时为空（按 1 段计），拼装 Prompt 时按它放宽单段截断上限
+     */
+    @JsonIgnore
+    private Integer mergedChunks;
+
 }
@@ -0,0 +1,41 @@
+package com.ityfz.yulu.knowledge.dto;
+
+import lombok.Data;
+
+/**
+ * 租户向量布局迁移结果
+ */
+@Data
+public class VectorMigrationResponse {
+
+    private Long tenantId;
+    private String sourceCollection;
+    private String targetCollection;
+
+    /**
+     * 源集合与目标集合相同时为 false，不做任何操作
+     */
+    private Boolean migrated;
+
+    /**
+     * 第一轮全量复制的点数
+     */
+    private Long copiedPoints;
+
+    /**
+     * 切换后补齐的点数（复制期间新写入源集合的点）
+     */
+    private Long caughtUpPoints;
+
+    /**
+     * 从目标集合删掉的点数（复制期间已在源集合删除的点）
+     */
+    private Long removedStalePoints;
+
+    /**
+     * DB 中标记已索引、但两个集合里都找不到向量的 chunk 数，不为 0 时需重建相关文档索引
+     */
+    private Long missingPoints;
+
+    private Long costMs;
+}
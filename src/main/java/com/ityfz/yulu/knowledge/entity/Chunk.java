@@ -44,6 +44,11 @@ public class Chunk {
      */
     private Integer contentLength;
 
+    /**
+     * 内容哈希（SHA-256），增量索引时判断片段是否变化
+     */
+    private String contentHash;
+
     /**
      * Qdrant 中的 Point ID
      */
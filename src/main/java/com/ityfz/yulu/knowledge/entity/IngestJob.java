@@ -0,0 +1,83 @@
+package com.ityfz.yulu.knowledge.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文档导入任务实体
+ */
+@Data
+@TableName("knowledge_ingest_job")
+public class IngestJob {
+
+    /**
+     * 任务ID（主键）
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 租户ID
+     */
+    private Long tenantId;
+
+    /**
+     * 文档ID
+     */
+    private Long documentId;
+
+    /**
+     * 任务状态：PENDING, RUNNING, SUCCESS, FAILED
+     */
+    private String status;
+
+    /**
+     * 当前阶段：PARSE, CHUNK, EMBED, UPSERT, FINALIZE, DONE（失败时为出错的阶段）
+     */
+    private String stage;
+
+    /**
+     * 上传文件暂存路径（对已有文档建索引的任务为空）
+     */
+    private String filePath;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件类型（txt/pdf/docx/md等）
+     */
+    private String fileType;
+
+    /**
+     * 向量化/写入每批 chunk 数
+     */
+    private Integer batchSize;
+
+    private Integer totalChunks;
+
+    private Integer totalBatches;
+
+    /**
+     * 已写入完成的批次数，续跑时从这一批开始
+     */
+    private Integer completedBatches;
+
+    private Integer indexedChunks;
+
+    private Integer retryCount;
+
+    private String errorMessage;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+
+    private LocalDateTime finishTime;
+}
@@ -0,0 +1,43 @@
+package com.ityfz.yulu.knowledge.enums;
+
+/**
+ * 文档导入任务状态
+ */
+public enum IngestJobStatus {
+
+    /**
+     * 已创建，等待线程池执行（或等待重试/恢复）
+     */
+    PENDING("PENDING", "排队中"),
+
+    /**
+     * 执行中
+     */
+    RUNNING("RUNNING", "执行中"),
+
+    /**
+     * 全部阶段完成，文档已索引
+     */
+    SUCCESS("SUCCESS", "已完成"),
+
+    /**
+     * 某个阶段重试耗尽，可通过重试接口从失败处继续
+     */
+    FAILED("FAILED", "失败");
+
+    private final String code;
+    private final String desc;
+
+    IngestJobStatus(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ityfz.yulu.knowledge.enums;
+
+/**
+ * 文档导入阶段，按声明顺序依次执行
+ */
+public enum IngestStage {
+
+    /**
+     * 解析暂存文件，提取纯文本写入 knowledge_document.content
+     */
+    PARSE("PARSE", "解析"),
+
+    /**
+     * 切分并保存 chunk
+     */
+    CHUNK("CHUNK", "切分"),
+
+    /**
+     * 按批向量化
+     */
+    EMBED("EMBED", "向量化"),
+
+    /**
+     * 按批写入 Qdrant 并回写 qdrant_point_id
+     */
+    UPSERT("UPSERT", "写入向量库"),
+
+    /**
+     * 标记文档已索引、通知知识库变更
+     */
+    FINALIZE("FINALIZE", "完成索引"),
+
+    /**
+     * 全部完成
+     */
+    DONE("DONE", "已完成");
+
+    private final String code;
+    private final String desc;
+
+    IngestStage(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    /**
+     * 根据code获取枚举
+     */
+    public static IngestStage fromCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        for (IngestStage stage : values()) {
+            if (stage.code.equalsIgnoreCase(code)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+}
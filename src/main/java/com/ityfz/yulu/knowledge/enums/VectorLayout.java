@@ -0,0 +1,48 @@
+package com.ityfz.yulu.knowledge.enums;
+
+/**
+ * 知识库向量集合布局
+ */
+public enum VectorLayout {
+
+    /**
+     * 所有租户共用一个集合，按 tenant_id payload 索引分区
+     */
+    SHARED("shared", "共享集合"),
+
+    /**
+     * 每个租户一个集合，适合大租户：检索不受其他租户数据量影响，删除租户可直接删集合
+     */
+    PER_TENANT("per-tenant", "独立集合");
+
+    private final String code;
+    private final String desc;
+
+    VectorLayout(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    /**
+     * 根据code获取枚举
+     */
+    public static VectorLayout fromCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        for (VectorLayout layout : values()) {
+            if (layout.code.equalsIgnoreCase(code) || layout.name().equalsIgnoreCase(code)) {
+                return layout;
+            }
+        }
+        return null;
+    }
+}
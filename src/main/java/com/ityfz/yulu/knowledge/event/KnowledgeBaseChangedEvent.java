@@ -0,0 +1,25 @@
+package com.ityfz.yulu.knowledge.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 租户知识库内容变更事件（文档索引完成 / 内容更新 / 文档删除），进程内 Spring 事件。
+ * 依赖知识库内容的缓存监听它做失效。
+ */
+@Data
+@AllArgsConstructor
+public class KnowledgeBaseChangedEvent {
+
+    private Long tenantId;
+
+    /**
+     * 触发变更的文档
+     */
+    private Long documentId;
+
+    /**
+     * INDEXED / UPDATED / DELETED
+     */
+    private String reason;
+}
@@ -0,0 +1,48 @@
+package com.ityfz.yulu.knowledge.job;
+
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KnowledgeStatsJobHandler {
+
+    private final KnowledgeStatsService knowledgeStatsService;
+
+    /**
+     * 知识库统计对账（建议每小时）：从数据库重新统计，修正增量更新丢失（Redis 故障、进程在提交后崩溃）造成的偏差
+     * 任务参数：为空或 * 表示所有有文档的租户，也可指定 tenantId,tenantId...
+     */
+    @XxlJob("knowledgeStatsReconcile")
+    public void knowledgeStatsReconcile() {
+        String param = XxlJobHelper.getJobParam();
+        String spec = param == null ? "" : param.trim();
+        if (spec.isEmpty() || "*".equals(spec)) {
+            int tenants = knowledgeStatsService.reconcileAll();
+            XxlJobHelper.log("[KnowledgeStatsJob] 对账完成: tenants={}", tenants);
+            return;
+        }
+        int failed = 0;
+        for (String s : spec.split(",")) {
+            if (s.isBlank()) {
+                continue;
+            }
+            try {
+                XxlJobHelper.log("[KnowledgeStatsJob] 租户对账完成: tenantId={}, stats={}",
+                        s.trim(), knowledgeStatsService.reconcile(Long.valueOf(s.trim())));
+            } catch (Exception e) {
+                failed++;
+                XxlJobHelper.log("[KnowledgeStatsJob] 租户对账失败: tenantId={}, error={}", s.trim(), e.getMessage());
+                log.error("[KnowledgeStatsJob] 租户对账失败: tenantId={}", s.trim(), e);
+            }
+        }
+        if (failed > 0) {
+            XxlJobHelper.handleFail("有 " + failed + " 个租户对账失败，可重新执行");
+        }
+    }
+}
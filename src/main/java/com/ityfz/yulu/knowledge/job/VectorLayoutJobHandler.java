@@ -0,0 +1,79 @@
+package com.ityfz.yulu.knowledge.job;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ityfz.yulu.knowledge.dto.VectorMigrationResponse;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.enums.VectorLayout;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.service.VectorLayoutMigrationService;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VectorLayoutJobHandler {
+
+    private final VectorLayoutMigrationService migrationService;
+    private final DocumentMapper documentMapper;
+
+    /**
+     * 批量迁移租户向量布局（手动触发）
+     * 任务参数：{layout}:{tenantId,tenantId...}，例如 per-tenant:1001,1002；tenantId 写 * 表示所有有文档的租户
+     */
+    @XxlJob("vectorLayoutMigrate")
+    public void vectorLayoutMigrate() {
+        String param = XxlJobHelper.getJobParam();
+        String[] parts = param == null ? new String[0] : param.trim().split(":", 2);
+        VectorLayout target = parts.length == 2 ? VectorLayout.fromCode(parts[0].trim()) : null;
+        if (target == null) {
+            XxlJobHelper.handleFail("参数格式应为 {shared|per-tenant}:{tenantId,...|*}，实际: " + param);
+            return;
+        }
+        List<Long> tenantIds = parseTenants(parts[1].trim());
+        XxlJobHelper.log("[VectorLayoutJob] 开始迁移: target={}, tenants={}", target.getCode(), tenantIds.size());
+
+        int migrated = 0;
+        int failed = 0;
+        for (Long tenantId : tenantIds) {
+            try {
+                VectorMigrationResponse result = migrationService.migrateTenant(tenantId, target);
+                if (Boolean.TRUE.equals(result.getMigrated())) {
+                    migrated++;
+                }
+                XxlJobHelper.log("[VectorLayoutJob] 租户迁移完成: {}", result);
+            } catch (Exception e) {
+                failed++;
+                XxlJobHelper.log("[VectorLayoutJob] 租户迁移失败: tenantId={}, error={}", tenantId, e.getMessage());
+                log.error("[VectorLayoutJob] 租户迁移失败: tenantId={}", tenantId, e);
+            }
+        }
+        XxlJobHelper.log("[VectorLayoutJob] 结束: migrated={}, failed={}", migrated, failed);
+        if (failed > 0) {
+            XxlJobHelper.handleFail("有 " + failed + " 个租户迁移失败，可重新执行");
+        }
+    }
+
+    private List<Long> parseTenants(String spec) {
+        List<Long> tenantIds = new ArrayList<>();
+        if ("*".equals(spec)) {
+            // knowledge_document 不在多租户插件的表列表里，这里查询的是全部租户
+            for (Object id : documentMapper.selectObjs(new QueryWrapper<Document>().select("DISTINCT tenant_id"))) {
+                tenantIds.add(((Number) id).longValue());
+            }
+            return tenantIds;
+        }
+        for (String s : spec.split(",")) {
+            if (!s.isBlank()) {
+                tenantIds.add(Long.valueOf(s.trim()));
+            }
+        }
+        return tenantIds;
+    }
+}
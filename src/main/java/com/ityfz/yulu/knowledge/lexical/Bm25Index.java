@@ -0,0 +1,258 @@
+package com.ityfz.yulu.knowledge.lexical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个租户的 BM25 倒排索引（内存）。
+ *
+ * chunk 按写入顺序分配槽位，倒排表记录 (槽位, 词频)；删除只打标记，
+ * 标记超过四分之一时整体压缩一次。读写锁保护，检索可并发。
+ */
+public class Bm25Index {
+
+    private static final int COMPACT_MIN_DELETED = 256;
+
+    private final double k1;
+    private final double b;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] chunkIds = new long[64];
+    private long[] documentIds = new long[64];
+    private int[] lengths = new int[64];
+    private int size;
+    private BitSet deleted = new BitSet();
+    private int deletedCount;
+    private long totalLength;
+    private final Map<Long, Integer> slotByChunk = new HashMap<>();
+    private Map<String, Postings> postings = new HashMap<>();
+
+    public Bm25Index(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * 写入一个 chunk，chunkId 已存在时覆盖
+     */
+    public void add(long chunkId, long documentId, String content) {
+        List<String> tokens = CjkBigramTokenizer.tokenize(content);
+        Map<String, Integer> tf = new HashMap<>();
+        for (String token : tokens) {
+            tf.merge(token, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            Integer old = slotByChunk.get(chunkId);
+            if (old != null) {
+                markDeleted(old);
+            }
+            if (tokens.isEmpty()) {
+                return;
+            }
+            ensureCapacity(size + 1);
+            int slot = size++;
+            chunkIds[slot] = chunkId;
+            documentIds[slot] = documentId;
+            lengths[slot] = tokens.size();
+            totalLength += tokens.size();
+            slotByChunk.put(chunkId, slot);
+            tf.forEach((term, count) -> postings.computeIfAbsent(term, t -> new Postings()).add(slot, count));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档的全部 chunk，返回删除数量
+     */
+    public int removeDocument(long documentId) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int slot = 0; slot < size; slot++) {
+                if (documentIds[slot] == documentId && !deleted.get(slot)) {
+                    markDeleted(slot);
+                    removed++;
+                }
+            }
+            if (deletedCount >= COMPACT_MIN_DELETED && deletedCount * 4 > size) {
+                compact();
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 检索
+     *
+     * @param minCoverage 命中词的 idf 之和占查询词 idf 之和的最低比例（只算语料中出现过的查询词）
+     */
+    public List<LexicalHit> search(String query, int topK, double minCoverage) {
+        Set<String> terms = new LinkedHashSet<>(CjkBigramTokenizer.tokenize(query));
+        if (terms.isEmpty() || topK <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            int live = size - deletedCount;
+            if (live == 0) {
+                return Collections.emptyList();
+            }
+            double avgLength = (double) totalLength / live;
+            float[] scores = new float[size];
+            float[] matched = new float[size];
+            double totalWeight = 0;
+
+            for (String term : terms) {
+                Postings p = postings.get(term);
+                if (p == null) {
+                    continue;
+                }
+                int df = p.liveCount(deleted);
+                if (df == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (live - df + 0.5) / (df + 0.5));
+                totalWeight += idf;
+                for (int i = 0; i < p.size; i++) {
+                    int slot = p.slots[i];
+                    if (deleted.get(slot)) {
+                        continue;
+                    }
+                    int tf = p.tfs[i];
+                    double norm = k1 * (1 - b + b * lengths[slot] / avgLength);
+                    scores[slot] += (float) (idf * tf * (k1 + 1) / (tf + norm));
+                    matched[slot] += (float) idf;
+                }
+            }
+            if (totalWeight == 0) {
+                return Collections.emptyList();
+            }
+
+            PriorityQueue<Integer> heap = new PriorityQueue<>(topK + 1, (x, y) -> Float.compare(scores[x], scores[y]));
+            for (int slot = 0; slot < size; slot++) {
+                if (scores[slot] <= 0 || matched[slot] < minCoverage * totalWeight) {
+                    continue;
+                }
+                heap.offer(slot);
+                if (heap.size() > topK) {
+                    heap.poll();
+                }
+            }
+            List<LexicalHit> hits = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                int slot = heap.poll();
+                hits.add(new LexicalHit(chunkIds[slot], documentIds[slot], scores[slot]));
+            }
+            Collections.reverse(hits);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int liveCount() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void markDeleted(int slot) {
+        deleted.set(slot);
+        deletedCount++;
+        totalLength -= lengths[slot];
+        slotByChunk.remove(chunkIds[slot]);
+    }
+
+    /**
+     * 去掉已删除槽位，重排槽位号并重写倒排表
+     */
+    private void compact() {
+        int[] remap = new int[size];
+        int next = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (deleted.get(slot)) {
+                remap[slot] = -1;
+                continue;
+            }
+            remap[slot] = next;
+            chunkIds[next] = chunkIds[slot];
+            documentIds[next] = documentIds[slot];
+            lengths[next] = lengths[slot];
+            slotByChunk.put(chunkIds[next], next);
+            next++;
+        }
+        Map<String, Postings> compacted = new HashMap<>(postings.size());
+        postings.forEach((term, p) -> {
+            Postings q = new Postings();
+            for (int i = 0; i < p.size; i++) {
+                int slot = remap[p.slots[i]];
+                if (slot >= 0) {
+                    q.add(slot, p.tfs[i]);
+                }
+            }
+            if (q.size > 0) {
+                compacted.put(term, q);
+            }
+        });
+        postings = compacted;
+        size = next;
+        deleted = new BitSet();
+        deletedCount = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= chunkIds.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, chunkIds.length * 2);
+        chunkIds = Arrays.copyOf(chunkIds, newLength);
+        documentIds = Arrays.copyOf(documentIds, newLength);
+        lengths = Arrays.copyOf(lengths, newLength);
+    }
+
+    /**
+     * 一个词的倒排表：槽位和词频两个平行数组
+     */
+    private static class Postings {
+        private int[] slots = new int[4];
+        private int[] tfs = new int[4];
+        private int size;
+
+        void add(int slot, int tf) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            slots[size] = slot;
+            tfs[size] = tf;
+            size++;
+        }
+
+        int liveCount(BitSet deleted) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!deleted.get(slots[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
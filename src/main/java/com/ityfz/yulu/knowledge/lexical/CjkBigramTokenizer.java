@@ -0,0 +1,102 @@
+package com.ityfz.yulu.knowledge.lexical;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 关键词检索分词：不依赖词典，中日韩文字按二元组（bigram）切分，字母数字按整词切分。
+ *
+ * 例："订单ORD-2024-001怎么退货" → 订单, ord-2024-001, ord, 2024, 001, 怎么, 么退, 退货
+ * 含 - _ . 的编号既保留整体（精确匹配订单号/型号），也拆出各段（部分匹配）。
+ * 索引和查询必须使用同一套切分。
+ */
+public final class CjkBigramTokenizer {
+
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private CjkBigramTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int cp = text.codePointAt(i);
+            if (isCjk(cp)) {
+                int start = i;
+                while (i < n && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitBigrams(text.substring(start, i), tokens);
+            } else if (Character.isLetterOrDigit(cp)) {
+                int start = i;
+                while (i < n) {
+                    int c = text.codePointAt(i);
+                    if (Character.isLetterOrDigit(c) && !isCjk(c)) {
+                        i += Character.charCount(c);
+                    } else if (isJoiner(c) && i + 1 < n && isWordChar(text.codePointAt(i + 1))) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                emitWord(text.substring(start, i).toLowerCase(), tokens);
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return tokens;
+    }
+
+    private static void emitBigrams(String run, List<String> tokens) {
+        int[] cps = run.codePoints().toArray();
+        if (cps.length == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int k = 0; k + 1 < cps.length; k++) {
+            tokens.add(new String(cps, k, 2));
+        }
+    }
+
+    private static void emitWord(String word, List<String> tokens) {
+        if (word.length() > MAX_TOKEN_LENGTH) {
+            word = word.substring(0, MAX_TOKEN_LENGTH);
+        }
+        tokens.add(word);
+        boolean compound = false;
+        for (int k = 0; k < word.length(); k++) {
+            if (isJoiner(word.charAt(k))) {
+                compound = true;
+                break;
+            }
+        }
+        if (compound) {
+            for (String part : word.split("[-_.]")) {
+                if (!part.isEmpty()) {
+                    tokens.add(part);
+                }
+            }
+        }
+    }
+
+    private static boolean isWordChar(int cp) {
+        return Character.isLetterOrDigit(cp) && !isCjk(cp);
+    }
+
+    private static boolean isJoiner(int cp) {
+        return cp == '-' || cp == '_' || cp == '.';
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
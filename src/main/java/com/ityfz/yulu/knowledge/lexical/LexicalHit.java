@@ -0,0 +1,20 @@
+package com.ityfz.yulu.knowledge.lexical;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 关键词检索命中的 chunk
+ */
+@Data
+@AllArgsConstructor
+public class LexicalHit {
+
+    private Long chunkId;
+    private Long documentId;
+
+    /**
+     * BM25 分数，只在同一次查询内可比
+     */
+    private double score;
+}
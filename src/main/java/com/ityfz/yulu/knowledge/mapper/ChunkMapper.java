@@ -2,8 +2,12 @@ package com.ityfz.yulu.knowledge.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ityfz.yulu.knowledge.entity.Chunk;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
-import org.springframework.data.repository.query.Param;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
@@ -29,4 +33,80 @@ public interface ChunkMapper extends BaseMapper<Chunk> {
      * 通过文档id和租户id查找chunk
      */
     List<Chunk> listByDocumentIdAndTenantId(@Param("documentId")Long documentId, @Param("DId")Long tenantId);
+
+    /**
+     * 多行 INSERT 批量写入 chunk，自增 ID 回填到各对象；调用方控制每批行数
+     */
+    @Insert("""
+            <script>
+            INSERT INTO knowledge_chunk
+                (document_id, tenant_id, chunk_index, content, content_length, content_hash, qdrant_point_id, create_time)
+            VALUES
+            <foreach collection="chunks" item="c" separator=",">
+                (#{c.documentId}, #{c.tenantId}, #{c.chunkIndex}, #{c.content}, #{c.contentLength},
+                 #{c.contentHash}, #{c.qdrantPointId}, #{c.createTime})
+            </foreach>
+            </script>
+            """)
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    int insertBatch(@Param("chunks") List<Chunk> chunks);
+
+    /**
+     * 按序号区间 [fromIndex, toIndex) 查询一篇文档的 chunk，大文档分批加载，不一次性读入全部片段
+     */
+    @Select("""
+            SELECT * FROM knowledge_chunk
+            WHERE tenant_id = #{tenantId}
+              AND document_id = #{documentId}
+              AND chunk_index >= #{fromIndex}
+              AND chunk_index < #{toIndex}
+            ORDER BY chunk_index
+            """)
+    List<Chunk> selectByIndexRange(@Param("tenantId") Long tenantId, @Param("documentId") Long documentId,
+                                   @Param("fromIndex") int fromIndex, @Param("toIndex") int toIndex);
+
+    /**
+     * 批量回写 qdrant_point_id：一条 UPDATE ... CASE WHEN 更新多行，调用方控制每批行数
+     */
+    @Update("""
+            <script>
+            UPDATE knowledge_chunk
+            SET qdrant_point_id = CASE id
+            <foreach collection="chunks" item="c">
+                WHEN #{c.id} THEN #{c.qdrantPointId}
+            </foreach>
+            END
+            WHERE tenant_id = #{tenantId}
+              AND id IN
+            <foreach collection="chunks" item="c" open="(" separator="," close=")">
+                #{c.id}
+            </foreach>
+            </script>
+            """)
+    int updateQdrantPointIds(@Param("tenantId") Long tenantId, @Param("chunks") List<Chunk> chunks);
+
+    /**
+     * 批量更新 chunk_index / content_hash（增量同步时沿用的 chunk 序号可能后移，旧数据补算哈希）
+     */
+    @Update("""
+            <script>
+            UPDATE knowledge_chunk
+            SET chunk_index = CASE id
+            <foreach collection="chunks" item="c">
+                WHEN #{c.id} THEN #{c.chunkIndex}
+            </foreach>
+            END,
+            content_hash = CASE id
+            <foreach collection="chunks" item="c">
+                WHEN #{c.id} THEN #{c.contentHash}
+            </foreach>
+            END
+            WHERE tenant_id = #{tenantId}
+              AND id IN
+            <foreach collection="chunks" item="c" open="(" separator="," close=")">
+                #{c.id}
+            </foreach>
+            </script>
+            """)
+    int updateIndexAndHash(@Param("tenantId") Long tenantId, @Param("chunks") List<Chunk> chunks);
 }
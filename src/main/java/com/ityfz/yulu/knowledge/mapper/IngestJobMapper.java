@@ -0,0 +1,12 @@
+package com.ityfz.yulu.knowledge.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ityfz.yulu.knowledge.entity.IngestJob;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 文档导入任务 Mapper
+ */
+@Mapper
+public interface IngestJobMapper extends BaseMapper<IngestJob> {
+}
@@ -1,5 +1,10 @@
 package com.ityfz.yulu.knowledge.service;
 
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+
+import java.util.List;
 
 /**
  * 索引服务
@@ -7,13 +12,57 @@ package com.ityfz.yulu.knowledge.service;
 public interface ChunkIndexService {
 
     /**
-     * 索引某个文档下所有 chunk（幂等）
+     * 索引文档（增量、幂等）：只向量化还没有向量的 chunk，已有向量的 chunk 只刷新 payload
      */
     void indexDocument(Long tenantId, Long documentId);
 
     /**
-     *  重建索引：先删 Qdrant 再索引（可选）
+     * 重建索引：删除文档在向量库中的全部点，清空 DB 映射后全量重新索引
      */
     void rebuildDocumentIndex(Long tenantId, Long documentId);
 
+    /**
+     * 删除文档在向量库中的全部点（按 tenant_id + document_id 过滤）
+     */
+    void deleteDocumentPoints(Long tenantId, Long documentId);
+
+    /**
+     * 按 ID 删除向量库中的点（重新切分后被删掉的 chunk）
+     */
+    void deletePoints(Long tenantId, List<Long> pointIds);
+
+    /*
+     * 以下为分步接口，供导入流水线按批调用；indexDocument 就是这几步的串联
+     */
+
+    /**
+     * 确保租户所在的向量集合和 payload 索引存在（维度与 embedding 模型一致）
+     */
+    void prepareCollection(Long tenantId);
+
+    /**
+     * 向量化一批 chunk，返回待写入的点（pointId=chunkId），顺序与 chunks 一致
+     */
+    List<VectorPoint> embedChunks(Long tenantId, Document doc, List<Chunk> chunks);
+
+    /**
+     * 写入 Qdrant，有任何点未写入则抛异常（pointId 幂等，可整批重试）
+     */
+    void upsertPoints(Long tenantId, Long documentId, List<VectorPoint> points);
+
+    /**
+     * 刷新已有向量的 chunk 的 payload（序号、文档标题等），不重新向量化
+     */
+    void refreshPayloads(Long tenantId, Document doc, List<Chunk> chunks);
+
+    /**
+     * 回写 chunk 的 qdrant_point_id，事务由调用方控制
+     */
+    void savePointIds(Long tenantId, List<Chunk> chunks);
+
+    /**
+     * 标记文档已索引并发布知识库变更事件，事务由调用方控制
+     */
+    void markIndexed(Long tenantId, Document doc);
+
 }
@@ -1,11 +1,22 @@
 package com.ityfz.yulu.knowledge.service;
 
+import com.ityfz.yulu.knowledge.dto.ChunkSyncResult;
 import com.ityfz.yulu.knowledge.entity.Chunk;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 public interface ChunkService {
 
+    /**
+     * 正文来源：把正文写入给定的 Writer，可以边解析边写
+     */
+    @FunctionalInterface
+    interface ContentSource {
+        void writeTo(Writer out) throws IOException;
+    }
+
     /**
      * 切分文档内容
      *
@@ -30,6 +41,34 @@ public interface ChunkService {
     List<Chunk> chunkAndSave(Long documentId, Long tenantId, String content,
                              int chunkSize, int overlapSize);
 
+    /**
+     * 重新切分文档并与已有 Chunk 按内容哈希同步：内容相同的沿用原记录（保留向量），
+     * 新内容插入，多出的删除
+     *
+     * @param documentId 文档ID
+     * @param tenantId 租户ID
+     * @param content 文档最新内容
+     * @param chunkSize 每个 Chunk 的最大字符数
+     * @param overlapSize 重叠字符数
+     * @return 同步结果（含需要从向量库删除的点）
+     */
+    ChunkSyncResult syncChunks(Long documentId, Long tenantId, String content,
+                               int chunkSize, int overlapSize);
+
+    /**
+     * 流式版本的 syncChunks：source 写入的正文边写边切分，chunk 切好即落库，
+     * 不在内存中保留全文和全部 chunk，结果中 chunks 为空，只返回数量和正文开头
+     *
+     * @param documentId 文档ID
+     * @param tenantId 租户ID
+     * @param source 正文来源（如 Tika 流式解析）
+     * @param chunkSize 每个 Chunk 的最大字符数
+     * @param overlapSize 重叠字符数
+     * @return 同步结果（含需要从向量库删除的点）
+     */
+    ChunkSyncResult syncChunks(Long documentId, Long tenantId, ContentSource source,
+                               int chunkSize, int overlapSize);
+
     /**
      * 根据文档ID获取所有 Chunk
      *
@@ -1,8 +1,11 @@
 package com.ityfz.yulu.knowledge.service;
 
+import com.ityfz.yulu.knowledge.dto.DocumentUpdateResponse;
 import com.ityfz.yulu.knowledge.entity.Document;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -32,6 +35,15 @@ public interface DocumentService {
      */
     String parseDocument(byte[] fileBytes, String fileType);
 
+    /**
+     * 流式解析文档：正文边解析边写入 out，不整体读入内存
+     *
+     * @param file 文件路径
+     * @param fileType 文件类型（txt/pdf/docx/md等）
+     * @param out 正文输出（如 StreamingChunker）
+     */
+    void parseDocument(Path file, String fileType, Writer out);
+
     /**
      * 获取文档列表（分页）
      *
@@ -52,7 +64,22 @@ public interface DocumentService {
     Document getDocument(Long documentId, Long tenantId);
 
     /**
-     * 删除文档（同时删除关联的 Chunk）
+     * 更新文档内容并增量同步 Chunk：只有新增/变化的片段需要重新向量化。
+     * 文档原本已索引时立即增量重建索引，否则等待手动索引
+     *
+     * @param documentId 文档ID
+     * @param tenantId 租户ID（用于权限校验）
+     * @param title 新标题（可选，为空保持不变）
+     * @param file 新文件（可选）
+     * @param content 新文本内容（file 为空时使用）
+     * @param source 新来源（可选，为空保持不变）
+     * @return 同步结果
+     */
+    DocumentUpdateResponse updateDocument(Long documentId, Long tenantId, String title,
+                                          MultipartFile file, String content, String source);
+
+    /**
+     * 删除文档（同时删除关联的 Chunk 和向量）
      *
      * @param documentId 文档ID
      * @param tenantId 租户ID（用于权限校验）
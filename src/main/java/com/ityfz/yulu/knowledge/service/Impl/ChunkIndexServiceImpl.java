@@ -1,19 +1,27 @@
 package com.ityfz.yulu.knowledge.service.Impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.ityfz.yulu.common.ai.EmbeddingService;
-import com.ityfz.yulu.common.ai.impl.QdrantVectorStore;
+import com.ityfz.yulu.common.ai.UpsertReport;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorStore;
 import com.ityfz.yulu.knowledge.entity.Chunk;
 import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.event.KnowledgeBaseChangedEvent;
 import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
 import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
 import com.ityfz.yulu.knowledge.service.ChunkIndexService;
-import io.qdrant.client.grpc.JsonWithInt;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import com.ityfz.yulu.knowledge.service.VectorCollectionRouter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,26 +30,41 @@ import java.util.Map;
 @Slf4j
 public class ChunkIndexServiceImpl implements ChunkIndexService {
 
-    // 集合名
-    private static final String COLLECTION = "yulu_chunks";
+    // 批量回写 qdrant_point_id 时每条 UPDATE 的行数
+    private static final int POINT_ID_UPDATE_BATCH = 500;
 
     private final DocumentMapper documentMapper;
     private final ChunkMapper chunkMapper;
     private final EmbeddingService embeddingService;
-    private final QdrantVectorStore qdrantVectorStore;
+    private final VectorStore vectorStore;
+    private final VectorCollectionRouter collectionRouter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final KnowledgeStatsService knowledgeStatsService;
 
     public ChunkIndexServiceImpl(DocumentMapper documentMapper,
                                  ChunkMapper chunkMapper,
                                  EmbeddingService embeddingService,
-                                 QdrantVectorStore qdrantVectorStore){
+                                 VectorStore vectorStore,
+                                 VectorCollectionRouter collectionRouter,
+                                 ApplicationEventPublisher eventPublisher,
+                                 TransactionTemplate transactionTemplate,
+                                 KnowledgeStatsService knowledgeStatsService){
         this.documentMapper = documentMapper;
         this.chunkMapper = chunkMapper;
         this.embeddingService = embeddingService;
-        this.qdrantVectorStore = qdrantVectorStore;
+        this.vectorStore = vectorStore;
+        this.collectionRouter = collectionRouter;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.knowledgeStatsService = knowledgeStatsService;
     }
 
+    /**
+     * 不加 @Transactional：向量化和 Qdrant 写入都是远程调用，耗时可能很长，
+     * 只在最后回写 DB 时开一个短事务，避免长时间占用连接和行锁
+     */
     @Override
-    @Transactional
     public void indexDocument(Long tenantId, Long documentId) {
 
         Document doc = documentMapper.selectOne(new LambdaQueryWrapper<Document>()
@@ -52,7 +75,6 @@ public class ChunkIndexServiceImpl implements ChunkIndexService {
             throw new IllegalArgumentException("文档不存在或不属于当前租户: " + documentId);
         }
 
-        //只查找未索引的chunk
         List<Chunk> chunks = chunkMapper.selectList(new LambdaQueryWrapper<Chunk>()
                 .eq(Chunk::getDocumentId, documentId)
                 .eq(Chunk::getTenantId, tenantId)
@@ -63,67 +85,160 @@ public class ChunkIndexServiceImpl implements ChunkIndexService {
             log.info("文档无 chunk，无需索引. docId={}", documentId);
             return;
         }
-        int dimension = embeddingService.getDimension();
-        qdrantVectorStore.createCollection(COLLECTION, dimension);
-        // 1、批量向量化
+        // 已有向量的 chunk 内容未变（重新切分时按内容哈希沿用），只需要向量化其余的
+        List<Chunk> pending = chunks.stream().filter(c -> c.getQdrantPointId() == null).toList();
+        List<Chunk> indexed = chunks.stream().filter(c -> c.getQdrantPointId() != null).toList();
+
+        prepareCollection(tenantId);
+        if (!pending.isEmpty()) {
+            // 1、批量向量化
+            List<VectorPoint> points = embedChunks(tenantId, doc, pending);
+            // 2、批量 upsert 到 Qdrant
+            upsertPoints(tenantId, documentId, points);
+        }
+        // 沿用的 chunk 序号可能后移、文档标题可能已修改
+        refreshPayloads(tenantId, doc, indexed);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // 3) 批量更新 chunk 的 qdrantPointId
+            savePointIds(tenantId, pending);
+            // 4) 更新文档索引时间/状态，通知知识库已变更
+            markIndexed(tenantId, doc);
+        });
+
+        log.info("索引完成 docId={}, chunkCount={}, embedded={}, reused={}",
+                documentId, chunks.size(), pending.size(), indexed.size());
+    }
+
+
+    /**
+     * 不加 @Transactional：删点和重新索引都是远程调用，DB 只在清空映射时短暂写一次
+     */
+    @Override
+    public void rebuildDocumentIndex(Long tenantId, Long documentId) {
+        // 1) 删除该文档在向量库的所有点（按 payload 过滤 document_id）
+        deleteDocumentPoints(tenantId, documentId);
+
+        // 2) 清空 DB 映射，indexDocument 据此全部重新向量化；只更新有映射的行，影响行数即减少的已索引数
+        int cleared = chunkMapper.update(null, new LambdaUpdateWrapper<Chunk>()
+                .eq(Chunk::getTenantId, tenantId)
+                .eq(Chunk::getDocumentId, documentId)
+                .isNotNull(Chunk::getQdrantPointId)
+                .set(Chunk::getQdrantPointId, null));
+        knowledgeStatsService.recordIndexedChunks(tenantId, -cleared);
+
+        // 3) 重新索引
+        indexDocument(tenantId, documentId);
+    }
+
+    @Override
+    public void deleteDocumentPoints(Long tenantId, Long documentId) {
+        vectorStore.deleteByFilter(collectionRouter.collectionFor(tenantId),
+                VectorFilter.eq("tenant_id", tenantId).and("document_id", documentId));
+        log.info("删除文档向量 docId={}, tenantId={}", documentId, tenantId);
+    }
+
+    @Override
+    public void deletePoints(Long tenantId, List<Long> pointIds) {
+        if (pointIds == null || pointIds.isEmpty()) {
+            return;
+        }
+        vectorStore.deletePoints(collectionRouter.collectionFor(tenantId), pointIds);
+    }
+
+
+    @Override
+    public void prepareCollection(Long tenantId) {
+        collectionRouter.prepare(tenantId);
+    }
+
+    @Override
+    public List<VectorPoint> embedChunks(Long tenantId, Document doc, List<Chunk> chunks) {
         List<String> texts = chunks.stream().map(Chunk::getContent).toList();
-        List<List<Float>> vectors = embeddingService.embedBatch(texts);
+        List<float[]> vectors = embeddingService.embedBatch(texts);
         if (vectors.size() != chunks.size()) {
             throw new IllegalStateException("embedding 返回数量不一致: chunks=" + chunks.size() + ", vectors=" + vectors.size());
         }
 
-        // 2、组装 points 并 upsert 到 Qdrant
+        List<VectorPoint> points = new ArrayList<>(chunks.size());
         for (int i = 0; i < chunks.size(); i++) {
             Chunk c = chunks.get(i);
-            List<Float> v = vectors.get(i);
+            float[] v = vectors.get(i);
 
             // 维度一致性校验
-            if (v == null || v.size() != embeddingService.getDimension()) {
-                throw new IllegalStateException("向量维度不匹配: got=" + (v == null ? 0 : v.size())
+            if (v == null || v.length != embeddingService.getDimension()) {
+                throw new IllegalStateException("向量维度不匹配: got=" + (v == null ? 0 : v.length)
                         + ", expected=" + embeddingService.getDimension());
             }
 
             long pointId = c.getId(); // 幂等策略：pointId=chunkId
-            // 构建负载
-            Map<String, Object> payload = buildPayload(tenantId, doc, c);
-            // 更新插入向量点
-            qdrantVectorStore.upsertPoint(COLLECTION, pointId, v, payload);
-
-            // DB 映射（如果你 pointId=chunkId，可直接写入）
-            c.setQdrantPointId(pointId);
+            points.add(new VectorPoint(pointId, v, buildPayload(tenantId, doc, c)));
         }
+        return points;
+    }
 
-        //TODO: mapper新增批量更新chunk的qdrantPointId的方法
+    @Override
+    public void upsertPoints(Long tenantId, Long documentId, List<VectorPoint> points) {
+        String collection = collectionRouter.collectionFor(tenantId);
+        UpsertReport report = vectorStore.upsertPoints(collection, points);
+        if (!report.isAllSucceeded()) {
+            // 集合可能已被删除：重试时 prepareCollection 重新确认集合和索引（已存在时只走注册表，开销很小）
+            collectionRouter.forget(collection);
+            // 已写入的点 pointId=chunkId，重新索引时幂等覆盖
+            log.error("索引失败 docId={}, failed={}/{}, failures={}",
+                    documentId, report.getFailures().size(), report.getTotal(), report.getFailures());
+            throw new IllegalStateException("向量写入失败: " + report.getFailures().size() + "/" + report.getTotal()
+                    + " 个片段未写入");
+        }
+    }
 
-        // 3) 批量更新 chunk 的 qdrantPointId（你目前 Mapper 没有批量方法，可选择循环 update 或补一个批量方法）
-        //   如需批量方法，请在 Mapper + XML 中新增；此处示例循环更新（简单但多 SQL）
+    @Override
+    public void refreshPayloads(Long tenantId, Document doc, List<Chunk> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        // 正文没变，只覆盖元数据字段，避免把 chunk 文本再传一遍
+        Map<Long, Map<String, Object>> payloads = new LinkedHashMap<>();
         for (Chunk c : chunks) {
-            chunkMapper.updateById(c); // 仅更新 qdrantPointId，确保字段有值
+            Map<String, Object> meta = new LinkedHashMap<>();
+            meta.put("chunk_index", c.getChunkIndex());
+            meta.put("title", doc.getTitle());
+            meta.put("source", doc.getSource());
+            meta.put("file_type", doc.getFileType());
+            payloads.put(c.getQdrantPointId(), meta);
         }
-
-        // 4) 更新文档索引时间/状态
-        doc.setIndexedAt(LocalDateTime.now());
-        doc.setStatus(1); // 1-已索引
-        documentMapper.updateById(doc);
-
-        log.info("索引完成 docId={}, chunkCount={}", documentId, chunks.size());
+        vectorStore.setPayload(collectionRouter.collectionFor(tenantId), payloads);
     }
 
-
-
     @Override
-    @Transactional
-    public void rebuildDocumentIndex(Long tenantId, Long documentId) {
-/*        // 可选：删除该文档在 Qdrant 的所有点（按 payload 过滤 document_id）
-        qdrantVectorStore.deleteByFilter(COLLECTION, qdrantVectorStore.eqLong("tenant_id", tenantId),
-                qdrantVectorStore.eqLong("document_id", documentId));
+    public void savePointIds(Long tenantId, List<Chunk> chunks) {
+        // DB 映射（pointId=chunkId，可直接写入）
+        for (Chunk c : chunks) {
+            c.setQdrantPointId(c.getId());
+        }
+        // CASE WHEN 多行更新，每批一条 SQL
+        for (int from = 0; from < chunks.size(); from += POINT_ID_UPDATE_BATCH) {
+            chunkMapper.updateQdrantPointIds(tenantId,
+                    chunks.subList(from, Math.min(from + POINT_ID_UPDATE_BATCH, chunks.size())));
+        }
+        knowledgeStatsService.recordIndexedChunks(tenantId, chunks.size());
+    }
 
-        // 清空 DB 映射（可选：需你在 Mapper 中实现）
-        // chunkMapper.clearQdrantPointIdByDocument(documentId, tenantId);
-        // documentMapper.clearIndexedAt(documentId, tenantId);
+    @Override
+    public void markIndexed(Long tenantId, Document doc) {
+        doc.setIndexedAt(LocalDateTime.now());
+        doc.setStatus(1); // 1-已索引
+        // 只更新状态字段，不把（可能很大的）正文再写一遍
+        documentMapper.update(null, new LambdaUpdateWrapper<Document>()
+                .eq(Document::getId, doc.getId())
+                .eq(Document::getTenantId, tenantId)
+                .set(Document::getStatus, doc.getStatus())
+                .set(Document::getIndexedAt, doc.getIndexedAt())
+                .set(Document::getUpdateTime, LocalDateTime.now()));
 
-        // 重新索引
-        indexDocument(tenantId, documentId);*/
+        knowledgeStatsService.recordIndexed(tenantId);
+        // 依赖知识库的缓存在事务提交后失效
+        eventPublisher.publishEvent(new KnowledgeBaseChangedEvent(tenantId, doc.getId(), "INDEXED"));
     }
 
 
@@ -1,26 +1,52 @@
 package com.ityfz.yulu.knowledge.service.Impl;
 
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.knowledge.dto.ChunkSyncResult;
 import com.ityfz.yulu.knowledge.entity.Chunk;
 import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
 import com.ityfz.yulu.knowledge.service.ChunkService;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import com.ityfz.yulu.knowledge.service.LexicalIndexService;
+import com.ityfz.yulu.knowledge.service.StreamingChunker;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
 public class ChunkServiceImpl implements ChunkService {
 
+    // 批量更新 chunk 序号/哈希时每条 UPDATE 的行数
+    private static final int META_UPDATE_BATCH = 500;
+
+    // 新 chunk 每条多行 INSERT 的行数（500 字符 * 500 行，远小于 max_allowed_packet）
+    private static final int INSERT_BATCH = 500;
+
     @Autowired
     private ChunkMapper chunkMapper;
 
+    @Autowired
+    private LexicalIndexService lexicalIndexService;
+
+    @Autowired
+    private KnowledgeStatsService knowledgeStatsService;
+
     // 从配置文件读取默认值
     @Value("${rag.chunk.size:500}")
     private int defaultChunkSize;
@@ -31,6 +57,9 @@ public class ChunkServiceImpl implements ChunkService {
     @Value("${rag.chunk.min-size:50}")
     private int minChunkSize;
 
+    @Value("${rag.document.content-max-chars:20000}")
+    private int contentHeadChars;
+
     @Override
     public List<Chunk> chunkText(String content, int chunkSize, int overlapSize) {
 
@@ -39,93 +68,160 @@ public class ChunkServiceImpl implements ChunkService {
             return new ArrayList<>();
         }
 
-        // 预处理：统一换行符，清理多余空白
-        String normalizedContent = normalizeContent(content);
-
+        // 规范化和切分在一遍扫描里完成，规则见 StreamingChunker
         List<Chunk> chunks = new ArrayList<>();
-        int contentLength = normalizedContent.length();
-
-        // 如果内容长度小于 chunkSize，直接返回一个 Chunk
-        if (contentLength <= chunkSize) {
-            Chunk chunk = new Chunk();
-            chunk.setContent(normalizedContent);
-            chunk.setContentLength(normalizedContent.length());
-            chunk.setChunkIndex(0);
-            chunks.add(chunk);
-            return chunks;
-        }
-
-        // 切分逻辑  ：  按规定大小切分，然后再细化切分点即不直接切，先找到最佳切分点
-        //             切完，下一段chunk再往回倒贴overlapSize长度，保证语义/关键词不会丢失，也方便向量检索时召回相邻信息
-        int start = 0;
-        int chunkIndex = 0;
+        StreamingChunker chunker = new StreamingChunker(chunkSize, overlapSize, minChunkSize, 0, chunks::add);
+        chunker.feed(content);
+        chunker.finish();
 
+        log.debug("[ChunkService] 切分完成: 原文长度={}, Chunk数量={}", chunker.getLength(), chunks.size());
+        return chunks;
+    }
 
-        while (start < contentLength) {
-            // 计算当前 Chunk 的结束位置
-            int end = Math.min(start + chunkSize, contentLength);
 
-            // 如果不是最后一个 Chunk，尝试在句子边界切分
-            if (end < contentLength) {
-                end = findBestSplitPoint(normalizedContent, start, end);
-            }
+    @Override
+    @Transactional
+    public List<Chunk> chunkAndSave(Long documentId, Long tenantId, String content, int chunkSize, int overlapSize) {
+        // 新文档没有已有 chunk，同步即全部插入；重复调用也不会产生重复片段
+        ChunkSyncResult result = syncChunks(documentId, tenantId, content, chunkSize, overlapSize);
+        log.info("[ChunkService] 文档切分并保存: documentId={}, chunkCount={}", documentId, result.getChunks().size());
+        return result.getChunks();
+    }
 
-            // 提取 Chunk 内容
-            String chunkContent = normalizedContent.substring(start, end).trim();
-
-            // 如果 Chunk 内容不为空，创建 Chunk
-            if (!chunkContent.isEmpty()) {
-                Chunk chunk = new Chunk();
-                chunk.setContent(chunkContent);
-                chunk.setContentLength(chunkContent.length());
-                chunk.setChunkIndex(chunkIndex);
-                chunk.setCreateTime(LocalDateTime.now());
-                chunks.add(chunk);
-                chunkIndex++;
-            }
+    @Override
+    @Transactional
+    public ChunkSyncResult syncChunks(Long documentId, Long tenantId, String content, int chunkSize, int overlapSize) {
+        String text = content == null ? "" : content;
+        return sync(documentId, tenantId, out -> out.write(text), chunkSize, overlapSize, true);
+    }
 
-            // 计算下一个 Chunk 的起始位置（考虑重叠）
-            start = end - overlapSize;
-            if (start < 0) {
-                start = 0;
-            }
+    @Override
+    @Transactional
+    public ChunkSyncResult syncChunks(Long documentId, Long tenantId, ContentSource source, int chunkSize, int overlapSize) {
+        return sync(documentId, tenantId, source, chunkSize, overlapSize, false);
+    }
 
-            // 如果已经到达末尾，退出循环
-            if (end >= contentLength) {
-                break;
+    /**
+     * keepChunks=false 时切好的新 chunk 插入后即丢弃，内存占用与文档大小无关
+     */
+    private ChunkSyncResult sync(Long documentId, Long tenantId, ContentSource source, int chunkSize, int overlapSize,
+                                 boolean keepChunks) {
+        // 1. 已有 chunk 按内容哈希分组（同一内容可能出现多次，按序号先后匹配）
+        Map<String, Deque<Chunk>> byHash = existingByHash(documentId, tenantId);
+
+        // 2. 边切分边匹配：命中则沿用原记录，否则插入
+        ChunkSyncResult result = new ChunkSyncResult();
+        List<Chunk> changedMeta = new ArrayList<>();
+        List<Chunk> pendingInsert = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(chunkSize, overlapSize, minChunkSize, contentHeadChars, chunk -> {
+            String hash = contentHash(chunk.getContent());
+            Deque<Chunk> candidates = byHash.get(hash);
+            Chunk old = candidates == null ? null : candidates.pollFirst();
+            if (old != null) {
+                if (!chunk.getChunkIndex().equals(old.getChunkIndex()) || old.getContentHash() == null) {
+                    old.setChunkIndex(chunk.getChunkIndex());
+                    old.setContentHash(hash);
+                    changedMeta.add(old);
+                    if (changedMeta.size() >= META_UPDATE_BATCH) {
+                        chunkMapper.updateIndexAndHash(tenantId, changedMeta);
+                        changedMeta.clear();
+                    }
+                }
+                if (keepChunks) {
+                    old.setContent(chunk.getContent());
+                    result.getChunks().add(old);
+                }
+                result.setReused(result.getReused() + 1);
+            } else {
+                chunk.setDocumentId(documentId);
+                chunk.setTenantId(tenantId);
+                chunk.setContentHash(hash);
+                pendingInsert.add(chunk);
+                if (pendingInsert.size() >= INSERT_BATCH) {
+                    chunkMapper.insertBatch(pendingInsert);
+                    pendingInsert.clear();
+                }
+                if (keepChunks) {
+                    result.getChunks().add(chunk);
+                }
+                result.setAdded(result.getAdded() + 1);
             }
+        });
+        try {
+            source.writeTo(chunker);
+        } catch (IOException e) {
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "读取文档内容失败: " + e.getMessage());
+        }
+        chunker.finish();
+        if (!pendingInsert.isEmpty()) {
+            chunkMapper.insertBatch(pendingInsert);
         }
-        // 处理最后一个 Chunk：如果太小，合并到前一个
-        if (chunks.size() > 1) {
-            Chunk lastChunk = chunks.get(chunks.size() - 1);
-            if (lastChunk.getContentLength() < minChunkSize) {
-                Chunk prevChunk = chunks.get(chunks.size() - 2);
-                prevChunk.setContent(prevChunk.getContent() + "\n" + lastChunk.getContent());
-                prevChunk.setContentLength(prevChunk.getContent().length());
-                chunks.remove(chunks.size() - 1);
+        if (!changedMeta.isEmpty()) {
+            chunkMapper.updateIndexAndHash(tenantId, changedMeta);
+        }
+        result.setTotal(chunker.getChunkCount());
+        result.setContentLength(chunker.getLength());
+        result.setContentHead(chunker.getHead());
+
+        // 3. 没匹配上的旧 chunk 已不在新内容中，删除；其向量由调用方删除
+        List<Long> removedIds = new ArrayList<>();
+        for (Deque<Chunk> left : byHash.values()) {
+            for (Chunk c : left) {
+                removedIds.add(c.getId());
+                if (c.getQdrantPointId() != null) {
+                    result.getRemovedPointIds().add(c.getQdrantPointId());
+                }
             }
         }
+        result.setRemoved(removedIds.size());
+        if (!removedIds.isEmpty()) {
+            chunkMapper.delete(Wrappers.<Chunk>lambdaQuery()
+                    .eq(Chunk::getTenantId, tenantId)
+                    .in(Chunk::getId, removedIds));
+            knowledgeStatsService.recordIndexedChunks(tenantId, -result.getRemovedPointIds().size());
+        }
 
-        log.debug("[ChunkService] 切分完成: 原文长度={}, Chunk数量={}", contentLength, chunks.size());
-        return chunks;
-    }
+        // 4. 同步到关键词索引（事务提交后生效）；流式同步没有保留 chunk，提交后从库里读
+        if (keepChunks) {
+            lexicalIndexService.indexDocumentChunks(tenantId, documentId, result.getChunks());
+        } else {
+            lexicalIndexService.reindexDocument(tenantId, documentId);
+        }
 
+        log.info("[ChunkService] 文档 Chunk 同步: documentId={}, total={}, added={}, reused={}, removed={}, contentLength={}",
+                documentId, result.getTotal(), result.getAdded(), result.getReused(), removedIds.size(),
+                result.getContentLength());
+        return result;
+    }
 
-    @Override
-    @Transactional
-    public List<Chunk> chunkAndSave(Long documentId, Long tenantId, String content, int chunkSize, int overlapSize) {
-        // 1. 切分文档
-        List<Chunk> chunks = chunkText(content, chunkSize, overlapSize);
-
-        // 2. 设置文档ID和租户ID，保存到数据库
-        for (Chunk chunk : chunks) {
-            chunk.setDocumentId(documentId);
-            chunk.setTenantId(tenantId);
-            chunkMapper.insert(chunk);
+    /**
+     * 已有 chunk 按内容哈希分组，不读正文；没有哈希的旧数据单独读正文补算
+     */
+    private Map<String, Deque<Chunk>> existingByHash(Long documentId, Long tenantId) {
+        List<Chunk> existing = chunkMapper.selectList(Wrappers.<Chunk>lambdaQuery()
+                .select(Chunk.class, f -> !"content".equals(f.getColumn()))
+                .eq(Chunk::getTenantId, tenantId)
+                .eq(Chunk::getDocumentId, documentId)
+                .orderByAsc(Chunk::getChunkIndex));
+        Map<Long, String> legacyHashes = new HashMap<>();
+        if (existing.stream().anyMatch(c -> c.getContentHash() == null && c.getContent() == null)) {
+            for (Chunk c : chunkMapper.selectList(Wrappers.<Chunk>lambdaQuery()
+                    .select(Chunk::getId, Chunk::getContent)
+                    .eq(Chunk::getTenantId, tenantId)
+                    .eq(Chunk::getDocumentId, documentId)
+                    .isNull(Chunk::getContentHash))) {
+                legacyHashes.put(c.getId(), contentHash(c.getContent()));
+            }
         }
 
-        log.info("[ChunkService] 文档切分并保存: documentId={}, chunkCount={}", documentId, chunks.size());
-        return chunks;
+        Map<String, Deque<Chunk>> byHash = new HashMap<>();
+        for (Chunk c : existing) {
+            String hash = c.getContentHash() != null ? c.getContentHash()
+                    : c.getContent() != null ? contentHash(c.getContent())
+                    : legacyHashes.getOrDefault(c.getId(), contentHash(null));
+            byHash.computeIfAbsent(hash, k -> new ArrayDeque<>()).add(c);
+        }
+        return byHash;
     }
 
     @Override
@@ -144,46 +240,22 @@ public class ChunkServiceImpl implements ChunkService {
                         Wrappers.<Chunk>lambdaQuery()
                         .eq(Chunk::getDocumentId, documentId)
         );
+        lexicalIndexService.removeDocument(documentId);
         log.info("[ChunkService] 删除文档的所有 Chunk: documentId={}", documentId);
 
     }
 
 
-    // 规范化内容：统一换行符，清理多余空白
-    private String normalizeContent(String content) {
-        if (content == null) {
-            return "";
-        }
-        // 统一换行符为 \n
-        String normalized = content.replaceAll("\r\n", "\n").replaceAll("\r", "\n");
-
-        // 清理连续的空行（保留单个换行）
-        normalized = normalized.replaceAll("\n{3,}", "\n\n");
-        return normalized.trim();
-    }
-
-
     /**
-     * 寻找最佳切分点（尽量在句子边界）
+     * chunk 内容哈希：SHA-256 十六进制
      */
-    private int findBestSplitPoint(String content, int start, int end) {
-        // 在 end 位置向前查找，寻找句子边界（句号、问号、感叹号、换行符）
-        int searchStart = Math.max(start, end - 100); // 最多向前查找 100 个字符
-
-        for (int i = end - 1; i >= searchStart; i--) {
-            char c = content.charAt(i);
-            // 如果遇到句子结束符，在此处切分
-            if (c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?') {
-                return i + 1;
-            }
-
-            // 如果遇到换行符，也可以在此处切分
-            if (c == '\n') {
-                return i + 1;
-            }
+    public static String contentHash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest((content == null ? "" : content).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
         }
-
-        // 如果没找到合适的切分点，返回原始 end
-        return end;
     }
 }
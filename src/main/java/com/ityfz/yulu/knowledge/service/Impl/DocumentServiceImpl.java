@@ -1,23 +1,34 @@
 package com.ityfz.yulu.knowledge.service.Impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.ityfz.yulu.common.enums.ErrorCodes;
 import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.knowledge.dto.ChunkSyncResult;
+import com.ityfz.yulu.knowledge.dto.DocumentUpdateResponse;
+import com.ityfz.yulu.knowledge.entity.Chunk;
 import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.event.KnowledgeBaseChangedEvent;
 import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
 import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.service.ChunkIndexService;
 import com.ityfz.yulu.knowledge.service.ChunkService;
 import com.ityfz.yulu.knowledge.service.DocumentService;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.Tika;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -26,15 +37,30 @@ import java.util.List;
 public class DocumentServiceImpl implements DocumentService {
 
     private final DocumentMapper documentMapper;
+    private final ChunkMapper chunkMapper;
     private final ChunkService chunkService;
     private final TikaDocumentParser tikaDocumentParser;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChunkIndexService chunkIndexService;
+    private final TransactionTemplate transactionTemplate;
+    private final KnowledgeStatsService knowledgeStatsService;
 
     public DocumentServiceImpl(DocumentMapper documentMapper,
+                               ChunkMapper chunkMapper,
                                ChunkService chunkService,
-                               TikaDocumentParser tikaDocumentParser){
+                               TikaDocumentParser tikaDocumentParser,
+                               ApplicationEventPublisher eventPublisher,
+                               ChunkIndexService chunkIndexService,
+                               TransactionTemplate transactionTemplate,
+                               KnowledgeStatsService knowledgeStatsService){
         this.documentMapper = documentMapper;
+        this.chunkMapper = chunkMapper;
         this.chunkService = chunkService;
         this.tikaDocumentParser = tikaDocumentParser;
+        this.eventPublisher = eventPublisher;
+        this.chunkIndexService = chunkIndexService;
+        this.transactionTemplate = transactionTemplate;
+        this.knowledgeStatsService = knowledgeStatsService;
     }
 
     // 从配置文件读取
@@ -58,56 +84,43 @@ public class DocumentServiceImpl implements DocumentService {
             throw new BizException(ErrorCodes.VALIDATION_ERROR, "文档标题不能为空");
         }
 
-        String parsedContent;
-        String fileType = null;
-        Long fileSize = null;
-        // 2. 解析文档内容`
+        // 2. 文件：先插入文档，再边解析边切分入库，不整体读入内存
         if (file != null && !file.isEmpty()) {
-            // 从文件解析
-            try {
-                // 检查文件大小
-                if (file.getSize() > maxFileSize) {
-                    throw new BizException(ErrorCodes.VALIDATION_ERROR,
-                            "文件大小超过限制: " + (maxFileSize / 1024 / 1024) + "MB");
-                }
-
-                //获取文件类型
-                fileType = getFileType(file.getOriginalFilename());
-                fileSize = file.getSize();
-                //解析文件
-                parsedContent = parseDocument(file.getBytes(), fileType);
-
-                // 如果标题为空，使用文件名
-                if (title == null || title.trim().isEmpty()) {
-                    title = file.getOriginalFilename();
-                }
-            } catch (IOException e) {
-                log.error("[DocumentService] 文件读取失败", e);
-                throw new BizException(ErrorCodes.SYSTEM_ERROR, "文件读取失败: " + e.getMessage());
+            // 检查文件大小
+            if (file.getSize() > maxFileSize) {
+                throw new BizException(ErrorCodes.VALIDATION_ERROR,
+                        "文件大小超过限制: " + (maxFileSize / 1024 / 1024) + "MB");
             }
-        } else if (content != null && !content.trim().isEmpty()) {
-            // 直接使用文本内容
-            parsedContent = content.trim();
-            fileType = "text";
-            fileSize = (long) parsedContent.getBytes(StandardCharsets.UTF_8).length;
-        } else {
+            //获取文件类型
+            String fileType = getFileType(file.getOriginalFilename());
+            Document document = newDocument(tenantId, title, source, fileType, file.getSize());
+            documentMapper.insert(document);
+            Long documentId = document.getId();
+            knowledgeStatsService.recordDocuments(tenantId, 1);
+
+            // 解析或切分失败整体回滚，不留下没有 chunk 的文档
+            ChunkSyncResult sync = parseAndSync(documentId, tenantId, file, fileType);
+            documentMapper.update(null, new LambdaUpdateWrapper<Document>()
+                    .eq(Document::getId, documentId)
+                    .eq(Document::getTenantId, tenantId)
+                    .set(Document::getContent, sync.getContentHead()));
+
+            log.info("[DocumentService] 文档上传并切分完成: documentId={}, tenantId={}, title={}, contentLength={}, chunks={}",
+                    documentId, tenantId, title, sync.getContentLength(), sync.getTotal());
+            return documentId;
+        }
+        if (content == null || content.trim().isEmpty()) {
             throw new BizException(ErrorCodes.VALIDATION_ERROR, "文件或内容不能同时为空");
         }
 
-        // 3. 保存文档到数据库
-        Document document = new Document();
-        document.setTenantId(tenantId);
-        document.setTitle(title);
+        // 3. 文本内容：直接保存
+        String parsedContent = content.trim();
+        Document document = newDocument(tenantId, title, source, "text",
+                (long) parsedContent.getBytes(StandardCharsets.UTF_8).length);
         document.setContent(parsedContent);
-        document.setSource(source != null ? source : "用户上传");
-        document.setFileType(fileType);
-        document.setFileSize(fileSize);
-        document.setStatus(0);  // 0-未索引
-        document.setCreateTime(LocalDateTime.now());
-        document.setUpdateTime(LocalDateTime.now());
-
         documentMapper.insert(document);
         Long documentId = document.getId();
+        knowledgeStatsService.recordDocuments(tenantId, 1);
 
         log.info("[DocumentService] 文档上传成功: documentId={}, tenantId={}, title={}, contentLength={}",
                 documentId, tenantId, title, parsedContent.length());
@@ -135,6 +148,11 @@ public class DocumentServiceImpl implements DocumentService {
         return tikaDocumentParser.parse(fileBytes, fileType);
     }
 
+    @Override
+    public void parseDocument(Path file, String fileType, Writer out) {
+        tikaDocumentParser.parse(file, fileType, out);
+    }
+
     @Override
     public List<Document> listDocuments(Long tenantId, Integer pageNum, Integer pageSize) {
         if (tenantId == null) {
@@ -184,20 +202,109 @@ public class DocumentServiceImpl implements DocumentService {
         return document;
     }
 
+    /**
+     * 不加 @Transactional：正文和 chunk 在一个短事务里更新，向量删除/重建在提交后进行
+     */
+    @Override
+    public DocumentUpdateResponse updateDocument(Long documentId, Long tenantId, String title,
+                                                 MultipartFile file, String content, String source) {
+        // 1. 权限校验
+        Document document = getDocument(documentId, tenantId);
+
+        // 2. 新内容：文件在同步 chunk 时流式解析，文本直接使用
+        boolean fromFile = file != null && !file.isEmpty();
+        String parsedContent;
+        if (fromFile) {
+            if (file.getSize() > maxFileSize) {
+                throw new BizException(ErrorCodes.VALIDATION_ERROR,
+                        "文件大小超过限制: " + (maxFileSize / 1024 / 1024) + "MB");
+            }
+            document.setFileType(getFileType(file.getOriginalFilename()));
+            document.setFileSize(file.getSize());
+            parsedContent = null;
+        } else if (content != null && !content.trim().isEmpty()) {
+            parsedContent = content.trim();
+            document.setFileType("text");
+            document.setFileSize((long) parsedContent.getBytes(StandardCharsets.UTF_8).length);
+        } else {
+            throw new BizException(ErrorCodes.VALIDATION_ERROR, "文件或内容不能同时为空");
+        }
+        if (title != null && !title.trim().isEmpty()) {
+            document.setTitle(title.trim());
+        }
+        if (source != null && !source.trim().isEmpty()) {
+            document.setSource(source.trim());
+        }
+        document.setUpdateTime(LocalDateTime.now());
+
+        // 3. 正文 + chunk 同步在同一事务：内容未变的 chunk 沿用原 ID 和向量
+        ChunkSyncResult sync = transactionTemplate.execute(status -> {
+            ChunkSyncResult result = fromFile
+                    ? parseAndSync(documentId, tenantId, file, document.getFileType())
+                    : chunkService.syncChunks(documentId, tenantId, parsedContent, chunkSize, overlapSize);
+            document.setContent(fromFile ? result.getContentHead() : parsedContent);
+            documentMapper.updateById(document);
+            return result;
+        });
+
+        // 4. 删掉已不存在片段的向量；失败只会留下孤立的点，重建索引时按文档整体清理
+        try {
+            chunkIndexService.deletePoints(tenantId, sync.getRemovedPointIds());
+        } catch (Exception e) {
+            log.error("[DocumentService] 删除过期向量失败，可重建索引清理: documentId={}, points={}",
+                    documentId, sync.getRemovedPointIds().size(), e);
+        }
+        // 正文和片段已提交、过期向量已删除：不管下面重新索引成败，依赖知识库的缓存都要失效
+        eventPublisher.publishEvent(new KnowledgeBaseChangedEvent(tenantId, documentId, "UPDATED"));
+
+        // 5. 原本已索引的文档立即增量索引（只向量化新增片段）
+        boolean reindexed = false;
+        if (Integer.valueOf(1).equals(document.getStatus())) {
+            try {
+                chunkIndexService.indexDocument(tenantId, documentId);
+                reindexed = true;
+            } catch (Exception e) {
+                log.error("[DocumentService] 增量索引失败: documentId={}", documentId, e);
+                updateDocumentStatus(documentId, 2);  // 2-索引失败
+            }
+        }
+
+        log.info("[DocumentService] 文档更新成功: documentId={}, tenantId={}, added={}, reused={}, removed={}, reindexed={}",
+                documentId, tenantId, sync.getAdded(), sync.getReused(), sync.getRemoved(), reindexed);
+
+        DocumentUpdateResponse r = new DocumentUpdateResponse();
+        r.setDocumentId(documentId);
+        r.setTotalChunks(sync.getTotal());
+        r.setAddedChunks(sync.getAdded());
+        r.setReusedChunks(sync.getReused());
+        r.setRemovedChunks(sync.getRemoved());
+        r.setReindexed(reindexed);
+        return r;
+    }
+
     @Override
     public void deleteDocument(Long documentId, Long tenantId) {
         // 1. 权限校验
         Document document = getDocument(documentId, tenantId);
 
-        // 2. 删除关联的 Chunk
+        // 2. 先删向量（幂等）：失败时直接报错，文档和 chunk 保留，可重试删除
+        chunkIndexService.deleteDocumentPoints(tenantId, documentId);
+
+        // 3. 删除关联的 Chunk（先记下其中已索引的数量，用于更新知识库统计）
+        Long indexedChunks = chunkMapper.selectCount(new LambdaQueryWrapper<Chunk>()
+                .eq(Chunk::getTenantId, tenantId)
+                .eq(Chunk::getDocumentId, documentId)
+                .isNotNull(Chunk::getQdrantPointId));
         chunkService.deleteChunksByDocumentId(documentId);
 
-        // 3. 删除文档
+        // 4. 删除文档
         documentMapper.deleteById(documentId);
+        knowledgeStatsService.recordIndexedChunks(tenantId, -(indexedChunks == null ? 0 : indexedChunks));
+        knowledgeStatsService.recordDocuments(tenantId, -1);
 
         log.info("[DocumentService] 文档删除成功: documentId={}, tenantId={}", documentId, tenantId);
 
-        // TODO: 后续在索引服务中删除 Qdrant 中的向量
+        eventPublisher.publishEvent(new KnowledgeBaseChangedEvent(tenantId, documentId, "DELETED"));
     }
 
     @Override
@@ -213,6 +320,37 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
 
+    private Document newDocument(Long tenantId, String title, String source, String fileType, Long fileSize) {
+        Document document = new Document();
+        document.setTenantId(tenantId);
+        document.setTitle(title);
+        document.setContent("");
+        document.setSource(source != null ? source : "用户上传");
+        document.setFileType(fileType);
+        document.setFileSize(fileSize);
+        document.setStatus(0);  // 0-未索引
+        document.setCreateTime(LocalDateTime.now());
+        document.setUpdateTime(LocalDateTime.now());
+        return document;
+    }
+
+    /**
+     * 上传的文件经 Tika SAX 事件直接写进切分器，chunk 切好即落库。
+     * 文档表只保存正文开头用于预览，完整内容以 chunk 为准
+     */
+    private ChunkSyncResult parseAndSync(Long documentId, Long tenantId, MultipartFile file, String fileType) {
+        ChunkSyncResult sync = chunkService.syncChunks(documentId, tenantId, out -> {
+            try (InputStream in = file.getInputStream()) {
+                tikaDocumentParser.parse(in, fileType, out);
+            }
+        }, chunkSize, overlapSize);
+        if (sync.getContentLength() == 0) {
+            log.warn("[DocumentService] 解析结果为空: documentId={}, fileType={}", documentId, fileType);
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档内容解析为空");
+        }
+        return sync;
+    }
+
     /**
      * 根据文件名获取文件类型
      */
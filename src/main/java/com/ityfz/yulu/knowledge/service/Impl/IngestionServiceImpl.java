@@ -0,0 +1,732 @@
+package com.ityfz.yulu.knowledge.service.Impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.config.KnowledgeIngestProperties;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.knowledge.dto.ChunkSyncResult;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.entity.IngestJob;
+import com.ityfz.yulu.knowledge.enums.IngestJobStatus;
+import com.ityfz.yulu.knowledge.enums.IngestStage;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.mapper.IngestJobMapper;
+import com.ityfz.yulu.knowledge.service.ChunkIndexService;
+import com.ityfz.yulu.knowledge.service.ChunkService;
+import com.ityfz.yulu.knowledge.service.DocumentService;
+import com.ityfz.yulu.knowledge.service.IngestionService;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 文档异步导入流水线
+ *
+ * 1. 请求线程：文件落盘到暂存目录，插入文档（内容为空）和导入任务，提交到任务线程池后立即返回
+ * 2. 任务线程：PARSE 解析暂存文件 → CHUNK 切分落库，每个阶段完成时和阶段推进写在同一个事务里
+ * 3. EMBED / UPSERT：向量化线程按批生产，经有界队列交给任务线程写入 Qdrant，
+ *    每写完一批就在短事务里回写 qdrant_point_id 并推进 completed_batches
+ * 4. 单个阶段（或单批）失败按 maxAttempts 重试，耗尽后任务置为 FAILED，
+ *    重试接口 / 启动恢复从失败的阶段和最后完成的批次继续，已写入的批次不会重做
+ */
+@Service
+@Slf4j
+public class IngestionServiceImpl implements IngestionService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final IngestJobMapper ingestJobMapper;
+    private final DocumentMapper documentMapper;
+    private final ChunkMapper chunkMapper;
+    private final DocumentService documentService;
+    private final ChunkService chunkService;
+    private final ChunkIndexService chunkIndexService;
+    private final KnowledgeStatsService knowledgeStatsService;
+    private final TransactionTemplate transactionTemplate;
+    private final KnowledgeIngestProperties properties;
+    private final Executor ingestExecutor;
+    private final Executor embedExecutor;
+
+    @Value("${rag.chunk.size:500}")
+    private int chunkSize;
+
+    @Value("${rag.chunk.overlap:50}")
+    private int overlapSize;
+
+    public IngestionServiceImpl(IngestJobMapper ingestJobMapper,
+                                DocumentMapper documentMapper,
+                                ChunkMapper chunkMapper,
+                                DocumentService documentService,
+                                ChunkService chunkService,
+                                ChunkIndexService chunkIndexService,
+                                KnowledgeStatsService knowledgeStatsService,
+                                TransactionTemplate transactionTemplate,
+                                KnowledgeIngestProperties properties,
+                                @Qualifier("knowledgeIngestExecutor") Executor ingestExecutor,
+                                @Qualifier("knowledgeEmbedExecutor") Executor embedExecutor) {
+        this.ingestJobMapper = ingestJobMapper;
+        this.documentMapper = documentMapper;
+        this.chunkMapper = chunkMapper;
+        this.documentService = documentService;
+        this.chunkService = chunkService;
+        this.chunkIndexService = chunkIndexService;
+        this.knowledgeStatsService = knowledgeStatsService;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        this.ingestExecutor = ingestExecutor;
+        this.embedExecutor = embedExecutor;
+    }
+
+    @Override
+    public IngestJob submitUpload(Long tenantId, String title, MultipartFile file, String source) {
+        if (tenantId == null) {
+            throw new BizException(ErrorCodes.VALIDATION_ERROR, "租户ID不能为空");
+        }
+        if (file == null || file.isEmpty()) {
+            throw new BizException(ErrorCodes.VALIDATION_ERROR, "文件不能为空");
+        }
+        if (file.getSize() > properties.getMaxFileSize()) {
+            throw new BizException(ErrorCodes.VALIDATION_ERROR,
+                    "文件大小超过限制: " + (properties.getMaxFileSize() / 1024 / 1024) + "MB");
+        }
+
+        String fileName = file.getOriginalFilename();
+        String fileType = getFileType(fileName);
+        Path staged;
+        try {
+            Path dir = Paths.get(properties.getStagingDir(), String.valueOf(tenantId)).toAbsolutePath();
+            Files.createDirectories(dir);
+            staged = dir.resolve(UUID.randomUUID() + "." + fileType);
+            // 大文件由容器缓存在临时目录，这里直接流式拷贝，不整体读入内存
+            file.transferTo(staged);
+        } catch (IOException e) {
+            log.error("[Ingest] 文件暂存失败: tenantId={}, fileName={}", tenantId, fileName, e);
+            throw new BizException(ErrorCodes.SYSTEM_ERROR, "文件暂存失败: " + e.getMessage());
+        }
+
+        Document document = new Document();
+        document.setTenantId(tenantId);
+        document.setTitle(title == null || title.isBlank() ? fileName : title);
+        document.setContent("");  // 解析阶段回填
+        document.setSource(source != null ? source : "用户上传");
+        document.setFileType(fileType);
+        document.setFileSize(file.getSize());
+        document.setStatus(0);  // 0-未索引
+        document.setCreateTime(LocalDateTime.now());
+        document.setUpdateTime(LocalDateTime.now());
+
+        IngestJob job = newJob(tenantId, IngestStage.PARSE);
+        job.setFilePath(staged.toString());
+        job.setFileName(fileName);
+        job.setFileType(fileType);
+        transactionTemplate.executeWithoutResult(status -> {
+            documentMapper.insert(document);
+            job.setDocumentId(document.getId());
+            ingestJobMapper.insert(job);
+            knowledgeStatsService.recordDocuments(tenantId, 1);
+        });
+
+        log.info("[Ingest] 创建导入任务: jobId={}, documentId={}, tenantId={}, fileName={}, size={}",
+                job.getId(), document.getId(), tenantId, fileName, file.getSize());
+        dispatch(job);
+        return job;
+    }
+
+    @Override
+    public List<IngestJob> submitUploads(Long tenantId, List<MultipartFile> files, String source) {
+        if (files == null || files.isEmpty()) {
+            throw new BizException(ErrorCodes.VALIDATION_ERROR, "文件不能为空");
+        }
+        if (files.size() > properties.getBatchMaxFiles()) {
+            throw new BizException(ErrorCodes.VALIDATION_ERROR,
+                    "单次最多上传 " + properties.getBatchMaxFiles() + " 个文件");
+        }
+        List<IngestJob> jobs = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            try {
+                jobs.add(submitUpload(tenantId, null, file, source));
+            } catch (BizException e) {
+                log.warn("[Ingest] 批量上传中的文件被跳过: tenantId={}, fileName={}, reason={}",
+                        tenantId, file.getOriginalFilename(), e.getMessage());
+                IngestJob rejected = new IngestJob();
+                rejected.setTenantId(tenantId);
+                rejected.setFileName(file.getOriginalFilename());
+                rejected.setStatus(IngestJobStatus.FAILED.getCode());
+                rejected.setErrorMessage(e.getMessage());
+                jobs.add(rejected);
+            }
+        }
+        log.info("[Ingest] 批量上传: tenantId={}, files={}, accepted={}", tenantId, files.size(),
+                jobs.stream().filter(j -> j.getId() != null).count());
+        return jobs;
+    }
+
+    @Override
+    public IngestJob submitIndex(Long tenantId, Long documentId) {
+        Document document = documentService.getDocument(documentId, tenantId);
+
+        IngestJob active = ingestJobMapper.selectOne(new LambdaQueryWrapper<IngestJob>()
+                .eq(IngestJob::getTenantId, tenantId)
+                .eq(IngestJob::getDocumentId, documentId)
+                .in(IngestJob::getStatus, IngestJobStatus.PENDING.getCode(), IngestJobStatus.RUNNING.getCode())
+                .orderByDesc(IngestJob::getId)
+                .last("LIMIT 1"));
+        if (active != null) {
+            return active;
+        }
+
+        Long chunkCount = chunkMapper.selectCount(new LambdaQueryWrapper<Chunk>()
+                .eq(Chunk::getTenantId, tenantId)
+                .eq(Chunk::getDocumentId, documentId));
+        // 上传时已切分的文档直接从向量化开始
+        IngestJob job = newJob(tenantId, chunkCount > 0 ? IngestStage.EMBED : IngestStage.CHUNK);
+        job.setDocumentId(documentId);
+        job.setFileName(document.getTitle());
+        job.setFileType(document.getFileType());
+        if (chunkCount > 0) {
+            job.setTotalChunks(chunkCount.intValue());
+            job.setTotalBatches(batchCount(chunkCount.intValue(), job.getBatchSize()));
+        }
+        ingestJobMapper.insert(job);
+
+        log.info("[Ingest] 创建索引任务: jobId={}, documentId={}, tenantId={}, stage={}",
+                job.getId(), documentId, tenantId, job.getStage());
+        dispatch(job);
+        return job;
+    }
+
+    @Override
+    public IngestJob getJob(Long tenantId, Long jobId) {
+        IngestJob job = ingestJobMapper.selectOne(new LambdaQueryWrapper<IngestJob>()
+                .eq(IngestJob::getId, jobId)
+                .eq(IngestJob::getTenantId, tenantId));
+        if (job == null) {
+            throw new BizException(ErrorCodes.INGEST_JOB_NOT_FOUND, "导入任务不存在");
+        }
+        return job;
+    }
+
+    @Override
+    public IngestJob retry(Long tenantId, Long jobId) {
+        IngestJob job = getJob(tenantId, jobId);
+        boolean failed = IngestJobStatus.FAILED.getCode().equals(job.getStatus());
+        if (!failed && !isStale(job)) {
+            throw new BizException(ErrorCodes.INGEST_JOB_STATUS_INVALID, "只有失败或已中断的任务可以重试");
+        }
+
+        // 以读到的状态和更新时间做乐观锁，避免并发重试或任务恰好恢复推进时重复执行
+        int updated = ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                .eq(IngestJob::getId, jobId)
+                .eq(IngestJob::getStatus, job.getStatus())
+                .eq(IngestJob::getUpdateTime, job.getUpdateTime())
+                .set(IngestJob::getStatus, IngestJobStatus.PENDING.getCode())
+                .set(IngestJob::getErrorMessage, null)
+                .set(IngestJob::getUpdateTime, LocalDateTime.now())
+                .setSql("retry_count = retry_count + 1"));
+        if (updated == 0) {
+            throw new BizException(ErrorCodes.INGEST_JOB_STATUS_INVALID, "任务状态已变化，请刷新后重试");
+        }
+
+        log.info("[Ingest] 重试导入任务: jobId={}, stage={}, completedBatches={}",
+                jobId, job.getStage(), job.getCompletedBatches());
+        IngestJob pending = getJob(tenantId, jobId);
+        dispatch(pending);
+        return pending;
+    }
+
+    /**
+     * 启动时接管排队中的任务和宕机实例遗留的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        if (!properties.isResumeOnStartup()) {
+            return;
+        }
+        try {
+            LocalDateTime staleBefore = LocalDateTime.now().minusSeconds(properties.getStaleAfterSeconds());
+            int reclaimed = ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                    .eq(IngestJob::getStatus, IngestJobStatus.RUNNING.getCode())
+                    .lt(IngestJob::getUpdateTime, staleBefore)
+                    .set(IngestJob::getStatus, IngestJobStatus.PENDING.getCode())
+                    .set(IngestJob::getUpdateTime, LocalDateTime.now())
+                    .setSql("retry_count = retry_count + 1"));
+            List<IngestJob> pending = ingestJobMapper.selectList(new LambdaQueryWrapper<IngestJob>()
+                    .eq(IngestJob::getStatus, IngestJobStatus.PENDING.getCode())
+                    .orderByAsc(IngestJob::getId));
+            if (reclaimed > 0 || !pending.isEmpty()) {
+                log.info("[Ingest] 恢复导入任务: reclaimed={}, pending={}", reclaimed, pending.size());
+            }
+            pending.forEach(this::dispatch);
+        } catch (Exception e) {
+            // 数据库不可用时不影响启动，任务可通过重试接口手动恢复
+            log.warn("[Ingest] 启动恢复导入任务失败，跳过: {}", e.getMessage());
+        }
+    }
+
+    private void dispatch(IngestJob job) {
+        try {
+            ingestExecutor.execute(() -> run(job.getId()));
+        } catch (RejectedExecutionException e) {
+            log.warn("[Ingest] 导入线程池已满: jobId={}", job.getId());
+            // 只把仍在排队的任务置为失败，已被其他实例抢到的不动
+            ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                    .eq(IngestJob::getId, job.getId())
+                    .eq(IngestJob::getStatus, IngestJobStatus.PENDING.getCode())
+                    .set(IngestJob::getStatus, IngestJobStatus.FAILED.getCode())
+                    .set(IngestJob::getErrorMessage, "导入任务过多，请稍后重试")
+                    .set(IngestJob::getUpdateTime, LocalDateTime.now()));
+            job.setStatus(IngestJobStatus.FAILED.getCode());
+            job.setErrorMessage("导入任务过多，请稍后重试");
+        }
+    }
+
+    /**
+     * 执行（或续跑）一个任务，从任务记录的阶段开始
+     */
+    void run(Long jobId) {
+        // 抢占：只有排队中的任务能被执行，同一任务不会被两个线程/实例同时执行
+        int claimed = ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                .eq(IngestJob::getId, jobId)
+                .eq(IngestJob::getStatus, IngestJobStatus.PENDING.getCode())
+                .set(IngestJob::getStatus, IngestJobStatus.RUNNING.getCode())
+                .set(IngestJob::getUpdateTime, LocalDateTime.now()));
+        if (claimed == 0) {
+            log.info("[Ingest] 任务已被执行或状态已变化，跳过: jobId={}", jobId);
+            return;
+        }
+
+        IngestJob job = ingestJobMapper.selectById(jobId);
+        IngestStage stage = IngestStage.fromCode(job.getStage());
+        long start = System.currentTimeMillis();
+        try {
+            // 不带 content 查询，大文档的正文只在切分阶段需要
+            Document doc = documentMapper.selectOne(new LambdaQueryWrapper<Document>()
+                    .select(Document.class, f -> !"content".equals(f.getColumn()))
+                    .eq(Document::getTenantId, job.getTenantId())
+                    .eq(Document::getId, job.getDocumentId()));
+            if (doc == null) {
+                throw new IngestStageException(stage, "文档不存在或已被删除", null);
+            }
+
+            // 上传文件的 content 只存了正文开头，不能用来重新切分，一律从暂存文件解析
+            if (stage == IngestStage.CHUNK && job.getFilePath() != null) {
+                stage = IngestStage.PARSE;
+            }
+            if (stage == IngestStage.PARSE) {
+                parse(job, doc);
+                stage = IngestStage.EMBED;
+            }
+            if (stage == IngestStage.CHUNK) {
+                chunk(job, doc);
+                stage = IngestStage.EMBED;
+            }
+            if (stage == IngestStage.EMBED || stage == IngestStage.UPSERT) {
+                embedAndUpsert(job, doc);
+            }
+            stage = IngestStage.FINALIZE;
+            finish(job, doc);
+
+            log.info("[Ingest] 导入完成: jobId={}, documentId={}, chunks={}, cost={}ms",
+                    jobId, job.getDocumentId(), job.getTotalChunks(), System.currentTimeMillis() - start);
+        } catch (IngestStageException e) {
+            fail(job, e.getStage(), e.getMessage(), e.getCause());
+        } catch (Exception e) {
+            fail(job, stage, rootMessage(e), e);
+        }
+    }
+
+    /**
+     * PARSE：解析暂存文件，正文经 SAX 事件直接写进切分器，边解析边落 chunk（同时完成 CHUNK 阶段）。
+     * 文档表只回填正文开头，chunk 同步、删除旧向量点、正文回填、阶段推进在同一事务
+     */
+    private void parse(IngestJob job, Document doc) {
+        Path path = Paths.get(job.getFilePath());
+        ChunkSyncResult result = withRetry(job, IngestStage.PARSE, () -> transactionTemplate.execute(status -> {
+            ChunkSyncResult sync = chunkService.syncChunks(doc.getId(), doc.getTenantId(),
+                    out -> documentService.parseDocument(path, job.getFileType(), out), chunkSize, overlapSize);
+            if (sync.getContentLength() == 0) {
+                throw new IngestStageException(IngestStage.PARSE, "未能从文件中提取到文本", null);
+            }
+            documentMapper.update(null, new LambdaUpdateWrapper<Document>()
+                    .eq(Document::getId, doc.getId())
+                    .eq(Document::getTenantId, doc.getTenantId())
+                    .set(Document::getContent, sync.getContentHead())
+                    .set(Document::getUpdateTime, LocalDateTime.now()));
+            deleteRemovedPoints(doc, sync);
+            toEmbedStage(job, sync.getTotal());
+            return sync;
+        }));
+
+        log.info("[Ingest] 解析切分完成: jobId={}, documentId={}, contentLength={}, chunks={}, reused={}",
+                job.getId(), doc.getId(), result.getContentLength(), result.getTotal(), result.getReused());
+    }
+
+    /**
+     * CHUNK：文本导入的文档切分落库。按内容哈希与该文档已有的 chunk 同步，续跑不产生重复片段，
+     * 上次已写入向量的片段保留点 ID，EMBED 阶段直接跳过
+     */
+    private void chunk(IngestJob job, Document doc) {
+        String content = doc.getContent();
+        if (content == null) {
+            Document full = documentMapper.selectById(doc.getId());
+            content = full == null ? null : full.getContent();
+        }
+        if (content == null || content.isBlank()) {
+            throw new IngestStageException(IngestStage.CHUNK, "文档内容为空", null);
+        }
+
+        String text = content;
+        ChunkSyncResult result = withRetry(job, IngestStage.CHUNK, () -> transactionTemplate.execute(status -> {
+            ChunkSyncResult sync = chunkService.syncChunks(doc.getId(), doc.getTenantId(), text, chunkSize, overlapSize);
+            deleteRemovedPoints(doc, sync);
+            toEmbedStage(job, sync.getTotal());
+            return sync;
+        }));
+
+        // 正文已落到 chunk，后续阶段不再需要，尽早释放
+        doc.setContent(null);
+        log.info("[Ingest] 切分完成: jobId={}, documentId={}, chunks={}, reused={}",
+                job.getId(), doc.getId(), result.getTotal(), result.getReused());
+    }
+
+    /**
+     * chunk 已落库，任务推进到 EMBED 并重置批次进度；需在 chunk 同步的事务内调用
+     */
+    private void toEmbedStage(IngestJob job, int total) {
+        int totalBatches = batchCount(total, job.getBatchSize());
+        ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                .eq(IngestJob::getId, job.getId())
+                .set(IngestJob::getStage, IngestStage.EMBED.getCode())
+                .set(IngestJob::getTotalChunks, total)
+                .set(IngestJob::getTotalBatches, totalBatches)
+                .set(IngestJob::getCompletedBatches, 0)
+                .set(IngestJob::getIndexedChunks, 0)
+                .set(IngestJob::getUpdateTime, LocalDateTime.now()));
+        job.setStage(IngestStage.EMBED.getCode());
+        job.setTotalChunks(total);
+        job.setTotalBatches(totalBatches);
+        job.setCompletedBatches(0);
+        job.setIndexedChunks(0);
+    }
+
+    /**
+     * 删除本次同步去掉的片段对应的向量点；需在 chunk 同步的事务内调用。
+     * 删除失败时 chunk 同步一起回滚，由外层按所在阶段重试：被删的片段行还在，续跑能再次拿到这些点 ID，
+     * 上传文件也会重新解析原文件，而不是从只存了开头的 content 重新切分
+     */
+    private void deleteRemovedPoints(Document doc, ChunkSyncResult result) {
+        if (!result.getRemovedPointIds().isEmpty()) {
+            chunkIndexService.deletePoints(doc.getTenantId(), result.getRemovedPointIds());
+        }
+    }
+
+    /**
+     * EMBED → UPSERT：向量化线程按批生产，经有界队列交给当前线程写入；
+     * 每批写入成功后推进 completed_batches，续跑时跳过已完成的批次
+     */
+    private void embedAndUpsert(IngestJob job, Document doc) {
+        // 只取总数，片段由向量化线程按批加载，大文档不一次性读入全部 chunk
+        int total = Math.toIntExact(chunkMapper.selectCount(new LambdaQueryWrapper<Chunk>()
+                .eq(Chunk::getTenantId, doc.getTenantId())
+                .eq(Chunk::getDocumentId, doc.getId())));
+        int batchSize = job.getBatchSize();
+        int totalBatches = batchCount(total, batchSize);
+        int startBatch = job.getCompletedBatches() == null ? 0 : job.getCompletedBatches();
+        if (startBatch >= totalBatches) {
+            return;
+        }
+        if (startBatch > 0) {
+            log.info("[Ingest] 从断点继续: jobId={}, completedBatches={}/{}", job.getId(), startBatch, totalBatches);
+        }
+
+        withRetry(job, IngestStage.EMBED, () -> {
+            chunkIndexService.prepareCollection(doc.getTenantId());
+            return null;
+        });
+
+        BlockingQueue<EmbeddedBatch> queue = new ArrayBlockingQueue<>(Math.max(1, properties.getStageQueueCapacity()));
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        try {
+            embedExecutor.execute(() -> produce(job, doc, startBatch, totalBatches, queue, aborted));
+        } catch (RejectedExecutionException e) {
+            // 向量化线程池没有空闲线程（例如上一个被中止任务的生产者还没退出），任务记为失败，稍后可重试
+            log.warn("[Ingest] 向量化线程池已满: jobId={}", job.getId());
+            throw new IngestStageException(IngestStage.EMBED, "向量化任务过多，请稍后重试", e);
+        }
+        try {
+            for (int b = startBatch; b < totalBatches; b++) {
+                EmbeddedBatch batch = queue.take();
+                if (batch.error != null) {
+                    throw batch.error;
+                }
+                int completed = b + 1;
+                withRetry(job, IngestStage.UPSERT, () -> {
+                    if (!batch.pending.isEmpty()) {
+                        chunkIndexService.upsertPoints(doc.getTenantId(), doc.getId(), batch.points);
+                    }
+                    if (!batch.reused.isEmpty()) {
+                        chunkIndexService.refreshPayloads(doc.getTenantId(), doc, batch.reused);
+                    }
+                    transactionTemplate.executeWithoutResult(status -> {
+                        if (!batch.pending.isEmpty()) {
+                            chunkIndexService.savePointIds(doc.getTenantId(), batch.pending);
+                        }
+                        ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                                .eq(IngestJob::getId, job.getId())
+                                .set(IngestJob::getCompletedBatches, completed)
+                                .set(IngestJob::getIndexedChunks, Math.min(completed * batchSize, total))
+                                .set(IngestJob::getUpdateTime, LocalDateTime.now()));
+                    });
+                    return null;
+                });
+                job.setCompletedBatches(completed);
+                job.setIndexedChunks(Math.min(completed * batchSize, total));
+                log.debug("[Ingest] 批次写入完成: jobId={}, batch={}/{}", job.getId(), completed, totalBatches);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestStageException(IngestStage.UPSERT, "任务被中断", e);
+        } finally {
+            // 通知向量化线程停止，并腾出队列让阻塞中的 offer 尽快返回
+            aborted.set(true);
+            queue.clear();
+        }
+    }
+
+    private void produce(IngestJob job, Document doc, int startBatch, int totalBatches,
+                         BlockingQueue<EmbeddedBatch> queue, AtomicBoolean aborted) {
+        int batchSize = job.getBatchSize();
+        for (int b = startBatch; b < totalBatches && !aborted.get(); b++) {
+            List<Chunk> pending = new ArrayList<>(batchSize);
+            List<Chunk> reused = new ArrayList<>();
+            EmbeddedBatch batch;
+            try {
+                int from = b * batchSize;
+                List<Chunk> slice = withRetry(job, IngestStage.EMBED, () ->
+                        chunkMapper.selectByIndexRange(doc.getTenantId(), doc.getId(), from, from + batchSize));
+                // 内容未变、已有向量的片段不再调用 embedding
+                for (Chunk c : slice) {
+                    (c.getQdrantPointId() == null ? pending : reused).add(c);
+                }
+                List<VectorPoint> points = pending.isEmpty() ? Collections.emptyList()
+                        : withRetry(job, IngestStage.EMBED,
+                                () -> chunkIndexService.embedChunks(doc.getTenantId(), doc, pending));
+                batch = new EmbeddedBatch(pending, reused, points, null);
+            } catch (IngestStageException e) {
+                batch = new EmbeddedBatch(pending, reused, null, e);
+            }
+            if (!offer(queue, batch, aborted) || batch.error != null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 队列满时阻塞等待写入方消费，写入方放弃后立即退出
+     */
+    private boolean offer(BlockingQueue<EmbeddedBatch> queue, EmbeddedBatch batch, AtomicBoolean aborted) {
+        try {
+            while (!aborted.get()) {
+                if (queue.offer(batch, 200, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * FINALIZE：标记文档已索引、任务完成，清理暂存文件
+     */
+    private void finish(IngestJob job, Document doc) {
+        transactionTemplate.executeWithoutResult(status -> {
+            chunkIndexService.markIndexed(doc.getTenantId(), doc);
+            ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                    .eq(IngestJob::getId, job.getId())
+                    .set(IngestJob::getStatus, IngestJobStatus.SUCCESS.getCode())
+                    .set(IngestJob::getStage, IngestStage.DONE.getCode())
+                    .set(IngestJob::getErrorMessage, null)
+                    .set(IngestJob::getFinishTime, LocalDateTime.now())
+                    .set(IngestJob::getUpdateTime, LocalDateTime.now()));
+        });
+        job.setStatus(IngestJobStatus.SUCCESS.getCode());
+        job.setStage(IngestStage.DONE.getCode());
+
+        if (job.getFilePath() != null) {
+            try {
+                Files.deleteIfExists(Paths.get(job.getFilePath()));
+            } catch (IOException e) {
+                log.warn("[Ingest] 删除暂存文件失败: path={}", job.getFilePath());
+            }
+        }
+    }
+
+    private void fail(IngestJob job, IngestStage stage, String message, Throwable cause) {
+        log.error("[Ingest] 导入失败: jobId={}, documentId={}, stage={}, completedBatches={}, error={}",
+                job.getId(), job.getDocumentId(), stage, job.getCompletedBatches(), message, cause);
+        String error = message == null ? "未知错误" : message;
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        job.setStatus(IngestJobStatus.FAILED.getCode());
+        job.setStage(stage.getCode());
+        job.setErrorMessage(error);
+        try {
+            ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                    .eq(IngestJob::getId, job.getId())
+                    .set(IngestJob::getStatus, IngestJobStatus.FAILED.getCode())
+                    .set(IngestJob::getStage, stage.getCode())
+                    .set(IngestJob::getErrorMessage, error)
+                    .set(IngestJob::getUpdateTime, LocalDateTime.now()));
+            documentMapper.update(null, new LambdaUpdateWrapper<Document>()
+                    .eq(Document::getId, job.getDocumentId())
+                    .eq(Document::getTenantId, job.getTenantId())
+                    .set(Document::getStatus, 2)  // 2-索引失败
+                    .set(Document::getUpdateTime, LocalDateTime.now()));
+        } catch (Exception e) {
+            // 状态没写进去时任务停留在 RUNNING，超过 staleAfterSeconds 后可重试接管
+            log.error("[Ingest] 记录失败状态异常: jobId={}, error={}", job.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 按阶段重试：业务异常（文件格式不支持等）不重试，其余异常退避后重试，耗尽后带上阶段抛出
+     */
+    private <T> T withRetry(IngestJob job, IngestStage stage, Callable<T> action) {
+        int maxAttempts = Math.max(1, properties.getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.call();
+            } catch (IngestStageException e) {
+                throw e;
+            } catch (BizException e) {
+                throw new IngestStageException(stage, e.getMessage(), e);
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    throw new IngestStageException(stage, rootMessage(e), e);
+                }
+                log.warn("[Ingest] 阶段执行失败，准备重试: jobId={}, stage={}, attempt={}/{}, error={}",
+                        job.getId(), stage, attempt, maxAttempts, rootMessage(e));
+                try {
+                    Thread.sleep(properties.getRetryBackoffMs() * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IngestStageException(stage, "任务被中断", ie);
+                }
+            }
+        }
+    }
+
+    private IngestJob newJob(Long tenantId, IngestStage stage) {
+        IngestJob job = new IngestJob();
+        job.setTenantId(tenantId);
+        job.setStatus(IngestJobStatus.PENDING.getCode());
+        job.setStage(stage.getCode());
+        job.setBatchSize(Math.max(1, properties.getBatchSize()));
+        job.setTotalChunks(0);
+        job.setTotalBatches(0);
+        job.setCompletedBatches(0);
+        job.setIndexedChunks(0);
+        job.setRetryCount(0);
+        job.setCreateTime(LocalDateTime.now());
+        job.setUpdateTime(LocalDateTime.now());
+        return job;
+    }
+
+    private boolean isStale(IngestJob job) {
+        return IngestJobStatus.RUNNING.getCode().equals(job.getStatus())
+                && job.getUpdateTime() != null
+                && job.getUpdateTime().isBefore(LocalDateTime.now().minusSeconds(properties.getStaleAfterSeconds()));
+    }
+
+    private static int batchCount(int total, int batchSize) {
+        return (total + batchSize - 1) / batchSize;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+
+    /**
+     * 根据文件名获取文件类型
+     */
+    private String getFileType(String filename) {
+        if (filename == null || filename.isEmpty()) {
+            return "txt";
+        }
+        int lastDotIndex = filename.lastIndexOf('.');
+        if (lastDotIndex == -1 || lastDotIndex == filename.length() - 1) {
+            return "txt";
+        }
+        return filename.substring(lastDotIndex + 1).toLowerCase();
+    }
+
+    /**
+     * 向量化完成、等待写入的一批
+     */
+    private static class EmbeddedBatch {
+        /** 本批新向量化的片段 */
+        private final List<Chunk> pending;
+        /** 本批已有向量、只需刷新 payload 的片段 */
+        private final List<Chunk> reused;
+        private final List<VectorPoint> points;
+        private final IngestStageException error;
+
+        private EmbeddedBatch(List<Chunk> pending, List<Chunk> reused, List<VectorPoint> points,
+                              IngestStageException error) {
+            this.pending = pending;
+            this.reused = reused;
+            this.points = points;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 某个阶段重试耗尽，携带出错的阶段，用于记录任务状态和续跑位置
+     */
+    private static class IngestStageException extends RuntimeException {
+        private final IngestStage stage;
+
+        private IngestStageException(IngestStage stage, String message, Throwable cause) {
+            super(message, cause);
+            this.stage = stage;
+        }
+
+        private IngestStage getStage() {
+            return stage;
+        }
+    }
+}
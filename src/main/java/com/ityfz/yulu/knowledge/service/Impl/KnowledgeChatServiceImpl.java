@@ -1,18 +1,20 @@
 package com.ityfz.yulu.knowledge.service.Impl;
 
+import com.ityfz.yulu.common.ai.EmbeddingService;
 import com.ityfz.yulu.common.ai.LLMClient;
 import com.ityfz.yulu.common.ai.Message;
-import com.ityfz.yulu.common.ai.impl.QdrantVectorStore;
+import com.ityfz.yulu.common.ai.PromptBudgetAllocator;
 import com.ityfz.yulu.knowledge.dto.RagAugmentResult;
 import com.ityfz.yulu.knowledge.dto.RagChatRequest;
 import com.ityfz.yulu.knowledge.dto.RagChatResponse;
 import com.ityfz.yulu.knowledge.dto.RagRefDTO;
 import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.ityfz.yulu.knowledge.entity.Chunk;
-import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
 import com.ityfz.yulu.knowledge.service.KnowledgeChatService;
 import com.ityfz.yulu.knowledge.service.KnowledgeSearchService;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import com.ityfz.yulu.knowledge.service.RetrievalPostProcessor;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.service.TenantConfigService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
@@ -30,21 +32,28 @@ import java.util.stream.Collectors;
 @Slf4j
 public class KnowledgeChatServiceImpl implements KnowledgeChatService {
 
-    // 最大上下文字数
-    private static final int MAX_CONTEXT_CHARS = 4000;
-    private static final int MAX_CHUNK_CHARS = 500;
-
     private final KnowledgeSearchService searchService;
     private final LLMClient llmClient;
-    private final ChunkMapper chunkMapper;
+    private final KnowledgeStatsService knowledgeStatsService;
+    private final EmbeddingService embeddingService;
+    private final TenantConfigService tenantConfigService;
+    private final PromptBudgetAllocator promptBudgetAllocator;
+    private final RetrievalPostProcessor retrievalPostProcessor;
 
     public KnowledgeChatServiceImpl(KnowledgeSearchService searchService,
                                     @Qualifier("langChain4jQwenClient") LLMClient llmClient,
-                                    QdrantVectorStore qdrantVectorStore,
-                                    ChunkMapper chunkMapper) {
+                                    KnowledgeStatsService knowledgeStatsService,
+                                    EmbeddingService embeddingService,
+                                    TenantConfigService tenantConfigService,
+                                    PromptBudgetAllocator promptBudgetAllocator,
+                                    RetrievalPostProcessor retrievalPostProcessor) {
         this.searchService = searchService;
         this.llmClient = llmClient;
-        this.chunkMapper = chunkMapper;
+        this.knowledgeStatsService = knowledgeStatsService;
+        this.embeddingService = embeddingService;
+        this.tenantConfigService = tenantConfigService;
+        this.promptBudgetAllocator = promptBudgetAllocator;
+        this.retrievalPostProcessor = retrievalPostProcessor;
     }
 
     @Override
@@ -57,11 +66,14 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
                     .build();
         }
 
-        int topK = request.getTopK() != null && request.getTopK() > 0 ? request.getTopK() : 8;
-        double minScore = request.getMinScore() != null ? request.getMinScore() : 0.55;
+        // 请求未指定时取租户配置
+        TenantSettings settings = tenantConfigService.getSettings(tenantId);
+        int topK = request.getTopK() != null && request.getTopK() > 0 ? request.getTopK() : settings.getRagTopK();
+        double minScore = request.getMinScore() != null ? request.getMinScore()
+                : settings.getRagMinScore() != null ? settings.getRagMinScore() : 0.55;
 
-        // 1. 检索
-        List<RetrievalResultDTO> hits = searchService.search(tenantId, question, topK, minScore);
+        // 1. 检索（多召回一些候选，合并相邻片段、去冗余后取 topK 段）
+        List<RetrievalResultDTO> hits = retrieve(tenantId, question, embeddingService.embed(question), topK, minScore);
         if (hits == null || hits.isEmpty()) {
             log.info("[RAG] 未检索到相关片段, tenantId={}, question={}", tenantId, question);
             return RagChatResponse.builder()
@@ -70,8 +82,9 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
                     .build();
         }
 
-        // 2. 组装上下文
-        String context = buildContext(hits, MAX_CONTEXT_CHARS);
+        // 2. 组装上下文（按本次模型的 token 预算截取）
+        int ragTokens = promptBudgetAllocator.plan(settings.getLlmModel(), question, null).getRagTokens();
+        String context = buildContext(hits, ragTokens);
         if (context.isEmpty()) {
             return RagChatResponse.builder()
                     .answer("未在知识库找到可用参考资料。")
@@ -102,6 +115,11 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
 
     @Override
     public RagAugmentResult buildRagAugment(Long tenantId, String question) {
+        return buildRagAugment(tenantId, question, promptBudgetAllocator.defaultRagTokens());
+    }
+
+    @Override
+    public RagAugmentResult buildRagAugment(Long tenantId, String question, int maxContextTokens) {
 
         if (question == null || question.trim().isEmpty()) {
             return RagAugmentResult.builder()
@@ -110,15 +128,23 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
                     .build();
         }
 
-        int topK = 8;
-        // 动态调整 minScore：根据问题长度和知识库大小
-        int knowledgeBaseSize = getKnowledgeBaseSize(tenantId);
-        double minScore = calculateMinScore(question, knowledgeBaseSize);
-        log.debug("[RAG] 动态 minScore: question={}, knowledgeBaseSize={}, minScore={}", 
-                question, knowledgeBaseSize, minScore);
+        TenantSettings settings = tenantConfigService.getSettings(tenantId);
+        int topK = settings.getRagTopK();
+        double minScore;
+        if (settings.getRagMinScore() != null) {
+            // 租户固定了阈值
+            minScore = settings.getRagMinScore();
+        } else {
+            // 动态调整 minScore：根据问题长度和知识库大小
+            int knowledgeBaseSize = getKnowledgeBaseSize(tenantId);
+            minScore = calculateMinScore(question, knowledgeBaseSize);
+            log.debug("[RAG] 动态 minScore: question={}, knowledgeBaseSize={}, minScore={}",
+                    question, knowledgeBaseSize, minScore);
+        }
 
-        // 对用户问题检索
-        List<RetrievalResultDTO> hits = searchService.search(tenantId, question.trim(), topK, minScore);
+        // 对用户问题检索（问题向量随结果返回，语义答案缓存复用，不再重复向量化）
+        float[] queryVector = embeddingService.embed(question.trim());
+        List<RetrievalResultDTO> hits = retrieve(tenantId, question.trim(), queryVector, topK, minScore);
         log.debug("[RAG] 检索结果数量: {}, tenantId={}, question={}", 
                 hits != null ? hits.size() : 0, tenantId, question);
         
@@ -126,14 +152,16 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
             return RagAugmentResult.builder()
                     .augmentedUserMessage(question)
                     .refs(Collections.emptyList())
+                    .queryVector(queryVector)
                     .build();
         }
         // 构建上下文
-        String context = buildContext(hits, MAX_CONTEXT_CHARS);
+        String context = buildContext(hits, maxContextTokens);
         if (context.isEmpty()) {
             return RagAugmentResult.builder()
                     .augmentedUserMessage(question)
                     .refs(toRefs(hits))
+                    .queryVector(queryVector)
                     .build();
         }
 
@@ -141,9 +169,20 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
         return RagAugmentResult.builder()
                 .augmentedUserMessage(augmented)
                 .refs(toRefs(hits))
+                .queryVector(queryVector)
                 .build();
     }
 
+    /**
+     * 检索 + 整理：召回 topK 的若干倍候选，相邻片段合并、MMR 选出 topK 段
+     */
+    private List<RetrievalResultDTO> retrieve(Long tenantId, String question, float[] queryVector,
+                                              int topK, double minScore) {
+        List<RetrievalResultDTO> hits = searchService.search(tenantId, question, queryVector,
+                retrievalPostProcessor.candidateCount(topK), minScore, retrievalPostProcessor.isMmrEnabled());
+        return retrievalPostProcessor.process(hits, topK);
+    }
+
     /**
      * 客服场景用：参考资料 + 用户问题。兼顾知识库与常规客服回复。
      */
@@ -178,32 +217,35 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
                 """.formatted(context, question);
     }
 
-    // 构建检索内容上下文
-    private String buildContext(List<RetrievalResultDTO> hits, int maxChars) {
+    // 构建检索内容上下文（按 token 计）
+    private String buildContext(List<RetrievalResultDTO> hits, int maxTokens) {
         StringBuilder sb = new StringBuilder();
-        int remain = maxChars;
+        int remain = maxTokens;
         int idx = 1;
         for (RetrievalResultDTO h : hits) {
             //格式化之后返回的内容
             String snippet = formatHit(idx++, h);
-            if (snippet.length() > remain) {
+            int tokens = promptBudgetAllocator.count(snippet);
+            if (tokens > remain) {
                 break;
             }
             sb.append(snippet).append("\n\n");
-            remain -= snippet.length();
+            remain -= tokens;
         }
         return sb.toString();
     }
 
-    // 格式化检索内容
+    // 格式化检索内容（单段上限按合并进来的片段数放大，否则相邻合并的后半段会被截掉）
     private String formatHit(int order, RetrievalResultDTO h) {
         String chunk = h.getChunkText();
-        if (chunk != null && chunk.length() > MAX_CHUNK_CHARS) {
-            chunk = chunk.substring(0, MAX_CHUNK_CHARS) + "...";
-        }
         if (chunk == null) {
             chunk = "";
         }
+        int chunks = h.getMergedChunks() == null ? 1 : Math.max(1, h.getMergedChunks());
+        String truncated = promptBudgetAllocator.truncate(chunk, promptBudgetAllocator.ragChunkMaxTokens() * chunks);
+        if (truncated.length() < chunk.length()) {
+            chunk = truncated + "...";
+        }
         return "[片段#" + order + "] 文档《" + safe(h.getTitle()) + "》"
                 + (h.getSource() != null ? "，来源：" + h.getSource() : "")
                 + "\n" + chunk;
@@ -216,11 +258,8 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
 
     /**
      * 获取知识库大小（按租户统计已索引的 Chunk 数量）
-     * 
-     * 如果知识库大小变化不频繁，则考虑添加缓存：
-     * @Cacheable(value = "knowledge-base-size", key = "#tenantId")
-     * 需配置Spring Cache(Redis) 并在文档索引/删除时清除缓存
-     * 
+     * 取自增量维护的知识库统计（本地缓存 + Redis），对话热路径不查库
+     *
      * @param tenantId 租户ID
      * @return 已索引的 Chunk 数量
      */
@@ -228,13 +267,7 @@ public class KnowledgeChatServiceImpl implements KnowledgeChatService {
         if (tenantId == null) {
             return 0;
         }
-        
-        // 统计该租户下已索引的 Chunk 数量（qdrantPointId 不为空表示已索引）
-        Long count = chunkMapper.selectCount(new LambdaQueryWrapper<Chunk>()
-                .eq(Chunk::getTenantId, tenantId)
-                .isNotNull(Chunk::getQdrantPointId));
-        
-        int size = count != null ? count.intValue() : 0;
+        int size = (int) Math.min(Integer.MAX_VALUE, knowledgeStatsService.getStats(tenantId).getChunkCount());
         log.debug("[RAG] 知识库大小: tenantId={}, size={}", tenantId, size);
         return size;
     }
@@ -1,18 +1,31 @@
 package com.ityfz.yulu.knowledge.service.Impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.ityfz.yulu.common.ai.EmbeddingService;
-import com.ityfz.yulu.common.ai.impl.QdrantVectorStore;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+import com.ityfz.yulu.common.ai.VectorStore;
+import com.ityfz.yulu.common.config.KnowledgeHybridProperties;
 import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.lexical.LexicalHit;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
 import com.ityfz.yulu.knowledge.service.KnowledgeSearchService;
-import io.qdrant.client.grpc.JsonWithInt;
-import io.qdrant.client.grpc.Points;
+import com.ityfz.yulu.knowledge.service.LexicalIndexService;
+import com.ityfz.yulu.knowledge.service.RetrievalResultCache;
+import com.ityfz.yulu.knowledge.service.VectorCollectionRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -21,41 +34,169 @@ import java.util.stream.Collectors;
 @Slf4j
 public class KnowledgeSearchServiceImpl implements KnowledgeSearchService {
 
-    private static final String COLLECTION = "yulu_chunks";
-
     private final EmbeddingService embeddingService;
-    private final QdrantVectorStore qdrantVectorStore;
+    private final VectorStore vectorStore;
+    private final VectorCollectionRouter collectionRouter;
+    private final LexicalIndexService lexicalIndexService;
+    private final ChunkMapper chunkMapper;
+    private final DocumentMapper documentMapper;
+    private final KnowledgeHybridProperties hybridProperties;
+    private final RetrievalResultCache retrievalCache;
 
 
     @Override
     public List<RetrievalResultDTO> search(Long tenantId, String query, int topK, double minScore) {
+        return search(tenantId, query, topK, minScore, false);
+    }
+
+    @Override
+    public List<RetrievalResultDTO> search(Long tenantId, String query, int topK, double minScore, boolean bypassCache) {
         // minScore：相似度门槛，低于该值直接丢弃
-        // 1、将用户问题向量化
-        List<Float> qv = embeddingService.embed(query);
+        // 1、将用户问题向量化（命中缓存时连向量化也省掉）
+        if (bypassCache) {
+            return retrievalCache.bypass(() -> doSearch(tenantId, query, embeddingService.embed(query), topK, minScore, false));
+        }
+        return retrievalCache.get(tenantId, query, topK, minScore, false,
+                () -> doSearch(tenantId, query, embeddingService.embed(query), topK, minScore, false));
+    }
 
-        if (qv == null || qv.size() != embeddingService.getDimension()) {
-            throw new IllegalStateException("query 向量维度异常: got=" + (qv == null ? 0 : qv.size())
+    @Override
+    public List<RetrievalResultDTO> search(Long tenantId, String query, float[] qv, int topK, double minScore) {
+        return search(tenantId, query, qv, topK, minScore, false);
+    }
+
+    @Override
+    public List<RetrievalResultDTO> search(Long tenantId, String query, float[] qv, int topK, double minScore,
+                                           boolean withVectors) {
+        return retrievalCache.get(tenantId, query, topK, minScore, withVectors,
+                () -> doSearch(tenantId, query, qv, topK, minScore, withVectors));
+    }
+
+    private List<RetrievalResultDTO> doSearch(Long tenantId, String query, float[] qv, int topK, double minScore,
+                                              boolean withVectors) {
+        if (qv == null || qv.length != embeddingService.getDimension()) {
+            throw new IllegalStateException("query 向量维度异常: got=" + (qv == null ? 0 : qv.length)
                     + ", expected=" + embeddingService.getDimension());
         }
+        boolean hybrid = hybridProperties.isEnabled() && tenantId != null && query != null && !query.isBlank();
+        // 混合检索时每路多召回一些候选，融合后再截断到 topK
+        int candidates = hybrid ? topK * Math.max(1, hybridProperties.getCandidateMultiplier()) : topK;
 
-        // Qdrant 搜索（tenant 过滤 + payload 返回）
-        Points.Filter filter = buildTenantFilter(tenantId);
-        List<Points.ScoredPoint> points = qdrantVectorStore.search(COLLECTION, qv, topK, filter);
+        // 向量检索（tenant 过滤 + payload 返回）
+        VectorFilter filter = tenantId == null ? null : VectorFilter.eq("tenant_id", tenantId);
+        List<VectorSearchHit> points = vectorStore.search(collectionRouter.collectionFor(tenantId), qv, candidates, filter, withVectors);
 
         // 二次排序 + 阈值过滤 + DTO 化
-        return points.stream()
+        List<RetrievalResultDTO> vectorResults = points.stream()
                 // 按分数倒叙，高的在前
-                .sorted(Comparator.comparingDouble(Points.ScoredPoint::getScore).reversed())
+                .sorted(Comparator.comparingDouble(VectorSearchHit::getScore).reversed())
                 // 滤掉低分，防止“无关段落”混进来
                 .filter(p -> p.getScore() >= minScore)
-                // 把 ScoredPoint 转成业务对象
+                // 把命中点转成业务对象
                 .map(this::toDTO)
                 .collect(Collectors.toList());
+        if (!hybrid) {
+            return vectorResults;
+        }
+
+        // 关键词检索失败不影响向量结果
+        List<LexicalHit> lexicalHits;
+        try {
+            lexicalHits = lexicalIndexService.search(tenantId, query, candidates);
+        } catch (Exception e) {
+            log.warn("[Search] 关键词检索失败，只使用向量结果: tenantId={}, error={}", tenantId, e.getMessage());
+            return vectorResults.stream().limit(topK).collect(Collectors.toList());
+        }
+        List<RetrievalResultDTO> fused = fuse(tenantId, vectorResults, lexicalHits, topK);
+        log.debug("[Search] 混合检索: tenantId={}, vectorHits={}, lexicalHits={}, fused={}",
+                tenantId, vectorResults.size(), lexicalHits.size(), fused.size());
+        return fused;
+    }
+
+    /**
+     * RRF 融合：每路结果按名次贡献 1 / (k + rank)，两路都命中的片段分数相加。
+     * 只看名次、不看原始分数，向量相似度和 BM25 分数量纲不同也能直接合并。
+     */
+    private List<RetrievalResultDTO> fuse(Long tenantId, List<RetrievalResultDTO> vectorResults,
+                                          List<LexicalHit> lexicalHits, int topK) {
+        int k = hybridProperties.getRrfK();
+        Map<Long, RetrievalResultDTO> merged = new LinkedHashMap<>();
+        for (int i = 0; i < vectorResults.size(); i++) {
+            RetrievalResultDTO r = vectorResults.get(i);
+            r.setFusedScore(1.0 / (k + i + 1));
+            merged.put(r.getChunkId(), r);
+        }
+
+        List<RetrievalResultDTO> lexicalOnly = new ArrayList<>();
+        for (int i = 0; i < lexicalHits.size(); i++) {
+            LexicalHit hit = lexicalHits.get(i);
+            RetrievalResultDTO r = merged.get(hit.getChunkId());
+            if (r == null) {
+                r = RetrievalResultDTO.builder()
+                        .chunkId(hit.getChunkId())
+                        .documentId(hit.getDocumentId())
+                        .fusedScore(0.0)
+                        .build();
+                lexicalOnly.add(r);
+            }
+            r.setLexicalScore(hit.getScore());
+            r.setFusedScore(r.getFusedScore() + 1.0 / (k + i + 1));
+        }
+        fillLexicalOnly(tenantId, lexicalOnly);
+        for (RetrievalResultDTO r : lexicalOnly) {
+            if (r.getChunkText() != null) {
+                merged.put(r.getChunkId(), r);
+            }
+        }
+
+        return merged.values().stream()
+                .sorted(Comparator.comparingDouble(RetrievalResultDTO::getFusedScore).reversed())
+                .limit(topK)
+                .collect(Collectors.toList());
     }
 
+    /**
+     * 只被关键词命中的片段没有向量 payload，从库里补正文和文档信息；
+     * 文档未索引完成或已删除的片段不补（chunkText 保持为空，随后丢弃）
+     */
+    private void fillLexicalOnly(Long tenantId, List<RetrievalResultDTO> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        Map<Long, Chunk> chunks = chunkMapper.selectList(new LambdaQueryWrapper<Chunk>()
+                        .select(Chunk::getId, Chunk::getDocumentId, Chunk::getChunkIndex, Chunk::getContent)
+                        .eq(Chunk::getTenantId, tenantId)
+                        .in(Chunk::getId, results.stream().map(RetrievalResultDTO::getChunkId).collect(Collectors.toList())))
+                .stream()
+                .collect(Collectors.toMap(Chunk::getId, Function.identity()));
+        if (chunks.isEmpty()) {
+            return;
+        }
+        Map<Long, Document> documents = documentMapper.selectList(new LambdaQueryWrapper<Document>()
+                        .select(Document::getId, Document::getTitle, Document::getSource, Document::getFileType)
+                        .eq(Document::getTenantId, tenantId)
+                        .eq(Document::getStatus, 1)
+                        .in(Document::getId, chunks.values().stream().map(Chunk::getDocumentId).distinct().collect(Collectors.toList())))
+                .stream()
+                .collect(Collectors.toMap(Document::getId, Function.identity()));
+
+        for (RetrievalResultDTO r : results) {
+            Chunk chunk = chunks.get(r.getChunkId());
+            Document doc = chunk == null ? null : documents.get(chunk.getDocumentId());
+            if (doc == null) {
+                continue;
+            }
+            r.setChunkIndex(chunk.getChunkIndex());
+            r.setChunkText(chunk.getContent());
+            r.setTitle(doc.getTitle());
+            r.setSource(doc.getSource());
+            r.setFileType(doc.getFileType());
+        }
+    }
 
-    private RetrievalResultDTO toDTO(Points.ScoredPoint p) {
-        Map<String, JsonWithInt.Value> payload = p.getPayloadMap();
+
+    private RetrievalResultDTO toDTO(VectorSearchHit p) {
+        Map<String, Object> payload = p.getPayload();
 
         return RetrievalResultDTO.builder()
                 .documentId(getLong(payload, "document_id"))
@@ -66,63 +207,31 @@ public class KnowledgeSearchServiceImpl implements KnowledgeSearchService {
                 .fileType(getString(payload, "file_type"))
                 .chunkText(getString(payload, "chunk"))
                 .score((double) p.getScore())
+                .vector(p.getVector())
                 .build();
     }
 
 
-    // 构建过滤链 ： 按照租户id
-    private Points.Filter buildTenantFilter(Long tenantId) {
-        if (tenantId == null) return null;
-
-        Points.FieldCondition cond = Points.FieldCondition.newBuilder()
-                .setKey("tenant_id") // 要匹配的字段名
-                .setMatch(Points.Match.newBuilder().setInteger(tenantId)) // 整型精确匹配
-                .build();
-
-        return Points.Filter.newBuilder()
-                .addMust(Points.Condition.newBuilder().setField(cond))
-                .build();
-    }
-
-
-    private Long getLong(Map<String, JsonWithInt.Value> p, String k) {
-        JsonWithInt.Value v = p.get(k);
+    private Long getLong(Map<String, Object> p, String k) {
+        Object v = p.get(k);
         if (v == null) return null;
-        // 使用 getKindCase() 判断类型
-        JsonWithInt.Value.KindCase kindCase = v.getKindCase();
-        if (kindCase == JsonWithInt.Value.KindCase.INTEGER_VALUE) {
-            return v.getIntegerValue();
-        } else if (kindCase == JsonWithInt.Value.KindCase.DOUBLE_VALUE) {
-            return (long) v.getDoubleValue();
-        } else if (kindCase == JsonWithInt.Value.KindCase.STRING_VALUE) {
-            try {
-                return Long.parseLong(v.getStringValue());
-            } catch (NumberFormatException e) {
-                return null;
-            }
+        if (v instanceof Number) {
+            return ((Number) v).longValue();
+        }
+        try {
+            return Long.parseLong(v.toString());
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return null;
     }
 
-    private Integer getInt(Map<String, JsonWithInt.Value> p, String k) {
+    private Integer getInt(Map<String, Object> p, String k) {
         Long l = getLong(p, k);
         return l == null ? null : l.intValue();
     }
 
-    private String getString(Map<String, JsonWithInt.Value> p, String k) {
-        JsonWithInt.Value v = p.get(k);
-        if (v == null) return null;
-        // 使用 getKindCase() 判断类型
-        JsonWithInt.Value.KindCase kindCase = v.getKindCase();
-        if (kindCase == JsonWithInt.Value.KindCase.STRING_VALUE) {
-            return v.getStringValue();
-        } else if (kindCase == JsonWithInt.Value.KindCase.INTEGER_VALUE) {
-            return String.valueOf(v.getIntegerValue());
-        } else if (kindCase == JsonWithInt.Value.KindCase.DOUBLE_VALUE) {
-            return String.valueOf(v.getDoubleValue());
-        } else if (kindCase == JsonWithInt.Value.KindCase.BOOL_VALUE) {
-            return String.valueOf(v.getBoolValue());
-        }
-        return null;
+    private String getString(Map<String, Object> p, String k) {
+        Object v = p.get(k);
+        return v == null ? null : v.toString();
     }
 }
@@ -0,0 +1,242 @@
+package com.ityfz.yulu.knowledge.service.Impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ityfz.yulu.knowledge.dto.KnowledgeStats;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 知识库统计实现：Redis Hash kb:stats:{tenantId}（chunks / documents / lastIndexTime）。
+ * 增量用脚本只在 Hash 已存在时累加；不存在时下次读取从数据库全量统计，避免从 0 开始累加出错误的值。
+ * 本地缓存几十秒，其他实例的变更最多延迟一个 TTL 可见，对动态 minScore 这类用途足够
+ */
+@Service
+@Slf4j
+public class KnowledgeStatsServiceImpl implements KnowledgeStatsService {
+
+    private static final String KEY_PREFIX = "kb:stats:";
+    private static final String F_CHUNKS = "chunks";
+    private static final String F_DOCUMENTS = "documents";
+    private static final String F_LAST_INDEX_TIME = "lastIndexTime";
+
+    /**
+     * KEYS[1] 统计 Hash；ARGV[1] 字段，ARGV[2] 增量（为空只写时间），ARGV[3] 索引时间（为空不写）
+     * 返回 1 表示已更新，0 表示 Hash 不存在未更新
+     */
+    private static final RedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            if ARGV[2] ~= '' then
+                redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            end
+            if ARGV[3] ~= '' then
+                redis.call('HSET', KEYS[1], 'lastIndexTime', ARGV[3])
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] 统计 Hash；ARGV[1] chunks，ARGV[2] documents，ARGV[3] lastIndexTime，ARGV[4] 过期秒数。
+     * 删除、整体重写、设置过期在一个脚本里原子完成：读取方和增量脚本只会看到旧 Hash 或完整的新 Hash，
+     * 不会看到残留旧字段或没有过期时间的中间状态
+     */
+    private static final RedisScript<Long> RECONCILE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], 'chunks', ARGV[1], 'documents', ARGV[2], 'lastIndexTime', ARGV[3])
+            redis.call('EXPIRE', KEYS[1], ARGV[4])
+            return 1
+            """, Long.class);
+
+    private final ChunkMapper chunkMapper;
+    private final DocumentMapper documentMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final Cache<Long, KnowledgeStats> local;
+
+    /**
+     * Redis 中统计的过期时间：对账任务会刷新，长期无人访问的租户自然过期
+     */
+    @Value("${rag.stats.redis-ttl-hours:168}")
+    private long redisTtlHours = 168;
+
+    public KnowledgeStatsServiceImpl(ChunkMapper chunkMapper,
+                                     DocumentMapper documentMapper,
+                                     StringRedisTemplate redisTemplate,
+                                     @Value("${rag.stats.local-ttl-seconds:30}") long localTtlSeconds) {
+        this.chunkMapper = chunkMapper;
+        this.documentMapper = documentMapper;
+        this.redisTemplate = redisTemplate;
+        this.local = CacheBuilder.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public KnowledgeStats getStats(Long tenantId) {
+        if (tenantId == null) {
+            return new KnowledgeStats();
+        }
+        KnowledgeStats cached = local.getIfPresent(tenantId);
+        if (cached != null) {
+            return cached;
+        }
+        KnowledgeStats stats;
+        try {
+            Map<Object, Object> hash = redisTemplate.opsForHash().entries(key(tenantId));
+            stats = hash.isEmpty() ? reconcile(tenantId) : fromHash(hash);
+        } catch (Exception e) {
+            // Redis 不可用时直接查库，结果仍放本地缓存，避免每轮对话都 COUNT
+            log.warn("[KnowledgeStats] 读取 Redis 失败，改为查库: tenantId={}, error={}", tenantId, e.getMessage());
+            stats = loadFromDb(tenantId);
+        }
+        local.put(tenantId, stats);
+        return stats;
+    }
+
+    @Override
+    public void recordIndexedChunks(Long tenantId, long delta) {
+        if (delta != 0) {
+            increment(tenantId, F_CHUNKS, delta, false);
+        }
+    }
+
+    @Override
+    public void recordDocuments(Long tenantId, long delta) {
+        if (delta != 0) {
+            increment(tenantId, F_DOCUMENTS, delta, false);
+        }
+    }
+
+    @Override
+    public void recordIndexed(Long tenantId) {
+        increment(tenantId, F_CHUNKS, 0, true);
+    }
+
+    @Override
+    public KnowledgeStats reconcile(Long tenantId) {
+        KnowledgeStats stats = loadFromDb(tenantId);
+        redisTemplate.execute(RECONCILE_SCRIPT, List.of(key(tenantId)),
+                String.valueOf(stats.getChunkCount()),
+                String.valueOf(stats.getDocumentCount()),
+                String.valueOf(stats.getLastIndexTime()),
+                String.valueOf(Duration.ofHours(redisTtlHours).toSeconds()));
+        local.invalidate(tenantId);
+        log.debug("[KnowledgeStats] 对账: tenantId={}, stats={}", tenantId, stats);
+        return stats;
+    }
+
+    @Override
+    public int reconcileAll() {
+        // knowledge_document 不在多租户插件的表列表里，这里查询的是全部租户
+        List<Long> tenantIds = new ArrayList<>();
+        for (Object id : documentMapper.selectObjs(new QueryWrapper<Document>().select("DISTINCT tenant_id"))) {
+            tenantIds.add(((Number) id).longValue());
+        }
+        for (Long tenantId : tenantIds) {
+            reconcile(tenantId);
+        }
+        return tenantIds.size();
+    }
+
+    /**
+     * 事务提交后累加；Redis 失败只记日志，由对账修正
+     */
+    private void increment(Long tenantId, String field, long delta, boolean touchIndexTime) {
+        if (tenantId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            try {
+                redisTemplate.execute(INCR_SCRIPT, List.of(key(tenantId)), field,
+                        delta == 0 ? "" : String.valueOf(delta),
+                        touchIndexTime ? String.valueOf(System.currentTimeMillis()) : "");
+            } catch (Exception e) {
+                log.warn("[KnowledgeStats] 更新统计失败，等待对账: tenantId={}, field={}, delta={}, error={}",
+                        tenantId, field, delta, e.getMessage());
+            }
+            local.invalidate(tenantId);
+        });
+    }
+
+    private KnowledgeStats loadFromDb(Long tenantId) {
+        Long chunks = chunkMapper.selectCount(new LambdaQueryWrapper<Chunk>()
+                .eq(Chunk::getTenantId, tenantId)
+                .isNotNull(Chunk::getQdrantPointId));
+        Long documents = documentMapper.selectCount(new LambdaQueryWrapper<Document>()
+                .eq(Document::getTenantId, tenantId));
+        List<Object> last = documentMapper.selectObjs(new QueryWrapper<Document>()
+                .select("MAX(indexed_at)")
+                .eq("tenant_id", tenantId));
+        return new KnowledgeStats(chunks == null ? 0 : chunks, documents == null ? 0 : documents,
+                last.isEmpty() ? 0 : toEpochMillis(last.get(0)));
+    }
+
+    private KnowledgeStats fromHash(Map<Object, Object> hash) {
+        // 增量与删除交错时可能短暂为负，按 0 处理，对账后恢复
+        return new KnowledgeStats(
+                Math.max(0, parseLong(hash.get(F_CHUNKS))),
+                Math.max(0, parseLong(hash.get(F_DOCUMENTS))),
+                parseLong(hash.get(F_LAST_INDEX_TIME)));
+    }
+
+    private static long parseLong(Object v) {
+        if (v == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(v.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long toEpochMillis(Object v) {
+        if (v instanceof LocalDateTime t) {
+            return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (v instanceof java.util.Date d) {
+            return d.getTime();
+        }
+        return 0;
+    }
+
+    private static String key(Long tenantId) {
+        return KEY_PREFIX + tenantId;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.ityfz.yulu.knowledge.service.Impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.ityfz.yulu.common.config.KnowledgeHybridProperties;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.lexical.Bm25Index;
+import com.ityfz.yulu.knowledge.lexical.LexicalHit;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.service.LexicalIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 关键词索引实现：每个租户一份内存 BM25 索引，首次检索时在后台从 knowledge_chunk 全量构建，
+ * 之后本实例的切分/删除增量更新，并按 rebuildIntervalSeconds 在后台重建以吸收其他实例的写入。
+ * 全量构建都在 knowledgeLexicalExecutor 上执行：首次构建完成前该租户只有向量结果，
+ * 重建期间继续使用旧索引，检索线程从不等待构建。
+ */
+@Service
+@Slf4j
+public class LexicalIndexServiceImpl implements LexicalIndexService {
+
+    private final ChunkMapper chunkMapper;
+    private final KnowledgeHybridProperties properties;
+    private final Executor executor;
+    private final LoadingCache<Long, Bm25Index> indexes;
+    /**
+     * 已提交首次构建、还没完成的租户，避免同一租户的并发检索重复提交
+     */
+    private final Set<Long> loading = ConcurrentHashMap.newKeySet();
+
+    public LexicalIndexServiceImpl(ChunkMapper chunkMapper, KnowledgeHybridProperties properties,
+                                   @Qualifier("knowledgeLexicalExecutor") Executor executor) {
+        this.chunkMapper = chunkMapper;
+        this.properties = properties;
+        this.executor = executor;
+        // 到期后下一次读取触发后台重建，重建完成前仍返回旧索引
+        this.indexes = CacheBuilder.newBuilder()
+                .maximumSize(properties.getMaxTenants())
+                .refreshAfterWrite(properties.getRebuildIntervalSeconds(), TimeUnit.SECONDS)
+                .build(CacheLoader.asyncReloading(CacheLoader.from(this::build), executor));
+    }
+
+    @Override
+    public void indexDocumentChunks(Long tenantId, Long documentId, List<Chunk> chunks) {
+        if (tenantId == null || documentId == null) {
+            return;
+        }
+        // 事务回滚时 chunk 不存在，提交后再写入索引
+        afterCommit(() -> {
+            Bm25Index index = indexes.getIfPresent(tenantId);
+            if (index == null) {
+                // 该租户索引未加载，下次检索时全量构建会包含这些 chunk
+                return;
+            }
+            index.removeDocument(documentId);
+            for (Chunk chunk : chunks) {
+                if (chunk.getId() != null) {
+                    index.add(chunk.getId(), documentId, chunk.getContent());
+                }
+            }
+            log.debug("[Lexical] 增量索引: tenantId={}, documentId={}, chunkCount={}",
+                    tenantId, documentId, chunks.size());
+        });
+    }
+
+    @Override
+    public void reindexDocument(Long tenantId, Long documentId) {
+        if (tenantId == null || documentId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            Bm25Index index = indexes.getIfPresent(tenantId);
+            if (index == null) {
+                return;
+            }
+            index.removeDocument(documentId);
+            int count = 0;
+            long lastId = 0;
+            while (true) {
+                List<Chunk> page = chunkMapper.selectList(new LambdaQueryWrapper<Chunk>()
+                        .select(Chunk::getId, Chunk::getContent)
+                        .eq(Chunk::getTenantId, tenantId)
+                        .eq(Chunk::getDocumentId, documentId)
+                        .gt(Chunk::getId, lastId)
+                        .orderByAsc(Chunk::getId)
+                        .last("LIMIT " + properties.getLoadPageSize()));
+                for (Chunk chunk : page) {
+                    index.add(chunk.getId(), documentId, chunk.getContent());
+                }
+                count += page.size();
+                if (page.size() < properties.getLoadPageSize()) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            log.debug("[Lexical] 增量索引: tenantId={}, documentId={}, chunkCount={}", tenantId, documentId, count);
+        });
+    }
+
+    @Override
+    public void removeDocument(Long documentId) {
+        if (documentId == null) {
+            return;
+        }
+        // 删除入口拿不到租户时，在已加载的租户索引里逐个移除（文档 ID 全局唯一）
+        afterCommit(() -> indexes.asMap().values().forEach(index -> index.removeDocument(documentId)));
+    }
+
+    @Override
+    public List<LexicalHit> search(Long tenantId, String query, int topK) {
+        if (tenantId == null || query == null || query.isBlank()) {
+            return Collections.emptyList();
+        }
+        Bm25Index index = indexes.getIfPresent(tenantId);
+        if (index == null) {
+            loadInBackground(tenantId);
+            return Collections.emptyList();
+        }
+        return index.search(query, topK, properties.getMinTermCoverage());
+    }
+
+    /**
+     * 租户索引未加载（首次访问或被淘汰）：提交后台构建，本次检索不等待
+     */
+    private void loadInBackground(Long tenantId) {
+        if (!loading.add(tenantId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    // 键不存在时 refresh 在当前线程同步加载，失败只记日志，下次检索再提交
+                    indexes.refresh(tenantId);
+                } finally {
+                    loading.remove(tenantId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(tenantId);
+            log.warn("[Lexical] 索引构建线程繁忙，本次只用向量结果: tenantId={}", tenantId);
+        }
+    }
+
+    /**
+     * 按主键分页读取租户全部 chunk 构建索引
+     */
+    private Bm25Index build(Long tenantId) {
+        long start = System.currentTimeMillis();
+        Bm25Index index = new Bm25Index(properties.getK1(), properties.getB());
+        long lastId = 0;
+        while (true) {
+            List<Chunk> page = chunkMapper.selectList(new LambdaQueryWrapper<Chunk>()
+                    .select(Chunk::getId, Chunk::getDocumentId, Chunk::getContent)
+                    .eq(Chunk::getTenantId, tenantId)
+                    .gt(Chunk::getId, lastId)
+                    .orderByAsc(Chunk::getId)
+                    .last("LIMIT " + properties.getLoadPageSize()));
+            for (Chunk chunk : page) {
+                index.add(chunk.getId(), chunk.getDocumentId(), chunk.getContent());
+            }
+            if (page.size() < properties.getLoadPageSize()) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        log.info("[Lexical] 关键词索引构建完成: tenantId={}, chunks={}, cost={}ms",
+                tenantId, index.liveCount(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
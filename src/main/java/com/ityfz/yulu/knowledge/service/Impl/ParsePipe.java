@@ -0,0 +1,151 @@
+package com.ityfz.yulu.knowledge.service.Impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 解析线程 → 调用方线程的有界正文管道。
+ *
+ * 解析在专用线程池执行，但切分落库必须留在调用方线程（事务绑定在调用方线程上），
+ * 所以解析线程只把正文按段写进有界队列，调用方线程取出后写入真正的 Writer。
+ * 调用方超时或出错时 abort()，解析线程下一次读文件或写正文时抛出 IOException 结束。
+ */
+final class ParsePipe extends Writer {
+
+    /**
+     * 每段最多字符数：SAX 字符事件通常很碎，攒满一段再入队
+     */
+    static final int SEGMENT_CHARS = 8192;
+
+    private static final char[] EOF = new char[0];
+
+    private final BlockingQueue<char[]> queue;
+    private final char[] buffer = new char[SEGMENT_CHARS];
+    private int size;
+    private boolean closed;
+    private volatile boolean aborted;
+
+    ParsePipe(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    // ==================== 解析线程 ====================
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("管道已关闭");
+        }
+        while (len > 0) {
+            int n = Math.min(len, SEGMENT_CHARS - size);
+            System.arraycopy(cbuf, off, buffer, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == SEGMENT_CHARS) {
+                put(buffer.clone());
+                size = 0;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // 不足一段的内容等攒满或 close 时再入队
+    }
+
+    /**
+     * 解析结束（无论成功失败）时调用：送出剩余内容和结束标记
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (size > 0) {
+            put(Arrays.copyOf(buffer, size));
+            size = 0;
+        }
+        put(EOF);
+    }
+
+    /**
+     * 包装解析线程读取的输入流，调用方放弃后读文件立即失败，不再继续解析
+     */
+    InputStream guard(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                checkAborted();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkAborted();
+                return super.read(b, off, len);
+            }
+        };
+    }
+
+    private void put(char[] segment) throws IOException {
+        try {
+            while (true) {
+                checkAborted();
+                if (queue.offer(segment, 200, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("解析被中断");
+        }
+    }
+
+    private void checkAborted() throws IOException {
+        if (aborted) {
+            throw new IOException("解析已取消");
+        }
+    }
+
+    // ==================== 调用方线程 ====================
+
+    /**
+     * 把正文依次写入 out，直到解析线程关闭管道
+     *
+     * @param deadlineNanos 截止时间（System.nanoTime），到期抛 TimeoutException
+     * @return 写入的字符数
+     */
+    long drainTo(Writer out, long deadlineNanos) throws IOException, InterruptedException, TimeoutException {
+        long total = 0;
+        while (true) {
+            long remaining = deadlineNanos - System.nanoTime();
+            char[] segment = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (segment == null) {
+                throw new TimeoutException();
+            }
+            if (segment == EOF) {
+                return total;
+            }
+            out.write(segment);
+            total += segment.length;
+        }
+    }
+
+    /**
+     * 调用方放弃：唤醒阻塞在队列上的解析线程，之后的读写都会失败
+     */
+    void abort() {
+        aborted = true;
+        queue.clear();
+    }
+}
@@ -1,49 +1,198 @@
 package com.ityfz.yulu.knowledge.service.Impl;
 
 
+import com.ityfz.yulu.common.config.DocumentParseProperties;
 import com.ityfz.yulu.common.enums.ErrorCodes;
 import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.knowledge.dto.DocumentParseStats;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Tika 文档解析：在专用线程池执行，按文件类型限制耗时和正文长度，
+ * 一个异常文档最多占用一个解析线程到超时为止，不会拖住请求线程或导入线程
+ */
 @Service
 @Slf4j
 public class TikaDocumentParser {
 
+    /**
+     * 万能解析器，根据文件魔数自动挑底层实现（PDFBox、POI...）。
+     * 初始化要加载全部解析器和类型探测配置，开销不小；parse 本身线程安全，全局共用一个
+     */
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    private final ThreadPoolTaskExecutor executor;
+    private final DocumentParseProperties properties;
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder costNanos = new LongAdder();
+
+    public TikaDocumentParser(@Qualifier("knowledgeParseExecutor") ThreadPoolTaskExecutor executor,
+                              DocumentParseProperties properties) {
+        this.executor = executor;
+        this.properties = properties;
+    }
+
     public String parse(byte[] fileBytes, String filenameOrExt) {
         if (fileBytes == null || fileBytes.length == 0) {
             throw new BizException(ErrorCodes.VALIDATION_ERROR, "文件内容为空");
         }
-        // 创建 Tika 三大核心对象
-        AutoDetectParser parser = new AutoDetectParser(); // 万能解析器，根据文件魔数自动挑底层实现（PDFBox、POI...）
-        BodyContentHandler handler = new BodyContentHandler(-1); // -1 不截断 role: 只拿正文，过滤样式、页眉页脚；-1 表示不限长度（防止大文件被截断）
+        StringWriter out = new StringWriter();
+        execute(filenameOrExt, () -> new ByteArrayInputStream(fileBytes), out);
+        String text = out.toString(); //取完正文在 writer 里，转 String 即可
+        if (text.trim().isEmpty()) {
+            log.warn("[Tika] 解析结果为空: name={}", filenameOrExt);
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档内容解析为空");
+        }
+        String normalized = text.trim();
+        log.debug("[Tika] 解析完成: name={}, length={}", filenameOrExt, normalized.length());
+        return normalized;
+    }
+
+    /**
+     * 流式解析暂存文件：PDF、Office 等需要随机访问的格式直接读文件，不再另外落临时文件
+     */
+    public void parse(Path file, String filenameOrExt, Writer out) {
+        execute(filenameOrExt, () -> TikaInputStream.get(file), out);
+    }
+
+    /**
+     * 流式解析：正文随 SAX 字符事件分段写入 out，不在内存中拼出全文。
+     * out 在调用方线程写入（可以放心在事务里落库），由调用方负责关闭；in 解析结束后关闭
+     */
+    public void parse(InputStream in, String filenameOrExt, Writer out) {
+        execute(filenameOrExt, () -> in, out);
+    }
+
+    public DocumentParseStats getStats() {
+        long ok = succeeded.sum();
+        long costMs = TimeUnit.NANOSECONDS.toMillis(costNanos.sum());
+        return DocumentParseStats.builder()
+                .poolSize(executor.getCorePoolSize())
+                .active(executor.getActiveCount())
+                .queued(executor.getThreadPoolExecutor().getQueue().size())
+                .succeeded(ok)
+                .failed(failed.sum())
+                .timedOut(timedOut.sum())
+                .rejected(rejected.sum())
+                .chars(chars.sum())
+                .avgCostMs(ok == 0 ? 0 : costMs / ok)
+                .charsPerSecond(costMs == 0 ? 0 : chars.sum() * 1000 / costMs)
+                .build();
+    }
+
+    /**
+     * 解析线程负责读文件、跑 Tika，正文经 ParsePipe 回到当前线程写入 out；
+     * 超时从提交时开始计算（含排队），到期后放弃解析线程并抛出异常
+     */
+    private void execute(String filenameOrExt, Callable<InputStream> opener, Writer out) {
+        long timeoutMs = properties.timeoutFor(filenameOrExt);
+        int maxChars = properties.maxCharsFor(filenameOrExt);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        ParsePipe pipe = new ParsePipe(properties.getPipeCapacity());
+
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try (pipe; InputStream in = opener.call()) {
+                    doParse(pipe.guard(in), filenameOrExt, pipe, maxChars);
+                }
+                return null;
+            });
+        } catch (TaskRejectedException e) {
+            rejected.increment();
+            log.warn("[Tika] 解析线程池已满: name={}", filenameOrExt);
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_BUSY, "解析任务过多，请稍后重试");
+        }
+
+        boolean done = false;
+        try {
+            long written = pipe.drainTo(out, deadline);
+            task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            done = true;
+            long cost = System.nanoTime() - start;
+            succeeded.increment();
+            chars.add(written);
+            costNanos.add(cost);
+            log.debug("[Tika] 解析完成: name={}, chars={}, cost={}ms",
+                    filenameOrExt, written, TimeUnit.NANOSECONDS.toMillis(cost));
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            log.warn("[Tika] 文档解析超时: name={}, timeout={}ms", filenameOrExt, timeoutMs);
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档解析超时（超过 " + timeoutMs / 1000 + " 秒）");
+        } catch (ExecutionException e) {
+            failed.increment();
+            Throwable cause = e.getCause();
+            if (cause instanceof BizException biz) {
+                throw biz;
+            }
+            log.error("[Tika] 文档解析失败: name={}", filenameOrExt, cause);
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档解析失败: " + cause.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档解析被中断");
+        } catch (IOException e) {
+            // 写入 out 失败（调用方的 Writer）
+            failed.increment();
+            log.error("[Tika] 正文写出失败: name={}", filenameOrExt, e);
+            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "读取文档内容失败: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // out 写入时抛出的业务异常（如切分落库失败）原样抛出
+            failed.increment();
+            throw e;
+        } finally {
+            if (!done) {
+                // Tika 不响应中断的解析器（如 PDFBox）会在下一次读文件或写正文时因管道已放弃而结束
+                pipe.abort();
+                task.cancel(true);
+            }
+        }
+    }
+
+    private void doParse(InputStream in, String filenameOrExt, Writer out, int maxChars) throws Exception {
+        // 只拿正文，过滤样式、页眉页脚；超过 maxChars 抛 WriteLimitReachedException
+        BodyContentHandler handler = new BodyContentHandler(new WriteOutContentHandler(out, maxChars));
         Metadata metadata = new Metadata(); // 存元数据（标题、页数、作者...），这里只用来传文件名帮助解析器选型
         if (filenameOrExt != null) {
             metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filenameOrExt); //传文件名帮助解析器选型
         }
-        ParseContext context = new ParseContext();
-
-        try (InputStream is = new ByteArrayInputStream(fileBytes)) {
-            parser.parse(is, handler, metadata, context);
-            String text = handler.toString(); //取完正文在 handler 里，转 String 即可
-            if (text == null || text.trim().isEmpty()) {
-                log.warn("[Tika] 解析结果为空: name={}", filenameOrExt);
-                throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档内容解析为空");
-            }
-            String normalized = text.trim();
-            log.debug("[Tika] 解析完成: name={}, length={}", filenameOrExt, normalized.length());
-            return normalized;
+        try {
+            parser.parse(in, handler, metadata, new ParseContext());
         } catch (Exception e) {
-            log.error("[Tika] 文档解析失败: name={}", filenameOrExt, e);
-            throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档解析失败: " + e.getMessage());
+            if (WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw new BizException(ErrorCodes.DOCUMENT_PARSE_FAILED, "文档正文超过 " + maxChars + " 字符上限");
+            }
+            throw e;
         }
     }
 
@@ -0,0 +1,210 @@
+package com.ityfz.yulu.knowledge.service.Impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ityfz.yulu.common.ai.ScrollPage;
+import com.ityfz.yulu.common.ai.UpsertReport;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorStore;
+import com.ityfz.yulu.common.config.VectorStoreProperties;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.knowledge.dto.VectorMigrationResponse;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.enums.VectorLayout;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.service.VectorCollectionRouter;
+import com.ityfz.yulu.knowledge.service.VectorLayoutMigrationService;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongPredicate;
+
+/**
+ * 向量布局迁移。
+ *
+ * 1. 复制：按 ID 分页遍历源集合中该租户的点（带向量），写入目标集合，期间检索和写入仍走源集合
+ * 2. 切换：tenant_settings.vector_collection 改为目标集合，广播各实例失效缓存，等待在途写入落地
+ * 3. 补齐：以 DB 中已索引的 chunk 为准，补复制复制期间新写入源集合的点，删除复制后已被删除的点
+ * 4. 清理：共享集合按 tenant_id 删点，租户独立集合直接删除
+ *
+ * pointId=chunkId，复制是幂等的：切换前失败可以直接重新执行；切换后失败时租户已在目标集合，
+ * 缺失的向量通过重建文档索引补齐，源集合的残留点按 tenant_id 清理即可。
+ */
+@Slf4j
+@Service
+public class VectorLayoutMigrationServiceImpl implements VectorLayoutMigrationService {
+
+    private static final String LOCK_KEY_PREFIX = "kb:vector-migrate:";
+    private static final Duration LOCK_TTL = Duration.ofHours(6);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final VectorStore vectorStore;
+    private final VectorCollectionRouter collectionRouter;
+    private final TenantConfigService tenantConfigService;
+    private final ChunkMapper chunkMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final VectorStoreProperties properties;
+
+    public VectorLayoutMigrationServiceImpl(VectorStore vectorStore,
+                                            VectorCollectionRouter collectionRouter,
+                                            TenantConfigService tenantConfigService,
+                                            ChunkMapper chunkMapper,
+                                            StringRedisTemplate stringRedisTemplate,
+                                            VectorStoreProperties properties) {
+        this.vectorStore = vectorStore;
+        this.collectionRouter = collectionRouter;
+        this.tenantConfigService = tenantConfigService;
+        this.chunkMapper = chunkMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = properties;
+    }
+
+    @Override
+    public VectorMigrationResponse migrateTenant(Long tenantId, VectorLayout target) {
+        if (tenantId == null || target == null) {
+            throw new BizException(ErrorCodes.PARAM_INVALID, "租户和目标布局不能为空");
+        }
+        String lockKey = LOCK_KEY_PREFIX + tenantId;
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_TTL))) {
+            throw new BizException(ErrorCodes.VECTOR_MIGRATION_RUNNING, "该租户已有向量迁移任务在执行");
+        }
+        try {
+            return migrate(tenantId, target);
+        } finally {
+            try {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), token);
+            } catch (Exception e) {
+                log.warn("[VectorLayout] 释放迁移锁失败，等待自动过期: tenantId={}", tenantId);
+            }
+        }
+    }
+
+    private VectorMigrationResponse migrate(Long tenantId, VectorLayout target) {
+        long start = System.currentTimeMillis();
+        String source = collectionRouter.collectionFor(tenantId);
+        String destination = collectionRouter.collectionName(tenantId, target);
+
+        VectorMigrationResponse response = new VectorMigrationResponse();
+        response.setTenantId(tenantId);
+        response.setSourceCollection(source);
+        response.setTargetCollection(destination);
+        if (source.equals(destination)) {
+            // 没有记录的租户也固定下来，避免之后改默认布局影响到它
+            tenantConfigService.updateVectorCollection(tenantId, destination);
+            response.setMigrated(false);
+            response.setCostMs(System.currentTimeMillis() - start);
+            return response;
+        }
+        log.info("[VectorLayout] 开始迁移: tenantId={}, {} -> {}", tenantId, source, destination);
+        VectorFilter filter = VectorFilter.eq("tenant_id", tenantId);
+        collectionRouter.ensureCollection(destination);
+
+        // 1. 全量复制
+        Set<Long> copied = new HashSet<>();
+        copy(source, destination, filter, id -> true, copied);
+        log.info("[VectorLayout] 复制完成: tenantId={}, points={}", tenantId, copied.size());
+
+        // 2. 切换
+        tenantConfigService.updateVectorCollection(tenantId, destination);
+        if (properties.getMigrationSwitchGraceMs() > 0) {
+            try {
+                Thread.sleep(properties.getMigrationSwitchGraceMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // 3. 以 DB 为准补齐增量
+        Set<Long> live = livePointIds(tenantId);
+        Set<Long> caughtUp = new HashSet<>();
+        copy(source, destination, filter, id -> live.contains(id) && !copied.contains(id), caughtUp);
+        List<Long> stale = new ArrayList<>();
+        for (Long id : copied) {
+            if (!live.contains(id)) {
+                stale.add(id);
+            }
+        }
+        vectorStore.deletePoints(destination, stale);
+        long missing = live.stream().filter(id -> !copied.contains(id) && !caughtUp.contains(id)).count();
+
+        // 4. 清理源集合
+        if (source.equals(collectionRouter.collectionName(tenantId, VectorLayout.SHARED))) {
+            vectorStore.deleteByFilter(source, filter);
+        } else {
+            vectorStore.deleteCollection(source);
+            collectionRouter.forget(source);
+        }
+
+        response.setMigrated(true);
+        response.setCopiedPoints((long) copied.size());
+        response.setCaughtUpPoints((long) caughtUp.size());
+        response.setRemovedStalePoints((long) stale.size());
+        response.setMissingPoints(missing);
+        response.setCostMs(System.currentTimeMillis() - start);
+        if (missing > 0) {
+            log.warn("[VectorLayout] 迁移后有 chunk 缺少向量，需重建相关文档索引: tenantId={}, missing={}",
+                    tenantId, missing);
+        }
+        log.info("[VectorLayout] 迁移完成: {}", response);
+        return response;
+    }
+
+    /**
+     * 分页复制 accept 通过的点，写入的 ID 记入 copied
+     */
+    private void copy(String source, String destination, VectorFilter filter, LongPredicate accept, Set<Long> copied) {
+        int batchSize = Math.max(1, properties.getMigrationBatchSize());
+        Long offset = null;
+        do {
+            ScrollPage page = vectorStore.scroll(source, filter, offset, batchSize, true);
+            List<VectorPoint> batch = new ArrayList<>(page.getPoints().size());
+            for (VectorPoint p : page.getPoints()) {
+                if (accept.test(p.getId())) {
+                    batch.add(p);
+                }
+            }
+            if (!batch.isEmpty()) {
+                UpsertReport report = vectorStore.upsertPoints(destination, batch);
+                if (!report.isAllSucceeded()) {
+                    throw new IllegalStateException("迁移写入失败: " + report.getFailures().size() + "/"
+                            + report.getTotal() + " 个点未写入，可重新执行迁移");
+                }
+                batch.forEach(p -> copied.add(p.getId()));
+            }
+            offset = page.getNextOffset();
+        } while (offset != null);
+    }
+
+    /**
+     * DB 中已写入向量的 chunk（pointId=chunkId）
+     */
+    private Set<Long> livePointIds(Long tenantId) {
+        List<Object> ids = chunkMapper.selectObjs(new LambdaQueryWrapper<Chunk>()
+                .select(Chunk::getQdrantPointId)
+                .eq(Chunk::getTenantId, tenantId)
+                .isNotNull(Chunk::getQdrantPointId));
+        Set<Long> live = new HashSet<>(ids.size() * 2);
+        for (Object id : ids) {
+            live.add(((Number) id).longValue());
+        }
+        return live;
+    }
+}
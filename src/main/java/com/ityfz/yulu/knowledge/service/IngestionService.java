@@ -0,0 +1,47 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.knowledge.entity.IngestJob;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+/**
+ * 文档异步导入服务：请求线程只负责落盘和建任务，解析 / 切分 / 向量化 / 写入在后台分阶段执行
+ */
+public interface IngestionService {
+
+    /**
+     * 上传文件并创建导入任务（从解析阶段开始）
+     *
+     * @param tenantId 租户ID
+     * @param title 文档标题（为空时使用文件名）
+     * @param file 上传的文件
+     * @param source 文档来源
+     * @return 导入任务（含文档ID）
+     */
+    IngestJob submitUpload(Long tenantId, String title, MultipartFile file, String source);
+
+    /**
+     * 批量上传：每个文件一个导入任务，标题取文件名，任务在导入线程池中并行执行。
+     * 单个文件校验或暂存失败不影响其他文件
+     *
+     * @return 与 files 一一对应的导入任务；失败的文件返回状态为 FAILED、带失败原因的任务（无任务ID）
+     */
+    List<IngestJob> submitUploads(Long tenantId, List<MultipartFile> files, String source);
+
+    /**
+     * 为已上传的文档创建索引任务（已有 chunk 时从向量化阶段开始）。
+     * 同一文档已有排队中/执行中的任务时直接返回该任务
+     */
+    IngestJob submitIndex(Long tenantId, Long documentId);
+
+    /**
+     * 查询任务进度
+     */
+    IngestJob getJob(Long tenantId, Long jobId);
+
+    /**
+     * 重试失败（或执行实例已宕机）的任务，从失败的阶段和最后完成的批次继续
+     */
+    IngestJob retry(Long tenantId, Long jobId);
+}
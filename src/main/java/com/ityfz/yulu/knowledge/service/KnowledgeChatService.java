@@ -27,4 +27,9 @@ public interface KnowledgeChatService {
      * @return 增强后的本轮 user 消息（无检索时即 question）+ 引用列表
      */
     RagAugmentResult buildRagAugment(Long tenantId, String question);
+
+    /**
+     * 同 buildRagAugment(tenantId, question)，参考资料总长度不超过 maxContextTokens 个 token
+     */
+    RagAugmentResult buildRagAugment(Long tenantId, String question, int maxContextTokens);
 }
@@ -8,4 +8,14 @@ public interface KnowledgeSearchService {
 
     // 检索
     List<RetrievalResultDTO> search(Long tenantId, String query, int topK, double minScore);
+
+    // 检索，bypassCache 为 true 时不读写检索结果缓存（管理端调试检索效果用）
+    List<RetrievalResultDTO> search(Long tenantId, String query, int topK, double minScore, boolean bypassCache);
+
+    // 检索（调用方已经算好问题向量，避免重复向量化；query 为空时只做向量检索）
+    List<RetrievalResultDTO> search(Long tenantId, String query, float[] queryVector, int topK, double minScore);
+
+    // 同上，withVectors 为 true 时结果带回片段向量（只有向量检索命中的片段有）
+    List<RetrievalResultDTO> search(Long tenantId, String query, float[] queryVector, int topK, double minScore,
+                                    boolean withVectors);
 }
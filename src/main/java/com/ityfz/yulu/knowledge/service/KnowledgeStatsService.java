@@ -0,0 +1,43 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.knowledge.dto.KnowledgeStats;
+
+/**
+ * 租户知识库统计：索引 / 删除链路增量维护，存 Redis 并在本地短暂缓存，定期与数据库对账。
+ * 对话热路径读取它，不再每轮 COUNT 一次 knowledge_chunk。
+ * 增量在当前事务提交后才生效，回滚不会计入
+ */
+public interface KnowledgeStatsService {
+
+    /**
+     * 读取统计（本地缓存 → Redis → 数据库）
+     */
+    KnowledgeStats getStats(Long tenantId);
+
+    /**
+     * 已索引 chunk 数变化：写入向量后为正，删除或清空向量映射后为负
+     */
+    void recordIndexedChunks(Long tenantId, long delta);
+
+    /**
+     * 文档数变化：上传为正，删除为负
+     */
+    void recordDocuments(Long tenantId, long delta);
+
+    /**
+     * 记录一次索引完成
+     */
+    void recordIndexed(Long tenantId);
+
+    /**
+     * 从数据库重新统计并覆盖 Redis 中的值
+     */
+    KnowledgeStats reconcile(Long tenantId);
+
+    /**
+     * 对账所有有文档的租户
+     *
+     * @return 对账的租户数
+     */
+    int reconcileAll();
+}
@@ -0,0 +1,32 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.lexical.LexicalHit;
+
+import java.util.List;
+
+/**
+ * 按租户隔离的 BM25 关键词索引，补充向量检索对订单号、型号、生僻词等精确词的召回
+ */
+public interface LexicalIndexService {
+
+    /**
+     * 用新切分的 chunk 替换文档在索引中的内容（chunk 需已落库、有 ID）
+     */
+    void indexDocumentChunks(Long tenantId, Long documentId, List<Chunk> chunks);
+
+    /**
+     * 事务提交后从库里分页读取文档的 chunk 替换索引内容（流式切分时调用方手里没有全部 chunk）
+     */
+    void reindexDocument(Long tenantId, Long documentId);
+
+    /**
+     * 从索引中移除文档
+     */
+    void removeDocument(Long documentId);
+
+    /**
+     * 关键词检索，按 BM25 分数倒序
+     */
+    List<LexicalHit> search(Long tenantId, String query, int topK);
+}
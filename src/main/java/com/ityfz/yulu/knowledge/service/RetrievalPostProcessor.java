@@ -0,0 +1,248 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.common.config.RagContextProperties;
+import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import com.ityfz.yulu.knowledge.lexical.CjkBigramTokenizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 检索结果整理，放在检索之后、拼装 Prompt 之前：
+ *
+ * 1. 相邻合并：同一文档 chunk_index 连续的片段拼成一段，去掉切分重叠部分，标题只出现一次
+ * 2. MMR 选段：每次选 λ·相关度 − (1−λ)·与已选段最大相似度 最高的段，
+ *    片段相似度优先用向量余弦，没有向量（只被关键词命中）时用二字组 Jaccard
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RetrievalPostProcessor {
+
+    /**
+     * 重叠文本至少这么长才认定为切分重叠，避免偶然相同的几个字被误删
+     */
+    private static final int MIN_OVERLAP_CHARS = 5;
+
+    private final RagContextProperties properties;
+
+    public boolean isMmrEnabled() {
+        return properties.isMmrEnabled();
+    }
+
+    /**
+     * 检索时应召回的候选数
+     */
+    public int candidateCount(int topK) {
+        if (!properties.isMergeAdjacent() && !properties.isMmrEnabled()) {
+            return topK;
+        }
+        return topK * Math.max(1, properties.getCandidateMultiplier());
+    }
+
+    /**
+     * 合并 + 选段，最多返回 maxResults 段，按入选顺序排列
+     */
+    public List<RetrievalResultDTO> process(List<RetrievalResultDTO> hits, int maxResults) {
+        if (hits == null || hits.isEmpty()) {
+            return hits;
+        }
+        List<Segment> segments = properties.isMergeAdjacent() ? mergeAdjacent(hits) : asSegments(hits);
+        List<Segment> selected = properties.isMmrEnabled()
+                ? selectMmr(segments, maxResults)
+                : segments.stream()
+                        .sorted(Comparator.comparingDouble(Segment::relevance).reversed())
+                        .limit(maxResults)
+                        .collect(Collectors.toList());
+        log.debug("[RAG] 检索结果整理: hits={}, segments={}, selected={}", hits.size(), segments.size(), selected.size());
+        return selected.stream().map(seg -> seg.result).collect(Collectors.toList());
+    }
+
+    // ==================== 相邻合并 ====================
+
+    private List<Segment> mergeAdjacent(List<RetrievalResultDTO> hits) {
+        Map<Long, List<RetrievalResultDTO>> byDocument = new LinkedHashMap<>();
+        List<Segment> segments = new ArrayList<>();
+        for (RetrievalResultDTO h : hits) {
+            if (h.getDocumentId() == null || h.getChunkIndex() == null) {
+                segments.add(new Segment(h));
+            } else {
+                byDocument.computeIfAbsent(h.getDocumentId(), k -> new ArrayList<>()).add(h);
+            }
+        }
+
+        for (List<RetrievalResultDTO> docHits : byDocument.values()) {
+            docHits.sort(Comparator.comparingInt(RetrievalResultDTO::getChunkIndex));
+            Segment current = null;
+            int lastIndex = -2;
+            for (RetrievalResultDTO h : docHits) {
+                if (h.getChunkIndex() == lastIndex) {
+                    // 同一片段被两路检索重复返回
+                    continue;
+                }
+                String text = h.getChunkText() == null ? "" : h.getChunkText();
+                boolean adjacent = current != null && h.getChunkIndex() == lastIndex + 1
+                        && current.result.getChunkText().length() + text.length() <= properties.getMaxMergedChars();
+                if (adjacent) {
+                    current.append(h, properties.getMaxOverlapChars());
+                } else {
+                    current = new Segment(h);
+                    segments.add(current);
+                }
+                lastIndex = h.getChunkIndex();
+            }
+        }
+        return segments;
+    }
+
+    private List<Segment> asSegments(List<RetrievalResultDTO> hits) {
+        return hits.stream().map(Segment::new).collect(Collectors.toList());
+    }
+
+    /**
+     * prev 结尾与 next 开头相同的最长长度（切分时的重叠部分），不足 MIN_OVERLAP_CHARS 视为无重叠
+     */
+    static int overlapLength(String prev, String next, int maxCheck) {
+        int max = Math.min(maxCheck, Math.min(prev.length(), next.length()));
+        for (int k = max; k >= MIN_OVERLAP_CHARS; k--) {
+            if (prev.regionMatches(prev.length() - k, next, 0, k)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    // ==================== MMR ====================
+
+    private List<Segment> selectMmr(List<Segment> segments, int maxResults) {
+        double maxRelevance = segments.stream().mapToDouble(Segment::relevance).max().orElse(0);
+        double lambda = properties.getMmrLambda();
+        List<Segment> remaining = new ArrayList<>(segments);
+        List<Segment> selected = new ArrayList<>();
+        while (!remaining.isEmpty() && selected.size() < maxResults) {
+            Segment best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (Segment candidate : remaining) {
+                double relevance = maxRelevance > 0 ? candidate.relevance() / maxRelevance : 0;
+                double redundancy = 0;
+                for (Segment chosen : selected) {
+                    redundancy = Math.max(redundancy, similarity(candidate, chosen));
+                }
+                double score = lambda * relevance - (1 - lambda) * redundancy;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = candidate;
+                }
+            }
+            selected.add(best);
+            remaining.remove(best);
+        }
+        return selected;
+    }
+
+    private double similarity(Segment a, Segment b) {
+        if (a.vector != null && b.vector != null && a.vector.length == b.vector.length) {
+            return cosine(a.vector, b.vector);
+        }
+        Set<String> ta = a.terms();
+        Set<String> tb = b.terms();
+        if (ta.isEmpty() || tb.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String t : ta) {
+            if (tb.contains(t)) {
+                common++;
+            }
+        }
+        return (double) common / (ta.size() + tb.size() - common);
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return na == 0 || nb == 0 ? 0 : dot / Math.sqrt(na * nb);
+    }
+
+    /**
+     * 一段上下文：单个片段或若干相邻片段合并的结果。向量取各片段向量之和（比较余弦时等价于均值）
+     */
+    private static class Segment {
+        private final RetrievalResultDTO result;
+        private float[] vector;
+        private Set<String> terms;
+
+        Segment(RetrievalResultDTO hit) {
+            this.result = RetrievalResultDTO.builder()
+                    .documentId(hit.getDocumentId())
+                    .chunkId(hit.getChunkId())
+                    .chunkIndex(hit.getChunkIndex())
+                    .title(hit.getTitle())
+                    .source(hit.getSource())
+                    .fileType(hit.getFileType())
+                    .chunkText(hit.getChunkText() == null ? "" : hit.getChunkText())
+                    .score(hit.getScore())
+                    .lexicalScore(hit.getLexicalScore())
+                    .fusedScore(hit.getFusedScore())
+                    .mergedChunks(1)
+                    .build();
+            // 合并时会原地累加，复制一份，不改检索结果里的向量
+            this.vector = hit.getVector() == null ? null : hit.getVector().clone();
+        }
+
+        void append(RetrievalResultDTO next, int maxOverlapChars) {
+            String prev = result.getChunkText();
+            String text = next.getChunkText() == null ? "" : next.getChunkText();
+            int overlap = overlapLength(prev, text, maxOverlapChars);
+            result.setChunkText(overlap > 0 ? prev + text.substring(overlap) : prev + "\n" + text);
+            result.setScore(max(result.getScore(), next.getScore()));
+            result.setLexicalScore(max(result.getLexicalScore(), next.getLexicalScore()));
+            result.setFusedScore(max(result.getFusedScore(), next.getFusedScore()));
+            result.setMergedChunks(result.getMergedChunks() + 1);
+            float[] v = next.getVector();
+            if (vector != null && v != null && v.length == vector.length) {
+                for (int i = 0; i < v.length; i++) {
+                    vector[i] += v[i];
+                }
+            } else {
+                // 有片段缺向量时整段退化为文本相似度
+                vector = null;
+            }
+            terms = null;
+        }
+
+        double relevance() {
+            if (result.getFusedScore() != null) {
+                return result.getFusedScore();
+            }
+            return result.getScore() != null ? result.getScore() : 0;
+        }
+
+        Set<String> terms() {
+            if (terms == null) {
+                terms = new HashSet<>(CjkBigramTokenizer.tokenize(result.getChunkText()));
+            }
+            return terms;
+        }
+
+        private static Double max(Double a, Double b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null ? a : Math.max(a, b);
+        }
+    }
+}
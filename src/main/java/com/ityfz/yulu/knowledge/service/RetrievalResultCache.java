@@ -0,0 +1,181 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ityfz.yulu.common.config.RetrievalCacheProperties;
+import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import com.ityfz.yulu.knowledge.event.KnowledgeBaseChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 检索结果缓存（进程内，按租户知识库代数号隔离）
+ *
+ * - 每个租户有一个 Redis 代数号 kb:gen:{tenantId}，文档索引完成、内容更新、文档删除后 INCR
+ * - 缓存 key = 租户 + 代数号 + 归一化问题 + topK + minScore，代数号变了旧条目就再也查不到，
+ *   失效是 O(1) 且多实例一致，旧条目随容量淘汰 / 过期自然清掉
+ * - 读不到代数号（Redis 不可用）时不走缓存，宁可多查一次 Qdrant 也不返回可能过期的结果
+ */
+@Slf4j
+@Service
+public class RetrievalResultCache {
+
+    private static final String GENERATION_KEY_PREFIX = "kb:gen:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RetrievalCacheProperties properties;
+    private final Cache<String, List<RetrievalResultDTO>> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    public RetrievalResultCache(StringRedisTemplate stringRedisTemplate, RetrievalCacheProperties properties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = properties;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(1, properties.getMaxSizeMb()) * 1024L)
+                .weigher((String key, List<RetrievalResultDTO> value) -> weightKb(key, value))
+                .expireAfterWrite(properties.getTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 先查缓存，未命中时执行 loader 并写入。
+     * query 为空（只做向量检索）的请求没有可比较的 key，直接执行 loader
+     *
+     * @param withVectors 结果是否带片段向量，带与不带的结果分开缓存
+     */
+    public List<RetrievalResultDTO> get(Long tenantId, String query, int topK, double minScore, boolean withVectors,
+                                        Supplier<List<RetrievalResultDTO>> loader) {
+        String normalized = normalize(query);
+        if (!properties.isEnabled() || tenantId == null || normalized.isEmpty()) {
+            return loader.get();
+        }
+        Long generation = currentGeneration(tenantId);
+        if (generation == null) {
+            bypassed.increment();
+            return loader.get();
+        }
+        String key = tenantId + ":" + generation + ":" + topK + ":" + minScore + ":" + withVectors + ":" + normalized;
+        List<RetrievalResultDTO> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            log.debug("[RetrievalCache] 命中: tenantId={}, generation={}, query={}", tenantId, generation, normalized);
+            return copy(cached);
+        }
+        misses.increment();
+        List<RetrievalResultDTO> results = loader.get();
+        if (results != null) {
+            cache.put(key, copy(results));
+        }
+        return results;
+    }
+
+    /**
+     * 不查缓存直接执行（管理端调试检索效果用），只计数
+     */
+    public List<RetrievalResultDTO> bypass(Supplier<List<RetrievalResultDTO>> loader) {
+        bypassed.increment();
+        return loader.get();
+    }
+
+    /**
+     * 租户知识库代数号推进一代，之前缓存的检索结果全部失效
+     */
+    public void bumpGeneration(Long tenantId) {
+        if (tenantId == null) {
+            return;
+        }
+        Long generation = stringRedisTemplate.opsForValue().increment(GENERATION_KEY_PREFIX + tenantId);
+        log.info("[RetrievalCache] 知识库变更，检索缓存失效: tenantId={}, generation={}", tenantId, generation);
+    }
+
+    /**
+     * 事务提交后再推进代数号：提交前推进的话，并发检索可能读到新代数号却查到旧数据并写进缓存
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeBaseChanged(KnowledgeBaseChangedEvent event) {
+        try {
+            bumpGeneration(event.getTenantId());
+        } catch (Exception e) {
+            // 代数号没推进，本地至少清掉，其他实例等 TTL 过期
+            cache.invalidateAll();
+            log.error("[RetrievalCache] 更新知识库代数号失败: tenantId={}, error={}",
+                    event.getTenantId(), e.getMessage(), e);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getBypassed() {
+        return bypassed.sum();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    private Long currentGeneration(Long tenantId) {
+        try {
+            String v = stringRedisTemplate.opsForValue().get(GENERATION_KEY_PREFIX + tenantId);
+            return v == null ? 0L : Long.parseLong(v);
+        } catch (Exception e) {
+            log.warn("[RetrievalCache] 读取知识库代数号失败，本次不走缓存: tenantId={}, error={}", tenantId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 去首尾空白、合并连续空白、统一小写、去掉句末标点，
+     * "怎么退货？" 和 "怎么退货 " 算同一个问题
+     */
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String s = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        int end = s.length();
+        while (end > 0 && "?？!！。.,，~～".indexOf(s.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return s.substring(0, end).trim();
+    }
+
+    /**
+     * 结果会被调用方整理（合并相邻片段时改写正文、分数），进出缓存都复制一份；
+     * 片段向量只读，共用同一个数组
+     */
+    private static List<RetrievalResultDTO> copy(List<RetrievalResultDTO> results) {
+        return results.stream().map(r -> r.toBuilder().build()).collect(Collectors.toList());
+    }
+
+    private static int weightKb(String key, List<RetrievalResultDTO> results) {
+        long bytes = key.length() * 2L;
+        for (RetrievalResultDTO r : results) {
+            bytes += 128;
+            bytes += r.getChunkText() == null ? 0 : r.getChunkText().length() * 2L;
+            bytes += r.getVector() == null ? 0 : r.getVector().length * 4L;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes / 1024 + 1);
+    }
+}
@@ -0,0 +1,315 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.knowledge.entity.Chunk;
+
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * 流式切分器：正文分段写入（例如 Tika 解析时的 SAX 字符事件），边规范化边切分，
+ * 切好的 chunk 立即交给 sink，不需要先拼出全文。
+ *
+ * 规则与整段切分一致：
+ * - 规范化：\r\n、\r 统一为 \n，连续 3 个以上换行压成 2 个，去掉首尾空白
+ * - 每段最多 chunkSize 字符，在末尾 100 个字符内优先从句子边界或换行处切开
+ * - 下一段从切点回退 overlapSize 个字符开始
+ * - 最后一段不足 minChunkSize 时并入前一段
+ *
+ * 全文只扫描一遍：写入时顺带记下最近的句子边界位置，切分时直接取用，不再向前回扫；
+ * chunk 以窗口内的区间表示，去首尾空白只移动下标，每个 chunk 只生成一次字符串。
+ * 内存只占当前窗口（不超过 chunkSize + 1 个字符）、待定的上一段和可选的正文开头，与正文总长无关。
+ * 非线程安全，一个切分器只用于一篇文档。
+ */
+public class StreamingChunker extends Writer {
+
+    /**
+     * 寻找切分点时最多向前查找的字符数
+     */
+    private static final int SPLIT_LOOKBACK = 100;
+
+    private final int chunkSize;
+    private final int overlapSize;
+    private final int minChunkSize;
+    private final int headLimit;
+    private final Consumer<Chunk> sink;
+
+    /**
+     * 当前窗口 buf[start, end)：从当前 chunk 的起点到已写入的最后一个字符。
+     * 切分后只前移 start，写满时整体搬到开头，每个字符平均只搬动常数次
+     */
+    private final char[] buf;
+    private int start;
+    private int end;
+
+    /**
+     * 最近两个句子边界字符在 buf 中的位置（不在窗口内时小于 start）
+     */
+    private int lastBoundary = -1;
+    private int prevBoundary = -1;
+
+    /**
+     * 还不能确定是否位于正文末尾的空白，遇到下一个非空白字符时才写入窗口
+     */
+    private final StringBuilder pendingSpace = new StringBuilder();
+
+    /**
+     * 规范化后正文的前 headLimit 个字符
+     */
+    private final StringBuilder head = new StringBuilder();
+
+    /**
+     * 已切好、还没交给 sink 的上一段：最后一段过短时要并入它
+     */
+    private Chunk held;
+
+    private boolean started;
+    private boolean afterCr;
+    private int newlineRun;
+    private long length;
+    private int nextIndex;
+    private int emitted;
+    private boolean finished;
+
+    /**
+     * @param chunkSize    每个 chunk 的最大字符数
+     * @param overlapSize  相邻 chunk 的重叠字符数
+     * @param minChunkSize 最后一段小于该值时并入前一段
+     * @param headLimit    保留的正文开头字符数（0 表示不保留）
+     * @param sink         接收切好的 chunk（按序号顺序）
+     */
+    public StreamingChunker(int chunkSize, int overlapSize, int minChunkSize, int headLimit, Consumer<Chunk> sink) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize 必须大于 0");
+        }
+        this.chunkSize = chunkSize;
+        this.buf = new char[2 * (chunkSize + 1)];
+        this.overlapSize = Math.max(0, overlapSize);
+        this.minChunkSize = minChunkSize;
+        this.headLimit = Math.max(0, headLimit);
+        this.sink = sink;
+    }
+
+    public void feed(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            accept(text.charAt(i));
+        }
+    }
+
+    public void feed(char[] chars, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            accept(chars[i]);
+        }
+    }
+
+    /**
+     * 写完后调用：切出剩余内容并把最后的 chunk 交给 sink，重复调用无副作用
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        // 末尾空白直接丢弃（等价于 trim）
+        pendingSpace.setLength(0);
+        String tail = trimmed(start, end);
+        start = end;
+        if (tail != null) {
+            if (held != null && tail.length() < minChunkSize) {
+                held.setContent(held.getContent() + "\n" + tail);
+                held.setContentLength(held.getContent().length());
+            } else {
+                emit(tail);
+            }
+        }
+        if (held != null) {
+            deliver(held);
+            held = null;
+        }
+    }
+
+    /**
+     * 规范化后的正文长度
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * 规范化后正文的开头（最多 headLimit 个字符）
+     */
+    public String getHead() {
+        return head.toString();
+    }
+
+    /**
+     * 已交给 sink 的 chunk 数
+     */
+    public int getChunkCount() {
+        return emitted;
+    }
+
+    // ==================== Writer ====================
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        feed(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        feed(str.subSequence(off, off + len));
+    }
+
+    @Override
+    public void write(int c) {
+        accept((char) c);
+    }
+
+    @Override
+    public void flush() {
+        // 窗口内容要等到够一段或写完才能切，这里不做处理
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    // ==================== 规范化 ====================
+
+    private void accept(char c) {
+        if (finished) {
+            throw new IllegalStateException("切分已结束");
+        }
+        if (c == '\n' && afterCr) {
+            // \r\n 按一个换行处理
+            afterCr = false;
+            return;
+        }
+        afterCr = c == '\r';
+        if (afterCr) {
+            c = '\n';
+        }
+
+        if (c <= ' ') {
+            if (!started) {
+                return;
+            }
+            if (c == '\n') {
+                if (newlineRun >= 2) {
+                    return;
+                }
+                newlineRun++;
+            } else {
+                newlineRun = 0;
+            }
+            pendingSpace.append(c);
+            return;
+        }
+
+        started = true;
+        newlineRun = 0;
+        if (pendingSpace.length() > 0) {
+            for (int i = 0; i < pendingSpace.length(); i++) {
+                put(pendingSpace.charAt(i));
+            }
+            pendingSpace.setLength(0);
+        }
+        put(c);
+    }
+
+    // ==================== 切分 ====================
+
+    private void put(char c) {
+        length++;
+        if (head.length() < headLimit) {
+            head.append(c);
+        }
+        if (end == buf.length) {
+            compact();
+        }
+        if (isBoundary(c)) {
+            prevBoundary = lastBoundary;
+            lastBoundary = end;
+        }
+        buf[end++] = c;
+        // 窗口超过 chunkSize 说明当前段后面还有内容，可以确定切点
+        if (end - start > chunkSize) {
+            cut();
+        }
+    }
+
+    private void cut() {
+        int cutEnd = start + findBestSplitPoint();
+        String text = trimmed(start, cutEnd);
+        if (text != null) {
+            emit(text);
+        }
+        int next = cutEnd - overlapSize;
+        if (next <= start) {
+            // 重叠不小于切出的长度时放弃重叠，保证向前推进
+            next = cutEnd;
+        }
+        start = next;
+    }
+
+    /**
+     * 切点相对窗口起点的位置：窗口前 chunkSize 个字符中、最后 100 个字符内的最后一个句子边界
+     * （句号、问号、感叹号、换行符）之后；找不到就在 chunkSize 处硬切
+     */
+    private int findBestSplitPoint() {
+        // 窗口此时有 chunkSize + 1 个字符，刚写入的最后一个字符不参与
+        int boundary = lastBoundary < start + chunkSize ? lastBoundary : prevBoundary;
+        if (boundary >= start + Math.max(0, chunkSize - SPLIT_LOOKBACK)) {
+            return boundary - start + 1;
+        }
+        return chunkSize;
+    }
+
+    private static boolean isBoundary(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?' || c == '\n';
+    }
+
+    /**
+     * 窗口搬到 buf 开头
+     */
+    private void compact() {
+        int len = end - start;
+        System.arraycopy(buf, start, buf, 0, len);
+        lastBoundary -= start;
+        prevBoundary -= start;
+        start = 0;
+        end = len;
+    }
+
+    /**
+     * buf[from, to) 去掉首尾空白（与 String.trim 相同）后的字符串，全是空白时返回 null
+     */
+    private String trimmed(int from, int to) {
+        while (from < to && buf[from] <= ' ') {
+            from++;
+        }
+        while (to > from && buf[to - 1] <= ' ') {
+            to--;
+        }
+        return from < to ? new String(buf, from, to - from) : null;
+    }
+
+    private void emit(String text) {
+        Chunk chunk = new Chunk();
+        chunk.setContent(text);
+        chunk.setContentLength(text.length());
+        chunk.setChunkIndex(nextIndex++);
+        chunk.setCreateTime(LocalDateTime.now());
+        if (held != null) {
+            deliver(held);
+        }
+        held = chunk;
+    }
+
+    private void deliver(Chunk chunk) {
+        emitted++;
+        sink.accept(chunk);
+    }
+}
@@ -0,0 +1,126 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import com.ityfz.yulu.common.ai.PayloadFieldType;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorStore;
+import com.ityfz.yulu.common.config.VectorStoreProperties;
+import com.ityfz.yulu.knowledge.enums.VectorLayout;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 租户 → 知识库向量集合。
+ *
+ * 租户所在集合记录在 tenant_settings.vector_collection（走 TenantConfigService 本地缓存，热路径不查库），
+ * 没有记录的租户位于共享集合。第一次写入向量时按 vector-store.layout 固定集合，
+ * 之后只有布局迁移会修改，避免改配置后新旧数据分散在两个集合里。
+ */
+@Slf4j
+@Service
+public class VectorCollectionRouter {
+
+    /**
+     * 过滤检索和按文档删除用到的 payload 字段，建集合时一并建索引
+     */
+    private static final Map<String, PayloadFieldType> PAYLOAD_INDEXES = Map.of(
+            "tenant_id", PayloadFieldType.INTEGER,
+            "document_id", PayloadFieldType.INTEGER);
+
+    private final VectorStore vectorStore;
+    private final EmbeddingService embeddingService;
+    private final TenantConfigService tenantConfigService;
+    private final VectorStoreProperties properties;
+
+    /**
+     * 本实例已建好集合和 payload 索引的集合名
+     */
+    private final Set<String> prepared = ConcurrentHashMap.newKeySet();
+
+    public VectorCollectionRouter(VectorStore vectorStore,
+                                  EmbeddingService embeddingService,
+                                  TenantConfigService tenantConfigService,
+                                  VectorStoreProperties properties) {
+        this.vectorStore = vectorStore;
+        this.embeddingService = embeddingService;
+        this.tenantConfigService = tenantConfigService;
+        this.properties = properties;
+    }
+
+    /**
+     * 租户当前所在集合（检索、删除用）
+     */
+    public String collectionFor(Long tenantId) {
+        String pinned = tenantConfigService.getSettings(tenantId).getVectorCollection();
+        return pinned == null || pinned.isBlank() ? properties.getCollection() : pinned;
+    }
+
+    /**
+     * 租户在指定布局下的集合名
+     */
+    public String collectionName(Long tenantId, VectorLayout layout) {
+        return layout == VectorLayout.PER_TENANT
+                ? properties.getCollection() + "_t" + tenantId
+                : properties.getCollection();
+    }
+
+    public VectorLayout defaultLayout() {
+        VectorLayout layout = VectorLayout.fromCode(properties.getLayout());
+        return layout == null ? VectorLayout.SHARED : layout;
+    }
+
+    /**
+     * 写入向量前调用：确定租户所在集合（首次写入时固定下来），并确保集合和 payload 索引存在
+     */
+    public String prepare(Long tenantId) {
+        String collection = tenantConfigService.getSettings(tenantId).getVectorCollection();
+        if (collection == null || collection.isBlank()) {
+            // 本地缓存可能还没收到其他实例固定集合的通知，以库里的原始值为准
+            collection = tenantConfigService.getRawSettings(tenantId).getVectorCollection();
+        }
+        if (collection == null || collection.isBlank()) {
+            // 条件更新：并发首次写入时只有一个实例的选择生效，其余沿用它
+            collection = tenantConfigService.pinVectorCollection(tenantId, initialCollection(tenantId));
+            log.info("[VectorLayout] 固定租户向量集合: tenantId={}, collection={}", tenantId, collection);
+        }
+        ensureCollection(collection);
+        return collection;
+    }
+
+    /**
+     * 建集合并为过滤字段建索引，每个集合每个实例只做一次
+     */
+    public void ensureCollection(String collection) {
+        if (prepared.contains(collection)) {
+            return;
+        }
+        vectorStore.createCollection(collection, embeddingService.getDimension());
+        PAYLOAD_INDEXES.forEach((field, type) -> vectorStore.createPayloadIndex(collection, field, type));
+        prepared.add(collection);
+    }
+
+    /**
+     * 集合被删除后调用，下次写入时重新建集合和索引
+     */
+    public void forget(String collection) {
+        prepared.remove(collection);
+    }
+
+    /**
+     * 升级前的租户没有记录但共享集合里已有数据，固定为共享集合；其余按配置的布局
+     */
+    private String initialCollection(Long tenantId) {
+        String shared = collectionName(tenantId, VectorLayout.SHARED);
+        VectorLayout layout = defaultLayout();
+        if (layout == VectorLayout.SHARED
+                || vectorStore.count(shared, VectorFilter.eq("tenant_id", tenantId)) > 0) {
+            return shared;
+        }
+        return collectionName(tenantId, layout);
+    }
+}
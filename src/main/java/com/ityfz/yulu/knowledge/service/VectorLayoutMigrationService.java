@@ -0,0 +1,16 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.knowledge.dto.VectorMigrationResponse;
+import com.ityfz.yulu.knowledge.enums.VectorLayout;
+
+/**
+ * 向量集合布局迁移：把租户的向量从当前集合搬到目标布局对应的集合
+ */
+public interface VectorLayoutMigrationService {
+
+    /**
+     * 迁移租户向量（同一租户同时只允许一个迁移任务）。
+     * 复制期间检索和写入照常进行，切换后补齐复制期间的增量，最后清理源集合
+     */
+    VectorMigrationResponse migrateTenant(Long tenantId, VectorLayout target);
+}
@@ -0,0 +1,71 @@
+package com.ityfz.yulu.user.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 租户运行时配置，对应表 tenant_settings。
+ * 表中字段为 null 表示使用系统默认值；TenantConfigService 返回的对象已用默认值补齐。
+ */
+@Data
+@TableName("tenant_settings")
+public class TenantSettings {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    private Long tenantId;
+
+    /**
+     * 对话上下文字符预算
+     */
+    private Integer contextCharLimit;
+
+    /**
+     * 对话上下文 token 预算
+     */
+    private Integer contextTokenLimit;
+
+    /**
+     * RAG 检索条数
+     */
+    private Integer ragTopK;
+
+    /**
+     * RAG 相似度阈值，为 null 时动态计算
+     */
+    private Double ragMinScore;
+
+    /**
+     * 对话模型名称，为 null 时使用 ai.qianwen.model
+     */
+    private String llmModel;
+
+    /**
+     * 模型调用超时（毫秒）
+     */
+    private Long llmTimeoutMs;
+
+    /**
+     * RAG 检索超时（毫秒）
+     */
+    private Long ragTimeoutMs;
+
+    /**
+     * 转人工平均处理时长（秒）
+     */
+    private Integer avgHandoffSeconds;
+
+    /**
+     * 知识库向量所在集合，首次写入向量或布局迁移时写入；不随管理端配置修改
+     */
+    private String vectorCollection;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+}
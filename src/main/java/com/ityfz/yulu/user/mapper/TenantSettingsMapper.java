@@ -0,0 +1,7 @@
+package com.ityfz.yulu.user.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ityfz.yulu.user.entity.TenantSettings;
+
+public interface TenantSettingsMapper extends BaseMapper<TenantSettings> {
+}
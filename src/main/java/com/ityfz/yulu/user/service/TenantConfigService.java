@@ -0,0 +1,38 @@
+package com.ityfz.yulu.user.service;
+
+import com.ityfz.yulu.user.entity.TenantSettings;
+
+public interface TenantConfigService {
+
+    /**
+     * 获取租户运行时配置（未配置的字段已用系统默认值补齐）。
+     * 走本地缓存，热路径不查库。
+     */
+    TenantSettings getSettings(Long tenantId);
+
+    /**
+     * 获取租户自己配置的原始值（未配置的字段为 null），供管理端展示
+     */
+    TenantSettings getRawSettings(Long tenantId);
+
+    /**
+     * 整体覆盖租户配置（传 null 的字段恢复为系统默认值），并通知所有实例失效本地缓存
+     */
+    TenantSettings updateSettings(Long tenantId, TenantSettings settings);
+
+    /**
+     * 记录租户知识库向量所在集合，并通知所有实例失效本地缓存
+     */
+    void updateVectorCollection(Long tenantId, String collection);
+
+    /**
+     * 租户还没有记录向量集合时才写入（条件更新），返回库里最终记录的集合。
+     * 多个实例同时首次写入时以先写入的为准
+     */
+    String pinVectorCollection(Long tenantId, String collection);
+
+    /**
+     * 失效本实例的本地缓存
+     */
+    void evict(Long tenantId);
+}
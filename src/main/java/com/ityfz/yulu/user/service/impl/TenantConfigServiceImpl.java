@@ -0,0 +1,312 @@
+package com.ityfz.yulu.user.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ityfz.yulu.common.config.TenantSettingsProperties;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.mapper.TenantSettingsMapper;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 租户运行时配置。
+ *
+ * 对话热路径每轮都要读配置，所以每个实例在本地缓存一份合并了默认值的配置：
+ * - 命中本地缓存不访问 MySQL / Redis
+ * - 修改配置后向 Redis 频道 tenant:settings:changed 广播 tenantId，各实例收到后失效本地缓存
+ * - 广播丢失（Redis 闪断等）时由 cacheTtlSeconds 兜底，最迟一个 TTL 后生效
+ */
+@Slf4j
+@Service
+public class TenantConfigServiceImpl implements TenantConfigService, MessageListener {
+
+    public static final String CHANGED_CHANNEL = "tenant:settings:changed";
+
+    private final TenantSettingsMapper tenantSettingsMapper;
+    private final TenantSettingsProperties properties;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<Long, TenantSettings> cache;
+    private RedisMessageListenerContainer listenerContainer;
+
+    public TenantConfigServiceImpl(TenantSettingsMapper tenantSettingsMapper,
+                                   TenantSettingsProperties properties,
+                                   StringRedisTemplate stringRedisTemplate) {
+        this.tenantSettingsMapper = tenantSettingsMapper;
+        this.properties = properties;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(properties.getCacheMaxSize())
+                .expireAfterWrite(properties.getCacheTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 应用就绪后再订阅变更频道。订阅失败不影响启动，只是退化为靠 TTL 过期
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeChanges() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(stringRedisTemplate.getRequiredConnectionFactory());
+        container.addMessageListener(this, new ChannelTopic(CHANGED_CHANNEL));
+        try {
+            container.afterPropertiesSet();
+            container.start();
+            listenerContainer = container;
+            log.info("[TenantConfig] 已订阅配置变更频道: {}", CHANGED_CHANNEL);
+        } catch (Exception e) {
+            log.warn("[TenantConfig] 订阅配置变更频道失败，本地缓存只能等过期后刷新: {}", e.getMessage());
+            destroyQuietly(container);
+        }
+    }
+
+    @PreDestroy
+    public void unsubscribeChanges() {
+        if (listenerContainer != null) {
+            destroyQuietly(listenerContainer);
+        }
+    }
+
+    @Override
+    public TenantSettings getSettings(Long tenantId) {
+        if (tenantId == null) {
+            return merge(null, null);
+        }
+        try {
+            return cache.get(tenantId, () -> load(tenantId));
+        } catch (ExecutionException | RuntimeException e) {
+            // 配置读取失败不能影响对话，退回系统默认值（不缓存，下次重试）
+            log.warn("[TenantConfig] 读取租户配置失败，使用默认值: tenantId={}, error={}", tenantId, e.getMessage());
+            return merge(tenantId, null);
+        }
+    }
+
+    @Override
+    public TenantSettings getRawSettings(Long tenantId) {
+        TenantSettings stored = findByTenantId(tenantId);
+        if (stored == null) {
+            stored = new TenantSettings();
+            stored.setTenantId(tenantId);
+        }
+        return stored;
+    }
+
+    @Override
+    @Transactional
+    public TenantSettings updateSettings(Long tenantId, TenantSettings settings) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("租户ID不能为空");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TenantSettings existing = findByTenantId(tenantId);
+        if (existing == null) {
+            settings.setId(null);
+            settings.setTenantId(tenantId);
+            // 向量集合由索引/迁移流程维护，不接受管理端传入
+            settings.setVectorCollection(null);
+            settings.setCreateTime(now);
+            settings.setUpdateTime(now);
+            tenantSettingsMapper.insert(settings);
+        } else {
+            // 整体覆盖：null 也要写进去（表示恢复默认值），updateById 会跳过 null 字段，这里显式 set
+            tenantSettingsMapper.update(null, new LambdaUpdateWrapper<TenantSettings>()
+                    .eq(TenantSettings::getId, existing.getId())
+                    .set(TenantSettings::getContextCharLimit, settings.getContextCharLimit())
+                    .set(TenantSettings::getContextTokenLimit, settings.getContextTokenLimit())
+                    .set(TenantSettings::getRagTopK, settings.getRagTopK())
+                    .set(TenantSettings::getRagMinScore, settings.getRagMinScore())
+                    .set(TenantSettings::getLlmModel, settings.getLlmModel())
+                    .set(TenantSettings::getLlmTimeoutMs, settings.getLlmTimeoutMs())
+                    .set(TenantSettings::getRagTimeoutMs, settings.getRagTimeoutMs())
+                    .set(TenantSettings::getAvgHandoffSeconds, settings.getAvgHandoffSeconds())
+                    .set(TenantSettings::getUpdateTime, now));
+        }
+        log.info("[TenantConfig] 更新租户配置: tenantId={}, settings={}", tenantId, settings);
+
+        evict(tenantId);
+        publishChangeAfterCommit(tenantId);
+        return getRawSettings(tenantId);
+    }
+
+    @Override
+    @Transactional
+    public void updateVectorCollection(Long tenantId, String collection) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("租户ID不能为空");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TenantSettings existing = findByTenantId(tenantId);
+        if (existing == null) {
+            TenantSettings settings = new TenantSettings();
+            settings.setTenantId(tenantId);
+            settings.setVectorCollection(collection);
+            settings.setCreateTime(now);
+            settings.setUpdateTime(now);
+            tenantSettingsMapper.insert(settings);
+        } else {
+            tenantSettingsMapper.update(null, new LambdaUpdateWrapper<TenantSettings>()
+                    .eq(TenantSettings::getId, existing.getId())
+                    .set(TenantSettings::getVectorCollection, collection)
+                    .set(TenantSettings::getUpdateTime, now));
+        }
+        log.info("[TenantConfig] 更新租户向量集合: tenantId={}, collection={}", tenantId, collection);
+
+        evict(tenantId);
+        publishChangeAfterCommit(tenantId);
+    }
+
+    @Override
+    public String pinVectorCollection(Long tenantId, String collection) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("租户ID不能为空");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TenantSettings existing = findByTenantId(tenantId);
+        boolean pinned;
+        if (existing == null) {
+            TenantSettings settings = new TenantSettings();
+            settings.setTenantId(tenantId);
+            settings.setVectorCollection(collection);
+            settings.setCreateTime(now);
+            settings.setUpdateTime(now);
+            try {
+                pinned = tenantSettingsMapper.insert(settings) > 0;
+            } catch (DuplicateKeyException e) {
+                // 其他实例刚插入了这一行（uk_tenant_id），下面按条件更新
+                existing = findByTenantId(tenantId);
+                pinned = false;
+            }
+        } else {
+            pinned = false;
+        }
+        if (existing != null) {
+            pinned = tenantSettingsMapper.update(null, new LambdaUpdateWrapper<TenantSettings>()
+                    .eq(TenantSettings::getId, existing.getId())
+                    .and(w -> w.isNull(TenantSettings::getVectorCollection)
+                            .or().eq(TenantSettings::getVectorCollection, ""))
+                    .set(TenantSettings::getVectorCollection, collection)
+                    .set(TenantSettings::getUpdateTime, now)) > 0;
+        }
+
+        String current = getRawSettings(tenantId).getVectorCollection();
+        if (pinned) {
+            log.info("[TenantConfig] 固定租户向量集合: tenantId={}, collection={}", tenantId, current);
+        } else {
+            log.info("[TenantConfig] 租户向量集合已被固定，沿用: tenantId={}, collection={}, candidate={}",
+                    tenantId, current, collection);
+        }
+        evict(tenantId);
+        publishChangeAfterCommit(tenantId);
+        return current;
+    }
+
+    @Override
+    public void evict(Long tenantId) {
+        cache.invalidate(tenantId);
+    }
+
+    /**
+     * 收到其他实例（也包括自己）广播的配置变更
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            Long tenantId = Long.valueOf(body.trim());
+            evict(tenantId);
+            log.debug("[TenantConfig] 收到配置变更通知，失效本地缓存: tenantId={}", tenantId);
+        } catch (NumberFormatException e) {
+            log.warn("[TenantConfig] 忽略无法解析的配置变更通知: {}", body);
+        }
+    }
+
+    private TenantSettings load(Long tenantId) {
+        return merge(tenantId, findByTenantId(tenantId));
+    }
+
+    private TenantSettings findByTenantId(Long tenantId) {
+        // tenant_settings 不在多租户插件的表列表里，需要显式按 tenant_id 查询
+        return tenantSettingsMapper.selectOne(new LambdaQueryWrapper<TenantSettings>()
+                .eq(TenantSettings::getTenantId, tenantId));
+    }
+
+    /**
+     * 租户配置覆盖系统默认值
+     */
+    private TenantSettings merge(Long tenantId, TenantSettings stored) {
+        TenantSettingsProperties.Defaults defaults = properties.getDefaults();
+        TenantSettings s = stored == null ? new TenantSettings() : stored;
+        TenantSettings merged = new TenantSettings();
+        merged.setId(s.getId());
+        merged.setTenantId(tenantId);
+        merged.setContextCharLimit(firstNonNull(s.getContextCharLimit(), defaults.getContextCharLimit()));
+        merged.setContextTokenLimit(firstNonNull(s.getContextTokenLimit(), defaults.getContextTokenLimit()));
+        merged.setRagTopK(firstNonNull(s.getRagTopK(), defaults.getRagTopK()));
+        merged.setRagMinScore(firstNonNull(s.getRagMinScore(), defaults.getRagMinScore()));
+        merged.setLlmModel(firstNonNull(s.getLlmModel(), defaults.getLlmModel()));
+        merged.setLlmTimeoutMs(firstNonNull(s.getLlmTimeoutMs(), defaults.getLlmTimeoutMs()));
+        merged.setRagTimeoutMs(firstNonNull(s.getRagTimeoutMs(), defaults.getRagTimeoutMs()));
+        merged.setAvgHandoffSeconds(firstNonNull(s.getAvgHandoffSeconds(), defaults.getAvgHandoffSeconds()));
+        merged.setVectorCollection(s.getVectorCollection());
+        merged.setCreateTime(s.getCreateTime());
+        merged.setUpdateTime(s.getUpdateTime());
+        return merged;
+    }
+
+    private void destroyQuietly(RedisMessageListenerContainer container) {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            log.debug("[TenantConfig] 关闭订阅容器失败: {}", e.getMessage());
+        }
+    }
+
+    private static <T> T firstNonNull(T value, T fallback) {
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * 事务提交后再广播，避免其他实例在提交前重新加载到旧值
+     */
+    private void publishChangeAfterCommit(Long tenantId) {
+        Runnable publish = () -> {
+            try {
+                stringRedisTemplate.convertAndSend(CHANGED_CHANNEL, String.valueOf(tenantId));
+            } catch (Exception e) {
+                log.warn("[TenantConfig] 广播配置变更失败，其他实例将在缓存过期后生效: tenantId={}, error={}",
+                        tenantId, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // 本实例也可能在提交前被并发请求重新加载，提交后再失效一次
+                    evict(tenantId);
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.ityfz.yulu.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.common.ai.Message;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ChatContextStore 测试（需要 Redis，脚本逻辑只能在真实 Redis 上验证）
+ * 测试追加脚本按条数 / 字符预算裁剪，chat:context:len: 与 chat:context:chars: 的记账，
+ * 裁剪下来的消息进入待摘要列表，以及取出 / 放回待摘要消息。
+ *
+ * 默认连接 localhost:6379 的 15 号库，可用 -Dtest.redis.host / -Dtest.redis.port 指定；连不上时跳过
+ */
+@DisplayName("ChatContextStore 测试")
+class ChatContextStoreTest {
+
+    private static final int DATABASE = 15;
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+    private static boolean available;
+
+    private ChatContextStore store;
+    private Long sessionId;
+
+    @BeforeAll
+    static void connect() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                System.getProperty("test.redis.host", "localhost"),
+                Integer.getInteger("test.redis.port", 6379));
+        config.setDatabase(DATABASE);
+        connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        redis = new StringRedisTemplate(connectionFactory);
+        try {
+            available = "PONG".equals(redis.execute(c -> c.ping(), true));
+        } catch (Exception e) {
+            available = false;
+        }
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(available, "Redis 不可用，跳过");
+        store = new ChatContextStore(redis, new ObjectMapper());
+        sessionId = ThreadLocalRandom.current().nextLong(1_000_000_000L, Long.MAX_VALUE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (available) {
+            store.clear(sessionId);
+        }
+    }
+
+    @Test
+    @DisplayName("超过条数上限：最旧的消息按时间顺序移入待摘要列表，长度列表和字符总数同步扣减")
+    void testAppend_TrimByCount() {
+        assertEquals(0, store.append(sessionId, "user", "第一问", 3, 1000, 100));
+        assertEquals(0, store.append(sessionId, "assistant", "第一答", 3, 1000, 100));
+        assertEquals(0, store.append(sessionId, "user", "第二问题", 3, 1000, 100));
+        assertEquals(1, store.append(sessionId, "assistant", "第二个回答", 3, 1000, 100));
+        assertEquals(2, store.append(sessionId, "user", "三", 3, 1000, 100));
+
+        assertEquals(List.of("三", "第二个回答", "第二问题"), contents(store.list(sessionId, 10)));
+        assertEquals(List.of("1", "5", "4"), lengths());
+        assertEquals("10", chars());
+        assertEquals(2, store.evictedSize(sessionId));
+        assertEquals(List.of("第一问", "第一答"), contents(store.takeEvicted(sessionId, 10)));
+    }
+
+    @Test
+    @DisplayName("超过字符预算：从最旧的一端丢弃直到总字符数不超限")
+    void testAppend_TrimByCharBudget() {
+        store.append(sessionId, "user", "12345", 10, 12, 100);
+        store.append(sessionId, "assistant", "123456", 10, 12, 100);
+        assertEquals("11", chars());
+
+        assertEquals(1, store.append(sessionId, "user", "1234", 10, 12, 100));
+        assertEquals(List.of("1234", "123456"), contents(store.list(sessionId, 10)));
+        assertEquals(List.of("4", "6"), lengths());
+        assertEquals("10", chars());
+    }
+
+    @Test
+    @DisplayName("单条消息超过整个预算：三个上下文 key 都删除，消息本身进入待摘要列表")
+    void testAppend_SingleMessageOverBudget() {
+        store.append(sessionId, "user", "短问题", 10, 8, 100);
+
+        assertEquals(2, store.append(sessionId, "assistant", "这是一个超出预算的很长的回答", 10, 8, 100));
+        assertTrue(store.list(sessionId, 10).isEmpty());
+        assertFalse(Boolean.TRUE.equals(redis.hasKey("chat:context:len:{" + sessionId + "}")));
+        assertFalse(Boolean.TRUE.equals(redis.hasKey("chat:context:chars:{" + sessionId + "}")));
+
+        // 之后的追加从零开始记账
+        store.append(sessionId, "user", "新问题", 10, 8, 100);
+        assertEquals("3", chars());
+    }
+
+    @Test
+    @DisplayName("待摘要列表超过上限：只保留最近的若干条")
+    void testAppend_EvictedCapped() {
+        for (int i = 1; i <= 6; i++) {
+            store.append(sessionId, "user", "消息" + i, 1, 1000, 3);
+        }
+
+        assertEquals(3, store.evictedSize(sessionId));
+        assertEquals(List.of("消息3", "消息4", "消息5"), contents(store.takeEvicted(sessionId, 10)));
+        assertEquals(List.of("消息6"), contents(store.list(sessionId, 10)));
+    }
+
+    @Test
+    @DisplayName("长度列表与消息列表对不上（旧格式数据）：整体重置后重新记账")
+    void testAppend_ResetsMismatchedLengths() {
+        redis.opsForList().leftPushAll("chat:context:{" + sessionId + "}",
+                "{\"role\":\"user\",\"content\":\"旧格式1\"}", "{\"role\":\"user\",\"content\":\"旧格式2\"}");
+        redis.opsForValue().set("chat:context:chars:{" + sessionId + "}", "999");
+
+        assertEquals(0, store.append(sessionId, "user", "新消息", 10, 100, 100));
+        assertEquals(List.of("新消息"), contents(store.list(sessionId, 10)));
+        assertEquals(List.of("3"), lengths());
+        assertEquals("3", chars());
+    }
+
+    @Test
+    @DisplayName("取出待摘要消息后放回：顺序不变，期间新裁剪的消息排在后面")
+    void testTakeAndRestoreEvicted() {
+        for (int i = 1; i <= 4; i++) {
+            store.append(sessionId, "user", "消息" + i, 1, 1000, 100);
+        }
+        List<Message> batch = store.takeEvicted(sessionId, 2);
+        assertEquals(List.of("消息1", "消息2"), contents(batch));
+        assertEquals(1, store.evictedSize(sessionId));
+
+        store.append(sessionId, "user", "消息5", 1, 1000, 100);
+        store.restoreEvicted(sessionId, batch);
+
+        assertEquals(List.of("消息1", "消息2", "消息3", "消息4"), contents(store.takeEvicted(sessionId, 10)));
+    }
+
+    private List<String> lengths() {
+        return redis.opsForList().range("chat:context:len:{" + sessionId + "}", 0, -1);
+    }
+
+    private String chars() {
+        return redis.opsForValue().get("chat:context:chars:{" + sessionId + "}");
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,140 @@
+package com.ityfz.yulu.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.chat.entity.ChatMessage;
+import com.ityfz.yulu.chat.mapper.ChatMessageMapper;
+import com.ityfz.yulu.common.config.ChatWriteBehindProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChatMessageWriter 单元测试
+ * 测试队列满退化为同步写入、批量写库失败后的重试、重启补写本地日志
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ChatMessageWriter 测试")
+class ChatMessageWriterTest {
+
+    @Mock
+    private ChatMessageMapper chatMessageMapper;
+
+    @TempDir
+    Path walDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private ChatWriteBehindProperties properties;
+    private ChatMessageWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChatWriteBehindProperties();
+        properties.setEnabled(true);
+        properties.setWalDir(walDir.toString());
+        // 测试里手动触发刷盘
+        properties.setFlushIntervalMs(3_600_000);
+        properties.setBatchSize(100);
+        properties.setRetryBackoffMs(0);
+        writer = new ChatMessageWriter(chatMessageMapper, properties, objectMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    @DisplayName("队列满：当前线程同步写库，消息不丢")
+    void testSave_QueueFullFallsBackToSync() throws IOException {
+        properties.setQueueCapacity(1);
+        writer.start();
+
+        ChatMessage queued = writer.save(message("第一条"));
+        ChatMessage overflow = writer.save(message("第二条"));
+
+        assertNotNull(queued.getId());
+        assertNotNull(overflow.getId());
+        verify(chatMessageMapper).insertBatch(List.of(overflow), true);
+        assertEquals(1, writer.getStats().getSyncFallbacks());
+        assertEquals(1, writer.getStats().getQueueSize());
+    }
+
+    @Test
+    @DisplayName("批量写库失败：保留日志段，下一轮以 INSERT IGNORE 重试成功后才删除")
+    void testFlush_FailedBatchRetriedWithIgnore() throws IOException {
+        writer.start();
+        when(chatMessageMapper.insertBatch(anyList(), eq(false))).thenThrow(new RuntimeException("Duplicate entry"));
+        ChatMessage a = writer.save(message("a"));
+        ChatMessage b = writer.save(message("b"));
+
+        writer.flush();
+
+        assertEquals(2, writer.getStats().getFailedRows());
+        assertEquals(2, writer.getStats().getRetryPendingRows());
+        // 失败的段 + 新打开的当前段
+        assertEquals(2, walFiles().size());
+
+        doThrow(new RuntimeException("connection reset")).doReturn(2)
+                .when(chatMessageMapper).insertBatch(anyList(), eq(true));
+        writer.flush();
+        assertEquals(2, writer.getStats().getRetryPendingRows());
+        assertEquals(2, walFiles().size());
+
+        writer.flush();
+        verify(chatMessageMapper, times(2)).insertBatch(List.of(a, b), true);
+        assertEquals(0, writer.getStats().getRetryPendingRows());
+        assertEquals(2, writer.getStats().getRetriedRows());
+        assertEquals(1, walFiles().size());
+    }
+
+    @Test
+    @DisplayName("重启补写：上次进程未写库的消息按原 ID 以 INSERT IGNORE 写入，日志段删除")
+    void testStart_ReplaysPendingSegments() throws IOException {
+        writer.start();
+        ChatMessage a = writer.save(message("崩溃前入队 1"));
+        ChatMessage b = writer.save(message("崩溃前入队 2"));
+        // 模拟进程崩溃：不刷盘、不 stop，直接用新实例接管同一个日志目录
+
+        ChatMessageWriter restarted = new ChatMessageWriter(chatMessageMapper, properties, objectMapper);
+        restarted.start();
+        try {
+            ArgumentCaptor<List<ChatMessage>> rows = ArgumentCaptor.forClass(List.class);
+            verify(chatMessageMapper).insertBatch(rows.capture(), eq(true));
+            assertEquals(List.of(a.getId(), b.getId()), rows.getValue().stream().map(ChatMessage::getId).toList());
+            assertEquals("崩溃前入队 2", rows.getValue().get(1).getContent());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private List<Path> walFiles() throws IOException {
+        try (Stream<Path> files = Files.list(walDir)) {
+            return files.toList();
+        }
+    }
+
+    private static ChatMessage message(String content) {
+        ChatMessage m = new ChatMessage();
+        m.setTenantId(1L);
+        m.setSessionId(10L);
+        m.setSenderType("USER");
+        m.setContent(content);
+        return m;
+    }
+}
@@ -0,0 +1,395 @@
+package com.ityfz.yulu.chat.service;
+
+import com.ityfz.yulu.chat.dto.ChatAskResponse;
+import com.ityfz.yulu.chat.entity.ChatMessage;
+import com.ityfz.yulu.chat.entity.ChatSession;
+import com.ityfz.yulu.chat.mapper.ChatMessageMapper;
+import com.ityfz.yulu.chat.mapper.ChatSessionMapper;
+import com.ityfz.yulu.chat.service.impl.ChatServiceImpl;
+import com.ityfz.yulu.common.ai.ChatResult;
+import com.ityfz.yulu.common.ai.LLMClient;
+import com.ityfz.yulu.common.ai.Message;
+import com.ityfz.yulu.common.ai.PromptBudgetAllocator;
+import com.ityfz.yulu.common.ai.StreamingChatHandler;
+import com.ityfz.yulu.common.ai.impl.JtokkitTokenCounter;
+import com.ityfz.yulu.common.config.ChatExecutorConfig;
+import com.ityfz.yulu.common.config.ChatPipelineProperties;
+import com.ityfz.yulu.common.config.ChatSummaryProperties;
+import com.ityfz.yulu.common.config.PromptBudgetProperties;
+import com.ityfz.yulu.common.config.QianWenProperties;
+import com.ityfz.yulu.common.enums.ErrorCodes;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.common.security.JwtUtil;
+import com.ityfz.yulu.common.tenant.TenantContextHolder;
+import com.ityfz.yulu.common.tenant.UserContextHolder;
+import com.ityfz.yulu.knowledge.dto.RagAugmentResult;
+import com.ityfz.yulu.knowledge.service.KnowledgeChatService;
+import com.ityfz.yulu.ticket.mq.TicketEventPublisher;
+import com.ityfz.yulu.ticket.service.TicketService;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChatServiceImpl 单元测试
+ * 测试调用模型前各阶段的并发执行、超时兜底、线程池打满时退化为串行，以及流式问答的准备阶段在对话线程池执行
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ChatServiceImpl 测试")
+class ChatServiceImplTest {
+
+    @Mock
+    private ChatSessionMapper chatSessionMapper;
+    @Mock
+    private ChatMessageMapper chatMessageMapper;
+    @Mock
+    private LLMClient llmClient;
+    @Mock
+    private TicketService ticketService;
+    @Mock
+    private TicketEventPublisher ticketEventPublisher;
+    @Mock
+    private KnowledgeChatService knowledgeChatService;
+    @Mock
+    private ChatContextStore chatContextStore;
+    @Mock
+    private ChatMessageWriter chatMessageWriter;
+    @Mock
+    private SemanticAnswerCache answerCache;
+    @Mock
+    private TenantConfigService tenantConfigService;
+    @Mock
+    private ConversationSummarizer conversationSummarizer;
+    @Mock
+    private ChatStreamListener listener;
+
+    private ChatPipelineProperties pipelineProperties;
+    private PromptBudgetAllocator promptBudgetAllocator;
+
+    @BeforeEach
+    void setUp() {
+        pipelineProperties = new ChatPipelineProperties();
+        PromptBudgetProperties budgetProperties = new PromptBudgetProperties();
+        promptBudgetAllocator = new PromptBudgetAllocator(budgetProperties,
+                new JtokkitTokenCounter(budgetProperties.getEncoding()), new QianWenProperties());
+
+        TenantSettings settings = new TenantSettings();
+        settings.setContextCharLimit(4000);
+        lenient().when(tenantConfigService.getSettings(1L)).thenReturn(settings);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TenantContextHolder.clear();
+        UserContextHolder.clear();
+    }
+
+    @Test
+    @DisplayName("并发执行：落库 / 上下文 / 摘要 / RAG 在线程池中同时进行，工作线程带着租户上下文")
+    void testChatWithAi_StagesRunInParallel() throws Exception {
+        ThreadPoolTaskExecutor executor = pipelineExecutor(4, 4, 10);
+        try {
+            ChatServiceImpl service = newService(executor);
+            // 四个阶段互相等待，串行执行时会卡到超时
+            CountDownLatch allStarted = new CountDownLatch(4);
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            Set<Long> tenants = ConcurrentHashMap.newKeySet();
+            Runnable rendezvous = () -> {
+                threads.add(Thread.currentThread().getName());
+                tenants.add(TenantContextHolder.getTenantId());
+                allStarted.countDown();
+                try {
+                    assertTrue(allStarted.await(2, TimeUnit.SECONDS), "阶段没有并发执行");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            when(chatMessageWriter.save(any(ChatMessage.class))).thenAnswer(inv -> {
+                ChatMessage m = inv.getArgument(0);
+                if ("USER".equals(m.getSenderType())) {
+                    rendezvous.run();
+                }
+                return m;
+            });
+            when(chatContextStore.list(eq(10L), anyInt())).thenAnswer(inv -> {
+                rendezvous.run();
+                return List.of(new Message("user", "上一轮问题"));
+            });
+            when(conversationSummarizer.getSummary(10L)).thenAnswer(inv -> {
+                rendezvous.run();
+                return "用户在咨询退货";
+            });
+            when(knowledgeChatService.buildRagAugment(eq(1L), eq("怎么退货"), anyInt())).thenAnswer(inv -> {
+                rendezvous.run();
+                return rag("【参考资料】退货流程\n怎么退货");
+            });
+            when(llmClient.chatStructured(anyList(), anyString(), any()))
+                    .thenReturn(new ChatResult("在订单详情页申请退货", "NEUTRAL", "REFUND"));
+
+            ChatAskResponse response = service.chatWithAi(10L, 2L, 1L, "怎么退货");
+
+            assertEquals("在订单详情页申请退货", response.getAiMessage().getContent());
+            assertEquals(4, threads.size());
+            assertEquals(Set.of(1L), tenants);
+            ArgumentCaptor<List<Message>> messages = ArgumentCaptor.forClass(List.class);
+            verify(llmClient).chatStructured(messages.capture(), eq("【参考资料】退货流程\n怎么退货"), any());
+            // 历史 + 摘要（system）
+            assertEquals(2, messages.getValue().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("RAG 超时：本轮不做知识库增强，直接发送原始问题")
+    void testChatWithAi_RagTimeoutFallsBack() {
+        pipelineProperties.setRagTimeoutMs(100);
+        ThreadPoolTaskExecutor executor = pipelineExecutor(4, 4, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            ChatServiceImpl service = newService(executor);
+            when(knowledgeChatService.buildRagAugment(eq(1L), eq("怎么退货"), anyInt())).thenAnswer(inv -> {
+                release.await(5, TimeUnit.SECONDS);
+                return rag("【参考资料】迟到的结果\n怎么退货");
+            });
+            when(llmClient.chatStructured(anyList(), anyString(), any()))
+                    .thenReturn(new ChatResult("请提供订单号", "NEUTRAL", "REFUND"));
+
+            ChatAskResponse response = service.chatWithAi(10L, 2L, 1L, "怎么退货");
+
+            verify(llmClient).chatStructured(anyList(), eq("怎么退货"), any());
+            assertTrue(response.getRefs().isEmpty());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("线程池打满：CallerRunsPolicy 让请求线程自己执行各阶段，结果不变且请求线程的租户上下文不被清掉")
+    void testChatWithAi_SaturatedPoolRunsOnCaller() throws Exception {
+        ThreadPoolTaskExecutor executor = pipelineExecutor(1, 1, 1);
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // 占住唯一的工作线程，再占满队列
+            executor.execute(() -> {
+                blockerStarted.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(blockerStarted.await(2, TimeUnit.SECONDS));
+            executor.execute(() -> awaitQuietly(release));
+
+            ChatServiceImpl service = newService(executor);
+            String caller = Thread.currentThread().getName();
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            when(knowledgeChatService.buildRagAugment(eq(1L), eq("怎么退货"), anyInt())).thenAnswer(inv -> {
+                threads.add(Thread.currentThread().getName());
+                return rag("【参考资料】退货流程\n怎么退货");
+            });
+            when(chatContextStore.list(eq(10L), anyInt())).thenAnswer(inv -> {
+                threads.add(Thread.currentThread().getName());
+                return Collections.emptyList();
+            });
+            when(llmClient.chatStructured(anyList(), anyString(), any()))
+                    .thenReturn(new ChatResult("在订单详情页申请退货", "NEUTRAL", "REFUND"));
+
+            ChatAskResponse response = service.chatWithAi(10L, 2L, 1L, "怎么退货");
+
+            assertEquals("在订单详情页申请退货", response.getAiMessage().getContent());
+            assertEquals(Set.of(caller), threads);
+            assertEquals(1L, TenantContextHolder.getTenantId());
+            verify(llmClient).chatStructured(anyList(), eq("【参考资料】退货流程\n怎么退货"), any());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("阶段任务一直排队：可兜底的阶段超时后作废，用户消息由等待线程自己落库")
+    void testChatWithAi_StarvedStages() {
+        pipelineProperties.setRagTimeoutMs(100);
+        pipelineProperties.setContextTimeoutMs(100);
+        Deque<Runnable> neverRun = new ArrayDeque<>();
+        ChatServiceImpl service = newService(neverRun::add);
+        when(llmClient.chatStructured(anyList(), anyString(), any()))
+                .thenReturn(new ChatResult("请稍后再试", "NEUTRAL", "GENERAL"));
+
+        service.chatWithAi(10L, 2L, 1L, "怎么退货");
+
+        verify(llmClient).chatStructured(eq(Collections.emptyList()), eq("怎么退货"), any());
+        verify(chatMessageWriter, times(2)).save(any(ChatMessage.class));
+        // 线程池稍后取到这些任务时不再执行
+        assertEquals(4, neverRun.size());
+        neverRun.forEach(Runnable::run);
+        verifyNoInteractions(knowledgeChatService);
+        verify(conversationSummarizer, never()).getSummary(anyLong());
+        verify(chatContextStore, never()).list(anyLong(), anyInt());
+        verify(chatMessageWriter, times(2)).save(any(ChatMessage.class));
+    }
+
+    @Test
+    @DisplayName("流式问答：请求线程只提交任务，落库、检索、模型调用都在线程池里执行")
+    void testChatWithAiStream_PreparesOnPipelineExecutor() {
+        pipelineProperties.setParallelEnabled(false);
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        ChatServiceImpl service = newService(tasks::add);
+        loginAs(2L, 10L, 2L);
+        when(knowledgeChatService.buildRagAugment(eq(1L), eq("怎么退货"), anyInt())).thenReturn(rag("怎么退货"));
+        doAnswer(inv -> {
+            StreamingChatHandler handler = inv.getArgument(3);
+            handler.onToken("在订单详情页");
+            handler.onComplete(new ChatResult("在订单详情页申请退货", "NEUTRAL", "REFUND"));
+            return null;
+        }).when(llmClient).chatStream(anyList(), eq("怎么退货"), any(), any(StreamingChatHandler.class));
+
+        service.chatWithAiStream(10L, 2L, 1L, "怎么退货", listener);
+
+        assertEquals(1, tasks.size());
+        verifyNoInteractions(chatMessageWriter, knowledgeChatService, llmClient, listener);
+
+        tasks.poll().run();
+
+        InOrder order = inOrder(listener);
+        order.verify(listener).onStart(10L, Collections.emptyList());
+        order.verify(listener).onToken("在订单详情页");
+        ArgumentCaptor<ChatAskResponse> done = ArgumentCaptor.forClass(ChatAskResponse.class);
+        order.verify(listener).onComplete(done.capture());
+        assertEquals("在订单详情页申请退货", done.getValue().getAiMessage().getContent());
+        assertEquals("REFUND", done.getValue().getAiMessage().getIntent());
+        verify(chatMessageWriter, times(2)).save(any(ChatMessage.class));
+        verify(listener, never()).onError(any());
+    }
+
+    @Test
+    @DisplayName("流式问答：准备阶段失败（用户消息落库失败）通过 onError 通知，不抛给请求线程")
+    void testChatWithAiStream_PrepareFailureReported() {
+        pipelineProperties.setParallelEnabled(false);
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        ChatServiceImpl service = newService(tasks::add);
+        loginAs(2L, 10L, 2L);
+        BizException failure = new BizException(ErrorCodes.SYSTEM_ERROR, "消息保存失败");
+        when(chatMessageWriter.save(any(ChatMessage.class))).thenThrow(failure);
+
+        service.chatWithAiStream(10L, 2L, 1L, "怎么退货", listener);
+        tasks.poll().run();
+
+        verify(listener).onError(failure);
+        verify(listener, never()).onStart(any(), any());
+        verifyNoInteractions(llmClient);
+    }
+
+    @Test
+    @DisplayName("流式问答：指定了别人的会话时在准备阶段拒绝，经 onError 返回无权访问，不落库不调模型")
+    void testChatWithAiStream_RejectsOtherUsersSession() {
+        pipelineProperties.setParallelEnabled(false);
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        ChatServiceImpl service = newService(tasks::add);
+        loginAs(2L, 10L, 99L);
+
+        service.chatWithAiStream(10L, 2L, 1L, "怎么退货", listener);
+        tasks.poll().run();
+
+        ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+        verify(listener).onError(error.capture());
+        assertEquals(ErrorCodes.FORBIDDEN, ((BizException) error.getValue()).getCode());
+        verify(listener, never()).onStart(any(), any());
+        verifyNoInteractions(chatMessageWriter, knowledgeChatService, llmClient);
+    }
+
+    @Test
+    @DisplayName("语义答案缓存命中：不调用模型（包括情绪/意图识别），意图沿用缓存，情绪按本轮问题识别")
+    void testChatWithAi_CacheHitMakesNoLlmCalls() {
+        pipelineProperties.setParallelEnabled(false);
+        ChatServiceImpl service = newService(Runnable::run);
+        float[] vector = {1f, 0f};
+        when(knowledgeChatService.buildRagAugment(eq(1L), eq("退款怎么还没到，气死了"), anyInt()))
+                .thenReturn(RagAugmentResult.builder()
+                        .augmentedUserMessage("退款怎么还没到，气死了")
+                        .refs(Collections.emptyList())
+                        .queryVector(vector)
+                        .build());
+        when(answerCache.isEnabled()).thenReturn(true);
+        when(answerCache.currentVersion(1L)).thenReturn(3L);
+        when(answerCache.lookup(1L, 3L, vector)).thenReturn(
+                new SemanticAnswerCache.CachedAnswer("退款 3 个工作日内原路退回", "REFUND", Collections.emptyList()));
+        when(chatMessageWriter.save(any(ChatMessage.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        ChatAskResponse response = service.chatWithAi(10L, 2L, 1L, "退款怎么还没到，气死了");
+
+        assertEquals("退款 3 个工作日内原路退回", response.getAiMessage().getContent());
+        assertEquals("REFUND", response.getAiMessage().getIntent());
+        assertEquals("ANGRY", response.getAiMessage().getEmotion());
+        verifyNoInteractions(llmClient);
+    }
+
+    private ThreadPoolTaskExecutor pipelineExecutor(int core, int max, int queue) {
+        ChatPipelineProperties props = new ChatPipelineProperties();
+        props.setCorePoolSize(core);
+        props.setMaxPoolSize(max);
+        props.setQueueCapacity(queue);
+        return new ChatExecutorConfig(props, new ChatSummaryProperties()).chatPipelineExecutor();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 以普通用户 userId 登录，会话 sessionId 属于 ownerId
+     */
+    private void loginAs(Long userId, Long sessionId, Long ownerId) {
+        JwtUtil.LoginUser user = new JwtUtil.LoginUser();
+        user.setUserId(userId);
+        user.setTenantId(1L);
+        user.setRole("USER");
+        UserContextHolder.setUser(user);
+        ChatSession session = new ChatSession();
+        session.setId(sessionId);
+        session.setTenantId(1L);
+        session.setUserId(ownerId);
+        when(chatSessionMapper.selectById(sessionId)).thenReturn(session);
+    }
+
+    private ChatServiceImpl newService(Executor executor) {
+        return new ChatServiceImpl(chatSessionMapper, chatMessageMapper, llmClient, ticketService,
+                ticketEventPublisher, knowledgeChatService, executor, pipelineProperties, chatContextStore,
+                chatMessageWriter, answerCache, tenantConfigService, conversationSummarizer,
+                new ChatSummaryProperties(), promptBudgetAllocator);
+    }
+
+    private static RagAugmentResult rag(String question) {
+        return RagAugmentResult.builder()
+                .augmentedUserMessage(question)
+                .refs(Collections.emptyList())
+                .build();
+    }
+}
@@ -0,0 +1,115 @@
+package com.ityfz.yulu.chat.service;
+
+import com.ityfz.yulu.common.ai.LLMClient;
+import com.ityfz.yulu.common.ai.Message;
+import com.ityfz.yulu.common.config.ChatSummaryProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ConversationSummarizer 单元测试
+ * 测试触发阈值、会话锁去重和摘要折叠
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ConversationSummarizer 测试")
+class ConversationSummarizerTest {
+
+    @Mock
+    private ChatContextStore chatContextStore;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private LLMClient llmClient;
+
+    @Mock
+    private Executor executor;
+
+    private ConversationSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        ChatSummaryProperties props = new ChatSummaryProperties();
+        props.setTriggerCount(4);
+        props.setBatchSize(20);
+        summarizer = new ConversationSummarizer(chatContextStore, stringRedisTemplate, llmClient, executor, props);
+    }
+
+    @Test
+    @DisplayName("未达阈值或已有任务在执行时不提交摘要任务")
+    void testOnContextAppended_ThresholdAndLock() {
+        summarizer.onContextAppended(1L, 3);
+        verifyNoInteractions(stringRedisTemplate, executor);
+
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("chat:summary:lock:1"), anyString(), any(Duration.class)))
+                .thenReturn(false);
+        summarizer.onContextAppended(1L, 10);
+        verifyNoInteractions(executor);
+    }
+
+    @Test
+    @DisplayName("抢到锁后取出待摘要消息和旧摘要合并，用摘要提示词生成并写回摘要")
+    void testOnContextAppended_FoldEvicted() {
+        doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("chat:summary:lock:1"), anyString(), any(Duration.class)))
+                .thenReturn(true);
+        List<Message> evicted = List.of(
+                new Message("user", "我想退货"), new Message("assistant", "请提供订单号"),
+                new Message("user", "订单号 123"), new Message("assistant", "已为您提交退货申请"));
+        when(chatContextStore.evictedSize(1L)).thenReturn(4L, 0L);
+        when(chatContextStore.takeEvicted(1L, 20)).thenReturn(evicted);
+        when(valueOperations.get("chat:summary:1")).thenReturn("用户咨询退货");
+        when(llmClient.complete(contains("摘要"), contains("订单号 123"))).thenReturn("用户订单 123 已提交退货申请");
+
+        summarizer.onContextAppended(1L, 4);
+
+        verify(llmClient).complete(anyString(), contains("用户咨询退货"));
+        verify(llmClient, never()).chat(anyList(), anyString());
+        verify(valueOperations).set("chat:summary:1", "用户订单 123 已提交退货申请");
+        verify(chatContextStore, never()).restoreEvicted(anyLong(), anyList());
+    }
+
+    @Test
+    @DisplayName("模型调用失败：取出的消息放回待摘要列表，摘要不变，锁释放")
+    void testOnContextAppended_RestoreOnFailure() {
+        doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("chat:summary:lock:1"), anyString(), any(Duration.class)))
+                .thenReturn(true);
+        List<Message> evicted = List.of(new Message("user", "我想退货"), new Message("assistant", "请提供订单号"));
+        when(chatContextStore.evictedSize(1L)).thenReturn(4L);
+        when(chatContextStore.takeEvicted(1L, 20)).thenReturn(evicted);
+        when(llmClient.complete(anyString(), anyString())).thenThrow(new RuntimeException("timeout"));
+
+        summarizer.onContextAppended(1L, 4);
+
+        verify(chatContextStore).restoreEvicted(1L, evicted);
+        verify(valueOperations, never()).set(eq("chat:summary:1"), anyString());
+        verify(stringRedisTemplate).execute(any(), eq(List.of("chat:summary:lock:1")), anyString());
+    }
+}
@@ -0,0 +1,74 @@
+package com.ityfz.yulu.chat.service;
+
+import com.ityfz.yulu.common.ai.ChatResult;
+import com.ityfz.yulu.common.config.ChatAnswerCacheProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SemanticAnswerCache 单元测试
+ * 测试相似度阈值、命中时的标签和版本号失效
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SemanticAnswerCache 测试")
+class SemanticAnswerCacheTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        ChatAnswerCacheProperties props = new ChatAnswerCacheProperties();
+        props.setSimilarityThreshold(0.95);
+        cache = new SemanticAnswerCache(stringRedisTemplate, props);
+    }
+
+    @Test
+    @DisplayName("相似问题命中，不相似问题未命中")
+    void testLookup_Threshold() {
+        cache.put(1L, 0L, new float[]{1f, 0f, 0f}, new ChatResult("退款3个工作日到账", "NEUTRAL", "REFUND"),
+                Collections.emptyList());
+
+        // 同方向、不同长度的向量：余弦相似度为 1
+        SemanticAnswerCache.CachedAnswer hit = cache.lookup(1L, 0L, new float[]{2f, 0.1f, 0f});
+        assertNotNull(hit);
+        assertEquals("退款3个工作日到账", hit.getAnswer());
+        // 意图随答案复用；情绪按本轮提问者的问题识别，不沿用第一次提问者的
+        ChatResult reused = hit.toChatResult("退款怎么还没到，气死我了");
+        assertEquals("REFUND", reused.getIntent());
+        assertEquals("ANGRY", reused.getEmotion());
+        assertEquals("NEUTRAL", hit.toChatResult("退款多久到账").getEmotion());
+
+        // 正交向量：不应命中
+        assertNull(cache.lookup(1L, 0L, new float[]{0f, 1f, 0f}));
+        // 其他租户：不应命中
+        assertNull(cache.lookup(2L, 0L, new float[]{1f, 0f, 0f}));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("版本号变化后旧答案失效，旧版本的写入被丢弃")
+    void testLookup_VersionChanged() {
+        cache.put(1L, 0L, new float[]{1f, 0f}, new ChatResult("旧答案", null, null), Collections.emptyList());
+
+        assertNull(cache.lookup(1L, 1L, new float[]{1f, 0f}));
+
+        // 知识库已经到了版本 1，版本 0 时生成的答案不能再写进来
+        cache.put(1L, 0L, new float[]{1f, 0f}, new ChatResult("过期答案", null, null), Collections.emptyList());
+        assertNull(cache.lookup(1L, 1L, new float[]{1f, 0f}));
+    }
+}
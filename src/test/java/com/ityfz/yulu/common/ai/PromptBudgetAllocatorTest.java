@@ -0,0 +1,98 @@
+package com.ityfz.yulu.common.ai;
+
+import com.ityfz.yulu.common.ai.impl.JtokkitTokenCounter;
+import com.ityfz.yulu.common.config.PromptBudgetProperties;
+import com.ityfz.yulu.common.config.QianWenProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PromptBudgetAllocator 单元测试
+ * 测试本地分词计数、预算分配和历史截取
+ */
+@DisplayName("PromptBudgetAllocator 测试")
+class PromptBudgetAllocatorTest {
+
+    private TokenCounter tokenCounter;
+    private QianWenProperties qianWenProperties;
+    private PromptBudgetAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        PromptBudgetProperties props = new PromptBudgetProperties();
+        props.setDefaultContextWindow(4000);
+        props.setModelContextWindows(Map.of("qwen-plus", 32000));
+        props.setOutputReserveTokens(1000);
+        props.setSystemReserveTokens(200);
+        props.setSummaryMaxTokens(300);
+        props.setRagRatio(0.5);
+        props.setRagMaxTokens(3000);
+        tokenCounter = new JtokkitTokenCounter(props.getEncoding());
+        qianWenProperties = new QianWenProperties();
+        qianWenProperties.setModel("qwen-turbo");
+        allocator = new PromptBudgetAllocator(props, tokenCounter, qianWenProperties);
+    }
+
+    @Test
+    @DisplayName("中英文混合文本计数与截断")
+    void testCountAndTruncate() {
+        String text = "请问 iPhone 15 Pro 的退货政策是什么？我在 2024 年 3 月购买的。";
+        int tokens = tokenCounter.count(text);
+        assertTrue(tokens > 0 && tokens < text.length(), "token 数应小于字符数: " + tokens);
+        assertEquals(0, tokenCounter.count(null));
+
+        String truncated = tokenCounter.truncate(text, 5);
+        assertTrue(text.startsWith(truncated));
+        assertTrue(tokenCounter.count(truncated) <= 5);
+        assertSame(text, tokenCounter.truncate(text, 1000));
+    }
+
+    @Test
+    @DisplayName("按模型窗口分配预算，RAG / 摘要没用满的部分让给对话历史")
+    void testPlanAndHistoryAllowance() {
+        PromptBudget budget = allocator.plan(null, "你好", null);
+        int available = 4000 - 1000 - 200 - budget.getQuestionTokens();
+        assertEquals(available, budget.getAvailableTokens());
+        assertEquals(available / 2, budget.getRagTokens());
+        assertEquals(300, budget.getSummaryTokens());
+        assertEquals(available - budget.getRagTokens() - 300, budget.getHistoryTokens());
+        assertEquals(available - 100, allocator.historyAllowance(budget, 100, 0));
+
+        assertEquals(3000, allocator.plan("qwen-plus", "你好", null).getRagTokens());
+
+        PromptBudget capped = allocator.plan(null, "你好", 500);
+        assertEquals(500, capped.getHistoryTokens());
+        assertEquals(500, allocator.historyAllowance(capped, 0, 0));
+    }
+
+    @Test
+    @DisplayName("未指定模型时按默认对话模型的窗口分配")
+    void testPlan_NullModelUsesDefaultChatModel() {
+        qianWenProperties.setModel("qwen-plus");
+
+        assertEquals(32000, allocator.plan(null, "你好", null).getContextWindow());
+        assertEquals(32000, allocator.plan(" ", "你好", null).getContextWindow());
+        assertEquals(3000, allocator.defaultRagTokens());
+        assertEquals(4000, allocator.plan("qwen-long", "你好", null).getContextWindow());
+    }
+
+    @Test
+    @DisplayName("对话历史从最新的消息开始保留")
+    void testFitHistory() {
+        Message newest = new Message("user", "第三个问题");
+        Message middle = new Message("assistant", "第二个回答，内容比较长，包含很多很多的细节说明。");
+        Message oldest = new Message("user", "第一个问题");
+        List<Message> history = List.of(newest, middle, oldest);
+
+        int budget = tokenCounter.count(newest.getContent()) + tokenCounter.count(middle.getContent());
+        List<Message> kept = allocator.fitHistory(history, budget);
+        assertEquals(List.of(newest, middle), kept);
+        assertTrue(allocator.fitHistory(history, 0).isEmpty());
+    }
+}
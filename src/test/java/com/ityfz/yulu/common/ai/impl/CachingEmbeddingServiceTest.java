@@ -0,0 +1,75 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CachingEmbeddingService 单元测试
+ * Redis 返回空（全部未命中），验证 L1 缓存和批次内去重
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CachingEmbeddingService 测试")
+class CachingEmbeddingServiceTest {
+
+    @Mock
+    private EmbeddingService delegate;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    private CachingEmbeddingService service;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(delegate.getModelName()).thenReturn("text-embedding-v2");
+        lenient().when(delegate.getDimension()).thenReturn(2);
+        service = new CachingEmbeddingService(delegate, stringRedisTemplate, true, 100, 1);
+    }
+
+    @Test
+    @DisplayName("批量向量化：重复文本只调用一次模型，顺序保持不变")
+    void testEmbedBatch_DedupAndOrder() {
+        when(delegate.embedBatch(List.of("怎么退款", "发票怎么开")))
+                .thenReturn(List.of(new float[]{1f, 0f}, new float[]{0f, 1f}));
+
+        List<float[]> vectors = service.embedBatch(List.of("怎么退款", "发票怎么开", "怎么退款"));
+
+        assertEquals(3, vectors.size());
+        assertArrayEquals(new float[]{1f, 0f}, vectors.get(0));
+        assertArrayEquals(new float[]{0f, 1f}, vectors.get(1));
+        assertArrayEquals(new float[]{1f, 0f}, vectors.get(2));
+        assertEquals(2, service.getMisses());
+    }
+
+    @Test
+    @DisplayName("重复查询命中 L1，不再调用模型")
+    void testEmbed_L1Hit() {
+        when(delegate.embedBatch(List.of("怎么退款"))).thenReturn(List.of(new float[]{0.6f, 0.8f}));
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, service.embed("怎么退款"));
+        assertArrayEquals(new float[]{0.6f, 0.8f}, service.embed("怎么退款"));
+
+        verify(delegate, times(1)).embedBatch(anyList());
+        assertEquals(1, service.getL1Hits());
+    }
+
+    @Test
+    @DisplayName("向量按小端序打包成原始字节")
+    void testPack() {
+        byte[] bytes = CachingEmbeddingService.pack(new float[]{1f, -2f});
+        assertEquals(8, bytes.length);
+        assertEquals(0x3f, bytes[3] & 0xff);  // 1.0f = 0x3F800000
+        assertEquals(0xc0, bytes[7] & 0xff);  // -2.0f = 0xC0000000
+    }
+}
@@ -0,0 +1,160 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import com.ityfz.yulu.common.ai.UpsertReport;
+import com.ityfz.yulu.common.ai.VectorStore;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.service.Impl.ChunkIndexServiceImpl;
+import com.ityfz.yulu.knowledge.service.KnowledgeStatsService;
+import com.ityfz.yulu.knowledge.service.VectorCollectionRouter;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChunkIndexService 单元测试
+ * 测试 qdrant_point_id 的 CASE WHEN 批量回写语句，以及向量写入失败时不回写任何点 ID
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ChunkIndexService 测试")
+class ChunkIndexServiceTest {
+
+    @Mock
+    private DocumentMapper documentMapper;
+
+    @Mock
+    private ChunkMapper chunkMapper;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private VectorCollectionRouter collectionRouter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private KnowledgeStatsService knowledgeStatsService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // Lambda 条件构造器需要实体的字段映射
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, Document.class);
+        TableInfoHelper.initTableInfo(assistant, Chunk.class);
+    }
+
+    @Test
+    @DisplayName("updateQdrantPointIds：一条 UPDATE 按 id 分别写入各行自己的点 ID，只更新本租户的这些行")
+    void testUpdateQdrantPointIds_CaseWhenPerRow() {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.addMapper(ChunkMapper.class);
+        Map<String, Object> params = new HashMap<>();
+        params.put("tenantId", 1L);
+        params.put("chunks", List.of(chunk(1001L, 9001L), chunk(1002L, 9002L), chunk(1003L, 9003L)));
+
+        BoundSql boundSql = configuration.getMappedStatement(ChunkMapper.class.getName() + ".updateQdrantPointIds")
+                .getBoundSql(params);
+
+        assertEquals("UPDATE knowledge_chunk SET qdrant_point_id = CASE id"
+                        + " WHEN 1001 THEN 9001 WHEN 1002 THEN 9002 WHEN 1003 THEN 9003 END"
+                        + " WHERE tenant_id = 1 AND id IN ( 1001 , 1002 , 1003 )",
+                inline(configuration, boundSql));
+    }
+
+    @Test
+    @DisplayName("向量写入部分失败：不开回写事务，不回写任何 qdrant_point_id，不标记已索引")
+    void testIndexDocument_UpsertFailureSavesNoPointIds() {
+        ChunkIndexServiceImpl service = new ChunkIndexServiceImpl(documentMapper, chunkMapper, embeddingService,
+                vectorStore, collectionRouter, eventPublisher, new TransactionTemplate(transactionManager),
+                knowledgeStatsService);
+        Document doc = new Document();
+        doc.setId(10L);
+        doc.setTenantId(1L);
+        doc.setTitle("产品手册");
+        List<Chunk> chunks = new ArrayList<>();
+        for (long id = 1001; id <= 1003; id++) {
+            chunks.add(chunk(id, null));
+        }
+        when(documentMapper.selectOne(any())).thenReturn(doc);
+        when(chunkMapper.selectList(any())).thenReturn(chunks);
+        when(embeddingService.getDimension()).thenReturn(2);
+        when(embeddingService.embedBatch(anyList()))
+                .thenReturn(List.of(new float[]{1f, 0f}, new float[]{0f, 1f}, new float[]{1f, 1f}));
+        when(collectionRouter.collectionFor(1L)).thenReturn("yulu_kb");
+        UpsertReport report = new UpsertReport(3);
+        report.addSucceeded(2);
+        report.addFailure(1003L, "timeout");
+        when(vectorStore.upsertPoints(eq("yulu_kb"), anyList())).thenReturn(report);
+
+        assertThrows(IllegalStateException.class, () -> service.indexDocument(1L, 10L));
+
+        verify(chunkMapper, never()).updateQdrantPointIds(any(), anyList());
+        verify(collectionRouter).forget("yulu_kb");
+        verifyNoInteractions(transactionManager, knowledgeStatsService, eventPublisher);
+        verify(documentMapper, never()).update(any(), any());
+        assertTrue(chunks.stream().allMatch(c -> c.getQdrantPointId() == null));
+    }
+
+    private static Chunk chunk(Long id, Long pointId) {
+        Chunk c = new Chunk();
+        c.setId(id);
+        c.setTenantId(1L);
+        c.setDocumentId(10L);
+        c.setChunkIndex((int) (id - 1001));
+        c.setContent("片段" + id);
+        c.setQdrantPointId(pointId);
+        return c;
+    }
+
+    /**
+     * 把占位符按绑定顺序替换成参数值，压缩空白，便于整句比对
+     */
+    private static String inline(MybatisConfiguration configuration, BoundSql boundSql) {
+        MetaObject meta = configuration.newMetaObject(boundSql.getParameterObject());
+        StringBuilder sql = new StringBuilder();
+        String[] parts = boundSql.getSql().split("\\?", -1);
+        List<ParameterMapping> mappings = boundSql.getParameterMappings();
+        assertEquals(parts.length - 1, mappings.size());
+        for (int i = 0; i < mappings.size(); i++) {
+            String property = mappings.get(i).getProperty();
+            Object value = boundSql.hasAdditionalParameter(property)
+                    ? boundSql.getAdditionalParameter(property)
+                    : meta.getValue(property);
+            sql.append(parts[i]).append(value);
+        }
+        sql.append(parts[parts.length - 1]);
+        return sql.toString().replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,75 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * DashScopeEmbeddingService 单元测试
+ * 测试响应流直接解析为 float[]，兼容两种响应格式
+ */
+@DisplayName("DashScopeEmbeddingService 测试")
+class DashScopeEmbeddingServiceTest {
+
+    private DashScopeEmbeddingService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DashScopeEmbeddingService(mock(RestTemplate.class), new ObjectMapper());
+        ReflectionTestUtils.setField(service, "dimension", 3);
+    }
+
+    @Test
+    @DisplayName("DashScope 格式：按返回顺序解析多条向量，忽略 usage 等其他字段")
+    void testReadEmbeddings_DashScopeFormat() throws Exception {
+        String body = """
+                {"output":{"embeddings":[
+                  {"text_index":0,"embedding":[0.1,-0.2,3]},
+                  {"text_index":1,"embedding":[1.5e-3,0,-1]}
+                ]},"usage":{"total_tokens":12},"request_id":"abc"}
+                """;
+
+        List<float[]> vectors = service.readEmbeddings(stream(body));
+
+        assertEquals(2, vectors.size());
+        assertArrayEquals(new float[]{0.1f, -0.2f, 3f}, vectors.get(0));
+        assertArrayEquals(new float[]{0.0015f, 0f, -1f}, vectors.get(1));
+    }
+
+    @Test
+    @DisplayName("兼容格式：data[].embedding；维度超过配置时自动扩容")
+    void testReadEmbeddings_CompatibleFormat() throws Exception {
+        String body = """
+                {"data":[{"index":0,"object":"embedding","embedding":[1,2,3,4,5]}],"model":"text-embedding-v2"}
+                """;
+
+        List<float[]> vectors = service.readEmbeddings(stream(body));
+
+        assertEquals(1, vectors.size());
+        assertArrayEquals(new float[]{1f, 2f, 3f, 4f, 5f}, vectors.get(0));
+    }
+
+    @Test
+    @DisplayName("没有 embedding 字段（如错误响应）返回空列表")
+    void testReadEmbeddings_NoEmbedding() throws Exception {
+        String body = """
+                {"code":"InvalidApiKey","message":"Invalid API-key provided."}
+                """;
+
+        assertTrue(service.readEmbeddings(stream(body)).isEmpty());
+    }
+
+    private ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,132 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+import com.ityfz.yulu.common.config.VectorStoreProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddedHnswVectorStore 单元测试
+ * 测试图检索召回率、租户过滤、覆盖写入、按条件删除和重启加载
+ */
+@DisplayName("EmbeddedHnswVectorStore 测试")
+class EmbeddedHnswVectorStoreTest {
+
+    private static final int DIM = 32;
+
+    @TempDir
+    Path dataDir;
+
+    private EmbeddedHnswVectorStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("图检索与精确计算的 top10 重合度不低于 90%，且只返回本租户的点")
+    void testSearch_RecallWithTenantFilter() throws Exception {
+        store = newStore(100);
+        store.createCollection("c", DIM);
+        Random random = new Random(42);
+        List<VectorPoint> points = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            long tenantId = id % 4 == 0 ? 2L : 1L;
+            points.add(new VectorPoint(id, randomVector(random), Map.of("tenant_id", tenantId)));
+        }
+        assertTrue(store.upsertPoints("c", points).isAllSucceeded());
+
+        double recall = 0;
+        int queries = 20;
+        for (int i = 0; i < queries; i++) {
+            float[] q = randomVector(random);
+            List<VectorSearchHit> hits = store.search("c", q, 10, VectorFilter.eq("tenant_id", 1L));
+            assertEquals(10, hits.size());
+            assertTrue(hits.stream().allMatch(h -> Long.valueOf(1L).equals(h.getPayload().get("tenant_id"))));
+            Set<Long> expected = points.stream()
+                    .filter(p -> p.getPayload().get("tenant_id").equals(1L))
+                    .sorted(Comparator.comparingDouble((VectorPoint p) -> cosine(p.getVector(), q)).reversed())
+                    .limit(10)
+                    .map(VectorPoint::getId)
+                    .collect(Collectors.toSet());
+            recall += hits.stream().filter(h -> expected.contains(h.getId())).count() / 10.0;
+        }
+        assertTrue(recall / queries >= 0.9, "recall=" + recall / queries);
+    }
+
+    @Test
+    @DisplayName("覆盖写入和按条件删除生效，重启后从数据目录恢复")
+    void testUpsertDeleteAndReload() throws Exception {
+        store = newStore(1000);
+        store.createCollection("c", DIM);
+        Random random = new Random(7);
+        float[] target = randomVector(random);
+        store.upsertPoint("c", 1L, randomVector(random), Map.of("tenant_id", 1L, "document_id", 10L));
+        store.upsertPoint("c", 2L, randomVector(random), Map.of("tenant_id", 1L, "document_id", 20L));
+        // 1 号点覆盖为 target，检索 target 时应排第一
+        store.upsertPoint("c", 1L, target, Map.of("tenant_id", 1L, "document_id", 10L, "chunk", "退货流程"));
+
+        List<VectorSearchHit> hits = store.search("c", target, 5, VectorFilter.eq("tenant_id", 1L));
+        assertEquals(2, hits.size());
+        assertEquals(1L, hits.get(0).getId());
+        assertEquals(1.0f, hits.get(0).getScore(), 1e-4);
+        assertEquals("退货流程", hits.get(0).getPayload().get("chunk"));
+
+        store.deleteByFilter("c", VectorFilter.eq("tenant_id", 1L).and("document_id", 20L));
+        store.destroy();
+
+        store = newStore(1000);
+        hits = store.search("c", target, 5, VectorFilter.eq("tenant_id", 1L));
+        assertEquals(1, hits.size());
+        assertEquals(1L, hits.get(0).getId());
+        assertTrue(store.search("c", target, 5, VectorFilter.eq("tenant_id", 2L)).isEmpty());
+        assertThrows(IllegalStateException.class, () -> store.createCollection("c", DIM + 1));
+    }
+
+    private EmbeddedHnswVectorStore newStore(int bruteForceThreshold) throws Exception {
+        VectorStoreProperties props = new VectorStoreProperties();
+        props.getEmbedded().setDataDir(dataDir.toString());
+        props.getEmbedded().setBruteForceThreshold(bruteForceThreshold);
+        props.getEmbedded().setFlushIntervalMs(0);
+        EmbeddedHnswVectorStore s = new EmbeddedHnswVectorStore(props, new ObjectMapper());
+        s.init();
+        return s;
+    }
+
+    private float[] randomVector(Random random) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    private double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+}
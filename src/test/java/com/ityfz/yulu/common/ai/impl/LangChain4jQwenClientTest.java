@@ -1,5 +1,6 @@
 package com.ityfz.yulu.common.ai.impl;
 
+import com.ityfz.yulu.common.ai.ChatResult;
 import com.ityfz.yulu.common.ai.Message;
 import com.ityfz.yulu.common.config.QianWenProperties;
 import dev.langchain4j.data.message.AiMessage;
@@ -217,33 +218,26 @@ class LangChain4jQwenClientTest {
         mockChatModelResponse(jsonResponse);
 
         // 执行
-        String result = client.chat(Collections.emptyList(), "我要退款");
+        ChatResult result = client.chatStructured(Collections.emptyList(), "我要退款");
 
-        // 验证：answer 应该正确提取
-        assertEquals("好的，我来帮您处理", result);
-        
-        // 注意：emotion 和 intent 存储在 ThreadLocal 的 lastResult 中
-        // 这里我们验证它们被正确解析（通过反射访问 lastResult）
-        try {
-            java.lang.reflect.Field lastResultField = LangChain4jQwenClient.class.getDeclaredField("lastResult");
-            lastResultField.setAccessible(true);
-            ThreadLocal<?> lastResult = (ThreadLocal<?>) lastResultField.get(client);
-            Object chatResult = lastResult.get();
-            
-            if (chatResult != null) {
-                java.lang.reflect.Method getEmotion = chatResult.getClass().getMethod("getEmotion");
-                java.lang.reflect.Method getIntent = chatResult.getClass().getMethod("getIntent");
-                
-                String emotion = (String) getEmotion.invoke(chatResult);
-                String intent = (String) getIntent.invoke(chatResult);
-                
-                assertEquals("HAPPY", emotion);
-                assertEquals("REFUND", intent);
-            }
-        } catch (Exception e) {
-            // 如果反射失败，至少验证 answer 正确即可
-            // 因为 emotion 和 intent 主要用于后续优化，不是核心功能
-        }
+        // 验证：一次调用同时拿到 answer、emotion、intent
+        assertEquals("好的，我来帮您处理", result.getAnswer());
+        assertEquals("HAPPY", result.getEmotion());
+        assertEquals("REFUND", result.getIntent());
+        verify(mockModel, times(1)).chat(anyList());
+    }
+
+    @Test
+    @DisplayName("测试 chatStructured - 非 JSON 输出时标签为空，交由调用方兜底")
+    void testChatStructured_InvalidJsonLeavesLabelsEmpty() {
+        String plainTextResponse = "您好，我是客服助手";
+        mockChatModelResponse(plainTextResponse);
+
+        ChatResult result = client.chatStructured(Collections.emptyList(), "你好");
+
+        assertEquals(plainTextResponse, result.getAnswer());
+        assertFalse(result.hasEmotion());
+        assertFalse(result.hasIntent());
     }
 
     @Test
@@ -271,6 +265,23 @@ class LangChain4jQwenClientTest {
                 }));
     }
 
+    @Test
+    @DisplayName("测试流式输出 - 标签行被截留，不推送给前端")
+    void testStreamSplitter_HidesMetaLine() {
+        LangChain4jQwenClient.MetaTailSplitter splitter = new LangChain4jQwenClient.MetaTailSplitter();
+        StringBuilder pushed = new StringBuilder();
+
+        // 模拟模型分段吐字，标记本身也被拆到两段里
+        for (String part : List.of("您好，", "退款将在3个工作日内", "到账。\n###ME", "TA###{\"emotion\":\"NEUTRAL\",", "\"intent\":\"REFUND\"}")) {
+            pushed.append(splitter.append(part));
+        }
+        pushed.append(splitter.flush());
+
+        assertEquals("您好，退款将在3个工作日内到账。\n", pushed.toString());
+        assertEquals("您好，退款将在3个工作日内到账。", splitter.getAnswer());
+        assertEquals("{\"emotion\":\"NEUTRAL\",\"intent\":\"REFUND\"}", splitter.getMeta());
+    }
+
     /**
      * 辅助方法：模拟 chatModel.chat() 返回指定文本
      */
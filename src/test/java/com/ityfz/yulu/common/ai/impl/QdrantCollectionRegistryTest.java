@@ -0,0 +1,63 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.google.common.util.concurrent.Futures;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * QdrantCollectionRegistry 单元测试
+ * 测试已知集合不再访问 Qdrant、未知集合按间隔刷新
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QdrantCollectionRegistry 测试")
+class QdrantCollectionRegistryTest {
+
+    @Mock
+    private QdrantClient client;
+
+    private QdrantCollectionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new QdrantCollectionRegistry(client, 60_000);
+    }
+
+    @Test
+    @DisplayName("已知集合只拉取一次列表，未知集合在刷新间隔内不重复拉取")
+    void testExists_CachesListing() {
+        when(client.listCollectionsAsync()).thenReturn(Futures.immediateFuture(List.of("yulu_chunks")));
+
+        assertTrue(registry.exists("yulu_chunks"));
+        assertTrue(registry.exists("yulu_chunks"));
+        assertFalse(registry.exists("other"));
+        assertFalse(registry.exists("other"));
+
+        verify(client, times(1)).listCollectionsAsync();
+    }
+
+    @Test
+    @DisplayName("登记 / 移除集合后直接生效")
+    void testRegisterAndRemove() {
+        when(client.listCollectionsAsync()).thenReturn(Futures.immediateFuture(List.of()));
+
+        registry.register("yulu_chunks", 1536, Collections.Distance.Cosine);
+        assertTrue(registry.exists("yulu_chunks"));
+        assertEquals(1536, registry.describe("yulu_chunks").getVectorSize());
+        verifyNoInteractions(client);
+
+        registry.remove("yulu_chunks");
+        assertFalse(registry.exists("yulu_chunks"));
+        assertNull(registry.describe("yulu_chunks"));
+    }
+}
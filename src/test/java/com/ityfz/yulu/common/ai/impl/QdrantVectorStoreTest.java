@@ -0,0 +1,156 @@
+package com.ityfz.yulu.common.ai.impl;
+
+import com.google.common.util.concurrent.Futures;
+import com.ityfz.yulu.common.ai.UpsertReport;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+import com.ityfz.yulu.common.config.QdrantProperties;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * QdrantVectorStore 单元测试
+ * 测试批量写入的切批、逐点失败报告和集合不存在时的处理，以及开启量化后的建集合和检索参数
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QdrantVectorStore 测试")
+class QdrantVectorStoreTest {
+
+    @Mock
+    private QdrantClient client;
+
+    @Mock
+    private QdrantCollectionRegistry collectionRegistry;
+
+    private QdrantProperties props;
+    private QdrantVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        props = new QdrantProperties();
+        props.setUpsertBatchSize(2);
+        props.setUpsertMaxInFlight(2);
+        store = new QdrantVectorStore(props);
+        ReflectionTestUtils.setField(store, "client", client);
+        ReflectionTestUtils.setField(store, "collectionRegistry", collectionRegistry);
+    }
+
+    @Test
+    @DisplayName("按批写入；失败的批次逐点重试并报告具体失败的点")
+    void testUpsertPoints_PartialFailure() {
+        // 含 3 号点的批次整体失败，逐点重试时只有 3 号点失败
+        when(client.upsertAsync(eq("c"), anyList())).thenAnswer(inv -> {
+            List<Points.PointStruct> structs = inv.getArgument(1);
+            boolean containsBad = structs.stream().anyMatch(p -> p.getId().getNum() == 3);
+            return containsBad
+                    ? Futures.immediateFailedFuture(new IllegalArgumentException("bad vector"))
+                    : Futures.immediateFuture(Points.UpdateResult.getDefaultInstance());
+        });
+
+        List<VectorPoint> points = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            points.add(new VectorPoint(id, new float[]{0.1f, 0.2f}, Map.of("tenant_id", 1L)));
+        }
+        UpsertReport report = store.upsertPoints("c", points);
+
+        assertEquals(5, report.getTotal());
+        assertEquals(4, report.getSucceeded());
+        assertFalse(report.isAllSucceeded());
+        assertTrue(report.isFailed(3));
+        assertEquals("bad vector", report.getFailures().get(3L));
+        // 3 个批次 + 失败批次的 2 次逐点重试
+        verify(client, times(5)).upsertAsync(eq("c"), anyList());
+    }
+
+    @Test
+    @DisplayName("集合不存在：不逐点重试，全部记为失败，并从集合注册表中移除")
+    void testUpsertPoints_CollectionNotFound() {
+        when(client.upsertAsync(eq("c"), anyList()))
+                .thenReturn(Futures.immediateFailedFuture(new StatusRuntimeException(Status.NOT_FOUND)));
+
+        List<VectorPoint> points = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            points.add(new VectorPoint(id, new float[]{0.1f, 0.2f}, Map.of("tenant_id", 1L)));
+        }
+        UpsertReport report = store.upsertPoints("c", points);
+
+        assertEquals(0, report.getSucceeded());
+        assertEquals(3, report.getFailures().size());
+        // 2 个批次，各只请求一次
+        verify(client, times(2)).upsertAsync(eq("c"), anyList());
+        verify(collectionRegistry, atLeastOnce()).remove("c");
+    }
+
+    @Test
+    @DisplayName("开启量化：新建集合带 int8 标量量化，检索带重排参数，向量按原样写入请求")
+    void testQuantization_CreateAndSearch() {
+        props.getQuantization().setEnabled(true);
+        props.getQuantization().setOversampling(3.0);
+        when(client.createCollectionAsync(eq("c"), any(Collections.VectorParams.class)))
+                .thenReturn(Futures.immediateFuture(Collections.CollectionOperationResponse.getDefaultInstance()));
+        when(collectionRegistry.exists("c")).thenReturn(true);
+        when(client.searchAsync(any(Points.SearchPoints.class))).thenReturn(Futures.immediateFuture(List.of(
+                Points.ScoredPoint.newBuilder()
+                        .setId(Points.PointId.newBuilder().setNum(7))
+                        .setScore(0.9f)
+                        .setVectors(Points.Vectors.newBuilder()
+                                .setVector(Points.Vector.newBuilder().addData(0.6f).addData(0.8f)))
+                        .build())));
+
+        store.createCollection("c", 2);
+        List<VectorSearchHit> hits = store.search("c", new float[]{0.6f, 0.8f}, 5, null, true);
+
+        ArgumentCaptor<Collections.VectorParams> params = ArgumentCaptor.forClass(Collections.VectorParams.class);
+        verify(client).createCollectionAsync(eq("c"), params.capture());
+        Collections.ScalarQuantization scalar = params.getValue().getQuantizationConfig().getScalar();
+        assertEquals(Collections.QuantizationType.Int8, scalar.getType());
+        assertEquals(0.99f, scalar.getQuantile(), 1e-6);
+        assertTrue(scalar.getAlwaysRam());
+        assertTrue(params.getValue().getOnDisk());
+
+        ArgumentCaptor<Points.SearchPoints> request = ArgumentCaptor.forClass(Points.SearchPoints.class);
+        verify(client).searchAsync(request.capture());
+        assertEquals(List.of(0.6f, 0.8f), request.getValue().getVectorList());
+        assertTrue(request.getValue().getParams().getQuantization().getRescore());
+        assertEquals(3.0, request.getValue().getParams().getQuantization().getOversampling(), 1e-9);
+        assertArrayEquals(new float[]{0.6f, 0.8f}, hits.get(0).getVector());
+    }
+
+    @Test
+    @DisplayName("未开启量化：建集合和检索都不带量化参数")
+    void testQuantization_DisabledByDefault() {
+        when(client.createCollectionAsync(eq("c"), any(Collections.VectorParams.class)))
+                .thenReturn(Futures.immediateFuture(Collections.CollectionOperationResponse.getDefaultInstance()));
+        when(collectionRegistry.exists("c")).thenReturn(true);
+        when(client.searchAsync(any(Points.SearchPoints.class))).thenReturn(Futures.immediateFuture(List.of()));
+
+        store.createCollection("c", 2);
+        store.search("c", new float[]{1f, 0f}, 5, null);
+
+        ArgumentCaptor<Collections.VectorParams> params = ArgumentCaptor.forClass(Collections.VectorParams.class);
+        verify(client).createCollectionAsync(eq("c"), params.capture());
+        assertFalse(params.getValue().hasQuantizationConfig());
+        ArgumentCaptor<Points.SearchPoints> request = ArgumentCaptor.forClass(Points.SearchPoints.class);
+        verify(client).searchAsync(request.capture());
+        assertFalse(request.getValue().hasParams());
+    }
+}
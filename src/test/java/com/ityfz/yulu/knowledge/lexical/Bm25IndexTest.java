@@ -0,0 +1,61 @@
+package com.ityfz.yulu.knowledge.lexical;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bm25Index / CjkBigramTokenizer 单元测试
+ * 测试中文二元切分、编号整体匹配、删除与压缩
+ */
+@DisplayName("Bm25Index 测试")
+class Bm25IndexTest {
+
+    @Test
+    @DisplayName("中文按二元组切分，编号保留整体并拆出各段")
+    void testTokenize() {
+        assertEquals(List.of("订单", "ord-2024-001", "ord", "2024", "001", "怎么", "么退", "退货"),
+                CjkBigramTokenizer.tokenize("订单ORD-2024-001怎么退货？"));
+        assertEquals(List.of("退", "iphone", "15"), CjkBigramTokenizer.tokenize("退 iPhone 15"));
+    }
+
+    @Test
+    @DisplayName("订单号精确命中排第一，只命中常见词的片段被覆盖率过滤")
+    void testSearch_ExactCodeRanksFirst() {
+        Bm25Index index = new Bm25Index(1.2, 0.75);
+        index.add(1L, 10L, "退货流程：在订单详情页申请退货，审核通过后寄回商品。");
+        index.add(2L, 10L, "订单 ORD-2024-001 的退货需要联系人工客服处理。");
+        index.add(3L, 20L, "发票在订单完成后七天内开具。");
+        index.add(4L, 20L, "会员积分可以抵扣运费。");
+
+        List<LexicalHit> hits = index.search("ORD-2024-001 退货", 10, 0.5);
+        assertFalse(hits.isEmpty());
+        assertEquals(2L, hits.get(0).getChunkId());
+        assertTrue(hits.stream().noneMatch(h -> h.getChunkId() == 3L || h.getChunkId() == 4L));
+        assertTrue(index.search("完全无关的内容", 10, 0.5).isEmpty());
+    }
+
+    @Test
+    @DisplayName("删除文档、覆盖写入和压缩后检索结果正确")
+    void testRemoveAndCompact() {
+        Bm25Index index = new Bm25Index(1.2, 0.75);
+        for (long i = 0; i < 600; i++) {
+            index.add(i, i % 2, "型号 X" + i + " 的保修政策");
+        }
+        assertEquals(300, index.removeDocument(0L));
+        assertEquals(300, index.liveCount());
+        assertTrue(index.search("X10", 5, 0.5).isEmpty());
+
+        List<LexicalHit> hits = index.search("X11", 5, 0.5);
+        assertEquals(1, hits.size());
+        assertEquals(11L, hits.get(0).getChunkId());
+
+        index.add(11L, 1L, "型号 Y11 已停产");
+        assertTrue(index.search("X11", 5, 0.5).isEmpty());
+        assertEquals(11L, index.search("Y11", 5, 0.5).get(0).getChunkId());
+        assertEquals(300, index.liveCount());
+    }
+}
@@ -0,0 +1,179 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.knowledge.dto.ChunkSyncResult;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.service.Impl.ChunkServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChunkService.syncChunks 单元测试
+ * 测试按内容哈希复用已有 chunk，只插入变化的片段
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Chunk 增量同步测试")
+class ChunkSyncTest {
+
+    private static final int CHUNK_SIZE = 60;
+    private static final int OVERLAP = 10;
+
+    @Mock
+    private ChunkMapper chunkMapper;
+
+    @Mock
+    private LexicalIndexService lexicalIndexService;
+
+    @Mock
+    private KnowledgeStatsService knowledgeStatsService;
+
+    @InjectMocks
+    private ChunkServiceImpl chunkService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Chunk.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(chunkService, "minChunkSize", 20);
+    }
+
+    @Test
+    @DisplayName("内容不变：全部沿用，不插入不删除，旧数据补写哈希")
+    void testSyncChunks_UnchangedContent() {
+        String content = article(-1);
+        List<Chunk> existing = persisted(content, false);
+        when(chunkMapper.selectList(any())).thenReturn(existing);
+
+        ChunkSyncResult result = chunkService.syncChunks(10L, 1L, content, CHUNK_SIZE, OVERLAP);
+
+        assertEquals(existing.size(), result.getReused());
+        assertEquals(0, result.getAdded());
+        assertEquals(0, result.getRemoved());
+        assertTrue(result.getRemovedPointIds().isEmpty());
+        assertTrue(result.getChunks().stream().allMatch(c -> c.getQdrantPointId() != null && c.getContentHash() != null));
+        verify(chunkMapper, never()).insertBatch(anyList());
+        verify(chunkMapper, never()).delete(any());
+        verify(chunkMapper).updateIndexAndHash(eq(1L), argThat(list -> list.size() == existing.size()));
+        verify(lexicalIndexService).indexDocumentChunks(1L, 10L, result.getChunks());
+    }
+
+    @Test
+    @DisplayName("修改一句：只插入变化的片段，被替换片段的向量点返回给调用方删除")
+    void testSyncChunks_EditedSentence() {
+        String original = article(-1);
+        List<Chunk> existing = persisted(original, true);
+        when(chunkMapper.selectList(any())).thenReturn(existing);
+        AtomicLong nextId = new AtomicLong(500);
+        List<Integer> batchSizes = new ArrayList<>();
+        when(chunkMapper.insertBatch(anyList())).thenAnswer(inv -> {
+            List<Chunk> batch = inv.getArgument(0);
+            batch.forEach(c -> c.setId(nextId.getAndIncrement()));
+            batchSizes.add(batch.size());
+            return batch.size();
+        });
+
+        String edited = article(20);
+        ChunkSyncResult result = chunkService.syncChunks(10L, 1L, edited, CHUNK_SIZE, OVERLAP);
+
+        List<Chunk> expected = chunkService.chunkText(edited, CHUNK_SIZE, OVERLAP);
+        Set<String> oldContents = new HashSet<>();
+        existing.forEach(c -> oldContents.add(c.getContent()));
+        long unchanged = expected.stream().filter(c -> oldContents.contains(c.getContent())).count();
+
+        assertEquals(expected.size(), result.getChunks().size());
+        assertEquals(unchanged, result.getReused());
+        assertTrue(result.getReused() > result.getAdded(), "大部分片段应沿用");
+        assertTrue(result.getAdded() > 0);
+        // 新片段一条多行 INSERT 写入，ID 回填
+        assertEquals(List.of(result.getAdded()), batchSizes);
+        verify(chunkMapper, never()).insert(any(Chunk.class));
+        assertTrue(result.getChunks().stream().allMatch(c -> c.getId() != null));
+        assertEquals(result.getRemoved(), result.getRemovedPointIds().size());
+        verify(knowledgeStatsService).recordIndexedChunks(1L, -result.getRemovedPointIds().size());
+        for (Long pointId : result.getRemovedPointIds()) {
+            Chunk removed = existing.stream().filter(c -> pointId.equals(c.getQdrantPointId())).findFirst().orElseThrow();
+            assertFalse(edited.contains(removed.getContent()));
+        }
+        for (int i = 0; i < result.getChunks().size(); i++) {
+            assertEquals(i, result.getChunks().get(i).getChunkIndex());
+            assertEquals(expected.get(i).getContent(), result.getChunks().get(i).getContent());
+        }
+    }
+
+    @Test
+    @DisplayName("新文档流式同步 5000 个片段：按 500 行一批多行 INSERT，共 10 条语句")
+    void testSyncChunks_BatchInsertLargeDocument() {
+        when(chunkMapper.selectList(any())).thenReturn(new ArrayList<>());
+        List<Integer> batchSizes = new ArrayList<>();
+        when(chunkMapper.insertBatch(anyList())).thenAnswer(inv -> {
+            batchSizes.add(inv.<List<Chunk>>getArgument(0).size());
+            return batchSizes.get(batchSizes.size() - 1);
+        });
+        // 每句 50 个字符，CHUNK_SIZE=60 时每个片段恰好一句
+        String sentence = "知识库内容".repeat(9) + "一二三四。";
+
+        ChunkSyncResult result = chunkService.syncChunks(10L, 1L, out -> {
+            for (int i = 0; i < 5000; i++) {
+                out.write(sentence);
+            }
+        }, CHUNK_SIZE, OVERLAP);
+
+        assertEquals(5000, result.getTotal());
+        assertEquals(5000, result.getAdded());
+        assertEquals(50L * 5000, result.getContentLength());
+        assertEquals(10, batchSizes.size());
+        assertTrue(batchSizes.stream().allMatch(n -> n == 500));
+        verify(lexicalIndexService).reindexDocument(1L, 10L);
+    }
+
+    /**
+     * 40 句话的文章，editAt >= 0 时改写该句
+     */
+    private String article(int editAt) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sb.append(i == editAt ? "这一句话已经被管理员改写了" : "这是第" + i + "句知识库内容").append("。");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 模拟已落库且已索引的 chunk；withHash=false 模拟加哈希列之前的旧数据
+     */
+    private List<Chunk> persisted(String content, boolean withHash) {
+        List<Chunk> chunks = new ArrayList<>(chunkService.chunkText(content, CHUNK_SIZE, OVERLAP));
+        for (Chunk c : chunks) {
+            c.setId(100L + c.getChunkIndex());
+            c.setTenantId(1L);
+            c.setDocumentId(10L);
+            c.setQdrantPointId(1000L + c.getChunkIndex());
+            if (withHash) {
+                c.setContentHash(ChunkServiceImpl.contentHash(c.getContent()));
+            }
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,265 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.config.KnowledgeIngestProperties;
+import com.ityfz.yulu.knowledge.dto.ChunkSyncResult;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.entity.IngestJob;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.mapper.IngestJobMapper;
+import com.ityfz.yulu.knowledge.service.Impl.IngestionServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * IngestionService 单元测试
+ * 测试断点续跑、阶段重试耗尽后的失败记录、删除旧向量点失败时的回滚重试和向量化线程池拒绝
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("IngestionService 测试")
+class IngestionServiceTest {
+
+    @Mock
+    private IngestJobMapper ingestJobMapper;
+
+    @Mock
+    private DocumentMapper documentMapper;
+
+    @Mock
+    private ChunkMapper chunkMapper;
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private ChunkService chunkService;
+
+    @Mock
+    private ChunkIndexService chunkIndexService;
+
+    @Mock
+    private KnowledgeStatsService knowledgeStatsService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private KnowledgeIngestProperties props;
+    private IngestionServiceImpl service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // Lambda 条件构造器需要实体的字段映射
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, IngestJob.class);
+        TableInfoHelper.initTableInfo(assistant, Document.class);
+        TableInfoHelper.initTableInfo(assistant, Chunk.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        props = new KnowledgeIngestProperties();
+        props.setMaxAttempts(2);
+        props.setRetryBackoffMs(0);
+        Executor direct = Runnable::run;
+        Executor thread = r -> new Thread(r).start();
+        service = new IngestionServiceImpl(ingestJobMapper, documentMapper, chunkMapper, documentService,
+                chunkService, chunkIndexService, knowledgeStatsService, new TransactionTemplate(transactionManager), props, direct, thread);
+    }
+
+    @Test
+    @DisplayName("从已完成的批次继续：只向量化、写入剩余批次，最后标记已索引")
+    void testRun_ResumeFromCompletedBatch() {
+        IngestJob job = embedJob(1);
+        Document doc = document();
+        stubJob(job, doc, chunks(5));
+        when(chunkIndexService.embedChunks(eq(1L), eq(doc), anyList()))
+                .thenAnswer(inv -> points(inv.getArgument(2)));
+
+        service.submitIndex(1L, 10L);
+
+        verify(chunkIndexService, times(2)).embedChunks(eq(1L), eq(doc), anyList());
+        verify(chunkIndexService).embedChunks(1L, doc, chunks(5).subList(2, 4));
+        verify(chunkIndexService).embedChunks(1L, doc, chunks(5).subList(4, 5));
+        verify(chunkIndexService, times(2)).upsertPoints(eq(1L), eq(10L), anyList());
+        verify(chunkIndexService, times(2)).savePointIds(eq(1L), anyList());
+        verify(chunkIndexService).markIndexed(1L, doc);
+        assertEquals("SUCCESS", job.getStatus());
+        assertEquals(3, job.getCompletedBatches());
+        assertEquals(5, job.getIndexedChunks());
+    }
+
+    @Test
+    @DisplayName("向量化重试耗尽：任务失败在 EMBED 阶段，保留已完成批次，不标记已索引")
+    void testRun_EmbedFailureKeepsProgress() {
+        IngestJob job = embedJob(0);
+        Document doc = document();
+        stubJob(job, doc, chunks(5));
+        when(chunkIndexService.embedChunks(eq(1L), eq(doc), anyList()))
+                .thenAnswer(inv -> points(inv.getArgument(2)))
+                .thenThrow(new RuntimeException("embedding timeout"));
+
+        service.submitIndex(1L, 10L);
+
+        // 第 1 批成功；第 2 批尝试 2 次后放弃，第 3 批不再向量化
+        verify(chunkIndexService, times(3)).embedChunks(eq(1L), eq(doc), anyList());
+        verify(chunkIndexService, times(1)).upsertPoints(eq(1L), eq(10L), anyList());
+        verify(chunkIndexService, never()).markIndexed(any(), any());
+        assertEquals("FAILED", job.getStatus());
+        assertEquals("EMBED", job.getStage());
+        assertEquals(1, job.getCompletedBatches());
+        assertEquals("embedding timeout", job.getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("删除旧向量点失败：chunk 同步随事务回滚，整段解析重试，不从 content 重新切分")
+    void testRun_DeleteRemovedPointsFailureRetriesParse() throws Exception {
+        IngestJob job = fileJob("CHUNK");
+        Document doc = document();
+        when(ingestJobMapper.selectOne(any())).thenReturn(job);
+        when(ingestJobMapper.update(isNull(), any())).thenReturn(1);
+        when(ingestJobMapper.selectById(job.getId())).thenReturn(job);
+        when(documentMapper.selectOne(any())).thenReturn(doc);
+        ChunkSyncResult sync = new ChunkSyncResult();
+        sync.setTotal(3);
+        sync.setContentLength(3000);
+        sync.setContentHead("正文开头");
+        sync.setRemovedPointIds(List.of(7L, 8L));
+        when(chunkService.syncChunks(eq(10L), eq(1L), any(ChunkService.ContentSource.class), anyInt(), anyInt()))
+                .thenReturn(sync);
+        doThrow(new RuntimeException("qdrant unavailable")).doNothing()
+                .when(chunkIndexService).deletePoints(1L, List.of(7L, 8L));
+        when(chunkMapper.selectCount(any())).thenReturn(0L);
+
+        // 旧版本把删除失败记在 CHUNK 阶段，这类上传任务也改为从暂存文件解析
+        service.retry(1L, job.getId());
+
+        verify(chunkService, times(2)).syncChunks(eq(10L), eq(1L), any(ChunkService.ContentSource.class), anyInt(), anyInt());
+        verify(chunkService, never()).syncChunks(anyLong(), anyLong(), anyString(), anyInt(), anyInt());
+        verify(documentMapper, never()).selectById(any());
+        verify(chunkIndexService, times(2)).deletePoints(1L, List.of(7L, 8L));
+        verify(transactionManager).rollback(any());
+        assertEquals("SUCCESS", job.getStatus());
+    }
+
+    @Test
+    @DisplayName("向量化线程池拒绝：任务失败在 EMBED 阶段并提示稍后重试，不写入任何批次")
+    void testRun_EmbedExecutorRejected() {
+        service = new IngestionServiceImpl(ingestJobMapper, documentMapper, chunkMapper, documentService,
+                chunkService, chunkIndexService, knowledgeStatsService, new TransactionTemplate(transactionManager),
+                props, Runnable::run, r -> {
+                    throw new RejectedExecutionException("queue full");
+                });
+        IngestJob job = embedJob(0);
+        Document doc = document();
+        stubJob(job, doc, chunks(5));
+
+        service.submitIndex(1L, 10L);
+
+        verify(chunkIndexService, never()).embedChunks(any(), any(), anyList());
+        verify(chunkIndexService, never()).upsertPoints(any(), any(), anyList());
+        verify(chunkIndexService, never()).markIndexed(any(), any());
+        assertEquals("FAILED", job.getStatus());
+        assertEquals("EMBED", job.getStage());
+        assertEquals(0, job.getCompletedBatches());
+        assertEquals("向量化任务过多，请稍后重试", job.getErrorMessage());
+    }
+
+    private void stubJob(IngestJob job, Document doc, List<Chunk> chunks) {
+        when(documentService.getDocument(10L, 1L)).thenReturn(doc);
+        when(chunkMapper.selectCount(any())).thenReturn((long) chunks.size());
+        // submitIndex 新建的任务替换成测试构造的任务（带断点）
+        doAnswer(inv -> {
+            ((IngestJob) inv.getArgument(0)).setId(job.getId());
+            return 1;
+        }).when(ingestJobMapper).insert(any(IngestJob.class));
+        when(ingestJobMapper.update(isNull(), any())).thenReturn(1);
+        when(ingestJobMapper.selectById(job.getId())).thenReturn(job);
+        when(documentMapper.selectOne(any())).thenReturn(doc);
+        lenient().when(chunkMapper.selectByIndexRange(eq(1L), eq(10L), anyInt(), anyInt())).thenAnswer(inv -> {
+            int from = inv.getArgument(2);
+            int to = inv.getArgument(3);
+            return chunks.subList(from, Math.min(to, chunks.size()));
+        });
+    }
+
+    private IngestJob embedJob(int completedBatches) {
+        IngestJob job = new IngestJob();
+        job.setId(100L);
+        job.setTenantId(1L);
+        job.setDocumentId(10L);
+        job.setStatus("RUNNING");
+        job.setStage("EMBED");
+        job.setBatchSize(2);
+        job.setTotalChunks(5);
+        job.setTotalBatches(3);
+        job.setCompletedBatches(completedBatches);
+        job.setIndexedChunks(completedBatches * 2);
+        job.setUpdateTime(LocalDateTime.now());
+        return job;
+    }
+
+    private IngestJob fileJob(String stage) {
+        IngestJob job = new IngestJob();
+        job.setId(200L);
+        job.setTenantId(1L);
+        job.setDocumentId(10L);
+        job.setStatus("FAILED");
+        job.setStage(stage);
+        job.setBatchSize(2);
+        job.setFilePath("/tmp/yulu-staging/1/manual.pdf");
+        job.setFileType("pdf");
+        job.setUpdateTime(LocalDateTime.now());
+        return job;
+    }
+
+    private Document document() {
+        Document doc = new Document();
+        doc.setId(10L);
+        doc.setTenantId(1L);
+        doc.setTitle("产品手册");
+        return doc;
+    }
+
+    private List<Chunk> chunks(int count) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Chunk c = new Chunk();
+            c.setId(1000L + i);
+            c.setTenantId(1L);
+            c.setDocumentId(10L);
+            c.setChunkIndex(i);
+            c.setContent("片段" + i);
+            chunks.add(c);
+        }
+        return chunks;
+    }
+
+    private List<VectorPoint> points(List<Chunk> chunks) {
+        return chunks.stream()
+                .map(c -> new VectorPoint(c.getId(), new float[]{0.1f, 0.2f}, Map.<String, Object>of()))
+                .toList();
+    }
+}
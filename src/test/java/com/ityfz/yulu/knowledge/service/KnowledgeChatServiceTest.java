@@ -0,0 +1,126 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import com.ityfz.yulu.common.ai.LLMClient;
+import com.ityfz.yulu.common.ai.PromptBudgetAllocator;
+import com.ityfz.yulu.common.ai.impl.JtokkitTokenCounter;
+import com.ityfz.yulu.common.config.PromptBudgetProperties;
+import com.ityfz.yulu.common.config.QianWenProperties;
+import com.ityfz.yulu.common.config.RagContextProperties;
+import com.ityfz.yulu.knowledge.dto.RagAugmentResult;
+import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import com.ityfz.yulu.knowledge.service.Impl.KnowledgeChatServiceImpl;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * KnowledgeChatService 单元测试
+ * 检索结果经合并整理后拼装成 RAG 上下文的完整链路
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("KnowledgeChatService 测试")
+class KnowledgeChatServiceTest {
+
+    private static final Long TENANT_ID = 1L;
+
+    @Mock
+    private KnowledgeSearchService searchService;
+
+    @Mock
+    private LLMClient llmClient;
+
+    @Mock
+    private KnowledgeStatsService knowledgeStatsService;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private TenantConfigService tenantConfigService;
+
+    private PromptBudgetAllocator promptBudgetAllocator;
+    private KnowledgeChatServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        PromptBudgetProperties budgetProperties = new PromptBudgetProperties();
+        promptBudgetAllocator = new PromptBudgetAllocator(budgetProperties,
+                new JtokkitTokenCounter(budgetProperties.getEncoding()), new QianWenProperties());
+        service = new KnowledgeChatServiceImpl(searchService, llmClient, knowledgeStatsService, embeddingService,
+                tenantConfigService, promptBudgetAllocator, new RetrievalPostProcessor(new RagContextProperties()));
+
+        TenantSettings settings = new TenantSettings();
+        settings.setRagTopK(4);
+        settings.setRagMinScore(0.5);
+        when(tenantConfigService.getSettings(TENANT_ID)).thenReturn(settings);
+        when(embeddingService.embed(anyString())).thenReturn(new float[]{1f, 0f});
+    }
+
+    @Test
+    @DisplayName("相邻片段合并后超过单片段 token 上限：合并进来的后续片段仍完整进入上下文")
+    void testBuildRagAugment_MergedNeighboursReachPrompt() {
+        String first = chunkText(1);
+        String second = chunkText(2);
+        String third = chunkText(3);
+        int chunkMax = promptBudgetAllocator.ragChunkMaxTokens();
+        assertTrue(promptBudgetAllocator.count(first) <= chunkMax, "单个片段本身不应超过上限");
+        assertTrue(promptBudgetAllocator.count(first + second + third) > chunkMax, "合并后应超过单片段上限");
+        when(searchService.search(eq(TENANT_ID), anyString(), any(float[].class), anyInt(), anyDouble(), anyBoolean()))
+                .thenReturn(List.of(
+                        hit(0, first, 0.9),
+                        hit(1, second, 0.8),
+                        hit(2, third, 0.7)));
+
+        RagAugmentResult result = service.buildRagAugment(TENANT_ID, "退货需要满足什么条件", 3000);
+
+        String message = result.getAugmentedUserMessage();
+        assertTrue(message.contains("[片段#1]"));
+        assertFalse(message.contains("[片段#2]"), "三个相邻片段应合并为一段");
+        assertTrue(message.contains(first));
+        assertTrue(message.contains(second));
+        assertTrue(message.contains(third), "合并进来的最后一个片段不应被截断");
+        assertEquals(1, result.getRefs().size());
+    }
+
+    @Test
+    @DisplayName("未合并的单个片段仍按单片段 token 上限截断")
+    void testBuildRagAugment_SingleChunkStillCapped() {
+        String longChunk = "退货商品需保持完好，配件齐全。".repeat(80) + "【结尾】";
+        assertTrue(promptBudgetAllocator.count(longChunk) > promptBudgetAllocator.ragChunkMaxTokens());
+        when(searchService.search(eq(TENANT_ID), anyString(), any(float[].class), anyInt(), anyDouble(), anyBoolean()))
+                .thenReturn(List.of(hit(0, longChunk, 0.9)));
+
+        String message = service.buildRagAugment(TENANT_ID, "退货需要满足什么条件", 3000).getAugmentedUserMessage();
+
+        assertFalse(message.contains("【结尾】"));
+        assertTrue(message.contains("..."));
+    }
+
+    private static String chunkText(int n) {
+        return "第" + n + "部分：" + ("第" + n + "部分的退货规则说明，请按要求办理。").repeat(15) + "【第" + n + "部分结尾】";
+    }
+
+    private static RetrievalResultDTO hit(int chunkIndex, String text, double score) {
+        return RetrievalResultDTO.builder()
+                .documentId(10L)
+                .chunkId(100L + chunkIndex)
+                .chunkIndex(chunkIndex)
+                .title("退货政策")
+                .chunkText(text)
+                .score(score)
+                .vector(new float[]{1f, 0f})
+                .build();
+    }
+}
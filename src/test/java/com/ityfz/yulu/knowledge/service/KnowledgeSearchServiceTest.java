@@ -0,0 +1,135 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import com.ityfz.yulu.common.ai.VectorSearchHit;
+import com.ityfz.yulu.common.ai.VectorStore;
+import com.ityfz.yulu.common.config.KnowledgeHybridProperties;
+import com.ityfz.yulu.common.config.RetrievalCacheProperties;
+import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.lexical.LexicalHit;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.service.Impl.KnowledgeSearchServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * KnowledgeSearchService 单元测试
+ * 测试向量结果与关键词结果的 RRF 融合
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("KnowledgeSearchService 测试")
+class KnowledgeSearchServiceTest {
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private VectorCollectionRouter collectionRouter;
+
+    @Mock
+    private LexicalIndexService lexicalIndexService;
+
+    @Mock
+    private ChunkMapper chunkMapper;
+
+    @Mock
+    private DocumentMapper documentMapper;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    private KnowledgeHybridProperties properties;
+    private RetrievalCacheProperties cacheProperties;
+    private KnowledgeSearchServiceImpl searchService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, Chunk.class);
+        TableInfoHelper.initTableInfo(assistant, Document.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new KnowledgeHybridProperties();
+        // 这里测检索本身，缓存单独测
+        cacheProperties = new RetrievalCacheProperties();
+        cacheProperties.setEnabled(false);
+        searchService = new KnowledgeSearchServiceImpl(embeddingService, vectorStore, collectionRouter, lexicalIndexService,
+                chunkMapper, documentMapper, properties, new RetrievalResultCache(stringRedisTemplate, cacheProperties));
+        when(embeddingService.getDimension()).thenReturn(2);
+        when(collectionRouter.collectionFor(1L)).thenReturn("yulu_chunks");
+    }
+
+    @Test
+    @DisplayName("两路都命中的片段排第一，只被关键词命中的片段从库里补全，低于阈值的向量结果丢弃")
+    void testSearch_FusesVectorAndLexicalHits() {
+        when(vectorStore.search(anyString(), any(float[].class), eq(9), any(), eq(false))).thenReturn(List.of(
+                hit(1L, 0.80f), hit(2L, 0.70f), hit(3L, 0.10f)));
+        when(lexicalIndexService.search(1L, "ORD-001 退货", 9)).thenReturn(List.of(
+                new LexicalHit(4L, 40L, 9.5), new LexicalHit(2L, 20L, 3.1)));
+        Chunk chunk = new Chunk();
+        chunk.setId(4L);
+        chunk.setDocumentId(40L);
+        chunk.setChunkIndex(0);
+        chunk.setContent("订单 ORD-001 退货说明");
+        when(chunkMapper.selectList(any())).thenReturn(List.of(chunk));
+        Document doc = new Document();
+        doc.setId(40L);
+        doc.setTitle("售后手册");
+        when(documentMapper.selectList(any())).thenReturn(List.of(doc));
+
+        List<RetrievalResultDTO> results = searchService.search(1L, "ORD-001 退货", new float[]{1f, 0f}, 3, 0.5);
+
+        // 2 号：向量第 2 + 关键词第 2；1 号：向量第 1；4 号：关键词第 1，与 1 号同分按向量优先
+        assertEquals(List.of(2L, 1L, 4L), results.stream().map(RetrievalResultDTO::getChunkId).toList());
+        assertEquals(3.1, results.get(0).getLexicalScore());
+        assertNull(results.get(2).getScore());
+        assertEquals("订单 ORD-001 退货说明", results.get(2).getChunkText());
+        assertEquals("售后手册", results.get(2).getTitle());
+    }
+
+    @Test
+    @DisplayName("关闭混合检索时只走向量检索")
+    void testSearch_HybridDisabled() {
+        properties.setEnabled(false);
+        when(vectorStore.search(anyString(), any(float[].class), eq(2), any(), eq(false))).thenReturn(List.of(hit(1L, 0.9f)));
+
+        List<RetrievalResultDTO> results = searchService.search(1L, "退货", new float[]{1f, 0f}, 2, 0.5);
+
+        assertEquals(1, results.size());
+        assertNull(results.get(0).getFusedScore());
+        verifyNoInteractions(lexicalIndexService);
+    }
+
+    private VectorSearchHit hit(long chunkId, float score) {
+        VectorSearchHit h = new VectorSearchHit();
+        h.setId(chunkId);
+        h.setScore(score);
+        h.setPayload(Map.of("chunk_id", chunkId, "document_id", chunkId * 10, "chunk", "片段" + chunkId,
+                "title", "文档" + chunkId));
+        return h;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.knowledge.dto.KnowledgeStats;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.entity.Document;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.mapper.DocumentMapper;
+import com.ityfz.yulu.knowledge.service.Impl.KnowledgeStatsServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * KnowledgeStatsService 单元测试
+ * 测试冷启动从库统计、本地缓存命中、增量在事务提交后写入 Redis
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("知识库统计测试")
+class KnowledgeStatsServiceTest {
+
+    @Mock
+    private ChunkMapper chunkMapper;
+
+    @Mock
+    private DocumentMapper documentMapper;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOps;
+
+    private KnowledgeStatsServiceImpl service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, Chunk.class);
+        TableInfoHelper.initTableInfo(assistant, Document.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = new KnowledgeStatsServiceImpl(chunkMapper, documentMapper, redisTemplate, 60);
+    }
+
+    @Test
+    @DisplayName("Redis 中没有统计：从库统计一次写入 Redis，之后的读取走本地缓存，不再查库")
+    void testGetStats_ColdStartThenLocalCache() {
+        when(redisTemplate.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries("kb:stats:1")).thenReturn(Map.of());
+        when(chunkMapper.selectCount(any())).thenReturn(42L);
+        when(documentMapper.selectCount(any())).thenReturn(3L);
+        LocalDateTime indexedAt = LocalDateTime.of(2026, 1, 2, 3, 4, 5);
+        when(documentMapper.selectObjs(any())).thenReturn(List.of(indexedAt));
+
+        KnowledgeStats first = service.getStats(1L);
+        KnowledgeStats second = service.getStats(1L);
+
+        assertEquals(42, first.getChunkCount());
+        assertEquals(3, first.getDocumentCount());
+        assertEquals(indexedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), first.getLastIndexTime());
+        assertSame(first, second);
+        verify(chunkMapper, times(1)).selectCount(any());
+        verify(hashOps, times(1)).entries("kb:stats:1");
+        // 对账用一个脚本整体重写（DEL + HSET + EXPIRE），不再分步 putAll
+        ArgumentCaptor<RedisScript<?>> script = ArgumentCaptor.forClass(RedisScript.class);
+        verify(redisTemplate).execute(script.capture(), eq(List.of("kb:stats:1")), eq("42"), eq("3"),
+                eq(String.valueOf(first.getLastIndexTime())), eq(String.valueOf(168 * 3600)));
+        assertTrue(script.getValue().getScriptAsString().contains("DEL"));
+        verify(hashOps, never()).putAll(any(), anyMap());
+    }
+
+    @Test
+    @DisplayName("事务内的增量在提交后才写入 Redis，并使本地缓存失效；负值按 0 读取")
+    void testRecord_AfterCommitAndInvalidate() {
+        when(redisTemplate.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries("kb:stats:1"))
+                .thenReturn(Map.of("chunks", "10", "documents", "2", "lastIndexTime", "0"))
+                .thenReturn(Map.of("chunks", "-3", "documents", "2", "lastIndexTime", "0"));
+        assertEquals(10, service.getStats(1L).getChunkCount());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.recordIndexedChunks(1L, -13);
+            verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+            // 本地缓存仍是旧值
+            assertEquals(10, service.getStats(1L).getChunkCount());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("kb:stats:1")), eq("chunks"), eq("-13"), eq(""));
+        assertEquals(0, service.getStats(1L).getChunkCount());
+        verifyNoInteractions(chunkMapper);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.common.config.KnowledgeHybridProperties;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.lexical.LexicalHit;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.service.Impl.LexicalIndexServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * LexicalIndexService 单元测试
+ * 测试租户索引在后台线程构建，检索线程不等待全量加载
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LexicalIndexService 测试")
+class LexicalIndexServiceTest {
+
+    @Mock
+    private ChunkMapper chunkMapper;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Chunk.class);
+    }
+
+    @Test
+    @DisplayName("首次检索只提交后台构建并返回空结果，构建完成后直接命中，并发检索不重复构建")
+    void testSearch_BuildsInBackground() {
+        Deque<Runnable> submitted = new ArrayDeque<>();
+        LexicalIndexServiceImpl service = new LexicalIndexServiceImpl(chunkMapper, new KnowledgeHybridProperties(),
+                submitted::add);
+        when(chunkMapper.selectList(any())).thenReturn(List.of(
+                chunk(1L, "退货流程：在订单详情页申请退货。"),
+                chunk(2L, "订单 ORD-2024-001 的退货需要联系人工客服处理。")));
+
+        assertTrue(service.search(1L, "ORD-2024-001 退货", 5).isEmpty());
+        assertTrue(service.search(1L, "ORD-2024-001 退货", 5).isEmpty());
+        verifyNoInteractions(chunkMapper);
+        assertEquals(1, submitted.size());
+
+        submitted.poll().run();
+        List<LexicalHit> hits = service.search(1L, "ORD-2024-001 退货", 5);
+
+        assertFalse(hits.isEmpty());
+        assertEquals(2L, hits.get(0).getChunkId());
+        verify(chunkMapper, times(1)).selectList(any());
+    }
+
+    @Test
+    @DisplayName("构建线程池拒绝：本次只返回空结果，下次检索重新提交")
+    void testSearch_RejectedRetriesNextTime() {
+        Deque<Runnable> submitted = new ArrayDeque<>();
+        boolean[] reject = {true};
+        LexicalIndexServiceImpl service = new LexicalIndexServiceImpl(chunkMapper, new KnowledgeHybridProperties(),
+                task -> {
+                    if (reject[0]) {
+                        throw new RejectedExecutionException("full");
+                    }
+                    submitted.add(task);
+                });
+
+        assertTrue(service.search(1L, "退货", 5).isEmpty());
+        reject[0] = false;
+        assertTrue(service.search(1L, "退货", 5).isEmpty());
+
+        assertEquals(1, submitted.size());
+        verifyNoInteractions(chunkMapper);
+    }
+
+    private static Chunk chunk(Long id, String content) {
+        Chunk c = new Chunk();
+        c.setId(id);
+        c.setDocumentId(10L);
+        c.setContent(content);
+        return c;
+    }
+}
@@ -0,0 +1,81 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.common.config.RagContextProperties;
+import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RetrievalPostProcessor 单元测试
+ * 测试相邻片段合并去重叠和 MMR 去冗余
+ */
+@DisplayName("RetrievalPostProcessor 测试")
+class RetrievalPostProcessorTest {
+
+    private RagContextProperties properties;
+    private RetrievalPostProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RagContextProperties();
+        processor = new RetrievalPostProcessor(properties);
+    }
+
+    @Test
+    @DisplayName("同文档相邻片段合并为一段并去掉重叠文本，不相邻的保持独立")
+    void testMergeAdjacent() {
+        List<RetrievalResultDTO> hits = List.of(
+                hit(1L, 1, "审核通过后请在七天内寄回商品。运费由买家承担。", 0.9, new float[]{1f, 0f}),
+                hit(1L, 0, "在订单详情页申请退货。审核通过后请在七天内寄回商品。", 0.8, new float[]{1f, 0f}),
+                hit(1L, 5, "退款原路返回，一般三个工作日到账。", 0.7, new float[]{0f, 1f}));
+
+        List<RetrievalResultDTO> result = processor.process(hits, 8);
+
+        assertEquals(2, result.size());
+        RetrievalResultDTO merged = result.get(0);
+        assertEquals(0, merged.getChunkIndex());
+        assertEquals("在订单详情页申请退货。审核通过后请在七天内寄回商品。运费由买家承担。", merged.getChunkText());
+        assertEquals(0.9, merged.getScore());
+        assertEquals(5, result.get(1).getChunkIndex());
+    }
+
+    @Test
+    @DisplayName("MMR 跳过与已选片段几乎相同的候选，选入相关度略低但内容不同的片段")
+    void testMmrSkipsNearDuplicates() {
+        List<RetrievalResultDTO> hits = List.of(
+                hit(1L, 0, "退货流程说明", 0.90, new float[]{1f, 0.01f}),
+                hit(2L, 3, "退货流程介绍", 0.89, new float[]{1f, 0.02f}),
+                hit(3L, 7, "发票开具说明", 0.80, new float[]{0.2f, 1f}));
+
+        List<RetrievalResultDTO> result = processor.process(hits, 2);
+        assertEquals(List.of(1L, 3L), result.stream().map(RetrievalResultDTO::getDocumentId).toList());
+
+        properties.setMmrEnabled(false);
+        result = processor.process(hits, 2);
+        assertEquals(List.of(1L, 2L), result.stream().map(RetrievalResultDTO::getDocumentId).toList());
+    }
+
+    @Test
+    @DisplayName("重叠不足最小长度时不截断")
+    void testOverlapLength() {
+        assertEquals(7, RetrievalPostProcessor.overlapLength("前文内容ABCDEFG", "ABCDEFG后文", 200));
+        assertEquals(0, RetrievalPostProcessor.overlapLength("前文内容AB", "AB后文", 200));
+    }
+
+    private RetrievalResultDTO hit(Long documentId, int chunkIndex, String text, double score, float[] vector) {
+        return RetrievalResultDTO.builder()
+                .documentId(documentId)
+                .chunkId(documentId * 100 + chunkIndex)
+                .chunkIndex(chunkIndex)
+                .title("文档" + documentId)
+                .chunkText(text)
+                .score(score)
+                .vector(vector)
+                .build();
+    }
+}
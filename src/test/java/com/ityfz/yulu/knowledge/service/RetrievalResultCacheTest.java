@@ -0,0 +1,102 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.common.config.RetrievalCacheProperties;
+import com.ityfz.yulu.knowledge.dto.RetrievalResultDTO;
+import com.ityfz.yulu.knowledge.event.KnowledgeBaseChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * RetrievalResultCache 单元测试
+ * 测试问题归一化命中、代数号失效、Redis 不可用时不走缓存
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RetrievalResultCache 测试")
+class RetrievalResultCacheTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOps;
+
+    private RetrievalResultCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RetrievalResultCache(stringRedisTemplate, new RetrievalCacheProperties());
+        loads = new AtomicInteger();
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOps);
+    }
+
+    @Test
+    @DisplayName("归一化后相同的问题命中；返回副本，调用方修改不影响缓存")
+    void testGet_NormalizedQueryHits() {
+        when(valueOps.get("kb:gen:1")).thenReturn("3");
+
+        List<RetrievalResultDTO> first = cache.get(1L, "怎么退货？", 5, 0.35, false, loader("退货说明"));
+        first.get(0).setChunkText("被调用方改写");
+        List<RetrievalResultDTO> second = cache.get(1L, "  怎么退货 ", 5, 0.35, false, loader("不应执行"));
+
+        assertEquals(1, loads.get());
+        assertEquals("退货说明", second.get(0).getChunkText());
+        // topK 不同、其他租户：各自查询
+        cache.get(1L, "怎么退货", 8, 0.35, false, loader("topK=8"));
+        cache.get(2L, "怎么退货", 5, 0.35, false, loader("租户2"));
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("知识库变更推进代数号后旧结果不再命中")
+    void testGet_GenerationBumped() {
+        when(valueOps.get("kb:gen:1")).thenReturn(null, "1");
+        when(valueOps.increment("kb:gen:1")).thenReturn(1L);
+
+        cache.get(1L, "保修多久", 5, 0.35, false, loader("旧版本"));
+        cache.onKnowledgeBaseChanged(new KnowledgeBaseChangedEvent(1L, 10L, "INDEXED"));
+        List<RetrievalResultDTO> after = cache.get(1L, "保修多久", 5, 0.35, false, loader("新版本"));
+
+        assertEquals(2, loads.get());
+        assertEquals("新版本", after.get(0).getChunkText());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    @DisplayName("读不到代数号时不走缓存，每次都查询")
+    void testGet_RedisUnavailable() {
+        when(valueOps.get("kb:gen:1")).thenThrow(new RuntimeException("connection refused"));
+
+        cache.get(1L, "发票怎么开", 5, 0.35, false, loader("a"));
+        cache.get(1L, "发票怎么开", 5, 0.35, false, loader("b"));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getBypassed());
+        assertEquals(0, cache.getSize());
+    }
+
+    private Supplier<List<RetrievalResultDTO>> loader(String text) {
+        return () -> {
+            loads.incrementAndGet();
+            List<RetrievalResultDTO> results = new ArrayList<>();
+            results.add(RetrievalResultDTO.builder().chunkId(1L).documentId(10L).chunkText(text).score(0.8).build());
+            return results;
+        };
+    }
+}
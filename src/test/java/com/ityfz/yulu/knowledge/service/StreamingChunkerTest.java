@@ -0,0 +1,102 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamingChunker 单元测试
+ * 测试分段写入与整段写入结果一致、规范化规则和末尾短片段合并
+ */
+@DisplayName("StreamingChunker 测试")
+class StreamingChunkerTest {
+
+    @Test
+    @DisplayName("按随机长度分段写入（模拟 SAX 字符事件），切分结果与整段写入完全一致")
+    void testFeed_PiecewiseEqualsWhole() {
+        StringBuilder sb = new StringBuilder("  \r\n");
+        for (int i = 0; i < 300; i++) {
+            sb.append("这是第").append(i).append("段内容。");
+            if (i % 7 == 0) {
+                sb.append("\r\n\r\n\r\n");
+            }
+            if (i % 11 == 0) {
+                sb.append("Some english text! ");
+            }
+        }
+        sb.append("\n\n  ");
+        String text = sb.toString();
+
+        List<Chunk> whole = new ArrayList<>();
+        StreamingChunker expected = new StreamingChunker(120, 20, 30, 100, whole::add);
+        expected.feed(text);
+        expected.finish();
+
+        List<Chunk> pieces = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(120, 20, 30, 100, pieces::add);
+        Random random = new Random(42);
+        char[] chars = text.toCharArray();
+        int pos = 0;
+        while (pos < chars.length) {
+            int len = Math.min(chars.length - pos, 1 + random.nextInt(40));
+            chunker.write(chars, pos, len);
+            pos += len;
+        }
+        chunker.close();
+
+        assertTrue(whole.size() > 10);
+        assertEquals(whole.size(), pieces.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertEquals(whole.get(i).getContent(), pieces.get(i).getContent());
+            assertEquals(i, pieces.get(i).getChunkIndex());
+            assertTrue(pieces.get(i).getContentLength() <= 120);
+        }
+        assertEquals(expected.getLength(), chunker.getLength());
+        assertEquals(100, chunker.getHead().length());
+        assertEquals(whole.size(), chunker.getChunkCount());
+    }
+
+    @Test
+    @DisplayName("规范化：换行统一为 \\n，3 个以上连续换行压成 2 个，去掉首尾空白")
+    void testFeed_Normalize() {
+        List<Chunk> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(500, 50, 50, 1000, chunks::add);
+        chunker.feed("\r\n  第一段\r\n\r\n\r\n\r第二段\r");
+        chunker.feed("第三段 \n\n\n");
+        chunker.finish();
+
+        assertEquals(1, chunks.size());
+        assertEquals("第一段\n\n第二段\n第三段", chunks.get(0).getContent());
+        assertEquals("第一段\n\n第二段\n第三段", chunker.getHead());
+        assertEquals(chunks.get(0).getContent().length(), chunker.getLength());
+    }
+
+    @Test
+    @DisplayName("最后一段不足 minChunkSize 时并入前一段；空白正文不产生 chunk")
+    void testFinish_MergesShortTail() {
+        List<Chunk> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(20, 0, 10, 0, chunks::add);
+        chunker.feed("一二三四五六七八九十一二三四五六七八九。");
+        chunker.feed("尾巴");
+        chunker.finish();
+        chunker.finish();
+
+        assertEquals(1, chunks.size());
+        assertEquals("一二三四五六七八九十一二三四五六七八九。\n尾巴", chunks.get(0).getContent());
+        assertEquals(23, chunks.get(0).getContentLength());
+        assertEquals("", chunker.getHead());
+
+        List<Chunk> empty = new ArrayList<>();
+        StreamingChunker blank = new StreamingChunker(20, 5, 10, 10, empty::add);
+        blank.feed(" \r\n\t ");
+        blank.finish();
+        assertTrue(empty.isEmpty());
+        assertEquals(0, blank.getLength());
+    }
+}
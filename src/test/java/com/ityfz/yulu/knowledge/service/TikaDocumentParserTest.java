@@ -0,0 +1,140 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.ityfz.yulu.common.config.DocumentParseProperties;
+import com.ityfz.yulu.common.exception.BizException;
+import com.ityfz.yulu.knowledge.dto.DocumentParseStats;
+import com.ityfz.yulu.knowledge.service.Impl.TikaDocumentParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TikaDocumentParser 单元测试
+ * 测试解析在专用线程池执行、正文回到调用方线程写入，以及超时和正文上限
+ */
+@DisplayName("TikaDocumentParser 测试")
+class TikaDocumentParserTest {
+
+    private ThreadPoolTaskExecutor executor;
+    private DocumentParseProperties properties;
+    private TikaDocumentParser parser;
+
+    @BeforeEach
+    void setUp() {
+        properties = new DocumentParseProperties();
+        properties.setPipeCapacity(2);
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(4);
+        executor.initialize();
+        parser = new TikaDocumentParser(executor, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("大文本流式解析：正文全部在调用方线程写入，不在解析线程写库")
+    void testParse_WritesOnCallerThread() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("第").append(i).append("行内容\n");
+        }
+        Set<Thread> writers = new HashSet<>();
+        StringWriter collected = new StringWriter();
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                writers.add(Thread.currentThread());
+                collected.write(cbuf, off, len);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        parser.parse(stream(sb.toString()), "notes.txt", out);
+
+        assertEquals(Set.of(Thread.currentThread()), writers);
+        assertEquals(sb.toString().trim(), collected.toString().trim());
+        DocumentParseStats stats = parser.getStats();
+        assertEquals(1, stats.getSucceeded());
+        assertTrue(stats.getChars() >= sb.length());
+    }
+
+    @Test
+    @DisplayName("按文件类型超时：卡住的文档到期即失败，解析线程随后退出")
+    void testParse_TimeoutPerType() throws Exception {
+        properties.getTimeoutMs().put("txt", 300L);
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                sleep();
+                return 'a';
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                sleep();
+                b[off] = 'a';
+                return 1;
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        BizException e = assertThrows(BizException.class,
+                () -> parser.parse(endless, "stuck.txt", new StringWriter()));
+
+        assertTrue(e.getMessage().contains("超时"));
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(1, parser.getStats().getTimedOut());
+        // 管道放弃后解析线程下一次读文件即结束，不会一直占着线程
+        Thread.sleep(500);
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    @DisplayName("正文超过该类型的字符上限：解析失败")
+    void testParse_MaxChars() {
+        properties.getMaxChars().put("txt", 100);
+        String text = "很长的一段内容。".repeat(100);
+
+        BizException e = assertThrows(BizException.class, () -> parser.parse(text.getBytes(StandardCharsets.UTF_8), "big.txt"));
+
+        assertTrue(e.getMessage().contains("上限"));
+        assertEquals(1, parser.getStats().getFailed());
+        assertEquals("短文本", parser.parse("短文本".getBytes(StandardCharsets.UTF_8), "short.txt"));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException ignored) {
+            // 模拟不响应中断的解析器
+        }
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
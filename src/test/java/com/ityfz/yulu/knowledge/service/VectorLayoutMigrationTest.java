@@ -0,0 +1,193 @@
+package com.ityfz.yulu.knowledge.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ityfz.yulu.common.ai.EmbeddingService;
+import com.ityfz.yulu.common.ai.VectorFilter;
+import com.ityfz.yulu.common.ai.VectorPoint;
+import com.ityfz.yulu.common.ai.impl.EmbeddedHnswVectorStore;
+import com.ityfz.yulu.common.config.VectorStoreProperties;
+import com.ityfz.yulu.knowledge.dto.VectorMigrationResponse;
+import com.ityfz.yulu.knowledge.entity.Chunk;
+import com.ityfz.yulu.knowledge.enums.VectorLayout;
+import com.ityfz.yulu.knowledge.mapper.ChunkMapper;
+import com.ityfz.yulu.knowledge.service.Impl.VectorLayoutMigrationServiceImpl;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.service.TenantConfigService;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 向量集合布局测试
+ * 测试租户首次写入时固定集合，以及共享集合与独立集合之间的迁移（基于进程内向量存储）
+ */
+@DisplayName("向量集合布局与迁移测试")
+class VectorLayoutMigrationTest {
+
+    private static final int DIM = 4;
+
+    @TempDir
+    Path dataDir;
+
+    private EmbeddedHnswVectorStore store;
+    private VectorStoreProperties properties;
+    private TenantConfigService tenantConfigService;
+    private ChunkMapper chunkMapper;
+    private VectorCollectionRouter router;
+    private VectorLayoutMigrationServiceImpl migrationService;
+    private final Map<Long, String> pinned = new HashMap<>();
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Chunk.class);
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        properties = new VectorStoreProperties();
+        properties.getEmbedded().setDataDir(dataDir.toString());
+        properties.getEmbedded().setFlushIntervalMs(0);
+        properties.setMigrationBatchSize(64);
+        properties.setMigrationSwitchGraceMs(0);
+        store = new EmbeddedHnswVectorStore(properties, new ObjectMapper());
+        store.init();
+
+        tenantConfigService = mock(TenantConfigService.class);
+        when(tenantConfigService.getSettings(anyLong())).thenAnswer(inv -> {
+            TenantSettings s = new TenantSettings();
+            s.setVectorCollection(pinned.get(inv.<Long>getArgument(0)));
+            return s;
+        });
+        when(tenantConfigService.getRawSettings(anyLong())).thenAnswer(inv -> {
+            TenantSettings s = new TenantSettings();
+            s.setVectorCollection(pinned.get(inv.<Long>getArgument(0)));
+            return s;
+        });
+        doAnswer(inv -> pinned.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(tenantConfigService).updateVectorCollection(anyLong(), anyString());
+        when(tenantConfigService.pinVectorCollection(anyLong(), anyString())).thenAnswer(inv -> {
+            pinned.putIfAbsent(inv.getArgument(0), inv.getArgument(1));
+            return pinned.get(inv.<Long>getArgument(0));
+        });
+
+        EmbeddingService embeddingService = mock(EmbeddingService.class);
+        when(embeddingService.getDimension()).thenReturn(DIM);
+        router = new VectorCollectionRouter(store, embeddingService, tenantConfigService, properties);
+
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        chunkMapper = mock(ChunkMapper.class);
+        migrationService = new VectorLayoutMigrationServiceImpl(store, router, tenantConfigService, chunkMapper,
+                redis, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    @DisplayName("新租户按配置的布局固定集合，共享集合里已有数据的老租户固定为共享集合")
+    void testPrepare_PinsCollectionOnFirstWrite() {
+        properties.setLayout("per-tenant");
+        router.ensureCollection("yulu_chunks");
+        store.upsertPoints("yulu_chunks", points(1L, 1, 5));
+
+        assertEquals("yulu_chunks", router.prepare(1L));
+        assertEquals("yulu_chunks_t2", router.prepare(2L));
+        assertEquals("yulu_chunks_t2", router.collectionFor(2L));
+        // 已固定的租户不受之后修改默认布局影响
+        properties.setLayout("shared");
+        assertEquals("yulu_chunks_t2", router.prepare(2L));
+        verify(tenantConfigService, times(2)).pinVectorCollection(anyLong(), anyString());
+        verify(tenantConfigService, never()).updateVectorCollection(anyLong(), anyString());
+    }
+
+    @Test
+    @DisplayName("共享 → 独立：复制全部点，补齐复制期间新增的点，删除已删除的点，清理共享集合中该租户的点")
+    void testMigrate_SharedToPerTenant() {
+        router.ensureCollection("yulu_chunks");
+        store.upsertPoints("yulu_chunks", points(1L, 1, 300));
+        store.upsertPoints("yulu_chunks", points(2L, 1001, 1100));
+        // DB 中 291~300 已删除，500 标记已索引但向量丢失；切换后查 DB 时模拟 301 刚好写入源集合
+        List<Object> live = LongStream.rangeClosed(1, 290).boxed().collect(Collectors.toList());
+        live.add(301L);
+        live.add(500L);
+        when(chunkMapper.selectObjs(any())).thenAnswer(inv -> {
+            store.upsertPoints("yulu_chunks", points(1L, 301, 301));
+            return live;
+        });
+
+        VectorMigrationResponse result = migrationService.migrateTenant(1L, VectorLayout.PER_TENANT);
+
+        assertTrue(result.getMigrated());
+        assertEquals("yulu_chunks_t1", result.getTargetCollection());
+        assertEquals(300L, result.getCopiedPoints());
+        assertEquals(1L, result.getCaughtUpPoints());
+        assertEquals(10L, result.getRemovedStalePoints());
+        assertEquals(1L, result.getMissingPoints());
+        assertEquals("yulu_chunks_t1", router.collectionFor(1L));
+        assertEquals(291, store.count("yulu_chunks_t1", VectorFilter.eq("tenant_id", 1L)));
+        assertEquals(0, store.count("yulu_chunks", VectorFilter.eq("tenant_id", 1L)));
+        assertEquals(100, store.count("yulu_chunks", VectorFilter.eq("tenant_id", 2L)));
+        assertEquals(1L, store.search("yulu_chunks_t1", vector(1), 1, VectorFilter.eq("tenant_id", 1L))
+                .get(0).getId());
+    }
+
+    @Test
+    @DisplayName("独立 → 共享：迁回后删除独立集合；目标与当前集合相同时不做任何操作")
+    void testMigrate_PerTenantBackToShared() {
+        pinned.put(1L, "yulu_chunks_t1");
+        router.ensureCollection("yulu_chunks_t1");
+        store.upsertPoints("yulu_chunks_t1", points(1L, 1, 50));
+        when(chunkMapper.selectObjs(any()))
+                .thenReturn(LongStream.rangeClosed(1, 50).boxed().collect(Collectors.toList()));
+
+        VectorMigrationResponse result = migrationService.migrateTenant(1L, VectorLayout.SHARED);
+
+        assertEquals(50L, result.getCopiedPoints());
+        assertEquals(0L, result.getMissingPoints());
+        assertEquals(50, store.count("yulu_chunks", VectorFilter.eq("tenant_id", 1L)));
+        assertEquals(0, store.count("yulu_chunks_t1", null));
+        assertEquals("yulu_chunks", router.collectionFor(1L));
+
+        VectorMigrationResponse noop = migrationService.migrateTenant(1L, VectorLayout.SHARED);
+        assertFalse(noop.getMigrated());
+    }
+
+    private List<VectorPoint> points(long tenantId, long fromId, long toId) {
+        List<VectorPoint> points = new ArrayList<>();
+        for (long id = fromId; id <= toId; id++) {
+            points.add(new VectorPoint(id, vector(id), Map.of("tenant_id", tenantId, "document_id", id / 10)));
+        }
+        return points;
+    }
+
+    private float[] vector(long id) {
+        return new float[]{(float) Math.sin(id), (float) Math.cos(id), (float) Math.sin(id * 0.37), 1f};
+    }
+}
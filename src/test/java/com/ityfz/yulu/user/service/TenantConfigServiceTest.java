@@ -0,0 +1,124 @@
+package com.ityfz.yulu.user.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.ityfz.yulu.common.config.TenantSettingsProperties;
+import com.ityfz.yulu.user.entity.TenantSettings;
+import com.ityfz.yulu.user.mapper.TenantSettingsMapper;
+import com.ityfz.yulu.user.service.impl.TenantConfigServiceImpl;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * TenantConfigService 单元测试
+ * 测试默认值合并、本地缓存、变更通知失效和向量集合条件固定
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TenantConfigService 测试")
+class TenantConfigServiceTest {
+
+    @Mock
+    private TenantSettingsMapper tenantSettingsMapper;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    private TenantConfigServiceImpl service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), TenantSettings.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = new TenantConfigServiceImpl(tenantSettingsMapper, new TenantSettingsProperties(), stringRedisTemplate);
+    }
+
+    @Test
+    @DisplayName("租户配置覆盖默认值，未配置字段取默认值，命中缓存不再查库")
+    void testGetSettings_MergeAndCache() {
+        TenantSettings stored = new TenantSettings();
+        stored.setTenantId(1L);
+        stored.setRagTopK(3);
+        stored.setLlmModel("qwen-max");
+        when(tenantSettingsMapper.selectOne(any())).thenReturn(stored);
+
+        TenantSettings settings = service.getSettings(1L);
+        assertEquals(3, settings.getRagTopK());
+        assertEquals("qwen-max", settings.getLlmModel());
+        assertEquals(4000, settings.getContextCharLimit());
+        assertEquals(30, settings.getAvgHandoffSeconds());
+        assertNull(settings.getRagMinScore());
+
+        service.getSettings(1L);
+        verify(tenantSettingsMapper, times(1)).selectOne(any());
+    }
+
+    @Test
+    @DisplayName("收到变更通知后失效本地缓存，查库失败时退回默认值")
+    void testOnMessage_EvictAndFallback() {
+        when(tenantSettingsMapper.selectOne(any())).thenReturn(null);
+        assertEquals(8, service.getSettings(2L).getRagTopK());
+
+        service.onMessage(new DefaultMessage(
+                "tenant:settings:changed".getBytes(StandardCharsets.UTF_8),
+                "2".getBytes(StandardCharsets.UTF_8)), null);
+
+        when(tenantSettingsMapper.selectOne(any())).thenThrow(new RuntimeException("db down"));
+        TenantSettings settings = service.getSettings(2L);
+        assertEquals(8, settings.getRagTopK());
+        verify(tenantSettingsMapper, times(2)).selectOne(any());
+    }
+
+    @Test
+    @DisplayName("固定向量集合：其他实例已先固定时条件更新不生效，返回库里已记录的集合")
+    void testPinVectorCollection_KeepsExisting() {
+        TenantSettings unpinned = new TenantSettings();
+        unpinned.setId(5L);
+        unpinned.setTenantId(3L);
+        TenantSettings pinnedByOther = new TenantSettings();
+        pinnedByOther.setId(5L);
+        pinnedByOther.setTenantId(3L);
+        pinnedByOther.setVectorCollection("yulu_chunks");
+        when(tenantSettingsMapper.selectOne(any())).thenReturn(unpinned, pinnedByOther);
+        when(tenantSettingsMapper.update(isNull(), any())).thenReturn(0);
+
+        assertEquals("yulu_chunks", service.pinVectorCollection(3L, "yulu_chunks_t3"));
+        verify(tenantSettingsMapper, never()).insert(any(TenantSettings.class));
+    }
+
+    @Test
+    @DisplayName("固定向量集合：首次插入与其他实例冲突时改走条件更新")
+    void testPinVectorCollection_InsertRace() {
+        TenantSettings inserted = new TenantSettings();
+        inserted.setId(6L);
+        inserted.setTenantId(4L);
+        TenantSettings pinned = new TenantSettings();
+        pinned.setId(6L);
+        pinned.setTenantId(4L);
+        pinned.setVectorCollection("yulu_chunks_t4");
+        when(tenantSettingsMapper.selectOne(any())).thenReturn(null, inserted, pinned);
+        when(tenantSettingsMapper.insert(any(TenantSettings.class))).thenThrow(new DuplicateKeyException("uk_tenant_id"));
+        when(tenantSettingsMapper.update(isNull(), any())).thenReturn(1);
+
+        assertEquals("yulu_chunks_t4", service.pinVectorCollection(4L, "yulu_chunks_t4"));
+        verify(tenantSettingsMapper).update(isNull(), any());
+    }
+}